@@ -45,6 +45,8 @@ public class VirtualMachineProxyImpl implements JdiTimer, VirtualMachineProxy {
   private final DebugProcessImpl myDebugProcess;
   private final VirtualMachine myVirtualMachine;
   private int myTimeStamp = 0;
+  private int myCalculatedValuesCount = 0;
+  private int myPrefetchedValuesCount = 0;
   private int myPausePressedCount = 0;
 
   // cached data
@@ -603,10 +605,25 @@ public class VirtualMachineProxyImpl implements JdiTimer, VirtualMachineProxy {
     return myVirtualMachine.hashCode();
   }
 
+  /**
+   * Counts the values of the debugger tree nodes calculated since the caches were cleared last time;
+   * the ones calculated one by one (as opposed to prefetched together with their siblings) usually take a request to the VM each.
+   */
+  public void valueCalculated(boolean prefetched) {
+    if (prefetched) {
+      myPrefetchedValuesCount++;
+    }
+    else {
+      myCalculatedValuesCount++;
+    }
+  }
+
   public void clearCaches() {
     if (LOG.isDebugEnabled()) {
-      LOG.debug("VM cleared");
+      LOG.debug("VM cleared; values calculated: " + myCalculatedValuesCount + ", prefetched: " + myPrefetchedValuesCount);
     }
+    myCalculatedValuesCount = 0;
+    myPrefetchedValuesCount = 0;
 
     myAllClasses = null;
     if (!myNestedClassesCache.isEmpty()) {
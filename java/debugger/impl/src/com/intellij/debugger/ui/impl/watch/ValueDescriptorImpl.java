@@ -56,6 +56,8 @@ public abstract class ValueDescriptorImpl extends NodeDescriptorImpl implements
 
   private Value myValue;
   private EvaluateException myValueException;
+  private Value myPrefetchedValue;
+  private boolean myIsPrefetched = false;
   protected EvaluationContextImpl myStoredEvaluationContext = null;
 
   private String myValueLabel;
@@ -146,14 +148,35 @@ public abstract class ValueDescriptorImpl extends NodeDescriptorImpl implements
 
   public abstract Value calcValue(EvaluationContextImpl evaluationContext) throws EvaluateException;
 
+  /**
+   * Makes the next {@link #setContext} use the given value instead of calculating it. Renderers read the values
+   * of all children of a node with one request to the VM and pass them to the child descriptors this way.
+   */
+  public void setPrefetchedValue(@Nullable Value value) {
+    myPrefetchedValue = value;
+    myIsPrefetched = true;
+  }
+
   public final void setContext(EvaluationContextImpl evaluationContext) {
     DebuggerManagerThreadImpl.assertIsManagerThread();
     if (Patches.IBM_JDK_DISABLE_COLLECTION_BUG) {
       myStoredEvaluationContext = evaluationContext;
     }
+    final boolean prefetched = myIsPrefetched;
+    final DebugProcessImpl debugProcess = evaluationContext != null ? evaluationContext.getDebugProcess() : null;
+    if (debugProcess != null && debugProcess.isAttached()) {
+      debugProcess.getVirtualMachineProxy().valueCalculated(prefetched);
+    }
     Value value;
     try {
-      value = calcValue(evaluationContext);
+      if (prefetched) {
+        value = myPrefetchedValue;
+        myPrefetchedValue = null;
+        myIsPrefetched = false;
+      }
+      else {
+        value = calcValue(evaluationContext);
+      }
 
       if(!myIsNew) {
         try {
@@ -26,7 +26,6 @@ import com.intellij.debugger.ui.impl.watch.NodeManagerImpl;
 import com.intellij.debugger.ui.impl.watch.ValueDescriptorImpl;
 import com.intellij.debugger.ui.tree.DebuggerTreeNode;
 import com.intellij.debugger.ui.tree.NodeDescriptor;
-import com.intellij.debugger.ui.tree.NodeDescriptorFactory;
 import com.intellij.debugger.ui.tree.ValueDescriptor;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.roots.LanguageLevelProjectExtension;
@@ -40,7 +39,10 @@ import com.intellij.psi.PsiExpression;
 import com.intellij.util.IncorrectOperationException;
 import com.sun.jdi.ArrayReference;
 import com.sun.jdi.ArrayType;
+import com.sun.jdi.InternalException;
+import com.sun.jdi.ObjectCollectedException;
 import com.sun.jdi.Type;
+import com.sun.jdi.VMDisconnectedException;
 import com.sun.jdi.Value;
 import org.jdom.Element;
 import org.jetbrains.annotations.NonNls;
@@ -100,7 +102,6 @@ public class ArrayRenderer extends NodeRendererImpl{
     DebuggerManagerThreadImpl.assertIsManagerThread();
     List<DebuggerTreeNode> children = new ArrayList<DebuggerTreeNode>();
     NodeManagerImpl nodeManager = (NodeManagerImpl)builder.getNodeManager();
-    NodeDescriptorFactory descriptorFactory = builder.getDescriptorManager();
 
     ArrayReference array = (ArrayReference)value;
     if (array.length() > 0) {
@@ -120,11 +121,12 @@ public class ArrayRenderer extends NodeRendererImpl{
 
         int idx;
 
+        ElementValues headValues = new ElementValues(array, start, end, (ENTRIES_LIMIT + 1) / 2, false);
         for (idx = start; idx <= end; idx++) {
-          DebuggerTreeNode arrayItemNode = nodeManager.createNode(descriptorFactory.getArrayItemDescriptor(builder.getParentDescriptor(), array, idx), evaluationContext);
+          if(added >= (ENTRIES_LIMIT  + 1)/ 2) break;
+          DebuggerTreeNode arrayItemNode = createArrayItemNode(builder, array, idx, headValues, evaluationContext);
 
           if (ViewsGeneralSettings.getInstance().HIDE_NULL_ARRAY_ELEMENTS && ((ValueDescriptorImpl)arrayItemNode.getDescriptor()).isNull()) continue;
-          if(added >= (ENTRIES_LIMIT  + 1)/ 2) break;
           children.add(arrayItemNode);
           added++;
         }
@@ -132,11 +134,12 @@ public class ArrayRenderer extends NodeRendererImpl{
         start = idx;
 
         List<DebuggerTreeNode> childrenTail = new ArrayList<DebuggerTreeNode>();
+        ElementValues tailValues = new ElementValues(array, start, end, Math.max(ENTRIES_LIMIT - added, 1), true);
         for (idx = end; idx >= start; idx--) {
-          DebuggerTreeNode arrayItemNode = nodeManager.createNode(descriptorFactory.getArrayItemDescriptor(builder.getParentDescriptor(), array, idx), evaluationContext);
+          if(added >= ENTRIES_LIMIT) break;
+          DebuggerTreeNode arrayItemNode = createArrayItemNode(builder, array, idx, tailValues, evaluationContext);
 
           if (ViewsGeneralSettings.getInstance().HIDE_NULL_ARRAY_ELEMENTS && ((ValueDescriptorImpl)arrayItemNode.getDescriptor()).isNull()) continue;
-          if(added >= ENTRIES_LIMIT) break;
           childrenTail.add(arrayItemNode);
           added++;
         }
@@ -180,6 +183,79 @@ public class ArrayRenderer extends NodeRendererImpl{
     builder.setChildren(children);
   }
 
+  private static DebuggerTreeNode createArrayItemNode(ChildrenBuilder builder,
+                                                      ArrayReference array,
+                                                      int index,
+                                                      ElementValues values,
+                                                      EvaluationContext evaluationContext) {
+    ArrayElementDescriptorImpl descriptor =
+      (ArrayElementDescriptorImpl)builder.getDescriptorManager().getArrayItemDescriptor(builder.getParentDescriptor(), array, index);
+    if (values.load(index)) {
+      descriptor.setPrefetchedValue(values.get(index));
+    }
+    return builder.getNodeManager().createNode(descriptor, evaluationContext);
+  }
+
+  /**
+   * Reads the elements shown as nodes window by window, with one request to the VM per window.
+   * A window holds as many elements as there are nodes to show; the next one is read only when hidden null elements
+   * leave some nodes missing. The windows go from the first element of the range, or from the last one if backward.
+   */
+  static class ElementValues {
+    private final ArrayReference myArray;
+    private final int myFrom;
+    private final int myTo;
+    private final int myWindowSize;
+    private final boolean myBackward;
+    private int myWindowStart;
+    private List<Value> myWindow = null;
+    private boolean myFailed = false;
+
+    ElementValues(ArrayReference array, int from, int to, int windowSize, boolean backward) {
+      myArray = array;
+      myFrom = from;
+      myTo = to;
+      myWindowSize = windowSize;
+      myBackward = backward;
+    }
+
+    /**
+     * Reads the window with the element if it isn't read yet; returns false if the elements can't be read.
+     */
+    boolean load(int index) {
+      if (myWindow != null && index >= myWindowStart && index < myWindowStart + myWindow.size()) return true;
+      if (myFailed) return false;
+      int start = myBackward ? Math.max(myFrom, index - myWindowSize + 1) : index;
+      int end = myBackward ? index : Math.min(myTo, index + myWindowSize - 1);
+      try {
+        myWindow = myArray.getValues(start, end - start + 1);
+        myWindowStart = start;
+        return true;
+      }
+      // let the element descriptors read and report it one by one
+      catch (ObjectCollectedException e) {
+        myFailed = true;
+        return false;
+      }
+      catch (InternalException e) {
+        myFailed = true;
+        return false;
+      }
+      catch (VMDisconnectedException e) {
+        myFailed = true;
+        return false;
+      }
+      catch (IllegalArgumentException e) {
+        myFailed = true;
+        return false;
+      }
+    }
+
+    Value get(int index) {
+      return myWindow.get(index - myWindowStart);
+    }
+  }
+
   public void readExternal(Element element) throws InvalidDataException {
     super.readExternal(element);
     DefaultJDOMExternalizer.readExternal(this, element);
@@ -47,6 +47,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * User: lex
@@ -162,11 +163,19 @@ public class ClassRenderer extends NodeRendererImpl{
       // default ObjectReference processing
       final List<Field> fields = refType.allFields();
       if (fields.size() > 0) {
+        final List<Field> fieldsToDisplay = new ArrayList<Field>(fields.size());
         for (final Field field : fields) {
-          if (!shouldDisplay(evaluationContext, objRef, field)) {
-            continue;
+          if (shouldDisplay(evaluationContext, objRef, field)) {
+            fieldsToDisplay.add(field);
           }
-          children.add(nodeManager.createNode(nodeDescriptorFactory.getFieldDescriptor(parentDescriptor, objRef, field), evaluationContext));
+        }
+        final Map<Field, Value> values = getValues(objRef, fieldsToDisplay);
+        for (final Field field : fieldsToDisplay) {
+          final FieldDescriptorImpl fieldDescriptor = (FieldDescriptorImpl)nodeDescriptorFactory.getFieldDescriptor(parentDescriptor, objRef, field);
+          if (values != null) {
+            fieldDescriptor.setPrefetchedValue(values.get(field));
+          }
+          children.add(nodeManager.createNode(fieldDescriptor, evaluationContext));
         }
 
         if(SORT_ASCENDING) {
@@ -180,6 +189,29 @@ public class ClassRenderer extends NodeRendererImpl{
     builder.setChildren(children);
   }
 
+  /**
+   * Reads the values of all the fields with one request to the VM.
+   */
+  @Nullable
+  static Map<Field, Value> getValues(@NotNull ObjectReference objRef, @NotNull List<Field> fields) {
+    try {
+      return objRef.getValues(fields);
+    }
+    // let the field descriptors read and report it one by one
+    catch (ObjectCollectedException e) {
+      return null;
+    }
+    catch (InternalException e) {
+      return null;
+    }
+    catch (VMDisconnectedException e) {
+      return null;
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
   private boolean shouldDisplay(EvaluationContext context, @NotNull ObjectReference objInstance, @NotNull Field field) {
     final boolean isSynthetic = DebuggerUtils.isSynthetic(field);
     if (!SHOW_SYNTHETICS && isSynthetic) {
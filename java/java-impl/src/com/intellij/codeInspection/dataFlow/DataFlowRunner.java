@@ -141,6 +141,10 @@ public class DataFlowRunner {
         long distance = instructionState.getDistanceFromStart();
 
         if (instruction instanceof BranchingInstruction) {
+          if (instruction.isMemoryStateProcessed(instructionState.getMemoryState())) {
+            // an equal state has reached the instruction from another branch while this one was queued
+            continue;
+          }
           if (!instruction.setMemoryStateProcessed(instructionState.getMemoryState().createCopy())) {
             return RunnerResult.TOO_COMPLEX; // Too complex :(
           }
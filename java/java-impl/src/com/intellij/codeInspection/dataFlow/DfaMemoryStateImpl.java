@@ -50,6 +50,9 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   private TIntStack myOffsetStack = new TIntStack(1);
   private final TLongHashSet myDistinctClasses = new TLongHashSet();
   private final THashMap<DfaVariableValue,DfaVariableState> myVariableStates = new THashMap<DfaVariableValue, DfaVariableState>();
+  // eq classes and variable states are shared with the copies of this state until one of them changes them
+  private final BitSet myOwnedEqClasses = new BitSet();
+  private final THashSet<DfaVariableValue> myOwnedVariableStates = new THashSet<DfaVariableValue>();
 
   public DfaMemoryStateImpl(final DfaValueFactory factory) {
     myFactory = factory;
@@ -72,22 +75,22 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     newState.myStateSize = myStateSize;
     newState.myOffsetStack = new TIntStack(myOffsetStack);
 
-    for (int i = 0; i < myEqClasses.size(); i++) {
-      SortedIntSet aClass = myEqClasses.get(i);
-      newState.myEqClasses.add(aClass != null ? new SortedIntSet(aClass.toNativeArray()) : null);
-    }
+    newState.myEqClasses.addAll(myEqClasses);
+    newState.myVariableStates.putAll(myVariableStates);
+    myOwnedEqClasses.clear();
+    myOwnedVariableStates.clear();
+    return newState;
+  }
 
-    try {
-      for (Object o : myVariableStates.keySet()) {
-        DfaVariableValue dfaVariableValue = (DfaVariableValue)o;
-        DfaVariableState clone = (DfaVariableState)myVariableStates.get(dfaVariableValue).clone();
-        newState.myVariableStates.put(dfaVariableValue, clone);
-      }
-    }
-    catch (CloneNotSupportedException e) {
-      LOG.error(e);
+  @NotNull
+  private SortedIntSet getEqClassForUpdate(int index) {
+    SortedIntSet aClass = myEqClasses.get(index);
+    if (!myOwnedEqClasses.get(index)) {
+      aClass = new SortedIntSet(aClass.toNativeArray());
+      myEqClasses.set(index, aClass);
+      myOwnedEqClasses.set(index);
     }
-    return newState;
+    return aClass;
   }
 
   public boolean equals(Object obj) {
@@ -177,8 +180,12 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   }
 
   public int hashCode() {
-    return 0;
-    //return myEqClasses.hashCode() + myStack.hashCode() + myVariableStates.hashCode();
+    // only the parts equals() compares as is
+    int result = myStateSize;
+    result = 31 * result + myDistinctClasses.size();
+    result = 31 * result + myStack.hashCode();
+    result = 31 * result + myVariableStates.hashCode();
+    return result;
   }
 
   private void appendClass(StringBuffer buf, int aClassIndex) {
@@ -280,8 +287,9 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
 
       if (value instanceof DfaVariableValue) {
         try {
-          DfaVariableState newState = (DfaVariableState)getVariableState((DfaVariableValue)value).clone();
+          DfaVariableState newState = (DfaVariableState)getVariableStateForReading((DfaVariableValue)value).clone();
           myVariableStates.put(var, newState);
+          myOwnedVariableStates.add(var);
         }
         catch (CloneNotSupportedException e) {
           LOG.error(e);
@@ -289,7 +297,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
       }
     }
 
-    if (getVariableState(var).isNotNull()) {
+    if (getVariableStateForReading(var).isNotNull()) {
       applyCondition(compareToNull(var, true));
     }
   }
@@ -304,6 +312,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     SortedIntSet aClass = new SortedIntSet();
     aClass.add(dfaValue.getID());
     myEqClasses.add(aClass);
+    myOwnedEqClasses.set(myEqClasses.size() - 1);
     myStateSize++;
 
     return myEqClasses.size() - 1;
@@ -453,6 +462,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
       }
     }
 
+    c1 = getEqClassForUpdate(c1Index);
     for (int i = 0; i < c2.size(); i++) {
       int c = c2.get(i);
       c1.add(c);
@@ -511,7 +521,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   }
 
   public boolean isNotNull(DfaVariableValue dfaVar) {
-    if (getVariableState(dfaVar).isNotNull()) {
+    if (getVariableStateForReading(dfaVar).isNotNull()) {
       return true;
     }
 
@@ -736,7 +746,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
 
     if (value instanceof DfaVariableValue) {
       if (isNotNull((DfaVariableValue)value)) return true;
-      final DfaVariableState varState = getVariableState((DfaVariableValue)value);
+      final DfaVariableState varState = getVariableStateForReading((DfaVariableValue)value);
       if (varState.isNullable()) return false;
     }
     return true;
@@ -756,21 +766,40 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     return myFactory.getRelationFactory().createRelation(dfaVar, dfaNull, JavaTokenType.EQEQ, negated);
   }
 
+  /**
+   * @return the state of the variable which may be changed: it isn't shared with the copies of this memory state
+   */
   public DfaVariableState getVariableState(DfaVariableValue dfaVar) {
     DfaVariableState state = myVariableStates.get(dfaVar);
 
     if (state == null) {
       state = createVariableState(dfaVar);
       myVariableStates.put(dfaVar, state);
+      myOwnedVariableStates.add(dfaVar);
       PsiType type = dfaVar.getVariableType();
       if (type != null) {
         state.setInstanceofValue(myFactory.getTypeFactory().create(type));
       }
     }
+    else if (!myOwnedVariableStates.contains(dfaVar)) {
+      try {
+        state = (DfaVariableState)state.clone();
+      }
+      catch (CloneNotSupportedException e) {
+        LOG.error(e);
+      }
+      myVariableStates.put(dfaVar, state);
+      myOwnedVariableStates.add(dfaVar);
+    }
 
     return state;
   }
 
+  private DfaVariableState getVariableStateForReading(DfaVariableValue dfaVar) {
+    DfaVariableState state = myVariableStates.get(dfaVar);
+    return state != null ? state : getVariableState(dfaVar);
+  }
+
   protected Map<DfaVariableValue, DfaVariableState> getVariableStates() {
     return myVariableStates;
   }
@@ -818,7 +847,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     int size = myEqClasses.size();
     int interruptCount = 0;
     for (int varClassIndex = 0; varClassIndex < size; varClassIndex++) {
-      final SortedIntSet varClass = myEqClasses.get(varClassIndex);
+      SortedIntSet varClass = myEqClasses.get(varClassIndex);
       if (varClass == null) continue;
 
       for (int i = 0; i < varClass.size(); i++) {
@@ -828,6 +857,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
         int cl = varClass.get(i);
         DfaValue value = myFactory.getValue(cl);
         if (mine(idPlain, value) || mine(idNegated, value)) {
+          varClass = getEqClassForUpdate(varClassIndex);
           varClass.remove(i);
           break;
         }
@@ -855,6 +885,8 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
 
     myVariableStates.remove(varPlain);
     myVariableStates.remove(varNegated);
+    myOwnedVariableStates.remove(varPlain);
+    myOwnedVariableStates.remove(varNegated);
   }
 
   private boolean containsConstantsOnly(int id) {
@@ -31,10 +31,12 @@ import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.util.CachedValue;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.NullableFunction;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.Stack;
+import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -45,43 +47,46 @@ import java.util.*;
  * @author Gregory.Shrago
  */
 public class DfaUtil {
-  private static final Key<CachedValue<MultiValuesMap<PsiVariable, PsiExpression>>> DFA_VARIABLE_INFO_KEY = Key.create("DFA_VARIABLE_INFO_KEY");
+  private static final Key<CachedValue<PlacesInfo>> DFA_PLACES_INFO_KEY = Key.create("DFA_PLACES_INFO_KEY");
+  private static final PlaceInfo EMPTY_PLACE_INFO = new PlaceInfo();
 
   private DfaUtil() {
   }
 
-  private static final MultiValuesMap<PsiVariable, PsiExpression> TOO_COMPLEX = new MultiValuesMap<PsiVariable, PsiExpression>();
+  /**
+   * Slicer and nullness queries ask about the same code block again and again: it is analyzed once for all places
+   * where a variable is read, the results are cached on the code block.
+   *
+   * @return null if the code block is too complex to analyze
+   */
+  @Nullable
+  private static PlaceInfo getCachedPlaceInfo(@NotNull final PsiElement codeBlock, @NotNull PsiElement place) {
+    CachedValuesManager manager = CachedValuesManager.getManager(codeBlock.getProject());
+    final PlacesInfo places = manager.getCachedValue(codeBlock, DFA_PLACES_INFO_KEY, new CachedValueProvider<PlacesInfo>() {
+      public Result<PlacesInfo> compute() {
+        final ValuableInstructionVisitor visitor = new ValuableInstructionVisitor();
+        RunnerResult runnerResult = new ValuableDataFlowRunner().analyzeMethod(codeBlock, visitor);
+        // nullness of the variables depends on the annotations of the methods called, which may be anywhere
+        return new Result<PlacesInfo>(runnerResult == RunnerResult.OK ? visitor.myPlaces : null,
+                                      codeBlock, PsiModificationTracker.MODIFICATION_COUNT);
+      }
+    }, false);
+    if (places == null) return null;
+
+    PlaceInfo info = places.get(place);
+    return info == null ? EMPTY_PLACE_INFO : info;
+  }
+
   @Nullable("null means DFA analysis has failed (too complex to analyze)")
   public static Collection<PsiExpression> getCachedVariableValues(@Nullable final PsiVariable variable, @Nullable final PsiElement context) {
     if (variable == null || context == null) return Collections.emptyList();
 
-    CachedValue<MultiValuesMap<PsiVariable, PsiExpression>> cachedValue = context.getUserData(DFA_VARIABLE_INFO_KEY);
-    if (cachedValue == null) {
-      final PsiElement codeBlock = getEnclosingCodeBlock(variable, context);
-      cachedValue = CachedValuesManager.getManager(context.getProject()).createCachedValue(new CachedValueProvider<MultiValuesMap<PsiVariable, PsiExpression>>() {
-        public Result<MultiValuesMap<PsiVariable, PsiExpression>> compute() {
-          final MultiValuesMap<PsiVariable, PsiExpression> result;
-          if (codeBlock == null) {
-            result = null;
-          }
-          else {
-            final ValuableInstructionVisitor visitor = new ValuableInstructionVisitor(context);
-            RunnerResult runnerResult = new ValuableDataFlowRunner().analyzeMethod(codeBlock, visitor);
-            if (runnerResult == RunnerResult.OK) {
-              result = visitor.myValues;
-            }
-            else {
-              result = TOO_COMPLEX;
-            }
-          }
-          return new Result<MultiValuesMap<PsiVariable, PsiExpression>>(result, codeBlock);
-        }
-      }, false);
-      context.putUserData(DFA_VARIABLE_INFO_KEY, cachedValue);
-    }
-    final MultiValuesMap<PsiVariable, PsiExpression> value = cachedValue.getValue();
-    if (value == TOO_COMPLEX) return null;
-    final Collection<PsiExpression> expressions = value == null ? null : value.get(variable);
+    final PsiElement codeBlock = getEnclosingCodeBlock(variable, context);
+    if (codeBlock == null) return Collections.emptyList();
+
+    final PlaceInfo info = getCachedPlaceInfo(codeBlock, context);
+    if (info == null) return null;
+    final Collection<PsiExpression> expressions = info.myValues.get(variable);
     return expressions == null ? Collections.<PsiExpression>emptyList() : expressions;
   }
 
@@ -126,13 +131,12 @@ public class DfaUtil {
     if (codeBlock == null) {
       return Nullness.UNKNOWN;
     }
-    final ValuableInstructionVisitor visitor = new ValuableInstructionVisitor(context);
-    RunnerResult result = new ValuableDataFlowRunner().analyzeMethod(codeBlock, visitor);
-    if (result != RunnerResult.OK) {
+    final PlaceInfo info = getCachedPlaceInfo(codeBlock, context);
+    if (info == null) {
       return Nullness.UNKNOWN;
     }
-    if (visitor.myNulls.contains(variable) && !visitor.myNotNulls.contains(variable)) return Nullness.NULL;
-    if (visitor.myNotNulls.contains(variable) && !visitor.myNulls.contains(variable)) return Nullness.NOT_NULL;
+    if (info.myNulls.contains(variable) && !info.myNotNulls.contains(variable)) return Nullness.NULL;
+    if (info.myNotNulls.contains(variable) && !info.myNulls.contains(variable)) return Nullness.NOT_NULL;
     return Nullness.UNKNOWN;
   }
 
@@ -266,36 +270,45 @@ public class DfaUtil {
     return false;
   }
 
-  private static class ValuableInstructionVisitor extends StandardInstructionVisitor {
+  private static class PlacesInfo extends THashMap<PsiElement, PlaceInfo> {
+  }
+
+  private static class PlaceInfo {
     final MultiValuesMap<PsiVariable, PsiExpression> myValues = new MultiValuesMap<PsiVariable, PsiExpression>(true);
     final Set<PsiVariable> myNulls = new THashSet<PsiVariable>();
     final Set<PsiVariable> myNotNulls = new THashSet<PsiVariable>();
-    private final PsiElement myContext;
+  }
 
-    public ValuableInstructionVisitor(@NotNull PsiElement context) {
-      myContext = context;
-    }
+  private static class ValuableInstructionVisitor extends StandardInstructionVisitor {
+    final PlacesInfo myPlaces = new PlacesInfo();
 
     @Override
     public DfaInstructionState[] visitPush(PushInstruction instruction, DataFlowRunner runner, DfaMemoryState memState) {
-      if (myContext == instruction.getPlace()) {
+      DfaValue value = instruction.getValue();
+      PsiElement place = instruction.getPlace();
+      // the callers only ask about the places where a variable is read
+      if (place != null && value instanceof DfaVariableValue && ((DfaVariableValue)value).getQualifier() == null) {
+        PlaceInfo info = myPlaces.get(place);
+        if (info == null) {
+          info = new PlaceInfo();
+          myPlaces.put(place, info);
+        }
         final Map<DfaVariableValue,DfaVariableState> map = ((ValuableDataFlowRunner.MyDfaMemoryState)memState).getVariableStates();
         for (Map.Entry<DfaVariableValue, DfaVariableState> entry : map.entrySet()) {
           ValuableDataFlowRunner.ValuableDfaVariableState state = (ValuableDataFlowRunner.ValuableDfaVariableState)entry.getValue();
           DfaVariableValue variableValue = entry.getKey();
           final PsiExpression psiExpression = state.myExpression;
           if (psiExpression != null && variableValue.getQualifier() == null) {
-            myValues.put(variableValue.getPsiVariable(), psiExpression);
+            info.myValues.put(variableValue.getPsiVariable(), psiExpression);
           }
         }
-        DfaValue value = instruction.getValue();
-        if (value instanceof DfaVariableValue && ((DfaVariableValue)value).getQualifier() == null) {
-          if (memState.isNotNull((DfaVariableValue)value)) {
-            myNotNulls.add(((DfaVariableValue)value).getPsiVariable());
-          }
-          if (memState.isNull(value)) {
-            myNulls.add(((DfaVariableValue)value).getPsiVariable());
-          }
+        // the checks may add eq classes to the state, so they are done on a copy not to affect the analysis
+        DfaMemoryState copy = memState.createCopy();
+        if (copy.isNotNull((DfaVariableValue)value)) {
+          info.myNotNulls.add(((DfaVariableValue)value).getPsiVariable());
+        }
+        if (copy.isNull(value)) {
+          info.myNulls.add(((DfaVariableValue)value).getPsiVariable());
         }
       }
       return super.visitPush(instruction, runner, memState);
@@ -324,7 +337,7 @@ public class DfaUtil {
         if (type == JavaTokenType.PLUSEQ && prevValue != null) {
           PsiExpression tmpExpression;
           try {
-            tmpExpression = JavaPsiFacade.getElementFactory(myContext.getProject())
+            tmpExpression = JavaPsiFacade.getElementFactory(rightValue.getProject())
               .createExpressionFromText(prevValue.getText() + "+" + rightValue.getText(), rightValue);
           }
           catch (Exception e) {
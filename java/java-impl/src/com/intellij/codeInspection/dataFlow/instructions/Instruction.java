@@ -29,15 +29,19 @@ import com.intellij.codeInspection.dataFlow.DfaInstructionState;
 import com.intellij.codeInspection.dataFlow.DfaMemoryState;
 import com.intellij.codeInspection.dataFlow.InstructionVisitor;
 import com.intellij.openapi.progress.ProgressManager;
+import gnu.trove.TIntObjectHashMap;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public abstract class Instruction {
   private int myIndex;
-  private final ArrayList<DfaMemoryState> myProcessedStates;
+  // processed states grouped by their hash codes, so that a new state is compared only with the states which may be equal to it
+  private final TIntObjectHashMap<List<DfaMemoryState>> myProcessedStates;
+  private int myProcessedStateCount;
 
   protected Instruction() {
-    myProcessedStates = new ArrayList<DfaMemoryState>();
+    myProcessedStates = new TIntObjectHashMap<List<DfaMemoryState>>();
   }
 
   protected final DfaInstructionState[] nextInstruction(DataFlowRunner runner, DfaMemoryState stateBefore) {
@@ -47,7 +51,10 @@ public abstract class Instruction {
   public abstract DfaInstructionState[] accept(DataFlowRunner runner, DfaMemoryState stateBefore, InstructionVisitor visitor);
 
   public boolean isMemoryStateProcessed(DfaMemoryState dfaMemState) {
-    for (DfaMemoryState state : myProcessedStates) {
+    List<DfaMemoryState> states = myProcessedStates.get(dfaMemState.hashCode());
+    if (states == null) return false;
+
+    for (DfaMemoryState state : states) {
       ProgressManager.checkCanceled();
       if (dfaMemState.equals(state)) {
         return true;
@@ -58,8 +65,15 @@ public abstract class Instruction {
   }
 
   public boolean setMemoryStateProcessed(DfaMemoryState dfaMemState) {
-    if (myProcessedStates.size() > DataFlowRunner.MAX_STATES_PER_BRANCH) return false;
-    myProcessedStates.add(dfaMemState);
+    if (myProcessedStateCount > DataFlowRunner.MAX_STATES_PER_BRANCH) return false;
+    int hash = dfaMemState.hashCode();
+    List<DfaMemoryState> states = myProcessedStates.get(hash);
+    if (states == null) {
+      states = new ArrayList<DfaMemoryState>(1);
+      myProcessedStates.put(hash, states);
+    }
+    states.add(dfaMemState);
+    myProcessedStateCount++;
     return true;
   }
 
@@ -62,4 +62,18 @@ public class LocalsControlFlowPolicy implements ControlFlowPolicy {
   public boolean isLocalVariableAccepted(PsiLocalVariable psiVariable) {
     return checkCodeFragment(psiVariable) != null;
   }
+
+  // the policies of the same code fragment are equal, so that ControlFlowFactory reuses the flows built with them
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    return myCodeFragment.equals(((LocalsControlFlowPolicy)o).myCodeFragment);
+  }
+
+  @Override
+  public int hashCode() {
+    return myCodeFragment.hashCode();
+  }
 }
@@ -23,6 +23,7 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.PsiManagerImpl;
+import com.intellij.psi.impl.java.stubs.PsiClassReferenceListStub;
 import com.intellij.psi.impl.java.stubs.index.JavaAnonymousClassBaseRefOccurenceIndex;
 import com.intellij.psi.impl.java.stubs.index.JavaSuperClassNameOccurenceIndex;
 import com.intellij.psi.search.EverythingGlobalScope;
@@ -30,7 +31,9 @@ import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.psi.search.searches.AllClassesSearch;
 import com.intellij.psi.search.searches.DirectClassInheritorsSearch;
+import com.intellij.psi.stubs.StubElement;
 import com.intellij.psi.util.PsiUtil;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.Processor;
 import com.intellij.util.QueryExecutor;
 import com.intellij.util.containers.ContainerUtil;
@@ -108,11 +111,28 @@ public class JavaDirectInheritorsSearcher implements QueryExecutor<PsiClass, Dir
       }
     });
 
+    // a top-level class can be referred to only by its qualified name or by the short name visible through the imports,
+    // so the candidates referring to other classes with the same short name can be skipped without resolving their super classes
+    final boolean topLevel = qualifiedName != null && ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+      @Override
+      public Boolean compute() {
+        return aClass.getContainingClass() == null;
+      }
+    }).booleanValue();
+
     Map<String, List<PsiClass>> classes = new HashMap<String, List<PsiClass>>();
 
-    for (PsiReferenceList referenceList : candidates) {
+    for (final PsiReferenceList referenceList : candidates) {
       ProgressIndicatorProvider.checkCanceled();
       final PsiClass candidate = (PsiClass)referenceList.getParent();
+      if (topLevel && !ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
+        @Override
+        public Boolean compute() {
+          return mayReferToTopLevelClass(referenceList, searchKey, qualifiedName);
+        }
+      }).booleanValue()) {
+        continue;
+      }
       if (!checkInheritance(p, aClass, candidate)) continue;
 
       String fqn = ApplicationManager.getApplication().runReadAction(new Computable<String>() {
@@ -176,6 +196,52 @@ public class JavaDirectInheritorsSearcher implements QueryExecutor<PsiClass, Dir
     return true;
   }
 
+  /**
+   * Checks by the names written in the reference list whether it may refer to the top-level class with the given name.
+   * Uses only the stubs and doesn't resolve anything.
+   */
+  private static boolean mayReferToTopLevelClass(@NotNull PsiReferenceList referenceList,
+                                                 @NotNull String shortName,
+                                                 @NotNull String qualifiedName) {
+    final StubElement stub = referenceList instanceof StubBasedPsiElement ? ((StubBasedPsiElement)referenceList).getStub() : null;
+    if (!(stub instanceof PsiClassReferenceListStub)) return true;
+    final PsiFile file = referenceList.getContainingFile();
+    final boolean compiled = referenceList instanceof PsiCompiledElement;
+
+    boolean nameFound = false;
+    for (String name : ((PsiClassReferenceListStub)stub).getReferencedNames()) {
+      final int typeArgumentsStart = name.indexOf('<');
+      final String referenceText = (typeArgumentsStart < 0 ? name : name.substring(0, typeArgumentsStart)).trim();
+      if (!shortName.equals(PsiNameHelper.getShortClassName(referenceText))) continue;
+      nameFound = true;
+      if (referenceText.equals(qualifiedName)) return true;
+      if (!StringUtil.isJavaIdentifier(StringUtil.replace(referenceText, ".", ""))) return true; // comments or annotations inside
+      if (compiled || referenceText.indexOf('.') >= 0) continue; // class files contain only qualified names
+      if (!(file instanceof PsiJavaFile) || isImported((PsiJavaFile)file, shortName, qualifiedName)) return true;
+    }
+    return !nameFound; // indexed not by a reference (e.g. enums are indexed by "Enum")
+  }
+
+  private static boolean isImported(@NotNull PsiJavaFile file, @NotNull String shortName, @NotNull String qualifiedName) {
+    final PsiImportList importList = file.getImportList();
+    if (importList == null) return true;
+    final String packageName = StringUtil.getPackageName(qualifiedName);
+    boolean packageImported = false;
+    for (PsiImportStatement statement : importList.getImportStatements()) {
+      final String imported = statement.getQualifiedName();
+      if (imported == null) return true;
+      if (statement.isOnDemand()) {
+        packageImported |= imported.equals(packageName);
+      }
+      else if (shortName.equals(StringUtil.getShortName(imported))) {
+        return imported.equals(qualifiedName); // single-type imports shadow the classes of the package and of on-demand imports
+      }
+    }
+    return packageImported ||
+           packageName.equals(file.getPackageName()) ||
+           ArrayUtil.contains(packageName, file.getImplicitlyImportedPackages());
+  }
+
   private static boolean checkInheritance(final DirectClassInheritorsSearch.SearchParameters p, final PsiClass aClass, final PsiClass candidate) {
     return ApplicationManager.getApplication().runReadAction(new Computable<Boolean>() {
       @Override
@@ -50,6 +50,10 @@ public class JavaOverridingMethodsSearcher implements QueryExecutor<PsiMethod, O
 
   @Nullable
   private static PsiMethod findOverridingMethod(PsiClass inheritor, @NotNull PsiClass parentClass, PsiMethod method) {
+    final boolean siblingImplementationPossible = parentClass.isInterface() && !inheritor.isInterface();
+    if (!siblingImplementationPossible && inheritor.findMethodsByName(method.getName(), false).length == 0) {
+      return null; // cheap check before computing the substitutor, which resolves the whole hierarchy between the classes
+    }
     PsiSubstitutor substitutor = inheritor.isInheritor(parentClass, true) ?
                                  TypeConversionUtil.getSuperClassSubstitutor(parentClass, inheritor, PsiSubstitutor.EMPTY) :
                                  PsiSubstitutor.EMPTY;
@@ -59,7 +63,7 @@ public class JavaOverridingMethodsSearcher implements QueryExecutor<PsiMethod, O
       return found;
     }
 
-    if (parentClass.isInterface() && !inheritor.isInterface()) {  //check for sibling implementation
+    if (siblingImplementationPossible) {  //check for sibling implementation
       final PsiClass superClass = inheritor.getSuperClass();
       if (superClass != null && !superClass.isInheritor(parentClass, true)) {
         PsiMethod derived = MethodSignatureUtil.findMethodInSuperClassBySignatureInDerived(inheritor, superClass, signature, true);
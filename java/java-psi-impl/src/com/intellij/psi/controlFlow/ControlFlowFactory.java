@@ -33,15 +33,19 @@ import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.containers.ConcurrentWeakHashMap;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
 
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ControlFlowFactory {
   // psiElements hold weakly, controlFlows softly
   private final ConcurrentMap<PsiElement, Reference<CopyOnWriteArrayList<ControlFlowContext>>> cachedFlows = new ConcurrentWeakHashMap<PsiElement, Reference<CopyOnWriteArrayList<ControlFlowContext>>>();
+  private final AtomicInteger myHits = new AtomicInteger();
+  private final AtomicInteger myMisses = new AtomicInteger();
 
   private static final NotNullLazyKey<ControlFlowFactory, Project> INSTANCE_KEY = ServiceManager.createLazyKey(ControlFlowFactory.class);
 
@@ -63,6 +67,27 @@ public class ControlFlowFactory {
     cachedFlows.clear();
   }
 
+  /**
+   * @return number of control flows found in the cache since the start, for diagnostics
+   */
+  public int getCacheHits() {
+    return myHits.get();
+  }
+
+  /**
+   * @return number of control flows built because there was no up-to-date one in the cache, for diagnostics
+   */
+  public int getCacheMisses() {
+    return myMisses.get();
+  }
+
+  @TestOnly
+  public int getCachedFlowCount(@NotNull PsiElement element) {
+    Reference<CopyOnWriteArrayList<ControlFlowContext>> cachedRef = cachedFlows.get(element);
+    CopyOnWriteArrayList<ControlFlowContext> cached = cachedRef == null ? null : cachedRef.get();
+    return cached == null ? 0 : cached.size();
+  }
+
   public void registerSubRange(final PsiElement codeFragment, final ControlFlowSubRange flow, final boolean evaluateConstantIfConfition,
                                final ControlFlowPolicy policy) {
     registerControlFlow(codeFragment, flow, evaluateConstantIfConfition, policy);
@@ -130,11 +155,15 @@ public class ControlFlowFactory {
     final long modificationCount = element.getManager().getModificationTracker().getModificationCount();
     CopyOnWriteArrayList<ControlFlowContext> cached = getOrCreateCachedFlowsForElement(element);
     for (ControlFlowContext context : cached) {
-      if (context.isFor(policy, evaluateConstantIfCondition,modificationCount)) return context.controlFlow;
+      if (context.isFor(policy, evaluateConstantIfCondition,modificationCount)) {
+        myHits.incrementAndGet();
+        return context.controlFlow;
+      }
     }
+    myMisses.incrementAndGet();
     ControlFlow controlFlow = new ControlFlowAnalyzer(element, policy, enableShortCircuit, evaluateConstantIfCondition).buildControlFlow();
     ControlFlowContext context = createContext(evaluateConstantIfCondition, policy, controlFlow, modificationCount);
-    cached.addIfAbsent(context);
+    addContext(cached, context);
     return controlFlow;
   }
 
@@ -154,7 +183,17 @@ public class ControlFlowFactory {
     ControlFlowContext controlFlowContext = createContext(evaluateConstantIfCondition, policy, flow, modificationCount);
 
     CopyOnWriteArrayList<ControlFlowContext> cached = getOrCreateCachedFlowsForElement(element);
-    cached.addIfAbsent(controlFlowContext);
+    addContext(cached, controlFlowContext);
+  }
+
+  private static void addContext(@NotNull CopyOnWriteArrayList<ControlFlowContext> cached, @NotNull ControlFlowContext context) {
+    // flows built before a later PSI change are never looked up again
+    for (ControlFlowContext existing : cached) {
+      if (existing.modificationCount < context.modificationCount) {
+        cached.remove(existing);
+      }
+    }
+    cached.addIfAbsent(context);
   }
 
   @NotNull
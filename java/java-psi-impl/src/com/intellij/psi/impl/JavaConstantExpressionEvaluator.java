@@ -16,14 +16,16 @@
 package com.intellij.psi.impl;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Factory;
 import com.intellij.openapi.util.Key;
 import com.intellij.psi.*;
 import com.intellij.psi.util.CachedValue;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.ParameterizedCachedValue;
+import com.intellij.psi.util.ParameterizedCachedValueProvider;
 import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.Function;
 import com.intellij.util.ObjectUtils;
 import com.intellij.util.containers.ConcurrentSoftHashMap;
 import org.jetbrains.annotations.NotNull;
@@ -33,26 +35,35 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
 public class JavaConstantExpressionEvaluator extends JavaRecursiveElementWalkingVisitor {
-  private final Factory<ConcurrentMap<PsiElement, Object>> myMapFactory;
+  private final Function<PsiElement, ConcurrentMap<PsiElement, Object>> myMapFactory;
   private final Project myProject;
 
   private static final Key<CachedValue<ConcurrentMap<PsiElement,Object>>> CONSTANT_VALUE_WO_OVERFLOW_MAP_KEY = Key.create("CONSTANT_VALUE_WO_OVERFLOW_MAP_KEY");
   private static final Key<CachedValue<ConcurrentMap<PsiElement,Object>>> CONSTANT_VALUE_WITH_OVERFLOW_MAP_KEY = Key.create("CONSTANT_VALUE_WITH_OVERFLOW_MAP_KEY");
+  private static final Key<ParameterizedCachedValue<ConcurrentMap<PsiElement,Object>, PsiFile>> FILE_CONSTANT_VALUE_WO_OVERFLOW_MAP_KEY = Key.create("FILE_CONSTANT_VALUE_WO_OVERFLOW_MAP_KEY");
+  private static final Key<ParameterizedCachedValue<ConcurrentMap<PsiElement,Object>, PsiFile>> FILE_CONSTANT_VALUE_WITH_OVERFLOW_MAP_KEY = Key.create("FILE_CONSTANT_VALUE_WITH_OVERFLOW_MAP_KEY");
   private static final Object NO_VALUE = ObjectUtils.NULL;
   private final ConstantExpressionVisitor myConstantExpressionVisitor;
 
   private JavaConstantExpressionEvaluator(Set<PsiVariable> visitedVars, final boolean throwExceptionOnOverflow, final Project project, final PsiConstantEvaluationHelper.AuxEvaluator auxEvaluator) {
-    myMapFactory = auxEvaluator != null ? new Factory<ConcurrentMap<PsiElement, Object>>() {
+    myMapFactory = auxEvaluator != null ? new Function<PsiElement, ConcurrentMap<PsiElement, Object>>() {
       @Override
-      public ConcurrentMap<PsiElement, Object> create() {
+      public ConcurrentMap<PsiElement, Object> fun(PsiElement element) {
         return auxEvaluator.getCacheMap(throwExceptionOnOverflow);
       }
-    } : new Factory<ConcurrentMap<PsiElement, Object>>() {
+    } : new Function<PsiElement, ConcurrentMap<PsiElement, Object>>() {
       @Override
-      public ConcurrentMap<PsiElement, Object> create() {
+      public ConcurrentMap<PsiElement, Object> fun(PsiElement element) {
+        CachedValuesManager manager = CachedValuesManager.getManager(myProject);
+        PsiFile file = element.getContainingFile();
+        if (file != null) {
+          final Key<ParameterizedCachedValue<ConcurrentMap<PsiElement, Object>, PsiFile>> key =
+            throwExceptionOnOverflow ? FILE_CONSTANT_VALUE_WITH_OVERFLOW_MAP_KEY : FILE_CONSTANT_VALUE_WO_OVERFLOW_MAP_KEY;
+          return manager.getParameterizedCachedValue(file, key, FILE_PROVIDER, false, file);
+        }
         final Key<CachedValue<ConcurrentMap<PsiElement, Object>>> key =
           throwExceptionOnOverflow ? CONSTANT_VALUE_WITH_OVERFLOW_MAP_KEY : CONSTANT_VALUE_WO_OVERFLOW_MAP_KEY;
-        return CachedValuesManager.getManager(myProject).getCachedValue(myProject, key, PROVIDER, false);
+        return manager.getCachedValue(myProject, key, PROVIDER, false);
       }
     };
     myProject = project;
@@ -89,11 +100,24 @@ public class JavaConstantExpressionEvaluator extends JavaRecursiveElementWalking
     }
   };
 
+  /**
+   * Values of the expressions of one file. Constants of the other files may only change outside of code blocks,
+   * so typing in the methods of some other file doesn't drop them.
+   */
+  private static final ParameterizedCachedValueProvider<ConcurrentMap<PsiElement,Object>, PsiFile> FILE_PROVIDER =
+    new ParameterizedCachedValueProvider<ConcurrentMap<PsiElement, Object>, PsiFile>() {
+      @Override
+      public CachedValueProvider.Result<ConcurrentMap<PsiElement, Object>> compute(PsiFile file) {
+        ConcurrentMap<PsiElement, Object> value = new ConcurrentSoftHashMap<PsiElement, Object>();
+        return CachedValueProvider.Result.create(value, file, PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT);
+      }
+    };
+
   private Object getCached(@NotNull PsiElement element) {
-    return map().get(element);
+    return map(element).get(element);
   }
   private Object cache(@NotNull PsiElement element, @Nullable Object value) {
-    value = ConcurrencyUtil.cacheOrGet(map(), element, value == null ? NO_VALUE : value);
+    value = ConcurrencyUtil.cacheOrGet(map(element), element, value == null ? NO_VALUE : value);
     if (value == NO_VALUE) {
       value = null;
     }
@@ -101,8 +125,8 @@ public class JavaConstantExpressionEvaluator extends JavaRecursiveElementWalking
   }
 
   @NotNull
-  private ConcurrentMap<PsiElement, Object> map() {
-    return myMapFactory.create();
+  private ConcurrentMap<PsiElement, Object> map(@NotNull PsiElement element) {
+    return myMapFactory.fun(element);
   }
 
   public static Object computeConstantExpression(PsiExpression expression, @Nullable Set<PsiVariable> visitedVars, boolean throwExceptionOnOverflow) {
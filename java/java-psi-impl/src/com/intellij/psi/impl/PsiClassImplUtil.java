@@ -48,6 +48,7 @@ import com.intellij.util.SmartList;
 import com.intellij.util.containers.HashSet;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
+import gnu.trove.TObjectHashingStrategy;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -217,8 +218,33 @@ public class PsiClassImplUtil {
 
   public enum MemberType {CLASS, FIELD, METHOD}
 
+  // classes whose maps are being built by this thread: their maps can't be used for the maps of their subclasses (cyclic inheritance)
+  private static final ThreadLocal<Set<PsiClass>> ourClassesBeingMapped = new ThreadLocal<Set<PsiClass>>() {
+    @Override
+    protected Set<PsiClass> initialValue() {
+      return new THashSet<PsiClass>();
+    }
+  };
+
   @NotNull
   private static MembersMap buildAllMaps(@NotNull PsiClass psiClass) {
+    Set<PsiClass> classesBeingMapped = ourClassesBeingMapped.get();
+    classesBeingMapped.add(psiClass);
+    try {
+      return buildAllMaps(psiClass, classesBeingMapped);
+    }
+    finally {
+      classesBeingMapped.remove(psiClass);
+    }
+  }
+
+  /**
+   * Collects the members of the class itself and then takes the members of each super class from the cached map of that class,
+   * so that the classes of a hierarchy share the work on their common supers. A super class is traversed as before when its
+   * members can't be taken as is: it's reached raw, its map has raw substitutors, or only one of the language levels supports generics.
+   */
+  @NotNull
+  private static MembersMap buildAllMaps(@NotNull PsiClass psiClass, @NotNull Set<PsiClass> classesBeingMapped) {
     final List<Pair<PsiMember, PsiSubstitutor>> classes = new ArrayList<Pair<PsiMember, PsiSubstitutor>>();
     final List<Pair<PsiMember, PsiSubstitutor>> fields = new ArrayList<Pair<PsiMember, PsiSubstitutor>>();
     final List<Pair<PsiMember, PsiSubstitutor>> methods = new ArrayList<Pair<PsiMember, PsiSubstitutor>>();
@@ -238,8 +264,41 @@ public class PsiClassImplUtil {
         }
       }
     };
-    processDeclarationsInClassNotCached(psiClass, processor, ResolveState.initial(), null, null, psiClass, false,
-                                        PsiUtil.getLanguageLevel(psiClass));
+    LanguageLevel languageLevel = PsiUtil.getLanguageLevel(psiClass);
+    PsiElementFactory factory = JavaPsiFacade.getInstance(psiClass.getProject()).getElementFactory();
+    ResolveState state = ResolveState.initial();
+    Set<PsiClass> visited = new THashSet<PsiClass>();
+    visited.add(psiClass);
+    processOwnDeclarations(psiClass, processor, state, null, psiClass, false, factory);
+
+    for (final PsiClassType superType : psiClass.getSuperTypes()) {
+      final PsiClassType.ClassResolveResult superTypeResolveResult = superType.resolveGenerics();
+      PsiClass superClass = superTypeResolveResult.getElement();
+      if (superClass == null) continue;
+      PsiSubstitutor superSubstitutor = obtainFinalSubstitutor(superClass, superTypeResolveResult.getSubstitutor(), psiClass,
+                                                               state.get(PsiSubstitutor.KEY), factory, languageLevel);
+      MembersMap superMap = null;
+      if (!visited.contains(superClass) &&
+          !classesBeingMapped.contains(superClass) &&
+          !PsiUtil.isRawSubstitutor(superClass, superSubstitutor) &&
+          isSuperMapReusable(languageLevel, PsiUtil.getLanguageLevel(superClass))) {
+        superMap = getValues(superClass).getValue(superClass);
+      }
+      if (superMap == null || !superMap.isComposable()) {
+        processDeclarationsInClass(superClass, processor, state.put(PsiSubstitutor.KEY, superSubstitutor), visited, null, psiClass, false);
+        continue;
+      }
+
+      Map<PsiSubstitutor, PsiSubstitutor> substitutors = new IdentityHashMap<PsiSubstitutor, PsiSubstitutor>();
+      Set<PsiClass> superVisited = new THashSet<PsiClass>();
+      addSuperMembers(superMap.get(MemberType.CLASS).get(ALL), classes, superClass, superSubstitutor, visited, superVisited, substitutors,
+                      factory, languageLevel);
+      addSuperMembers(superMap.get(MemberType.FIELD).get(ALL), fields, superClass, superSubstitutor, visited, superVisited, substitutors,
+                      factory, languageLevel);
+      addSuperMembers(superMap.get(MemberType.METHOD).get(ALL), methods, superClass, superSubstitutor, visited, superVisited,
+                      substitutors, factory, languageLevel);
+      visited.addAll(superVisited);
+    }
 
     MembersMap result = new MembersMap(MemberType.class);
     result.put(MemberType.CLASS, generateMapByList(classes));
@@ -248,6 +307,49 @@ public class PsiClassImplUtil {
     return result;
   }
 
+  /**
+   * The language level only goes into the class types the substitutors are translated through, so the map of a super class
+   * built for another level can be reused as long as both levels support generics. Comparing the levels as is would reject
+   * compiled supers: a compiled class gets the level of its class file version, which rarely equals the level of the sources.
+   */
+  static boolean isSuperMapReusable(@NotNull LanguageLevel languageLevel, @NotNull LanguageLevel superLanguageLevel) {
+    return languageLevel.isAtLeast(LanguageLevel.JDK_1_5) == superLanguageLevel.isAtLeast(LanguageLevel.JDK_1_5);
+  }
+
+  /**
+   * Adds the members of the super class and of its supers which haven't been visited yet. The substitutors of the super class map
+   * are relative to the super class, so they are translated to the subclass; members of one class share one substitutor.
+   */
+  private static void addSuperMembers(@NotNull List<Pair<PsiMember, PsiSubstitutor>> superMembers,
+                                      @NotNull List<Pair<PsiMember, PsiSubstitutor>> result,
+                                      @NotNull PsiClass superClass,
+                                      @NotNull PsiSubstitutor superSubstitutor,
+                                      @NotNull Set<PsiClass> visited,
+                                      @NotNull Set<PsiClass> superVisited,
+                                      @NotNull Map<PsiSubstitutor, PsiSubstitutor> substitutors,
+                                      @NotNull PsiElementFactory factory,
+                                      @NotNull LanguageLevel languageLevel) {
+    for (Pair<PsiMember, PsiSubstitutor> pair : superMembers) {
+      PsiMember member = pair.getFirst();
+      PsiClass containingClass = member.getContainingClass();
+      if (visited.contains(containingClass)) continue;
+      superVisited.add(containingClass);
+
+      PsiSubstitutor substitutor;
+      if (containingClass == superClass) {
+        substitutor = superSubstitutor;
+      }
+      else {
+        substitutor = substitutors.get(pair.getSecond());
+        if (substitutor == null) {
+          substitutor = obtainFinalSubstitutor(containingClass, pair.getSecond(), superClass, superSubstitutor, factory, languageLevel);
+          substitutors.put(pair.getSecond(), substitutor);
+        }
+      }
+      result.add(Pair.create(member, substitutor));
+    }
+  }
+
   @NotNull
   private static Map<String, List<Pair<PsiMember, PsiSubstitutor>>> generateMapByList(@NotNull final List<Pair<PsiMember, PsiSubstitutor>> list) {
     Map<String, List<Pair<PsiMember, PsiSubstitutor>>> map = new THashMap<String, List<Pair<PsiMember, PsiSubstitutor>>>();
@@ -409,9 +511,34 @@ public class PsiClassImplUtil {
   }
 
   private static class MembersMap extends EnumMap<MemberType, Map<String, List<Pair<PsiMember, PsiSubstitutor>>>> {
+    private volatile Boolean myComposable;
+
     public MembersMap(@NotNull Class<MemberType> keyType) {
       super(keyType);
     }
+
+    /**
+     * @return true if the members can be taken into the maps of subclasses by translating their substitutors
+     */
+    private boolean isComposable() {
+      Boolean composable = myComposable;
+      if (composable == null) {
+        myComposable = composable = computeComposable();
+      }
+      return composable.booleanValue();
+    }
+
+    private boolean computeComposable() {
+      Set<PsiSubstitutor> checked = new THashSet<PsiSubstitutor>(TObjectHashingStrategy.IDENTITY);
+      for (Map<String, List<Pair<PsiMember, PsiSubstitutor>>> map : values()) {
+        for (Pair<PsiMember, PsiSubstitutor> pair : map.get(ALL)) {
+          PsiClass containingClass = pair.getFirst().getContainingClass();
+          if (containingClass == null) return false;
+          if (checked.add(pair.getSecond()) && PsiUtil.isRawSubstitutor(containingClass, pair.getSecond())) return false;
+        }
+      }
+      return true;
+    }
   }
 
   private static class ByNameCachedValueProvider implements ParameterizedCachedValueProvider<MembersMap, PsiClass> {
@@ -602,6 +729,20 @@ public class PsiClassImplUtil {
                                                              @NotNull LanguageLevel languageLevel) {
     if (visited == null) visited = new THashSet<PsiClass>();
     if (!visited.add(aClass)) return true;
+    PsiElementFactory factory = JavaPsiFacade.getInstance(aClass.getProject()).getElementFactory();
+    if (!processOwnDeclarations(aClass, processor, state, last, place, isRaw, factory)) return false;
+
+    return last instanceof PsiReferenceList || processSuperTypes(aClass, processor, visited, last, place, state, isRaw, factory,
+                                                                 languageLevel);
+  }
+
+  private static boolean processOwnDeclarations(@NotNull PsiClass aClass,
+                                                @NotNull PsiScopeProcessor processor,
+                                                @NotNull ResolveState state,
+                                                PsiElement last,
+                                                @NotNull PsiElement place,
+                                                boolean isRaw,
+                                                @NotNull PsiElementFactory factory) {
     processor.handleEvent(PsiScopeProcessor.Event.SET_DECLARATION_HOLDER, aClass);
     final ElementClassHint classHint = processor.getHint(ElementClassHint.KEY);
     final NameHint nameHint = processor.getHint(NameHint.KEY);
@@ -620,8 +761,6 @@ public class PsiClassImplUtil {
       }
     }
 
-    PsiElementFactory factory = JavaPsiFacade.getInstance(aClass.getProject()).getElementFactory();
-
     if (classHint == null || classHint.shouldProcess(ElementClassHint.DeclarationKind.METHOD)) {
       PsiSubstitutor baseSubstitutor = state.get(PsiSubstitutor.KEY);
       final PsiMethod[] methods = nameHint != null ? aClass.findMethodsByName(nameHint.getName(state), false) : aClass.getMethods();
@@ -655,9 +794,7 @@ public class PsiClassImplUtil {
         }
       }
     }
-
-    return last instanceof PsiReferenceList || processSuperTypes(aClass, processor, visited, last, place, state, isRaw, factory,
-                                                                 languageLevel);
+    return true;
   }
 
   private static boolean processSuperTypes(@NotNull PsiClass aClass,
@@ -23,6 +23,8 @@ import com.intellij.psi.stubs.BinaryFileStubBuilder;
 import com.intellij.psi.stubs.PsiFileStub;
 import com.intellij.psi.stubs.StubElement;
 import com.intellij.util.cls.ClsFormatException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @author max
@@ -35,11 +37,24 @@ public class ClassFileStubBuilder implements BinaryFileStubBuilder {
 
   @Override
   public StubElement buildStubTree(final VirtualFile file, final byte[] content, final Project project) {
+    return buildFileStub(file, content, false);
+  }
+
+  /**
+   * Builds the complete stub of the class file; the indexed one built by {@link #buildStubTree} may lack some details.
+   */
+  @Nullable
+  public static PsiFileStub buildFullFileStub(@NotNull VirtualFile file, @NotNull byte[] content) {
+    return buildFileStub(file, content, true);
+  }
+
+  @Nullable
+  private static PsiFileStub buildFileStub(VirtualFile file, byte[] content, boolean full) {
     try {
       final ClsStubBuilderFactory[] factories = Extensions.getExtensions(ClsStubBuilderFactory.EP_NAME);
       for (ClsStubBuilderFactory factory : factories) {
         if (!factory.isInnerClass(file) && factory.canBeProcessed(file, content)) {
-          PsiFileStub stub = factory.buildFileStub(file, content);
+          PsiFileStub stub = full ? factory.buildFullFileStub(file, content) : factory.buildFileStub(file, content);
           if (stub != null) return stub;
         }
       }
@@ -52,6 +67,6 @@ public class ClassFileStubBuilder implements BinaryFileStubBuilder {
 
   @Override
   public int getStubVersion() {
-    return JavaFileElementType.STUB_VERSION + 6;
+    return JavaFileElementType.STUB_VERSION + 7;
   }
 }
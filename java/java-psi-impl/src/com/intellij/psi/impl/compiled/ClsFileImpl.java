@@ -44,10 +44,12 @@ import com.intellij.psi.search.PsiElementProcessor;
 import com.intellij.psi.stubs.*;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.IncorrectOperationException;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.util.*;
 
@@ -63,6 +65,7 @@ public class ClsFileImpl extends ClsRepositoryPsiElement<PsiClassHolderFileStub>
   private final boolean myIsForDecompiling;
   private final FileViewProvider myViewProvider;
   private volatile SoftReference<StubTree> myStub;
+  private volatile SoftReference<StubTree> myFullStub;
   private TreeElement myMirrorFileElement;
   private volatile ClsPackageStatementImpl myPackageStatement = null;
   private boolean myIsPhysical = true;
@@ -391,7 +394,9 @@ public class ClsFileImpl extends ClsRepositoryPsiElement<PsiClassHolderFileStub>
     final StubTree derefd = derefStub();
     if (derefd != null) return derefd;
 
-    StubTree stubHolder = (StubTree)StubTreeLoader.getInstance().readOrBuild(getProject(), getVirtualFile(), this);
+    StubTree stubHolder = myIsForDecompiling
+                          ? buildFullStubTree(getVirtualFile())
+                          : (StubTree)StubTreeLoader.getInstance().readOrBuild(getProject(), getVirtualFile(), this);
     if (stubHolder == null) {
       // Must be corrupted .class file
       LOG.info("Class file is corrupted: " + getVirtualFile().getPresentableUrl());
@@ -413,6 +418,63 @@ public class ClsFileImpl extends ClsRepositoryPsiElement<PsiClassHolderFileStub>
     return stubHolder;
   }
 
+  /**
+   * The stub in the indices is built without the method bodies and so lacks parameter names.
+   * A file built for decompiling has no other use for its stub, so it takes the complete stub built from the class file itself.
+   */
+  @Nullable
+  private static StubTree buildFullStubTree(@NotNull VirtualFile file) {
+    try {
+      PsiFileStub stub = ClassFileStubBuilder.buildFullFileStub(file, file.contentsToByteArray());
+      return stub != null ? new StubTree(stub) : null;
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+      return null;
+    }
+  }
+
+  /**
+   * The complete stub has the same structure as the indexed one, so the element at the same place of it
+   * is the complete version of the given one, e.g. a parameter with its real name.
+   */
+  @Nullable
+  StubElement findFullStub(@NotNull StubElement stub) {
+    TIntArrayList path = new TIntArrayList();
+    StubElement element = stub;
+    StubElement parent;
+    while ((parent = element.getParentStub()) != null) {
+      path.add(parent.getChildrenStubs().indexOf(element));
+      element = parent;
+    }
+
+    StubTree fullTree = getFullStubTree();
+    if (fullTree == null) return null;
+    StubElement result = fullTree.getRoot();
+    for (int i = path.size() - 1; i >= 0; i--) {
+      List<StubElement> children = result.getChildrenStubs();
+      int index = path.get(i);
+      if (index < 0 || index >= children.size()) return null;
+      result = children.get(index);
+    }
+    return result.getStubType() == stub.getStubType() ? result : null;
+  }
+
+  @Nullable
+  private StubTree getFullStubTree() {
+    if (myIsForDecompiling) return getStubTree();
+
+    SoftReference<StubTree> ref = myFullStub;
+    StubTree tree = ref == null ? null : ref.get();
+    if (tree == null) {
+      tree = buildFullStubTree(getVirtualFile());
+      if (tree != null) {
+        myFullStub = new SoftReference<StubTree>(tree);
+      }
+    }
+    return tree;
+  }
+
   private void setStubTree(StubTree tree) {
     synchronized (lock) {
       myStub = new SoftReference<StubTree>(tree);
@@ -453,6 +515,7 @@ public class ClsFileImpl extends ClsRepositoryPsiElement<PsiClassHolderFileStub>
       ((StubBase<?>)stubHolder.getRoot()).setPsi(null);
     }
     myStub = null;
+    myFullStub = null;
 
     ApplicationManager.getApplication().assertWriteAccessAllowed();
 
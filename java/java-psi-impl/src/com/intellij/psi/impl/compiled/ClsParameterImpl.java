@@ -34,6 +34,7 @@ import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.PlatformIcons;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 
@@ -61,11 +62,7 @@ public class ClsParameterImpl extends ClsRepositoryPsiElement<PsiParameterStub>
       ClsMethodImpl method = (ClsMethodImpl)getDeclarationScope();
       PsiMethod sourceMethod = method.getSourceMirrorMethod();
       if (sourceMethod == null) {
-        final PsiParameterStubImpl parameterStub = (PsiParameterStubImpl) getStub();
-        if (!parameterStub.isAutoGeneratedName()) {
-          return parameterStub.getName();
-        }
-        return null;
+        return getCompiledName();
       }
       assert sourceMethod != method;
       myName = sourceMethod.getParameterList().getParameters()[getIndex()].getName();
@@ -147,7 +144,11 @@ public class ClsParameterImpl extends ClsRepositoryPsiElement<PsiParameterStub>
         @NonNls String name;
 
         final PsiParameterStubImpl stub = (PsiParameterStubImpl)getStub();
-        if (!stub.isAutoGeneratedName() || DumbService.getInstance(getProject()).isDumb()) {
+        String compiledName = getCompiledName();
+        if (compiledName != null) {
+          name = compiledName;
+        }
+        else if (DumbService.getInstance(getProject()).isDumb()) {
           name = stub.getName();
         }
         else {
@@ -181,6 +182,24 @@ public class ClsParameterImpl extends ClsRepositoryPsiElement<PsiParameterStub>
     }
   }
 
+  /**
+   * @return the name from the debug info of the class file, null if it isn't there
+   */
+  @Nullable
+  private String getCompiledName() {
+    PsiParameterStubImpl stub = (PsiParameterStubImpl)getStub();
+    if (!stub.isAutoGeneratedName()) {
+      return stub.getName();
+    }
+    // the indexed stub is built without the method code where the names are
+    PsiFile file = getContainingFile();
+    StubElement fullStub = file instanceof ClsFileImpl ? ((ClsFileImpl)file).findFullStub(stub) : null;
+    if (fullStub instanceof PsiParameterStubImpl && !((PsiParameterStubImpl)fullStub).isAutoGeneratedName()) {
+      return ((PsiParameterStubImpl)fullStub).getName();
+    }
+    return null;
+  }
+
   private static String nextName(String name) {
     int count = 0;
     while (true) {
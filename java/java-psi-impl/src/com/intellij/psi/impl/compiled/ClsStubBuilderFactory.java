@@ -29,9 +29,21 @@ public abstract class ClsStubBuilderFactory<T extends PsiFile> {
 
   public static final ExtensionPointName<ClsStubBuilderFactory> EP_NAME = ExtensionPointName.create("com.intellij.clsStubBuilderFactory");
 
+  /**
+   * Builds the stub stored in the stub indices of the class file. It may leave out details the indices do not need
+   * (e.g. parameter names), but it must have the same structure as the stub built by {@link #buildFullFileStub}.
+   */
   @Nullable
   public abstract PsiFileStub<T> buildFileStub(final VirtualFile file, byte[]  bytes) throws ClsFormatException;
 
+  /**
+   * Builds the complete stub the compiled PSI of the class file is based on.
+   */
+  @Nullable
+  public PsiFileStub<T> buildFullFileStub(final VirtualFile file, byte[] bytes) throws ClsFormatException {
+    return buildFileStub(file, bytes);
+  }
+
   public abstract boolean canBeProcessed(final VirtualFile file, byte[] bytes);
 
   /**
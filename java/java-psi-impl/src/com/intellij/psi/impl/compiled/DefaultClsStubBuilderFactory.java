@@ -35,16 +35,29 @@ import java.io.IOException;
 public class DefaultClsStubBuilderFactory extends ClsStubBuilderFactory {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.compiled.DefaultClsStubBuilderFactory");
 
+  /**
+   * Skips the method bodies, so the parameters have generated names in the indexed stubs.
+   */
   @Override
   public PsiFileStub buildFileStub(VirtualFile vFile, byte[] bytes) throws ClsFormatException {
+    return buildFileStub(vFile, bytes, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+  }
+
+  @Override
+  public PsiFileStub buildFullFileStub(VirtualFile vFile, byte[] bytes) throws ClsFormatException {
+    return buildFileStub(vFile, bytes, ClassReader.SKIP_FRAMES);
+  }
+
+  @Nullable
+  private static PsiFileStub buildFileStub(VirtualFile vFile, byte[] bytes, int parsingOptions) throws ClsFormatException {
     final PsiJavaFileStubImpl file = new PsiJavaFileStubImpl("do.not.know.yet", true);
     try {
       final ClassReader reader = new ClassReader(bytes);
 
       final StubBuildingVisitor<VirtualFile> classVisitor =
-        new StubBuildingVisitor<VirtualFile>(vFile, VirtualFileInnerClassStrategy.INSTANCE, file, 0);
+        new StubBuildingVisitor<VirtualFile>(vFile, VirtualFileInnerClassStrategy.INSTANCE, file, 0, parsingOptions);
       try {
-        reader.accept(classVisitor, ClassReader.SKIP_FRAMES);
+        reader.accept(classVisitor, parsingOptions);
       }
       catch (OutOfOrderInnerClassException e) {
         return null;
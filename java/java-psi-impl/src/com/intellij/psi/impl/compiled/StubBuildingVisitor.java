@@ -64,15 +64,30 @@ public class StubBuildingVisitor<T> extends ClassVisitor {
   private final StubElement myParent;
   private final int myAccess;
   private final T mySource;
+  private final int myParsingOptions;
   private PsiModifierListStub myModList;
   private PsiClassStub myResult;
 
   public StubBuildingVisitor(final T classSource, InnerClassSourceStrategy<T> innersStrategy, final StubElement parent, final int access) {
+    this(classSource, innersStrategy, parent, access, ClassReader.SKIP_FRAMES);
+  }
+
+  /**
+   * @param parsingOptions the {@link ClassReader} options the class is read with, used for its inner classes as well.
+   *                       With {@link ClassReader#SKIP_CODE} the parameters keep generated names, since the real ones
+   *                       are only known from the local variable tables of the method bodies; the stubs are the same otherwise.
+   */
+  public StubBuildingVisitor(final T classSource,
+                             InnerClassSourceStrategy<T> innersStrategy,
+                             final StubElement parent,
+                             final int access,
+                             final int parsingOptions) {
     super(Opcodes.ASM4);
     mySource = classSource;
     myInnersStrategy = innersStrategy;
     myParent = parent;
     myAccess = access;
+    myParsingOptions = parsingOptions;
   }
 
   public PsiClassStub<?> getResult() {
@@ -329,8 +344,8 @@ public class StubBuildingVisitor<T> extends ClassVisitor {
     final ClassReader reader = myInnersStrategy.readerForInnerClass(innerSource);
     if (reader == null) return;
 
-    final StubBuildingVisitor<T> classVisitor = new StubBuildingVisitor<T>(innerSource, myInnersStrategy, myResult, access);
-    reader.accept(classVisitor, ClassReader.SKIP_FRAMES);
+    final StubBuildingVisitor<T> classVisitor = new StubBuildingVisitor<T>(innerSource, myInnersStrategy, myResult, access, myParsingOptions);
+    reader.accept(classVisitor, myParsingOptions);
   }
 
   private static boolean isCorrectName(String name) {
@@ -0,0 +1,3 @@
+package a;
+
+public interface Listener {}
@@ -0,0 +1,3 @@
+package a;
+
+class SamePackage implements Listener {}
@@ -0,0 +1,5 @@
+package b;
+
+import a.Listener;
+
+class ImportShadowsPackage implements Listener {}
@@ -0,0 +1,3 @@
+package b;
+
+class SamePackage implements Listener {}
@@ -0,0 +1,3 @@
+package c;
+
+class Deep extends ImportedA {}
@@ -0,0 +1,5 @@
+package c;
+
+import a.Listener;
+
+public class ImportedA implements Listener {}
@@ -0,0 +1,5 @@
+package c;
+
+import b.Listener;
+
+class ImportedB implements Listener {}
@@ -0,0 +1,5 @@
+package c;
+
+import a.*;
+
+class OnDemand implements Listener {}
@@ -0,0 +1,3 @@
+package c;
+
+class Qualified implements a.Listener, java.io.Serializable {}
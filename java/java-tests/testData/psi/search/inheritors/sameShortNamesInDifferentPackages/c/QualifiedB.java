@@ -0,0 +1,3 @@
+package c;
+
+class QualifiedB implements b.Listener {}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.actions;
+
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+public class ReformatFilesTest extends LightCodeInsightFixtureTestCase {
+  private static final String[] SOURCES = {
+    "import java.util.*;\nimport java.io.File;\nclass A{List<String> l=new ArrayList<String>();\nvoid f(){if(l.isEmpty()){l.add(\"a\");}}}",
+    "import java.util.Map;\nimport java.util.Set;\nclass B extends A{Set<String> s;\n  int g( int x ){return x+1;}}",
+    "class C{\n\n\n\n    private    int   c ;\n  void h(){for(int i=0;i<c;i++)   {h();}}}",
+  };
+
+  public void testConcurrentPreparationGivesSameResultAsSequential() {
+    String[] sequential = process("seq", false);
+    String[] concurrent = process("conc", true);
+    for (int i = 0; i < SOURCES.length; i++) {
+      assertEquals(sequential[i].replace("package seq;", ""), concurrent[i].replace("package conc;", ""));
+    }
+    assertFalse(sequential[0].contains("java.io.File"));
+  }
+
+  private String[] process(String packageName, boolean concurrently) {
+    PsiFile[] files = new PsiFile[SOURCES.length];
+    for (int i = 0; i < SOURCES.length; i++) {
+      files[i] = myFixture.addFileToProject(packageName + "/" + (char)('A' + i) + ".java", "package " + packageName + ";\n" + SOURCES[i]);
+    }
+
+    RegistryValue value = Registry.get("layout.code.concurrent.preprocessing");
+    boolean oldValue = value.asBoolean();
+    value.setValue(concurrently);
+    try {
+      new ReformatAndOptimizeImportsProcessor(getProject(), files, false).run();
+    }
+    finally {
+      value.setValue(oldValue);
+    }
+
+    String[] result = new String[files.length];
+    for (int i = 0; i < files.length; i++) {
+      result[i] = files[i].getText();
+    }
+    return result;
+  }
+}
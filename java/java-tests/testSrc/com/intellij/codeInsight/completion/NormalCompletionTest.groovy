@@ -26,6 +26,8 @@ import com.intellij.psi.PsiDocumentManager
 import com.intellij.psi.PsiMethod
 import com.intellij.psi.codeStyle.CodeStyleSettingsManager
 import com.intellij.psi.codeStyle.CommonCodeStyleSettings
+import com.intellij.testFramework.PlatformTestUtil
+import com.intellij.util.ThrowableRunnable
 
 public class NormalCompletionTest extends LightFixtureCompletionTestCase {
   @Override
@@ -1288,5 +1290,18 @@ public class ListUtils {
     assert lookup.items.size() == 1
   }
 
+  public void testTypingPrefixWithManyItemsPerformance() {
+    def fields = (0..<20000).collect { "int field$it;" }.join("\n")
+    PlatformTestUtil.startPerformanceTest(getTestName(false), 10000, {
+      myFixture.configureByText("a.java", "class Foo {\n$fields\n void foo() { f<caret> }\n}")
+      myFixture.completeBasic()
+      for (c in ['i', 'e', 'l', 'd', '1', '2']) {
+        myFixture.type(c)
+        assert lookup
+      }
+      assert myFixture.lookupElementStrings.contains('field12')
+      LookupManager.getInstance(project).hideActiveLookup()
+    } as ThrowableRunnable).cpuBound().assertTiming()
+  }
 
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.Pass;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.ui.UIUtil;
+
+import java.util.List;
+
+public class SpeculativeHighlighterTest extends LightCodeInsightFixtureTestCase {
+  private SpeculativeHighlighter myHighlighter;
+  private DaemonCodeAnalyzerImpl myDaemonCodeAnalyzer;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDaemonCodeAnalyzer = (DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(getProject());
+    myHighlighter = new SpeculativeHighlighter(getProject(), myDaemonCodeAnalyzer);
+    Disposer.register(myTestRootDisposable, myHighlighter);
+  }
+
+  public void testClosedFileIsHighlightedAndMarkedUpToDate() {
+    PsiFile file = myFixture.addFileToProject("Foo.java", "class Foo { void foo() { int x = ; } }");
+    Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+    assertNotNull(document);
+    assertNotNull(myDaemonCodeAnalyzer.getFileStatusMap().getFileDirtyScope(document, Pass.UPDATE_ALL));
+
+    assertTrue(myHighlighter.highlightFile(file.getVirtualFile()));
+    UIUtil.dispatchAllInvocationEvents();
+
+    List<HighlightInfo> errors = DaemonCodeAnalyzerImpl.getHighlights(document, HighlightSeverity.ERROR, getProject());
+    assertFalse(errors.isEmpty());
+    assertNull(myDaemonCodeAnalyzer.getFileStatusMap().getFileDirtyScope(document, Pass.UPDATE_ALL));
+  }
+
+  public void testLargeFileIsSkipped() {
+    String body = StringUtil.repeat("  int field;\n", 10000);
+    PsiFile file = myFixture.addFileToProject("Big.java", "class Big {\n" + body + "  void foo() { int x = ; }\n}");
+    Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+    assertNotNull(document);
+
+    assertTrue(myHighlighter.highlightFile(file.getVirtualFile()));
+    UIUtil.dispatchAllInvocationEvents();
+
+    assertEmpty(DaemonCodeAnalyzerImpl.getHighlights(document, HighlightSeverity.ERROR, getProject()));
+    assertNotNull(myDaemonCodeAnalyzer.getFileStatusMap().getFileDirtyScope(document, Pass.UPDATE_ALL));
+  }
+}
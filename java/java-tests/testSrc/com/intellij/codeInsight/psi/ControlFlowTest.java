@@ -9,6 +9,7 @@ import com.intellij.psi.PsiCodeBlock;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.controlFlow.*;
+import com.intellij.psi.impl.PsiModificationTrackerImpl;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.testFramework.LightCodeInsightTestCase;
 import com.intellij.util.containers.IntArrayList;
@@ -91,4 +92,44 @@ public class ControlFlowTest extends LightCodeInsightTestCase {
     ControlFlowUtil.findExitPointsAndStatements(flow, 0, flow.getSize() -1 , exitPoints, ControlFlowUtil.DEFAULT_EXIT_STATEMENTS_CLASSES);
     assertEquals(1, exitPoints.size());
   }
+
+  public void testFlowIsCachedPerPolicy() throws Exception {
+    configureFromFileText("a.java", "public class Foo {\n" +
+                                    "  public void foo(int i) {\n" +
+                                    "    if (i > 0) i--;\n" +
+                                    "  }\n" +
+                                    "}");
+    final PsiCodeBlock body = ((PsiJavaFile)getFile()).getClasses()[0].getMethods()[0].getBody();
+    ControlFlowFactory factory = ControlFlowFactory.getInstance(getProject());
+    ControlFlowPolicy policy = LocalsOrMyInstanceFieldsControlFlowPolicy.getInstance();
+    int hits = factory.getCacheHits();
+    int misses = factory.getCacheMisses();
+
+    ControlFlow flow = factory.getControlFlow(body, policy);
+    assertSame(flow, factory.getControlFlow(body, policy));
+    ControlFlow localsFlow = factory.getControlFlow(body, new LocalsControlFlowPolicy(body));
+    assertNotSame(flow, localsFlow);
+    assertSame(localsFlow, factory.getControlFlow(body, new LocalsControlFlowPolicy(body)));
+    assertEquals(hits + 2, factory.getCacheHits());
+    assertEquals(misses + 2, factory.getCacheMisses());
+  }
+
+  public void testFlowsOfOlderModificationsAreDropped() throws Exception {
+    configureFromFileText("a.java", "public class Foo {\n" +
+                                    "  public void foo(int i) {\n" +
+                                    "    if (i > 0) i--;\n" +
+                                    "  }\n" +
+                                    "}");
+    final PsiCodeBlock body = ((PsiJavaFile)getFile()).getClasses()[0].getMethods()[0].getBody();
+    ControlFlowFactory factory = ControlFlowFactory.getInstance(getProject());
+    ControlFlowPolicy policy = LocalsOrMyInstanceFieldsControlFlowPolicy.getInstance();
+
+    ControlFlow flow = factory.getControlFlow(body, policy);
+    factory.getControlFlow(body, new LocalsControlFlowPolicy(body));
+    assertEquals(2, factory.getCachedFlowCount(body));
+
+    ((PsiModificationTrackerImpl)getPsiManager().getModificationTracker()).incCounter();
+    assertNotSame(flow, factory.getControlFlow(body, policy));
+    assertEquals(1, factory.getCachedFlowCount(body));
+  }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.codeInspection.dataFlow.DfaMemoryStateImpl;
+import com.intellij.codeInspection.dataFlow.value.DfaRelationValue;
+import com.intellij.codeInspection.dataFlow.value.DfaValue;
+import com.intellij.codeInspection.dataFlow.value.DfaValueFactory;
+import com.intellij.codeInspection.dataFlow.value.DfaVariableValue;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.PsiField;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+/**
+ * Copies of a memory state share eq classes and variable states until one of them changes them.
+ */
+public class DfaMemoryStateCopyTest extends LightCodeInsightFixtureTestCase {
+  private DfaValueFactory myFactory;
+  private DfaVariableValue myA;
+  private DfaVariableValue myB;
+  private DfaVariableValue myC;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFactory = new DfaValueFactory();
+    PsiField[] fields = JavaPsiFacade.getElementFactory(getProject()).createClassFromText("Object a; Object b; Object c;", null).getFields();
+    myA = myFactory.getVarFactory().createVariableValue(fields[0], false);
+    myB = myFactory.getVarFactory().createVariableValue(fields[1], false);
+    myC = myFactory.getVarFactory().createVariableValue(fields[2], false);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myFactory = null;
+    myA = null;
+    myB = null;
+    myC = null;
+    super.tearDown();
+  }
+
+  public void testChangingCopyDoesNotChangeOriginal() throws Exception {
+    DfaMemoryStateImpl state = new DfaMemoryStateImpl(myFactory);
+    assertTrue(state.applyCondition(relation(myA, myB, false)));
+
+    DfaMemoryStateImpl copy = state.createCopy();
+    assertEquals(state, copy);
+    assertEquals(state.hashCode(), copy.hashCode());
+
+    assertTrue(copy.applyCondition(relation(myB, myC, false)));
+    assertTrue(isEqual(copy, myA, myC));
+    assertTrue(isEqual(state, myA, myB));
+    assertFalse(isEqual(state, myA, myC));
+    assertFalse(isEqual(state, myB, myC));
+
+    DfaMemoryStateImpl expected = new DfaMemoryStateImpl(myFactory);
+    assertTrue(expected.applyCondition(relation(myA, myB, false)));
+    assertEquals(expected, state);
+    assertEquals(expected.hashCode(), state.hashCode());
+  }
+
+  public void testChangingOriginalDoesNotChangeCopy() throws Exception {
+    DfaMemoryStateImpl state = new DfaMemoryStateImpl(myFactory);
+    assertTrue(state.applyCondition(relation(myA, myB, false)));
+
+    DfaMemoryStateImpl copy = state.createCopy();
+    assertTrue(state.applyCondition(relation(myB, myC, false)));
+    assertTrue(state.applyCondition(relation(myA, myFactory.getConstFactory().getNull(), true)));
+
+    assertTrue(isEqual(state, myA, myC));
+    assertTrue(state.isNotNull(myC));
+    assertTrue(isEqual(copy, myA, myB));
+    assertFalse(isEqual(copy, myA, myC));
+    assertFalse(copy.isNotNull(myA));
+  }
+
+  public void testFlushingVariableInCopy() throws Exception {
+    DfaMemoryStateImpl state = new DfaMemoryStateImpl(myFactory);
+    assertTrue(state.applyCondition(relation(myA, myB, false)));
+    assertTrue(state.applyCondition(relation(myA, myFactory.getConstFactory().getNull(), true)));
+
+    DfaMemoryStateImpl copy = state.createCopy();
+    copy.flushVariable(myA);
+
+    assertFalse(isEqual(copy, myA, myB));
+    assertFalse(copy.isNotNull(myA));
+    assertTrue(copy.isNotNull(myB));
+    assertTrue(isEqual(state, myA, myB));
+    assertTrue(state.isNotNull(myA));
+  }
+
+  public void testChangingVariableStateOfCopy() throws Exception {
+    DfaMemoryStateImpl state = new DfaMemoryStateImpl(myFactory);
+    state.getVariableState(myA).setNullable(true);
+
+    DfaMemoryStateImpl copy = state.createCopy();
+    copy.getVariableState(myA).setNullable(false);
+    assertFalse(copy.getVariableState(myA).isNullable());
+    assertTrue(state.getVariableState(myA).isNullable());
+    assertFalse(state.equals(copy));
+
+    state.getVariableState(myA).setNullable(false);
+    assertEquals(state, copy);
+    assertEquals(state.hashCode(), copy.hashCode());
+  }
+
+  private DfaRelationValue relation(DfaValue left, DfaValue right, boolean negated) {
+    return myFactory.getRelationFactory().createRelation(left, right, JavaTokenType.EQEQ, negated);
+  }
+
+  // checked on a copy, so that the state itself isn't changed by the check
+  private boolean isEqual(DfaMemoryStateImpl state, DfaValue left, DfaValue right) {
+    return !state.createCopy().applyCondition(relation(left, right, true));
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.debugger.ui.tree.render;
+
+import com.sun.jdi.*;
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * Checks which requests the renderers send to the VM to read the values of the child nodes.
+ */
+public class NodeValuesPrefetchTest extends TestCase {
+  private final List<String> myRequests = new ArrayList<String>();
+
+  public void testArrayNodeReadsOnlyShownElements() {
+    Value[] elements = new Value[1000000];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = i < 10 ? null : value();
+    }
+    ArrayReference array = mirror(ArrayReference.class, elements);
+
+    ArrayRenderer.ElementValues head = new ArrayRenderer.ElementValues(array, 0, elements.length - 1, 50, false);
+    int shown = 0;
+    int idx;
+    for (idx = 0; shown < 50; idx++) {
+      assertTrue(head.load(idx));
+      assertSame(elements[idx], head.get(idx));
+      if (head.get(idx) != null) shown++;
+    }
+    // the null elements are hidden, so one more window is read for the missing nodes
+    assertEquals(Arrays.asList("getValues(0, 50)", "getValues(50, 50)"), myRequests);
+
+    myRequests.clear();
+    ArrayRenderer.ElementValues tail = new ArrayRenderer.ElementValues(array, idx, elements.length - 1, 50, true);
+    for (int i = elements.length - 1; i >= elements.length - 50; i--) {
+      assertTrue(tail.load(i));
+      assertSame(elements[i], tail.get(i));
+    }
+    assertEquals(Collections.singletonList("getValues(999950, 50)"), myRequests);
+  }
+
+  public void testArrayWindowDoesNotCrossRange() {
+    Value[] elements = new Value[10];
+    Arrays.fill(elements, value());
+    ArrayReference array = mirror(ArrayReference.class, elements);
+
+    ArrayRenderer.ElementValues head = new ArrayRenderer.ElementValues(array, 2, 5, 50, false);
+    assertTrue(head.load(2));
+    ArrayRenderer.ElementValues tail = new ArrayRenderer.ElementValues(array, 6, 8, 50, true);
+    assertTrue(tail.load(8));
+    assertEquals(Arrays.asList("getValues(2, 4)", "getValues(6, 3)"), myRequests);
+  }
+
+  public void testCollectedArrayIsNotReadAgain() {
+    ArrayReference array = mirror(ArrayReference.class, null);
+    ArrayRenderer.ElementValues values = new ArrayRenderer.ElementValues(array, 0, 99, 10, false);
+    assertFalse(values.load(0));
+    assertFalse(values.load(10));
+    assertEquals(Collections.singletonList("getValues(0, 10)"), myRequests);
+  }
+
+  public void testFailedArrayReadIsLeftToElements() {
+    for (RuntimeException failure : Arrays.asList(new InternalException(), new VMDisconnectedException(), new IllegalArgumentException())) {
+      myRequests.clear();
+      ArrayReference array = mirror(ArrayReference.class, failure);
+      ArrayRenderer.ElementValues values = new ArrayRenderer.ElementValues(array, 0, 99, 10, false);
+      assertFalse(values.load(0));
+      assertFalse(values.load(10));
+      assertEquals(Collections.singletonList("getValues(0, 10)"), myRequests);
+    }
+  }
+
+  public void testObjectNodeReadsFieldsInOneRequest() {
+    Map<Field, Value> fieldValues = new LinkedHashMap<Field, Value>();
+    for (int i = 0; i < 5; i++) {
+      fieldValues.put(mirror(Field.class, null), i % 2 == 0 ? value() : null);
+    }
+    ObjectReference object = mirror(ObjectReference.class, fieldValues);
+
+    assertEquals(fieldValues, ClassRenderer.getValues(object, new ArrayList<Field>(fieldValues.keySet())));
+    assertEquals(Collections.singletonList("getValues(5 fields)"), myRequests);
+  }
+
+  public void testCollectedObjectHasNoValues() {
+    ObjectReference object = mirror(ObjectReference.class, null);
+    assertNull(ClassRenderer.getValues(object, Collections.singletonList(mirror(Field.class, null))));
+  }
+
+  public void testFailedObjectReadIsLeftToFields() {
+    for (RuntimeException failure : Arrays.asList(new InternalException(), new VMDisconnectedException(), new IllegalArgumentException())) {
+      ObjectReference object = mirror(ObjectReference.class, failure);
+      assertNull(ClassRenderer.getValues(object, Collections.singletonList(mirror(Field.class, null))));
+    }
+  }
+
+  private Value value() {
+    return mirror(Value.class, null);
+  }
+
+  /**
+   * A mirror answering getValues() requests with the given values; throws them if they are an exception,
+   * or ObjectCollectedException if they are null.
+   */
+  private <T> T mirror(Class<T> mirrorClass, final Object values) {
+    return mirrorClass.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{mirrorClass}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.equals("getValues")) {
+          if (values instanceof RuntimeException) {
+            myRequests.add(args.length == 2 ? "getValues(" + args[0] + ", " + args[1] + ")" : "getValues(" + ((List)args[0]).size() + " fields)");
+            throw (RuntimeException)values;
+          }
+          if (args.length == 2) {
+            int index = (Integer)args[0];
+            int length = (Integer)args[1];
+            myRequests.add("getValues(" + index + ", " + length + ")");
+            if (values == null) throw new ObjectCollectedException();
+            return new ArrayList<Value>(Arrays.asList((Value[])values).subList(index, index + length));
+          }
+          myRequests.add("getValues(" + ((List)args[0]).size() + " fields)");
+          if (values == null) throw new ObjectCollectedException();
+          return values;
+        }
+        if (name.equals("equals")) return proxy == args[0];
+        if (name.equals("hashCode")) return System.identityHashCode(proxy);
+        if (name.equals("toString")) return "mirror@" + System.identityHashCode(proxy);
+        throw new UnsupportedOperationException(name);
+      }
+    }));
+  }
+}
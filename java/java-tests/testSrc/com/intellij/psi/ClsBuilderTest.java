@@ -7,8 +7,8 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.impl.compiled.DefaultClsStubBuilderFactory;
-import com.intellij.psi.stubs.PsiFileStub;
-import com.intellij.psi.stubs.StubBase;
+import com.intellij.psi.impl.java.stubs.PsiParameterStub;
+import com.intellij.psi.stubs.*;
 import com.intellij.testFramework.LightIdeaTestCase;
 import com.intellij.util.cls.ClsFormatException;
 
@@ -16,6 +16,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * @author max
@@ -68,6 +69,28 @@ public class ClsBuilderTest extends LightIdeaTestCase {
     doTest(clsFile, getTestName(false) + ".txt");
   }
 
+  public void testIndexedStubHasSameStructure() throws Exception {
+    final String clsFilePath = JavaTestUtil.getJavaTestDataPath() + "/psi/cls/stubBuilder/TestSuite.class";
+    final VirtualFile clsFile = LocalFileSystem.getInstance().findFileByPath(clsFilePath);
+    assert clsFile != null : clsFilePath;
+    final byte[] bytes = clsFile.contentsToByteArray();
+    final List<StubElement<?>> full = new StubTree(new DefaultClsStubBuilderFactory().buildFullFileStub(clsFile, bytes)).getPlainList();
+    final List<StubElement<?>> indexed = new StubTree(new DefaultClsStubBuilderFactory().buildFileStub(clsFile, bytes)).getPlainList();
+
+    assertEquals(full.size(), indexed.size());
+    boolean namesDiffer = false;
+    for (int i = 0; i < full.size(); i++) {
+      assertSame(full.get(i).getStubType(), indexed.get(i).getStubType());
+      if (full.get(i) instanceof PsiParameterStub) {
+        namesDiffer |= !((PsiParameterStub)full.get(i)).getName().equals(((PsiParameterStub)indexed.get(i)).getName());
+      }
+      else if (full.get(i) instanceof NamedStub) {
+        assertEquals(((NamedStub)full.get(i)).getName(), ((NamedStub)indexed.get(i)).getName());
+      }
+    }
+    assertTrue(namesDiffer);
+  }
+
   private void doTestFromTestData() throws ClsFormatException, IOException {
     final String clsFilePath = JavaTestUtil.getJavaTestDataPath() + "/psi/cls/stubBuilder/" + getTestName(false) + ".class";
     final VirtualFile clsFile = LocalFileSystem.getInstance().findFileByPath(clsFilePath);
@@ -81,7 +104,7 @@ public class ClsBuilderTest extends LightIdeaTestCase {
   }
 
   private static void doTest(VirtualFile vFile, String goldFile) throws ClsFormatException, IOException {
-    final PsiFileStub stub = (new DefaultClsStubBuilderFactory()).buildFileStub(vFile, vFile.contentsToByteArray());
+    final PsiFileStub stub = (new DefaultClsStubBuilderFactory()).buildFullFileStub(vFile, vFile.contentsToByteArray());
     assert stub != null : vFile;
     final String butWas = ((StubBase)stub).printTree();
 
@@ -40,6 +40,28 @@ public class ClsMirrorBuildingTest extends LightIdeaTestCase {
   public void testPackageInfo() { doTest("package-info"); }
   public void testEA40568() { doTest(); }
 
+  public void testParameterNamesOfIndexedStub() {
+    String clsPath = JavaTestUtil.getJavaTestDataPath() + "/psi/cls/stubBuilder/TestSuite.class";
+    VirtualFile vFile = LocalFileSystem.getInstance().findFileByPath(clsPath);
+    assertNotNull(clsPath, vFile);
+    ClsFileImpl clsFile = (ClsFileImpl)getPsiManager().findFile(vFile);
+    assertNotNull(vFile.getPath(), clsFile);
+
+    PsiMethod[] constructors = clsFile.getClasses()[0].getConstructors();
+    PsiParameter[] parameters = null;
+    for (PsiMethod constructor : constructors) {
+      if (constructor.getParameterList().getParametersCount() == 2) {
+        parameters = constructor.getParameterList().getParameters();
+      }
+    }
+    assertNotNull(parameters);
+    // the names come from the class file even though the indexed stub has none
+    assertEquals("theClass", parameters[0].getName());
+    assertEquals("name", parameters[1].getName());
+
+    assertTrue(clsFile.getMirror().getText().contains("(java.lang.Class theClass, java.lang.String name)"));
+  }
+
   private void doTest() {
     doTest(getTestName(false));
   }
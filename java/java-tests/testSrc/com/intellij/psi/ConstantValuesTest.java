@@ -263,4 +263,20 @@ public class ConstantValuesTest extends PsiTestCase{
 
     assertEquals("", o);
   }
+
+  public void testCachedValueIsDroppedWhenConstantInSameFileChanges() {
+    PsiJavaFile file = (PsiJavaFile)createDummyFile("a.java", "class X { static final int A = 1; int b = A + 1; }");
+    PsiClass aClass = file.getClasses()[0];
+    final PsiField a = aClass.findFieldByName("A", false);
+    PsiExpression expression = aClass.findFieldByName("b", false).getInitializer();
+    assertEquals(2, JavaConstantExpressionEvaluator.computeConstantExpression(expression, false));
+
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        a.getInitializer().replace(JavaPsiFacade.getElementFactory(getProject()).createExpressionFromText("2", null));
+      }
+    });
+    assertEquals(3, JavaConstantExpressionEvaluator.computeConstantExpression(expression, false));
+  }
 }
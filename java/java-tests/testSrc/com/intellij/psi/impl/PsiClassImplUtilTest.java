@@ -0,0 +1,94 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.pom.java.LanguageLevel;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.util.List;
+
+public class PsiClassImplUtilTest extends LightCodeInsightFixtureTestCase {
+  public void testSuperMembersAreSubstitutedThroughCachedSuperMaps() {
+    myFixture.addClass("public class A<T> { public T field; public T get() { return null; } }");
+    PsiClass b = myFixture.addClass("public class B<U> extends A<java.util.List<U>> { }");
+    PsiClass c = myFixture.addClass("public class C extends B<String> { }");
+
+    // the map of B is built first, so the map of C is built from it
+    assertFieldType(b, "java.util.List<U>");
+    assertFieldType(c, "java.util.List<java.lang.String>");
+
+    List<Pair<PsiMethod, PsiSubstitutor>> methods = PsiClassImplUtil.getAllWithSubstitutorsByMap(c, PsiClassImplUtil.MemberType.METHOD);
+    for (Pair<PsiMethod, PsiSubstitutor> pair : methods) {
+      if ("get".equals(pair.getFirst().getName())) {
+        assertEquals("java.util.List<java.lang.String>", pair.getSecond().substitute(pair.getFirst().getReturnType()).getCanonicalText());
+        return;
+      }
+    }
+    fail("get() not found");
+  }
+
+  public void testInterfaceReachedTwiceIsVisitedOnce() {
+    myFixture.addClass("public interface I { void i(); }");
+    myFixture.addClass("public interface J extends I { void j(); }");
+    PsiClass k = myFixture.addClass("public abstract class K implements J, I { }");
+
+    assertEquals(1, k.findMethodsByName("i", true).length);
+    assertEquals(1, k.findMethodsByName("j", true).length);
+  }
+
+  public void testCyclicInheritance() {
+    PsiClass x = myFixture.addClass("public class X extends Y { void x() {} }");
+    myFixture.addClass("public class Y extends X { void y() {} }");
+
+    assertEquals(1, x.findMethodsByName("x", true).length);
+    assertEquals(1, x.findMethodsByName("y", true).length);
+  }
+
+  public void testLibrarySuperMapIsReused() {
+    PsiClass myList = myFixture.addClass("public abstract class MyList extends java.util.ArrayList<String> { }");
+    PsiClass arrayList = myList.getSuperClass();
+    assertInstanceOf(arrayList, PsiCompiledElement.class);
+    assertTrue(PsiClassImplUtil.isSuperMapReusable(PsiUtil.getLanguageLevel(myList), PsiUtil.getLanguageLevel(arrayList)));
+
+    List<Pair<PsiMethod, PsiSubstitutor>> methods = PsiClassImplUtil.getAllWithSubstitutorsByMap(myList, PsiClassImplUtil.MemberType.METHOD);
+    int found = 0;
+    for (Pair<PsiMethod, PsiSubstitutor> pair : methods) {
+      PsiMethod method = pair.getFirst();
+      if ("get".equals(method.getName()) && method.getParameterList().getParametersCount() == 1) {
+        // declared by ArrayList and by the supers taken from its map: AbstractList and List
+        assertEquals("java.lang.String", pair.getSecond().substitute(method.getReturnType()).getCanonicalText());
+        found++;
+      }
+    }
+    assertTrue(found > 1);
+  }
+
+  public void testGenericsSupportDecidesWhetherSuperMapIsReused() {
+    assertTrue(PsiClassImplUtil.isSuperMapReusable(LanguageLevel.JDK_1_7, LanguageLevel.JDK_1_5));
+    assertTrue(PsiClassImplUtil.isSuperMapReusable(LanguageLevel.JDK_1_3, LanguageLevel.JDK_1_4));
+    assertFalse(PsiClassImplUtil.isSuperMapReusable(LanguageLevel.JDK_1_6, LanguageLevel.JDK_1_4));
+  }
+
+  private static void assertFieldType(PsiClass aClass, String expected) {
+    List<Pair<PsiField, PsiSubstitutor>> fields = PsiClassImplUtil.getAllWithSubstitutorsByMap(aClass, PsiClassImplUtil.MemberType.FIELD);
+    assertEquals(1, fields.size());
+    Pair<PsiField, PsiSubstitutor> pair = fields.get(0);
+    assertEquals(expected, pair.getSecond().substitute(pair.getFirst().getType()).getCanonicalText());
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.resolve;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
+import com.intellij.psi.impl.source.resolve.ResolveCacheStatistics;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+public class ResolveCacheTest extends LightCodeInsightFixtureTestCase {
+  private ResolveCacheStatistics myStatistics;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myStatistics = ResolveCache.getInstance(getProject()).getStatistics();
+    myStatistics.reset();
+    myStatistics.setEnabled(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myStatistics.setEnabled(false);
+    myStatistics.reset();
+    super.tearDown();
+  }
+
+  public void testHitsAndMissesAreCountedPerReferenceClass() {
+    myFixture.configureByText("a.java", "class A { int field; int foo() { return fie<caret>ld; } }");
+    PsiReference ref = myFixture.getFile().findReferenceAt(myFixture.getCaretOffset());
+    assertNotNull(ref);
+    Class refClass = ref.getClass();
+
+    assertNotNull(ref.resolve());
+    assertEquals(1, myStatistics.getMisses(refClass));
+    assertEquals(0, myStatistics.getHits(refClass));
+
+    assertNotNull(ref.resolve());
+    assertEquals(1, myStatistics.getMisses(refClass));
+    assertEquals(1, myStatistics.getHits(refClass));
+    assertTrue(myStatistics.dump(), myStatistics.dump().contains(refClass.getName()));
+  }
+
+  public void testPhysicalChangeClearsCachedResults() {
+    myFixture.configureByText("a.java", "class A { int field; int foo() { return fie<caret>ld; } }");
+    PsiReference ref = myFixture.getFile().findReferenceAt(myFixture.getCaretOffset());
+    assertNotNull(ref);
+    Class refClass = ref.getClass();
+    assertNotNull(ref.resolve());
+
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        myFixture.getEditor().getDocument().insertString(0, " ");
+        PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+      }
+    });
+    ref = myFixture.getFile().findReferenceAt(myFixture.getCaretOffset());
+    assertNotNull(ref);
+    assertNotNull(ref.resolve());
+    assertEquals(2, myStatistics.getMisses(refClass));
+    assertEquals(0, myStatistics.getHits(refClass));
+  }
+
+  public void testNothingIsCountedWhenDisabled() {
+    myStatistics.setEnabled(false);
+    myFixture.configureByText("a.java", "class A { int field; int foo() { return fie<caret>ld; } }");
+    PsiReference ref = myFixture.getFile().findReferenceAt(myFixture.getCaretOffset());
+    assertNotNull(ref);
+    assertNotNull(ref.resolve());
+    assertNotNull(ref.resolve());
+    assertEquals(0, myStatistics.getMisses(ref.getClass()));
+    assertEquals(0, myStatistics.getHits(ref.getClass()));
+  }
+}
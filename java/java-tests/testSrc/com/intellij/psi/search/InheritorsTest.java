@@ -38,6 +38,10 @@ public class InheritorsTest extends PsiTestCase{
     doTest("x.Test", "", true, "x.Goo", "x.Zoo");
   }
 
+  public void testSameShortNamesInDifferentPackages() throws Exception {
+    doTest("a.Listener", "", true, "a.SamePackage", "b.ImportShadowsPackage", "c.ImportedA", "c.OnDemand", "c.Qualified", "c.Deep");
+  }
+
   private void doTest(String className, String packageScopeName, final boolean deep, String... inheritorNames) throws Exception {
     final PsiClass aClass = myJavaFacade.findClass(className);
     assertNotNull(aClass);
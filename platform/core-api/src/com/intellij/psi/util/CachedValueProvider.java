@@ -24,6 +24,15 @@ public interface CachedValueProvider<T> {
   @Nullable
   Result<T> compute();
 
+  /**
+   * A computed value together with the items it depends on. The value is recomputed when any of the dependencies changes.
+   * Supported dependencies are {@link com.intellij.openapi.util.ModificationTracker}s (including the global
+   * {@link PsiModificationTracker} keys), PSI elements and files, documents, virtual files and other cached values.
+   * <p/>
+   * Prefer the narrowest dependency possible: a value depending on a {@link com.intellij.psi.PsiFile} or
+   * {@link com.intellij.openapi.vfs.VirtualFile} survives edits in other files, while
+   * {@link PsiModificationTracker#MODIFICATION_COUNT} invalidates it on any change in the project.
+   */
   class Result<T> {
     private final T myValue;
     private final Object[] myDependencyItems;
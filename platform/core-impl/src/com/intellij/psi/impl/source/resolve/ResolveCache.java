@@ -45,6 +45,7 @@ public class ResolveCache {
   private final ConcurrentMap[] myMaps = new ConcurrentMap[2*2*2]; //boolean physical, boolean incompleteCode, boolean isPoly
   private final AtomicInteger myClearCount = new AtomicInteger(0);
   private final RecursionGuard myGuard = RecursionManager.createGuard("resolveCache");
+  private final ResolveCacheStatistics myStatistics = new ResolveCacheStatistics();
 
   public static ResolveCache getInstance(Project project) {
     ProgressIndicatorProvider.checkCanceled(); // We hope this method is being called often enough to cancel daemon processes smoothly
@@ -89,6 +90,15 @@ public class ResolveCache {
     for (int i=startIndex;i<2;i++)for (int j=0;j<2;j++)for (int k=0;k<2;k++) myMaps[i*4+j*2+k].clear();
   }
 
+  /**
+   * @return hit/miss counters collected per reference class.
+   * Counting is off unless the {@code idea.resolve.cache.statistics} system property is set.
+   */
+  @NotNull
+  public ResolveCacheStatistics getStatistics() {
+    return myStatistics;
+  }
+
   @Nullable
   private <TRef extends PsiReference, TResult> TResult resolve(@NotNull final TRef ref,
                                                                @NotNull final AbstractResolver<TRef, TResult> resolver,
@@ -104,8 +114,15 @@ public class ResolveCache {
     Getter<TResult> reference = map.get(ref);
     TResult result = reference == null ? null : reference.get();
     if (result != null) {
+      myStatistics.hit(ref);
       return result;
     }
+    if (reference == null) {
+      myStatistics.miss(ref);
+    }
+    else {
+      myStatistics.collected(ref);
+    }
 
     Computable<TResult> computable = new Computable<TResult>() {
       @Override
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.resolve;
+
+import com.intellij.psi.PsiReference;
+import com.intellij.util.containers.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per reference class hit/miss counters of {@link ResolveCache}.
+ * Enabled with {@code -Didea.resolve.cache.statistics=true}, otherwise all methods are no-ops.
+ */
+public class ResolveCacheStatistics {
+  private volatile boolean myEnabled = Boolean.getBoolean("idea.resolve.cache.statistics");
+
+  private final ConcurrentMap<Class, Counters> myCounters = new ConcurrentHashMap<Class, Counters>();
+
+  public boolean isEnabled() {
+    return myEnabled;
+  }
+
+  @TestOnly
+  public void setEnabled(boolean enabled) {
+    myEnabled = enabled;
+  }
+
+  void hit(@NotNull PsiReference ref) {
+    if (myEnabled) getCounters(ref).hits.incrementAndGet();
+  }
+
+  void miss(@NotNull PsiReference ref) {
+    if (myEnabled) getCounters(ref).misses.incrementAndGet();
+  }
+
+  /**
+   * The reference was cached but its soft-referenced result has been garbage collected.
+   */
+  void collected(@NotNull PsiReference ref) {
+    if (myEnabled) getCounters(ref).collected.incrementAndGet();
+  }
+
+  public long getHits(@NotNull Class refClass) {
+    Counters counters = myCounters.get(refClass);
+    return counters == null ? 0 : counters.hits.get();
+  }
+
+  public long getMisses(@NotNull Class refClass) {
+    Counters counters = myCounters.get(refClass);
+    return counters == null ? 0 : counters.misses.get();
+  }
+
+  @NotNull
+  private Counters getCounters(@NotNull PsiReference ref) {
+    Class aClass = ref.getClass();
+    Counters counters = myCounters.get(aClass);
+    if (counters == null) {
+      counters = new Counters();
+      Counters prev = myCounters.putIfAbsent(aClass, counters);
+      if (prev != null) counters = prev;
+    }
+    return counters;
+  }
+
+  public void reset() {
+    myCounters.clear();
+  }
+
+  /**
+   * @return one line per reference class, most requested first
+   */
+  @NotNull
+  public String dump() {
+    // a snapshot, so that reset() running meanwhile doesn't remove the counters being sorted
+    final Map<Class, Counters> counters = new HashMap<Class, Counters>(myCounters);
+    List<Class> classes = new ArrayList<Class>(counters.keySet());
+    Collections.sort(classes, new Comparator<Class>() {
+      @Override
+      public int compare(Class o1, Class o2) {
+        long r1 = counters.get(o1).requests();
+        long r2 = counters.get(o2).requests();
+        return r1 < r2 ? 1 : r1 == r2 ? 0 : -1;
+      }
+    });
+    StringBuilder sb = new StringBuilder();
+    for (Class aClass : classes) {
+      Counters c = counters.get(aClass);
+      long requests = c.requests();
+      sb.append(aClass.getName())
+        .append(": hits=").append(c.hits)
+        .append(" misses=").append(c.misses)
+        .append(" collected=").append(c.collected)
+        .append(" hitRate=").append(requests == 0 ? 0 : c.hits.get() * 100 / requests).append("%\n");
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return dump();
+  }
+
+  private static class Counters {
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong collected = new AtomicLong();
+
+    long requests() {
+      return hits.get() + misses.get() + collected.get();
+    }
+  }
+}
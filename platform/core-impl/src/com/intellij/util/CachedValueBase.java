@@ -20,6 +20,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.*;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.reference.SoftReference;
 import gnu.trove.TLongArrayList;
@@ -134,7 +135,13 @@ public abstract class CachedValueBase<T> {
   }
 
   protected long getTimeStamp(Object dependency) {
-    if (dependency instanceof ModificationTracker) {
+    if (dependency instanceof VirtualFile) {
+      // the stamp of a deleted file may stay the same, so the value computed from it must go
+      final VirtualFile file = (VirtualFile)dependency;
+      if (!file.isValid()) return -1;
+      return file.getModificationStamp();
+    }
+    else if (dependency instanceof ModificationTracker) {
       return ((ModificationTracker)dependency).getModificationCount();
     }
     else if (dependency instanceof Reference){
@@ -197,7 +204,20 @@ public abstract class CachedValueBase<T> {
     RecursionGuard.StackStamp stamp = RecursionManager.createGuard("cachedValue").markStack();
 
     // compute outside lock to avoid deadlock
-    CachedValueProvider.Result<T> result = doCompute(param);
+    CachedValueProvider.Result<T> result;
+    if (CachedValueProfiler.isEnabled()) {
+      CachedValueProfiler profiler = CachedValueProfiler.getInstance();
+      long start = profiler.computationStarted();
+      try {
+        result = doCompute(param);
+      }
+      finally {
+        profiler.computationFinished(getValueProvider(), start);
+      }
+    }
+    else {
+      result = doCompute(param);
+    }
 
     if (stamp.mayCacheNow()) {
       return setValue(result);
@@ -207,4 +227,6 @@ public abstract class CachedValueBase<T> {
 
   protected abstract <P> CachedValueProvider.Result<T> doCompute(P param);
 
+  public abstract Object getValueProvider();
+
 }
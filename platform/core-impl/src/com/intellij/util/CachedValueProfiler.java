@@ -0,0 +1,167 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util;
+
+import com.intellij.util.containers.ConcurrentHashMap;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects how often and how expensively cached values are recomputed, grouped by value provider class.
+ * Helps to find providers which depend on too coarse modification trackers
+ * (e.g. {@link com.intellij.psi.util.PsiModificationTracker#MODIFICATION_COUNT}) while a file or element dependency would do.
+ * <p/>
+ * The time of a computation does not include the time of the cached values computed inside it, they are accounted separately.
+ * <p/>
+ * Enabled with {@code -Didea.cached.value.profiling=true}.
+ *
+ * @see CachedValueBase
+ */
+public class CachedValueProfiler {
+  private static final boolean ENABLED = Boolean.getBoolean("idea.cached.value.profiling");
+  private static final CachedValueProfiler ourInstance = new CachedValueProfiler();
+
+  private final ConcurrentMap<Class, ProviderStatistics> myStatistics = new ConcurrentHashMap<Class, ProviderStatistics>();
+  // time spent in the nested computations of each computation running in the thread
+  private final ThreadLocal<TLongArrayList> myNestedNanos = new ThreadLocal<TLongArrayList>() {
+    @Override
+    protected TLongArrayList initialValue() {
+      return new TLongArrayList();
+    }
+  };
+
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  @NotNull
+  public static CachedValueProfiler getInstance() {
+    return ourInstance;
+  }
+
+  /**
+   * @return the start time to be passed to {@link #computationFinished(Object, long)}, which must be called in the same thread
+   */
+  public long computationStarted() {
+    myNestedNanos.get().add(0);
+    return System.nanoTime();
+  }
+
+  public void computationFinished(@Nullable Object provider, long start) {
+    long elapsed = System.nanoTime() - start;
+    TLongArrayList nested = myNestedNanos.get();
+    long nestedNanos = nested.remove(nested.size() - 1);
+    if (!nested.isEmpty()) {
+      int outer = nested.size() - 1;
+      nested.set(outer, nested.get(outer) + elapsed);
+    }
+    valueComputed(provider, Math.max(0, elapsed - nestedNanos));
+  }
+
+  private void valueComputed(@Nullable Object provider, long nanos) {
+    if (provider == null) return;
+    Class aClass = provider.getClass();
+    ProviderStatistics statistics = myStatistics.get(aClass);
+    if (statistics == null) {
+      statistics = new ProviderStatistics(aClass);
+      ProviderStatistics prev = myStatistics.putIfAbsent(aClass, statistics);
+      if (prev != null) statistics = prev;
+    }
+    statistics.computed(nanos);
+  }
+
+  /**
+   * @return statistics of all providers which have been computed since the last {@link #reset()}, most expensive first
+   */
+  @NotNull
+  public List<ProviderStatistics> getStatistics() {
+    List<ProviderStatistics> result = new ArrayList<ProviderStatistics>(myStatistics.values());
+    Collections.sort(result, new Comparator<ProviderStatistics>() {
+      @Override
+      public int compare(ProviderStatistics o1, ProviderStatistics o2) {
+        long t1 = o1.getTotalNanos();
+        long t2 = o2.getTotalNanos();
+        return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+      }
+    });
+    return result;
+  }
+
+  public void reset() {
+    myStatistics.clear();
+  }
+
+  @NotNull
+  public String dump() {
+    StringBuilder sb = new StringBuilder();
+    for (ProviderStatistics statistics : getStatistics()) {
+      sb.append(statistics).append('\n');
+    }
+    return sb.toString();
+  }
+
+  public static class ProviderStatistics {
+    private final Class myProviderClass;
+    private final AtomicLong myCount = new AtomicLong();
+    private final AtomicLong myTotalNanos = new AtomicLong();
+    private final AtomicLong myMaxNanos = new AtomicLong();
+
+    private ProviderStatistics(@NotNull Class providerClass) {
+      myProviderClass = providerClass;
+    }
+
+    private void computed(long nanos) {
+      myCount.incrementAndGet();
+      myTotalNanos.addAndGet(nanos);
+      long max;
+      do {
+        max = myMaxNanos.get();
+      }
+      while (nanos > max && !myMaxNanos.compareAndSet(max, nanos));
+    }
+
+    @NotNull
+    public Class getProviderClass() {
+      return myProviderClass;
+    }
+
+    public long getComputationCount() {
+      return myCount.get();
+    }
+
+    public long getTotalNanos() {
+      return myTotalNanos.get();
+    }
+
+    public long getMaxNanos() {
+      return myMaxNanos.get();
+    }
+
+    @Override
+    public String toString() {
+      return myProviderClass.getName() + ": computed " + getComputationCount() + " times, total " + getTotalNanos() / 1000000 +
+             "ms, max " + getMaxNanos() / 1000000 + "ms";
+    }
+  }
+}
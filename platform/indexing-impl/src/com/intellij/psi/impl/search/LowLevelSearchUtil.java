@@ -30,7 +30,9 @@ import com.intellij.psi.impl.source.tree.TreeElement;
 import com.intellij.psi.search.TextOccurenceProcessor;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.text.CharArrayUtil;
+import com.intellij.util.text.MultiStringSearcher;
 import com.intellij.util.text.StringSearcher;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -176,6 +178,67 @@ public class LowLevelSearchUtil {
     return true;
   }
 
+  /**
+   * Does the same as {@link #processElementsContainingWordInElement} for each of the searchers, in their order,
+   * but finds the occurrences of all the words in one pass over the text of the scope.
+   * @param processors the processors of the occurrences found by the corresponding searchers of the multi-searcher
+   * @return false if any of the processors has returned false
+   */
+  //@RequiresReadAction
+  public static boolean processElementsContainingWordsInElement(@NotNull List<? extends TextOccurenceProcessor> processors,
+                                                                @NotNull PsiElement scope,
+                                                                @NotNull MultiStringSearcher searcher,
+                                                                final boolean processInjectedPsi,
+                                                                @Nullable final ProgressIndicator progress) {
+    if (progress != null) progress.checkCanceled();
+
+    PsiFile file = scope.getContainingFile();
+    final CharSequence buffer = file.getViewProvider().getContents();
+
+    TextRange range = scope.getTextRange();
+    if (range == null) {
+      throw new AssertionError("Element " + scope + " of class " + scope.getClass() + " has null range");
+    }
+
+    final int scopeStart = range.getStartOffset();
+    final int endOffset = range.getEndOffset();
+    if (endOffset > buffer.length()) {
+      LOG.error("Range for element: '"+scope+"' = "+range+" is out of file '" + file + "' range: " + file.getTextLength());
+    }
+
+    final char[] bufferArray = CharArrayUtil.fromSequenceWithoutCopying(buffer);
+    final List<StringSearcher> searchers = searcher.getSearchers();
+    LOG.assertTrue(searchers.size() == processors.size(), searchers.size() - processors.size());
+
+    final TIntArrayList[] occurrences = new TIntArrayList[searchers.size()];
+    final int[] searchStarts = new int[searchers.size()]; // mimics the start offsets searchWord() would be called with
+    for (int i = 0; i < searchers.size(); i++) {
+      occurrences[i] = new TIntArrayList();
+      searchStarts[i] = scopeStart;
+    }
+    searcher.scan(buffer, bufferArray, scopeStart, endOffset, new MultiStringSearcher.OccurrenceProcessor() {
+      @Override
+      public boolean process(int offset, int searcherIndex) {
+        if (progress != null) progress.checkCanceled();
+        StringSearcher wordSearcher = searchers.get(searcherIndex);
+        if (!wordSearcher.isJavaIdentifier() ||
+            isWholeWord(buffer, bufferArray, offset, searchStarts[searcherIndex], endOffset, wordSearcher)) {
+          occurrences[searcherIndex].add(offset - scopeStart);
+          searchStarts[searcherIndex] = offset + 1;
+        }
+        return true;
+      }
+    });
+
+    for (int i = 0; i < searchers.size(); i++) {
+      TIntArrayList offsets = occurrences[i];
+      for (int j = 0; j < offsets.size(); j++) {
+        if (!processTreeUp(processors.get(i), scope, searchers.get(i), offsets.get(j), processInjectedPsi, progress)) return false;
+      }
+    }
+    return true;
+  }
+
   public static int searchWord(@NotNull CharSequence text,
                                int startOffset,
                                int endOffset,
@@ -201,24 +264,38 @@ public class LowLevelSearchUtil {
         return index;
       }
 
-      if (index > startOffset) {
-        char c = textArray != null ? textArray[index - 1]:text.charAt(index - 1);
-        if (Character.isJavaIdentifierPart(c) && c != '$') {
-          if (index < 2 || (textArray != null ? textArray[index - 2]:text.charAt(index - 2)) != '\\') { //escape sequence
-            continue;
-          }
-        }
+      if (isWholeWord(text, textArray, index, startOffset, endOffset, searcher)) {
+        return index;
       }
+    }
+    return -1;
+  }
 
-      final int patternLength = searcher.getPattern().length();
-      if (index + patternLength < endOffset) {
-        char c = textArray != null ? textArray[index + patternLength]:text.charAt(index + patternLength);
-        if (Character.isJavaIdentifierPart(c) && c != '$') {
-          continue;
+  /**
+   * @param startOffset the character before this offset isn't checked
+   */
+  private static boolean isWholeWord(@NotNull CharSequence text,
+                                     char[] textArray,
+                                     int index,
+                                     int startOffset,
+                                     int endOffset,
+                                     @NotNull StringSearcher searcher) {
+    if (index > startOffset) {
+      char c = textArray != null ? textArray[index - 1]:text.charAt(index - 1);
+      if (Character.isJavaIdentifierPart(c) && c != '$') {
+        if (index < 2 || (textArray != null ? textArray[index - 2]:text.charAt(index - 2)) != '\\') { //escape sequence
+          return false;
         }
       }
-      return index;
     }
-    return -1;
+
+    final int patternLength = searcher.getPattern().length();
+    if (index + patternLength < endOffset) {
+      char c = textArray != null ? textArray[index + patternLength]:text.charAt(index + patternLength);
+      if (Character.isJavaIdentifierPart(c) && c != '$') {
+        return false;
+      }
+    }
+    return true;
   }
 }
@@ -43,6 +43,7 @@ import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.text.CharArrayUtil;
+import com.intellij.util.text.MultiStringSearcher;
 import com.intellij.util.text.StringSearcher;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -634,7 +635,19 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
         @Override
         public boolean process(PsiElement psiRoot) {
           final VirtualFile vfile = psiRoot.getContainingFile().getVirtualFile();
-          for (final RequestWithProcessor singleRequest : candidateFiles.get(vfile)) {
+          Collection<RequestWithProcessor> requests = candidateFiles.get(vfile);
+          if (requests.size() > 1) {
+            // find the occurrences of all the words in one pass over the file text
+            List<StringSearcher> fileSearchers = new ArrayList<StringSearcher>(requests.size());
+            List<TextOccurenceProcessor> processors = new ArrayList<TextOccurenceProcessor>(requests.size());
+            for (RequestWithProcessor singleRequest : requests) {
+              fileSearchers.add(searchers.get(singleRequest));
+              processors.add(adaptProcessor(singleRequest.request, singleRequest.refProcessor));
+            }
+            return LowLevelSearchUtil.processElementsContainingWordsInElement(processors, psiRoot, new MultiStringSearcher(fileSearchers),
+                                                                               true, progress);
+          }
+          for (final RequestWithProcessor singleRequest : requests) {
             StringSearcher searcher = searchers.get(singleRequest);
             TextOccurenceProcessor adapted = adaptProcessor(singleRequest.request, singleRequest.refProcessor);
             if (!LowLevelSearchUtil.processElementsContainingWordInElement(adapted, psiRoot, searcher, true, progress)) {
@@ -18,6 +18,7 @@ package com.intellij.codeInsight.actions;
 
 import com.intellij.codeInsight.CodeInsightBundle;
 import com.intellij.codeInsight.CodeInsightUtilBase;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.lang.LanguageFormatting;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
@@ -36,19 +37,23 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.ui.ex.MessagesEx;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.IncorrectOperationException;
+import com.intellij.util.Processor;
 import com.intellij.util.SequentialModalProgressTask;
 import com.intellij.util.SequentialTask;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractLayoutCodeProcessor {
   private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.actions.AbstractLayoutCodeProcessor");
@@ -237,23 +242,14 @@ public abstract class AbstractLayoutCodeProcessor {
       progress.setText(myProgressText);
     }
 
-    final List<FutureTask<Boolean>> tasks = new ArrayList<FutureTask<Boolean>>(files.size());
-    for(int i = 0; i < files.size(); i++) {
-      PsiFile file = files.get(i);
-      if (progress != null){
-        if (progress.isCanceled()) return null;
-        progress.setFraction((double)i / files.size());
-      }
-      if (file.isWritable()){
-        try{
-          tasks.add(preprocessFile(file, myProcessChangedTextOnly));
-        }
-        catch(IncorrectOperationException e){
-          LOG.error(e);
-        }
-      }
-      files.set(i, null);
+    final List<FutureTask<Boolean>> tasks;
+    if (files.size() > 1 && progress != null && Registry.is("layout.code.concurrent.preprocessing")) {
+      tasks = preprocessFilesConcurrently(files, progress);
+    }
+    else {
+      tasks = preprocessFilesSequentially(files, progress);
     }
+    if (tasks == null) return null;
 
     if (progress != null){
       progress.setText(oldText);
@@ -272,6 +268,68 @@ public abstract class AbstractLayoutCodeProcessor {
     };
   }
 
+  @Nullable
+  private List<FutureTask<Boolean>> preprocessFilesSequentially(@NotNull List<PsiFile> files, @Nullable ProgressIndicator progress) {
+    List<FutureTask<Boolean>> tasks = new ArrayList<FutureTask<Boolean>>(files.size());
+    for(int i = 0; i < files.size(); i++) {
+      PsiFile file = files.get(i);
+      if (progress != null){
+        if (progress.isCanceled()) return null;
+        progress.setFraction((double)i / files.size());
+      }
+      FutureTask<Boolean> task = preprocessWritableFile(file);
+      if (task != null) {
+        tasks.add(task);
+      }
+      files.set(i, null);
+    }
+    return tasks;
+  }
+
+  /**
+   * Prepares the files on several threads; the tasks are returned in the order of the files, as the sequential preparation does.
+   */
+  @Nullable
+  private List<FutureTask<Boolean>> preprocessFilesConcurrently(@NotNull final List<PsiFile> files, @NotNull final ProgressIndicator progress) {
+    final Map<PsiFile, FutureTask<Boolean>> prepared = new ConcurrentHashMap<PsiFile, FutureTask<Boolean>>();
+    final AtomicInteger processed = new AtomicInteger();
+    boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(files, progress, false, new Processor<PsiFile>() {
+      @Override
+      public boolean process(PsiFile file) {
+        FutureTask<Boolean> task = preprocessWritableFile(file);
+        if (task != null) {
+          prepared.put(file, task);
+        }
+        progress.setFraction((double)processed.incrementAndGet() / files.size());
+        return true;
+      }
+    });
+    if (!completed || progress.isCanceled()) return null;
+
+    List<FutureTask<Boolean>> tasks = new ArrayList<FutureTask<Boolean>>(prepared.size());
+    for (PsiFile file : files) {
+      FutureTask<Boolean> task = prepared.get(file);
+      if (task != null) {
+        tasks.add(task);
+      }
+    }
+    files.clear();
+    return tasks;
+  }
+
+  @Nullable
+  private FutureTask<Boolean> preprocessWritableFile(@NotNull PsiFile file) {
+    if (file.isWritable()){
+      try{
+        return preprocessFile(file, myProcessChangedTextOnly);
+      }
+      catch(IncorrectOperationException e){
+        LOG.error(e);
+      }
+    }
+    return null;
+  }
+
   private void runProcessFiles(final PsiFile[] files) {
     // let's just ignore read-only files here
 
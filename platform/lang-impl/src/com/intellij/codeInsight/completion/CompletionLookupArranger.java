@@ -42,6 +42,7 @@ import com.intellij.util.Alarm;
 import com.intellij.util.ProcessingContext;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -57,7 +58,19 @@ public class CompletionLookupArranger extends LookupArranger {
   public static final Key<Boolean> PURE_RELEVANCE = Key.create("PURE_RELEVANCE");
   public static final Key<Integer> PREFIX_CHANGES = Key.create("PREFIX_CHANGES");
   private static final UISettings ourUISettings = UISettings.getInstance();
-  private static final Classifier<LookupElement> TAIL_CLASSIFIER = new Classifier<LookupElement>() {
+  private static final Comparator<LookupElement> PRESENTATION_COMPARATOR = new Comparator<LookupElement>() {
+    @Override
+    public int compare(LookupElement o1, LookupElement o2) {
+      String invariant = PRESENTATION_INVARIANT.get(o1);
+      assert invariant != null;
+      return invariant.compareToIgnoreCase(PRESENTATION_INVARIANT.get(o2));
+    }
+  };
+  /**
+   * Item subsets at least this large are arranged by their positions in {@link #myPresentationOrder} instead of comparing presentations
+   */
+  private static final int PRESORTED_THRESHOLD = 100;
+  private final Classifier<LookupElement> myTailClassifier = new Classifier<LookupElement>() {
     @Override
     public void addElement(LookupElement element) {
     }
@@ -71,6 +84,14 @@ public class CompletionLookupArranger extends LookupArranger {
     public void describeItems(LinkedHashMap<LookupElement, StringBuilder> map, ProcessingContext context) {
     }
   };
+  /**
+   * All items added so far, sorted by presentation. Items added since the last arrangement are kept in {@link #myUnsortedItems}
+   * and merged in on demand, so that typing a prefix doesn't re-sort the whole item set every time.
+   */
+  private final List<LookupElement> myPresentationOrder = new ArrayList<LookupElement>();
+  private final TObjectIntHashMap<LookupElement> myPresentationIndices =
+    new TObjectIntHashMap<LookupElement>(ContainerUtil.<LookupElement>identityStrategy());
+  private final List<LookupElement> myUnsortedItems = new ArrayList<LookupElement>();
   private final List<LookupElement> myFrozenItems = new ArrayList<LookupElement>();
   static {
     Disposer.register(ApplicationManager.getApplication(), new Disposable() {
@@ -151,9 +172,10 @@ public class CompletionLookupArranger extends LookupArranger {
     CompletionSorterImpl sorter = obtainSorter(element);
     Classifier<LookupElement> classifier = myClassifiers.get(sorter);
     if (classifier == null) {
-      myClassifiers.put(sorter, classifier = sorter.buildClassifier(TAIL_CLASSIFIER));
+      myClassifiers.put(sorter, classifier = sorter.buildClassifier(myTailClassifier));
     }
     classifier.addElement(element);
+    myUnsortedItems.add(element);
 
     super.addElement(lookup, element, presentation);
   }
@@ -164,17 +186,62 @@ public class CompletionLookupArranger extends LookupArranger {
     return tailText == null || tailText.isEmpty() ? " " : tailText;
   }
 
-  private static List<LookupElement> sortByPresentation(Iterable<LookupElement> source) {
+  private List<LookupElement> sortByPresentation(Iterable<LookupElement> source) {
     ArrayList<LookupElement> result = ContainerUtil.newArrayList(source);
-    ContainerUtil.sort(result, new Comparator<LookupElement>() {
-      @Override
-      public int compare(LookupElement o1, LookupElement o2) {
-        String invariant = PRESENTATION_INVARIANT.get(o1);
-        assert invariant != null;
-        return invariant.compareToIgnoreCase(PRESENTATION_INVARIANT.get(o2));
+    if (result.size() < PRESORTED_THRESHOLD) {
+      ContainerUtil.sort(result, PRESENTATION_COMPARATOR);
+      return result;
+    }
+
+    // every bucket of the classifiers is sorted separately, so don't go through the whole presentation order for each of them
+    List<LookupElement> order = getPresentationOrder();
+    int[] positions = new int[result.size()];
+    for (int i = 0; i < positions.length; i++) {
+      LookupElement element = result.get(i);
+      if (!myPresentationIndices.containsKey(element)) {
+        // some items didn't come through addElement, can't rely on the cached order
+        ContainerUtil.sort(result, PRESENTATION_COMPARATOR);
+        return result;
       }
-    });
-    return result;
+      positions[i] = myPresentationIndices.get(element);
+    }
+    Arrays.sort(positions);
+    ArrayList<LookupElement> sorted = new ArrayList<LookupElement>(positions.length);
+    for (int position : positions) {
+      sorted.add(order.get(position));
+    }
+    return sorted;
+  }
+
+  private List<LookupElement> getPresentationOrder() {
+    if (!myUnsortedItems.isEmpty()) {
+      ContainerUtil.sort(myUnsortedItems, PRESENTATION_COMPARATOR);
+      List<LookupElement> merged = new ArrayList<LookupElement>(myPresentationOrder.size() + myUnsortedItems.size());
+      int i = 0;
+      int j = 0;
+      while (i < myPresentationOrder.size() && j < myUnsortedItems.size()) {
+        LookupElement old = myPresentationOrder.get(i);
+        LookupElement added = myUnsortedItems.get(j);
+        if (PRESENTATION_COMPARATOR.compare(old, added) <= 0) {
+          merged.add(old);
+          i++;
+        }
+        else {
+          merged.add(added);
+          j++;
+        }
+      }
+      merged.addAll(myPresentationOrder.subList(i, myPresentationOrder.size()));
+      merged.addAll(myUnsortedItems.subList(j, myUnsortedItems.size()));
+      myPresentationOrder.clear();
+      myPresentationOrder.addAll(merged);
+      myUnsortedItems.clear();
+      myPresentationIndices.clear();
+      for (int k = 0; k < myPresentationOrder.size(); k++) {
+        myPresentationIndices.put(myPresentationOrder.get(k), k);
+      }
+    }
+    return myPresentationOrder;
   }
 
   private static boolean isAlphaSorted() {
@@ -148,6 +148,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
 
     assert !myInitialized : "Double Initializing";
     Disposer.register(myProject, new StatusBarUpdater(myProject));
+    Disposer.register(myProject, new SpeculativeHighlighter(myProject, this));
 
     ApplicationManager.getApplication().invokeLater(new Runnable() {
       @Override
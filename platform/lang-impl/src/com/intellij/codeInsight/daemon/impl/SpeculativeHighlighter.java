@@ -0,0 +1,234 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.Pass;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerAdapter;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.fileEditor.impl.EditorHistoryManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.Alarm;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the general highlighting pass in background for files which are likely to be opened next: recently closed tabs and
+ * the most recently visited files of the editor history which are not currently open.
+ * <p/>
+ * Highlighting results go to the document markup model and the file is marked up to date in {@link FileStatusMap},
+ * so when the editor is opened the daemon finds nothing to do for the pass. Any change of the document marks it dirty again
+ * through the usual daemon listeners, which discards the speculative results.
+ * <p/>
+ * Starts only after the daemon has finished with the open editors and is cancelled by any write action. Files longer than
+ * {@link #MAX_FILE_LENGTH} are skipped. Documents of closed files are not retained: if one is collected before the file is reopened,
+ * its speculative results are lost and the daemon highlights it as usual.
+ * Controlled by the {@code daemon.speculative.highlighting} registry key, off by default.
+ */
+public class SpeculativeHighlighter implements Disposable {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.daemon.impl.SpeculativeHighlighter");
+  private static final int MAX_CANDIDATES = 3;
+  private static final int DELAY = 500;
+  private static final int MAX_FILE_LENGTH = 100 * 1024;
+
+  private final Project myProject;
+  private final DaemonCodeAnalyzerImpl myDaemonCodeAnalyzer;
+  private final Alarm myAlarm = new Alarm(Alarm.ThreadToUse.SHARED_THREAD, this);
+  private final AtomicBoolean myRunning = new AtomicBoolean();
+  private final LinkedHashSet<VirtualFile> myRecentlyClosed = new LinkedHashSet<VirtualFile>(); // guarded by itself
+
+  public SpeculativeHighlighter(@NotNull Project project, @NotNull DaemonCodeAnalyzerImpl daemonCodeAnalyzer) {
+    myProject = project;
+    myDaemonCodeAnalyzer = daemonCodeAnalyzer;
+
+    project.getMessageBus().connect(this).subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerAdapter() {
+      @Override
+      public void fileClosed(FileEditorManager source, VirtualFile file) {
+        synchronized (myRecentlyClosed) {
+          myRecentlyClosed.remove(file);
+          myRecentlyClosed.add(file);
+          while (myRecentlyClosed.size() > MAX_CANDIDATES) {
+            myRecentlyClosed.remove(myRecentlyClosed.iterator().next());
+          }
+        }
+      }
+    });
+
+    project.getMessageBus().connect(this).subscribe(DaemonCodeAnalyzer.DAEMON_EVENT_TOPIC, new DaemonCodeAnalyzer.DaemonListener() {
+      @Override
+      public void daemonFinished() {
+        scheduleHighlighting();
+      }
+
+      @Override
+      public void daemonCancelEventOccurred() {
+        myAlarm.cancelAllRequests();
+      }
+    });
+  }
+
+  private static boolean isEnabled() {
+    return !ApplicationManager.getApplication().isUnitTestMode() && Registry.is("daemon.speculative.highlighting");
+  }
+
+  private void scheduleHighlighting() {
+    if (!isEnabled() || PowerSaveMode.isEnabled()) return;
+    myAlarm.cancelAllRequests();
+    myAlarm.addRequest(new Runnable() {
+      @Override
+      public void run() {
+        // don't occupy the shared alarm thread with highlighting
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+          @Override
+          public void run() {
+            if (!myRunning.compareAndSet(false, true)) return;
+            try {
+              highlightCandidates();
+            }
+            finally {
+              myRunning.set(false);
+            }
+          }
+        });
+      }
+    }, DELAY);
+  }
+
+  private void highlightCandidates() {
+    for (VirtualFile file : getCandidates()) {
+      if (myProject.isDisposed() || DumbService.isDumb(myProject)) return;
+      if (!highlightFile(file)) return;
+    }
+  }
+
+  @NotNull
+  private List<VirtualFile> getCandidates() {
+    LinkedHashSet<VirtualFile> candidates = new LinkedHashSet<VirtualFile>();
+    synchronized (myRecentlyClosed) {
+      List<VirtualFile> closed = new LinkedList<VirtualFile>(myRecentlyClosed);
+      for (int i = closed.size() - 1; i >= 0; i--) {
+        candidates.add(closed.get(i));
+      }
+    }
+    VirtualFile[] history = EditorHistoryManager.getInstance(myProject).getFiles();
+    for (int i = history.length - 1; i >= 0 && candidates.size() < MAX_CANDIDATES; i--) {
+      candidates.add(history[i]);
+    }
+
+    FileEditorManager editorManager = FileEditorManager.getInstance(myProject);
+    List<VirtualFile> result = new LinkedList<VirtualFile>();
+    for (VirtualFile file : candidates) {
+      if (file.isValid() && !editorManager.isFileOpen(file) && result.size() < MAX_CANDIDATES) {
+        result.add(file);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return false if highlighting was cancelled and no more files should be processed now
+   */
+  boolean highlightFile(@NotNull final VirtualFile file) {
+    final GeneralHighlightingPass pass = ApplicationManager.getApplication().runReadAction(new Computable<GeneralHighlightingPass>() {
+      @Override
+      public GeneralHighlightingPass compute() {
+        return createPass(file);
+      }
+    });
+    if (pass == null) return true;
+
+    final DaemonProgressIndicator progress = new DaemonProgressIndicator();
+    Disposable writeActionListener = Disposer.newDisposable();
+    progress.start();
+    try {
+      ProgressIndicatorUtils.forceWriteActionPriority(progress, writeActionListener);
+      ProgressManager.getInstance().runProcess(new Runnable() {
+        @Override
+        public void run() {
+          ApplicationManager.getApplication().runReadAction(new Runnable() {
+            @Override
+            public void run() {
+              if (!progress.isCanceled()) {
+                pass.collectInformation(progress);
+              }
+            }
+          });
+        }
+      }, progress);
+    }
+    catch (ProcessCanceledException e) {
+      return false;
+    }
+    finally {
+      Disposer.dispose(writeActionListener);
+      progress.stopIfRunning();
+    }
+    if (progress.isCanceled()) return false;
+
+    ApplicationManager.getApplication().invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        if (myProject.isDisposed() || FileEditorManager.getInstance(myProject).isFileOpen(file)) return;
+        // does nothing if the document has been changed meanwhile
+        pass.applyInformationToEditor();
+        LOG.debug("Speculatively highlighted " + file);
+      }
+    }, myProject.getDisposed());
+    return true;
+  }
+
+  @Nullable
+  private GeneralHighlightingPass createPass(@NotNull VirtualFile file) {
+    if (myProject.isDisposed() || !file.isValid() || file.getFileType().isBinary() || file.getLength() > MAX_FILE_LENGTH) return null;
+    Document document = FileDocumentManager.getInstance().getDocument(file);
+    if (document == null || document.getTextLength() > MAX_FILE_LENGTH || !PsiDocumentManager.getInstance(myProject).isCommitted(document)) {
+      return null;
+    }
+    PsiFile psiFile = PsiManager.getInstance(myProject).findFile(file);
+    if (psiFile == null || !myDaemonCodeAnalyzer.isHighlightingAvailable(psiFile)) return null;
+    TextRange dirtyScope = myDaemonCodeAnalyzer.getFileStatusMap().getFileDirtyScope(document, Pass.UPDATE_ALL);
+    if (dirtyScope == null) return null;
+    return new GeneralHighlightingPass(myProject, psiFile, document, 0, document.getTextLength(), true);
+  }
+
+  @Override
+  public void dispose() {
+  }
+}
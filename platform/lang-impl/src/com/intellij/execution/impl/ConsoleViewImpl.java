@@ -78,6 +78,7 @@ import gnu.trove.TIntObjectHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
 import java.awt.*;
@@ -94,6 +95,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
   private static final Logger LOG = Logger.getInstance("#com.intellij.execution.impl.ConsoleViewImpl");
 
   private static final int DEFAULT_FLUSH_DELAY = SystemProperties.getIntProperty("console.flush.delay.ms", 200);
+  private static final int MAX_FILTER_REQUESTS = 16;
 
   public static final Key<ConsoleViewImpl> CONSOLE_VIEW_IN_EDITOR_VIEW = Key.create("CONSOLE_VIEW_IN_EDITOR_VIEW");
 
@@ -115,6 +117,8 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
   @Nullable
   private final Alarm myHeavyAlarm;
   private       int   myHeavyUpdateTicket;
+  private final Alarm myFilterAlarm = new Alarm(Alarm.ThreadToUse.OWN_THREAD, this);
+  private boolean myFilterInBackground = !ApplicationManager.getApplication().isUnitTestMode();
 
   private final CopyOnWriteArraySet<ChangeListener> myListeners             = new CopyOnWriteArraySet<ChangeListener>();
   private final ArrayList<AnAction>                 customActions           = new ArrayList<AnAction>();
@@ -231,6 +235,16 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
 
   private final TIntObjectHashMap<ConsoleFolding> myFolding = new TIntObjectHashMap<ConsoleFolding>();
 
+  /**
+   * Copies of the output lines filtered in background, in the order of output, until the hyperlinks found there are added.
+   * <p/>
+   * The last request is kept in {@link #myWaitingFilterRequest} while the filters haven't started on it, so that the lines
+   * of the next flushes are added to it instead of queueing more requests.
+   */
+  private final List<FilterRequest> myFilterRequests = new ArrayList<FilterRequest>();
+  private FilterRequest myWaitingFilterRequest;
+  private int myMaxFilterRequests = MAX_FILTER_REQUESTS;
+
   private String myHelpId;
 
   private final Alarm myFlushUserInputAlarm = new Alarm(Alarm.ThreadToUse.OWN_THREAD, this);
@@ -353,6 +367,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     cancelAllFlushRequests();
     addFlushRequest(new MyClearRunnable());
     cancelHeavyAlarm();
+    myFilterAlarm.cancelAllRequests();
   }
 
   @Override
@@ -428,7 +443,8 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
   @Override
   public boolean hasDeferredOutput() {
     synchronized (LOCK) {
-      return myBuffer.getLength() > 0;
+      // the hyperlinks of the flushed output may still be looked for
+      return myBuffer.getLength() > 0 || !myFilterRequests.isEmpty();
     }
   }
 
@@ -500,6 +516,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     myState = myState.dispose();
     if (myEditor != null) {
       cancelAllFlushRequests();
+      cancelFilterRequests();
       mySpareTimeAlarm.cancelAllRequests();
       JPanel fake = new JPanel();
       fake.setBackground(myEditor.getBackgroundColor());
@@ -623,6 +640,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
         document = editor.getDocument();
         myFoldingAlarm.cancelAllRequests();
         cancelHeavyAlarm();
+        cancelFilterRequests();
       }
       CommandProcessor.getInstance().executeCommand(myProject, new Runnable() {
         @Override
@@ -637,6 +655,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
         }
       }, null, DocCommandGroupId.noneGroupId(document));
     }
+    highlightFilteredHyperlinks();
 
 
     final String text;
@@ -670,7 +689,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
           myEditor.getScrollingModel().accumulateViewportChanges();
         }
         try {
-          String[] strings = text.split("\\r");
+          String[] strings = text.indexOf('\r') < 0 ? new String[]{text} : text.split("\\r");
           for (int i = 0; i < strings.length - 1; i++) {
             document.insertString(document.getTextLength(), strings[i]);
             int lastLine = document.getLineCount() - 1;
@@ -934,7 +953,12 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     ApplicationManager.getApplication().assertIsDispatchThread();
     PsiDocumentManager.getInstance(myProject).commitAllDocuments();
     if (canHighlightHyperlinks) {
-      myHyperlinks.highlightHyperlinks(myCustomFilter, myPredefinedMessageFilter, line1, endLine);
+      if (myFilterInBackground) {
+        highlightHyperlinksInBackground(line1, endLine);
+      }
+      else {
+        myHyperlinks.highlightHyperlinks(myCustomFilter, myPredefinedMessageFilter, line1, endLine);
+      }
     }
     
     if (myAllowHeavyFilters && myPredefinedMessageFilter.isAnyHeavy() && myPredefinedMessageFilter.shouldRunHeavy()) {
@@ -945,6 +969,155 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     }
   }
 
+  /**
+   * Runs the filters over a copy of the given lines so that a lot of output doesn't block the EDT;
+   * the hyperlinks they find are added by a later flush.
+   */
+  private void highlightHyperlinksInBackground(int line1, int endLine) {
+    final int startLine = Math.max(0, line1);
+    if (startLine > endLine) return;
+
+    final Document document = myEditor.getDocument();
+    final int startOffset = document.getLineStartOffset(startLine);
+    final int endOffset = endLine + 1 < document.getLineCount() ? document.getLineStartOffset(endLine + 1) : document.getTextLength();
+    final FilterRequest request;
+    synchronized (LOCK) {
+      final FilterRequest waiting = myWaitingFilterRequest;
+      // a deferred request takes all the new lines, whatever range they are in
+      if (waiting != null && waiting.myMarker.isValid() &&
+          (waiting.myDeferred ||
+           waiting.myMarker.getStartOffset() <= startOffset && startOffset <= waiting.myMarker.getEndOffset())) {
+        final int requestStart = Math.min(startOffset, waiting.myMarker.getStartOffset());
+        final int requestEnd = Math.max(endOffset, waiting.myMarker.getEndOffset());
+        if (requestStart == waiting.myMarker.getStartOffset() && startOffset <= waiting.myMarker.getEndOffset() &&
+            waiting.myMarker.getEndOffset() - requestStart == waiting.myText.length()) {
+          waiting.myText.setLength(startOffset - requestStart);
+          waiting.myText.append(document.getCharsSequence(), startOffset, requestEnd);
+        }
+        else {
+          // the cycle buffer has trimmed the copied lines
+          waiting.myText.setLength(0);
+          waiting.myText.append(document.getCharsSequence(), requestStart, requestEnd);
+        }
+        waiting.myMarker.dispose();
+        waiting.myMarker = document.createRangeMarker(requestStart, requestEnd);
+        return;
+      }
+      if (waiting != null && waiting.myDeferred) {
+        // the cycle buffer has trimmed away the lines of the deferred request, the new one takes its place
+        myFilterRequests.remove(waiting);
+        waiting.myMarker.dispose();
+      }
+
+      request = new FilterRequest(document.createRangeMarker(startOffset, endOffset));
+      request.myText.append(document.getCharsSequence(), startOffset, endOffset);
+      myFilterRequests.add(request);
+      myWaitingFilterRequest = request;
+
+      int running = 0;
+      for (FilterRequest each : myFilterRequests) {
+        if (each.myResults == null && !each.myDeferred) running++;
+      }
+      if (running > myMaxFilterRequests) {
+        // the filters are far behind: the request takes all the following lines and is started when some running one finishes
+        request.myDeferred = true;
+        return;
+      }
+    }
+
+    scheduleFilters(request);
+  }
+
+  private void scheduleFilters(@NotNull final FilterRequest request) {
+    myFilterAlarm.addRequest(new Runnable() {
+      @Override
+      public void run() {
+        runFilters(request);
+      }
+    }, 0);
+  }
+
+  private void runFilters(@NotNull FilterRequest request) {
+    final String text;
+    synchronized (LOCK) {
+      if (myWaitingFilterRequest == request) {
+        myWaitingFilterRequest = null;
+      }
+      if (!myFilterRequests.contains(request)) return;
+      text = request.myText.toString();
+    }
+
+    List<Filter.Result> results = Collections.emptyList();
+    try {
+      final Document documentCopy = new DocumentImpl(text, true);
+      documentCopy.setReadOnly(true);
+      final int lastLine = StringUtil.endsWithChar(text, '\n') ? documentCopy.getLineCount() - 2 : documentCopy.getLineCount() - 1;
+      results = ApplicationManager.getApplication().runReadAction(new Computable<List<Filter.Result>>() {
+        @Override
+        public List<Filter.Result> compute() {
+          return EditorHyperlinkSupport.applyFilters(documentCopy, 0, myCustomFilter, myPredefinedMessageFilter, 0, lastLine);
+        }
+      });
+    }
+    finally {
+      FilterRequest deferred = null;
+      synchronized (LOCK) {
+        request.myResults = results;
+        if (myWaitingFilterRequest != null && myWaitingFilterRequest.myDeferred) {
+          deferred = myWaitingFilterRequest;
+          deferred.myDeferred = false;
+        }
+      }
+      if (deferred != null) {
+        scheduleFilters(deferred);
+      }
+      addFlushRequest(new MyFlushRunnable());
+    }
+  }
+
+  private void highlightFilteredHyperlinks() {
+    final List<FilterRequest> filtered = new ArrayList<FilterRequest>();
+    synchronized (LOCK) {
+      for (Iterator<FilterRequest> iterator = myFilterRequests.iterator(); iterator.hasNext(); ) {
+        FilterRequest request = iterator.next();
+        if (request.myResults != null) {
+          filtered.add(request);
+          iterator.remove();
+        }
+      }
+    }
+
+    for (FilterRequest request : filtered) {
+      final RangeMarker marker = request.myMarker;
+      if (marker.isValid()) {
+        // the output is added after the copied lines, and the cycle buffer may have trimmed them from the front
+        myHyperlinks.highlightHyperlinks(request.myResults, marker.getEndOffset() - request.myText.length(), marker.getStartOffset());
+      }
+      marker.dispose();
+    }
+  }
+
+  private void cancelFilterRequests() {
+    myFilterAlarm.cancelAllRequests();
+    synchronized (LOCK) {
+      for (FilterRequest request : myFilterRequests) {
+        request.myMarker.dispose();
+      }
+      myFilterRequests.clear();
+      myWaitingFilterRequest = null;
+    }
+  }
+
+  @TestOnly
+  public void setFilterInBackground(boolean filterInBackground) {
+    myFilterInBackground = filterInBackground;
+  }
+
+  @TestOnly
+  void setMaxFilterRequests(int maxFilterRequests) {
+    myMaxFilterRequests = maxFilterRequests;
+  }
+
   private void runHeavyFilters(int line1, int endLine) {
     final int startLine = Math.max(0, line1);
 
@@ -1771,6 +1944,18 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     }
   }
 
+  private static class FilterRequest {
+    private final StringBuilder myText = new StringBuilder();
+    private RangeMarker myMarker;
+    private List<Filter.Result> myResults;
+    // waits for a running request to finish
+    private boolean myDeferred;
+
+    private FilterRequest(@NotNull RangeMarker marker) {
+      myMarker = marker;
+    }
+  }
+
   private class MyFlushRunnable implements Runnable {
     private volatile boolean myValid = true;
     @Override
@@ -40,14 +40,20 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ChangeListStorageImpl implements ChangeListStorage {
   private static final int VERSION = 5;
   private static final String STORAGE_FILE = "changes";
+  private static final int MAX_RECENT_BLOCKS = 500;
 
   private final File myStorageDir;
   private LocalHistoryStorage myStorage;
   private long myLastId;
+  // the newest change sets, starting from the last record and going back without gaps;
+  // every history query starts from the last record, so these are not read and deserialized again and again
+  private final List<ChangeSetHolder> myRecentBlocks = new ArrayList<ChangeSetHolder>();
 
   private boolean isCompletelyBroken = false;
 
@@ -83,6 +89,7 @@ public class ChangeListStorageImpl implements ChangeListStorage {
 
     myLastId = result.getLastId();
     myStorage = result;
+    myRecentBlocks.clear();
   }
 
   private static long getVFSTimestamp() {
@@ -163,10 +170,26 @@ public class ChangeListStorageImpl implements ChangeListStorage {
 
     int prevId = 0;
     try {
+      // index of the block in myRecentBlocks: -1 stands for the position before the last record
+      int recentIndex = id == -1 ? -1 : findRecentBlock(id);
+      boolean isRecent = id == -1 || recentIndex != -1;
+      if (isRecent && recentIndex + 1 < myRecentBlocks.size()) {
+        ChangeSetHolder result = myRecentBlocks.get(recentIndex + 1);
+        if (id != -1) {
+          recursionGuard.add(id);
+          if (!recursionGuard.add(result.id)) throw new IOException("Recursive records found");
+        }
+        return result;
+      }
+
       prevId = id == -1 ? myStorage.getLastRecord() : doReadPrevSafely(id, recursionGuard);
       if (prevId == 0) return null;
 
-      return doReadBlock(prevId);
+      ChangeSetHolder result = doReadBlock(prevId);
+      if (isRecent && myRecentBlocks.size() < MAX_RECENT_BLOCKS) {
+        myRecentBlocks.add(result);
+      }
+      return result;
     }
     catch (Throwable e) {
       String message = null;
@@ -193,6 +216,13 @@ public class ChangeListStorageImpl implements ChangeListStorage {
     }
   }
 
+  private int findRecentBlock(int id) {
+    for (int i = 0; i < myRecentBlocks.size(); i++) {
+      if (myRecentBlocks.get(i).id == id) return i;
+    }
+    return -1;
+  }
+
   @NotNull
   private ChangeSetHolder doReadBlock(int id) throws IOException {
     DataInputStream in = myStorage.readStream(id);
@@ -208,7 +238,8 @@ public class ChangeListStorageImpl implements ChangeListStorage {
     if (isCompletelyBroken) return;
 
     try {
-      AbstractStorage.StorageDataOutput out = myStorage.writeStream(myStorage.createNextRecord(), true);
+      int id = myStorage.createNextRecord();
+      AbstractStorage.StorageDataOutput out = myStorage.writeStream(id, true);
       try {
         changeSet.write(out);
       }
@@ -217,6 +248,11 @@ public class ChangeListStorageImpl implements ChangeListStorage {
       }
       myStorage.setLastId(myLastId);
       myStorage.force();
+
+      myRecentBlocks.add(0, new ChangeSetHolder(id, changeSet));
+      if (myRecentBlocks.size() > MAX_RECENT_BLOCKS) {
+        myRecentBlocks.remove(myRecentBlocks.size() - 1);
+      }
     }
     catch (IOException e) {
       handleError(e, null);
@@ -234,12 +270,16 @@ public class ChangeListStorageImpl implements ChangeListStorage {
 
       int eachBlockId = firstObsoleteId;
 
+      myRecentBlocks.clear();
       while (eachBlockId != 0) {
         processor.consume(doReadBlock(eachBlockId).changeSet);
         eachBlockId = doReadPrevSafely(eachBlockId, recursionGuard);
       }
       myStorage.deleteRecordsUpTo(firstObsoleteId);
       myStorage.force();
+      if (myStorage.compactIfNecessary()) {
+        myStorage.force();
+      }
     }
     catch (IOException e) {
       handleError(e, null);
@@ -273,8 +273,22 @@ public class EditorHyperlinkSupport {
   }
 
   public void highlightHyperlinks(final Filter customFilter, final Filter predefinedMessageFilter, final int line1, final int endLine) {
-    final Document document = myEditor.getDocument();
+    highlightHyperlinks(applyFilters(myEditor.getDocument(), 0, customFilter, predefinedMessageFilter, line1, endLine), 0, 0);
+  }
 
+  /**
+   * Runs the filters over the given lines. Only the document is read, so it may be done in background over a copy of a part of the text.
+   *
+   * @param documentOffset offset of the document start in the text the result offsets are computed for
+   */
+  @NotNull
+  public static List<Filter.Result> applyFilters(@NotNull Document document,
+                                                 int documentOffset,
+                                                 @NotNull Filter customFilter,
+                                                 @NotNull Filter predefinedMessageFilter,
+                                                 int line1,
+                                                 int endLine) {
+    final List<Filter.Result> results = new ArrayList<Filter.Result>();
     final int startLine = Math.max(0, line1);
 
     for (int line = startLine; line <= endLine; line++) {
@@ -283,18 +297,33 @@ public class EditorHyperlinkSupport {
         endOffset++; // add '\n'
       }
       final String text = getLineText(document, line, true);
-      Filter.Result result = customFilter.applyFilter(text, endOffset);
+      Filter.Result result = customFilter.applyFilter(text, documentOffset + endOffset);
       if (result == null) {
-        result = predefinedMessageFilter.applyFilter(text, endOffset);
+        result = predefinedMessageFilter.applyFilter(text, documentOffset + endOffset);
       }
       if (result != null) {
-        for (Filter.ResultItem resultItem : result.getResultItems()) {
-          if (resultItem.hyperlinkInfo != null) {
-            addHyperlink(resultItem.highlightStartOffset, resultItem.highlightEndOffset, resultItem.highlightAttributes, resultItem.hyperlinkInfo);
-          }
-          else if (resultItem.highlightAttributes != null) {
-            addHighlighter(resultItem.highlightStartOffset, resultItem.highlightEndOffset, resultItem.highlightAttributes);
-          }
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Adds the hyperlinks and highlighters the filters have found; the text they were found in has moved by the given delta since then.
+   *
+   * @param minOffset the text before this offset has been removed since then, so the items found there are skipped
+   */
+  public void highlightHyperlinks(@NotNull List<Filter.Result> results, int offsetDelta, int minOffset) {
+    for (Filter.Result result : results) {
+      for (Filter.ResultItem resultItem : result.getResultItems()) {
+        final int startOffset = resultItem.highlightStartOffset + offsetDelta;
+        final int endOffset = resultItem.highlightEndOffset + offsetDelta;
+        if (startOffset < minOffset) continue;
+        if (resultItem.hyperlinkInfo != null) {
+          addHyperlink(startOffset, endOffset, resultItem.highlightAttributes, resultItem.hyperlinkInfo);
+        }
+        else if (resultItem.highlightAttributes != null) {
+          addHighlighter(startOffset, endOffset, resultItem.highlightAttributes);
         }
       }
     }
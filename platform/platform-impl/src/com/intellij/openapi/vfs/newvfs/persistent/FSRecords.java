@@ -35,13 +35,19 @@ import com.intellij.util.io.*;
 import com.intellij.util.io.DataOutputStream;
 import com.intellij.util.io.storage.*;
 import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TObjectHashingStrategy;
 import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -73,6 +79,8 @@ public class FSRecords implements Forceable {
   private static final byte[] ZEROES = new byte[RECORD_SIZE];
 
   private static final int HEADER_VERSION_OFFSET = 0;
+
+  private static final int MAX_UNLINKED_CONTENT_RECORDS = 100000;
   //private static final int HEADER_RESERVED_4BYTES_OFFSET = 4; // reserved
   private static final int HEADER_GLOBAL_MOD_COUNT_OFFSET = 8;
   private static final int HEADER_CONNECTION_STATUS_OFFSET = 12;
@@ -119,6 +127,23 @@ public class FSRecords implements Forceable {
 
     private static final AttrPageAwareCapacityAllocationPolicy REASONABLY_SMALL = new AttrPageAwareCapacityAllocationPolicy();
 
+    // records of the contents stored by storeUnlinkedContent() (Local History revisions) by the SHA-1 of the content,
+    // so that identical contents share one record instead of being stored again; guarded by myUnlinkedContentLock
+    private static final Object myUnlinkedContentLock = new Object();
+    private static final TObjectIntHashMap<byte[]> myUnlinkedContentRecords =
+      new TObjectIntHashMap<byte[]>(new TObjectHashingStrategy<byte[]>() {
+        @Override
+        public int computeHashCode(byte[] digest) {
+          return Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(byte[] d1, byte[] d2) {
+          return Arrays.equals(d1, d2);
+        }
+      });
+    private static final TIntObjectHashMap<byte[]> myUnlinkedContentDigests = new TIntObjectHashMap<byte[]>();
+
 
     public static void connect() {
       try {
@@ -441,6 +466,10 @@ public class FSRecords implements Forceable {
         Disposer.dispose(myContents);
         myContents = null;
       }
+      synchronized (myUnlinkedContentLock) {
+        myUnlinkedContentRecords.clear();
+        myUnlinkedContentDigests.clear();
+      }
 
       if (myRecords != null) {
         markClean();
@@ -1216,7 +1245,16 @@ public class FSRecords implements Forceable {
 
   public static void releaseContent(int contentId) {
     try {
-      getContentStorage().releaseRecord(contentId);
+      // the lock makes releasing the last reference and sharing the record in storeUnlinkedContent() exclusive
+      synchronized (DbConnection.myUnlinkedContentLock) {
+        getContentStorage().releaseRecord(contentId);
+        if (DbConnection.myUnlinkedContentDigests.containsKey(contentId) && getContentStorage().getRefCount(contentId) == 0) {
+          byte[] digest = DbConnection.myUnlinkedContentDigests.remove(contentId);
+          if (DbConnection.myUnlinkedContentRecords.get(digest) == contentId) {
+            DbConnection.myUnlinkedContentRecords.remove(digest);
+          }
+        }
+      }
     }
     catch (Throwable e) {
       throw DbConnection.handleError(e);
@@ -1247,12 +1285,34 @@ public class FSRecords implements Forceable {
     new ContentOutputStream(fileId, readOnly).writeBytes(bytes, fileId);
   }
 
+  /**
+   * Stores the content which isn't linked to any file. If the same content has already been stored and is still in use,
+   * its record is shared.
+   */
   public static int storeUnlinkedContent(byte[] bytes) {
     try {
+      byte[] digest = getUnlinkedContentDigest(bytes);
+      synchronized (DbConnection.myUnlinkedContentLock) {
+        int existing = DbConnection.myUnlinkedContentRecords.get(digest);
+        if (existing > 0 && getContentStorage().getRefCount(existing) > 0) {
+          getContentStorage().acquireRecord(existing);
+          return existing;
+        }
+      }
+
       int recordId = getContentStorage().acquireNewRecord();
       AbstractStorage.StorageDataOutput output = getContentStorage().writeStream(recordId, true);
       output.write(bytes);
       output.close();
+
+      synchronized (DbConnection.myUnlinkedContentLock) {
+        if (DbConnection.myUnlinkedContentDigests.size() >= MAX_UNLINKED_CONTENT_RECORDS) {
+          DbConnection.myUnlinkedContentRecords.clear();
+          DbConnection.myUnlinkedContentDigests.clear();
+        }
+        DbConnection.myUnlinkedContentRecords.put(digest, recordId);
+        DbConnection.myUnlinkedContentDigests.put(recordId, digest);
+      }
       return recordId;
     }
     catch (IOException e) {
@@ -1260,6 +1320,20 @@ public class FSRecords implements Forceable {
     }
   }
 
+  private static byte[] getUnlinkedContentDigest(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(bytes);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @TestOnly
+  public static int getContentRefCount(int contentId) {
+    return getContentStorage().getRefCount(contentId);
+  }
+
   @NotNull
   public static DataOutputStream writeAttribute(final int fileId, final String attId, boolean fixedSize) {
     return new AttributeOutputStream(fileId, attId, fixedSize);
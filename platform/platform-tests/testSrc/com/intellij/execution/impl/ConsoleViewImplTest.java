@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.impl;
+
+import com.intellij.execution.filters.Filter;
+import com.intellij.execution.filters.HyperlinkInfo;
+import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.ui.UIUtil;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConsoleViewImplTest extends LightPlatformTestCase {
+  private static final String CYCLE_BUFFER_SIZE_PROPERTY = "idea.cycle.buffer.size";
+
+  private final CountDownLatch myFilterStarted = new CountDownLatch(1);
+  private final CountDownLatch myFilterReleased = new CountDownLatch(1);
+  private ConsoleViewImpl myConsole;
+  private String myOldCycleBufferSize;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myOldCycleBufferSize = System.getProperty(CYCLE_BUFFER_SIZE_PROPERTY);
+    System.setProperty(CYCLE_BUFFER_SIZE_PROPERTY, "1"); // 1024 chars
+    myConsole = new ConsoleViewImpl(getProject(), false);
+    myConsole.getComponent();
+    myConsole.setFilterInBackground(true);
+    myConsole.addMessageFilter(new BlockingLinkFilter());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myFilterReleased.countDown();
+    Disposer.dispose(myConsole);
+    myConsole = null;
+    if (myOldCycleBufferSize == null) {
+      System.clearProperty(CYCLE_BUFFER_SIZE_PROPERTY);
+    }
+    else {
+      System.setProperty(CYCLE_BUFFER_SIZE_PROPERTY, myOldCycleBufferSize);
+    }
+    super.tearDown();
+  }
+
+  public void testHyperlinksAreShiftedAfterCycleBufferTrimsFront() throws Exception {
+    // 20 lines of 13 chars
+    print("line ", 20);
+    assertTrue(myFilterStarted.await(10, TimeUnit.SECONDS));
+
+    // 71 lines of 12 chars; the cycle buffer trims 88 chars, in the middle of the 'link' of the 7th line
+    print("out ", 71);
+    Document document = myConsole.getEditor().getDocument();
+    assertTrue(document.getText(), document.getText().startsWith("nk\nline 07 link\n"));
+    assertTrue(myConsole.hasDeferredOutput());
+
+    myFilterReleased.countDown();
+    waitForFilters();
+    assertAllLinksHighlighted();
+  }
+
+  public void testOutputIsFilteredWhenFiltersAreFarBehind() throws Exception {
+    myConsole.setMaxFilterRequests(1);
+    print("line ", 20);
+    assertTrue(myFilterStarted.await(10, TimeUnit.SECONDS));
+
+    // the blocked request is the only one allowed, the following lines wait for it to finish
+    for (int i = 0; i < 10; i++) {
+      print("out ", 5);
+    }
+    assertTrue(myConsole.hasDeferredOutput());
+
+    myFilterReleased.countDown();
+    waitForFilters();
+    assertEquals(70, myConsole.getHyperlinks().getHyperlinks().size());
+    assertAllLinksHighlighted();
+  }
+
+  private void assertAllLinksHighlighted() {
+    Set<Integer> expected = new TreeSet<Integer>();
+    String text = myConsole.getEditor().getDocument().getText();
+    for (int index = text.indexOf("link"); index >= 0; index = text.indexOf("link", index + 1)) {
+      expected.add(index);
+    }
+    Set<Integer> actual = new TreeSet<Integer>();
+    for (RangeHighlighter highlighter : myConsole.getHyperlinks().getHyperlinks().keySet()) {
+      assertEquals("link", text.substring(highlighter.getStartOffset(), highlighter.getEndOffset()));
+      actual.add(highlighter.getStartOffset());
+    }
+    assertEquals(expected, actual);
+  }
+
+  public void testClearCancelsFiltering() throws Exception {
+    print("line ", 20);
+    assertTrue(myFilterStarted.await(10, TimeUnit.SECONDS));
+
+    myConsole.clear();
+    Document document = myConsole.getEditor().getDocument();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (document.getTextLength() > 0) {
+      assertTrue("the console isn't cleared", System.currentTimeMillis() < deadline);
+      UIUtil.dispatchAllInvocationEvents();
+      Thread.sleep(10);
+    }
+    assertFalse(myConsole.hasDeferredOutput());
+
+    myFilterReleased.countDown();
+    myConsole.print("after clear\n", ConsoleViewContentType.NORMAL_OUTPUT);
+    myConsole.flushDeferredText();
+    waitForFilters();
+    assertEquals("after clear\n", document.getText());
+    assertEmpty(myConsole.getHyperlinks().getHyperlinks().keySet());
+  }
+
+  private void print(String prefix, int lineCount) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < lineCount; i++) {
+      text.append(prefix).append(i < 10 ? "0" : "").append(i).append(" link\n");
+    }
+    myConsole.print(text.toString(), ConsoleViewContentType.NORMAL_OUTPUT);
+    myConsole.flushDeferredText();
+  }
+
+  private void waitForFilters() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (myConsole.hasDeferredOutput()) {
+      assertTrue("the filters haven't finished", System.currentTimeMillis() < deadline);
+      UIUtil.dispatchAllInvocationEvents();
+      myConsole.flushDeferredText();
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Marks each 'link' word; the first call waits until the test lets the filters go on.
+   */
+  private class BlockingLinkFilter implements Filter {
+    @Override
+    public Result applyFilter(String line, int entireLength) {
+      if (myFilterStarted.getCount() > 0) {
+        myFilterStarted.countDown();
+        try {
+          myFilterReleased.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      int index = line.indexOf("link");
+      if (index < 0) return null;
+      int start = entireLength - line.length() + index;
+      return new Result(start, start + 4, new HyperlinkInfo() {
+        @Override
+        public void navigate(Project project) {
+        }
+      });
+    }
+  }
+}
@@ -131,6 +131,25 @@ public class LocalHistoryStorageTest extends IntegrationTestCase {
     assertFirstAndLast(records.get(records.size() - MAX / 2), records.get(records.size() - 1));
   }
 
+  public void testCompactingAfterDeletion() throws Exception {
+    createRecord(500000);
+    int r2 = createRecord(500000);
+    int r3 = createRecord(500000);
+
+    assertFalse(myStorage.compactIfNecessary());
+
+    myStorage.deleteRecordsUpTo(r2);
+    assertTrue(myStorage.compactIfNecessary());
+    assertFalse(myStorage.compactIfNecessary());
+
+    assertFirstAndLast(r3, r3);
+    assertRecord(r3, 0, 0);
+
+    int r4 = createRecord();
+    assertRecord(r3, 0, r4);
+    assertRecord(r4, r3, 0);
+  }
+
   private int createRecord() throws IOException {
     return createRecord(1000);
   }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.history.integration;
+
+import com.intellij.history.core.StoredContent;
+import com.intellij.openapi.vfs.newvfs.persistent.FSRecords;
+
+import java.util.Arrays;
+
+public class StoredContentTest extends IntegrationTestCase {
+  public void testIdenticalContentsShareRecord() throws Exception {
+    byte[] bytes = "some content".getBytes();
+    StoredContent c1 = StoredContent.acquireContent(bytes);
+    StoredContent c2 = StoredContent.acquireContent(bytes.clone());
+    StoredContent other = StoredContent.acquireContent("other content".getBytes());
+
+    assertEquals(c1.getContentId(), c2.getContentId());
+    assertFalse(c1.getContentId() == other.getContentId());
+    assertEquals(2, FSRecords.getContentRefCount(c1.getContentId()));
+    assertTrue(Arrays.equals(bytes, c2.getBytes()));
+
+    c2.release();
+    other.release();
+  }
+
+  public void testReleasingSharedRecord() throws Exception {
+    byte[] bytes = "shared content".getBytes();
+    StoredContent c1 = StoredContent.acquireContent(bytes);
+    int id = c1.getContentId();
+    StoredContent c2 = StoredContent.acquireContent(bytes);
+
+    c1.release();
+    assertEquals(1, FSRecords.getContentRefCount(id));
+    assertTrue(Arrays.equals(bytes, new StoredContent(id).getBytes()));
+
+    c2.release();
+    assertEquals(0, FSRecords.getContentRefCount(id));
+
+    // the released record is not shared anymore, the content is stored again
+    StoredContent c3 = StoredContent.acquireContent(bytes);
+    assertEquals(1, FSRecords.getContentRefCount(c3.getContentId()));
+    assertTrue(Arrays.equals(bytes, c3.getBytes()));
+    c3.release();
+  }
+}
@@ -128,6 +128,29 @@ public class PatchCreatorTest extends PatchingTestCase {
     assertNotNull(afterDir2.findChild("f.txt"));
   }
 
+  public void testModificationOfManyFiles() throws Exception {
+    int count = 20;
+    List<VirtualFile> files = new ArrayList<VirtualFile>();
+    for (int i = 0; i < count; i++) {
+      VirtualFile f = myRoot.createChildData(null, "f" + i + ".txt");
+      f.setBinaryContent(("a\nb" + i + "\nc\n").getBytes());
+      files.add(f);
+    }
+    for (VirtualFile f : files) {
+      f.setBinaryContent(new String(f.contentsToByteArray()).replace("b", "B").getBytes());
+    }
+
+    createPatchBetweenRevisions(count, 0);
+    for (int i = 0; i < count; i++) {
+      files.get(i).setBinaryContent(("a\nb" + i + "\nc\n").getBytes());
+    }
+    applyPatch();
+
+    for (int i = 0; i < count; i++) {
+      assertEquals("a\nB" + i + "\nc\n", new String(myRoot.findChild("f" + i + ".txt").contentsToByteArray()));
+    }
+  }
+
   private void createPatchBetweenRevisions(int left, int right) throws Exception {
     createPatchBetweenRevisions(left, right, false);
   }
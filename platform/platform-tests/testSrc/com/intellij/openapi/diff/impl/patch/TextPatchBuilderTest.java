@@ -0,0 +1,158 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.diff.impl.patch;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.BeforeAfter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TextPatchBuilderTest extends LightPlatformTestCase {
+  private static final int COUNT = 20;
+
+  public void testManyChangesAreBuiltOnPooledThreads() throws Exception {
+    final Set<Thread> loadingThreads = Collections.synchronizedSet(new HashSet<Thread>());
+    final List<BeforeAfter<AirContentRevision>> changes = new ArrayList<BeforeAfter<AirContentRevision>>();
+    for (int i = 0; i < COUNT; i++) {
+      changes.add(new BeforeAfter<AirContentRevision>(new TestRevision("f" + i + ".txt", "a\nb" + i + "\nc\n", "1", loadingThreads),
+                                                      new TestRevision("f" + i + ".txt", "a\nB" + i + "\nc\n", "2", loadingThreads)));
+    }
+
+    final Thread[] callingThread = new Thread[1];
+    List<FilePatch> patches = buildOnPooledThread(changes, callingThread);
+
+    assertFalse(loadingThreads.isEmpty());
+    assertFalse("the contents are loaded in parallel, not by the calling thread", loadingThreads.contains(callingThread[0]));
+    assertEquals(COUNT, patches.size());
+    for (int i = 0; i < COUNT; i++) {
+      TextFilePatch patch = (TextFilePatch)patches.get(i);
+      assertEquals("the order of the changes is kept", "f" + i + ".txt", patch.getBeforeName());
+      assertEquals(1, patch.getHunks().size());
+      List<String> added = new ArrayList<String>();
+      for (PatchLine line : patch.getHunks().get(0).getLines()) {
+        if (line.getType() == PatchLine.Type.ADD) {
+          added.add(line.getText());
+        }
+      }
+      assertEquals(Collections.singletonList("B" + i), added);
+    }
+  }
+
+  public void testFailureOnPooledThreadIsRethrown() throws Exception {
+    final List<BeforeAfter<AirContentRevision>> changes = new ArrayList<BeforeAfter<AirContentRevision>>();
+    for (int i = 0; i < COUNT; i++) {
+      String before = i == COUNT / 2 ? null : "a\n";
+      changes.add(new BeforeAfter<AirContentRevision>(new TestRevision("f" + i + ".txt", before, "1", null),
+                                                      new TestRevision("f" + i + ".txt", "b\n", "2", null)));
+    }
+
+    try {
+      buildOnPooledThread(changes, new Thread[1]);
+      fail("VcsException expected");
+    }
+    catch (ExecutionException e) {
+      assertInstanceOf(e.getCause(), VcsException.class);
+      assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("f" + COUNT / 2 + ".txt"));
+    }
+  }
+
+  // the patches are built in parallel only outside the read action
+  private static List<FilePatch> buildOnPooledThread(final List<BeforeAfter<AirContentRevision>> changes, final Thread[] callingThread)
+    throws Exception {
+    Future<List<FilePatch>> future = ApplicationManager.getApplication().executeOnPooledThread(new Callable<List<FilePatch>>() {
+      @Override
+      public List<FilePatch> call() throws VcsException {
+        callingThread[0] = Thread.currentThread();
+        assertFalse(ApplicationManager.getApplication().isReadAccessAllowed());
+        return TextPatchBuilder.buildPatch(changes, "/base", false, true, null, false);
+      }
+    });
+    return future.get(30, TimeUnit.SECONDS);
+  }
+
+  private static class TestRevision implements AirContentRevision {
+    private final String myPath;
+    private final String myContent;
+    private final String myRevisionNumber;
+    @Nullable private final Set<Thread> myLoadingThreads;
+
+    private TestRevision(String name, @Nullable String content, String revisionNumber, @Nullable Set<Thread> loadingThreads) {
+      myPath = "/base/" + name;
+      myContent = content;
+      myRevisionNumber = revisionNumber;
+      myLoadingThreads = loadingThreads;
+    }
+
+    @Override
+    public boolean isBinary() {
+      return false;
+    }
+
+    @Override
+    public String getContentAsString() {
+      if (myLoadingThreads != null) {
+        myLoadingThreads.add(Thread.currentThread());
+      }
+      return myContent;
+    }
+
+    @Override
+    public byte[] getContentAsBytes() {
+      return myContent == null ? null : myContent.getBytes();
+    }
+
+    @Override
+    public String getRevisionNumber() {
+      return myRevisionNumber;
+    }
+
+    @NotNull
+    @Override
+    public PathDescription getPath() {
+      return new PathDescription() {
+        @NotNull
+        @Override
+        public String getPath() {
+          return myPath;
+        }
+
+        @Override
+        public boolean isDirectory() {
+          return false;
+        }
+
+        @Override
+        public long lastModified() {
+          return 0;
+        }
+      };
+    }
+
+    @Override
+    public Charset getCharset() {
+      return null;
+    }
+  }
+}
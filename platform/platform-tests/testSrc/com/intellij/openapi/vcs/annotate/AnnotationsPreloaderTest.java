@@ -0,0 +1,316 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.annotate;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.actions.VcsContextFactory;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vcs.changes.committed.MockAbstractVcs;
+import com.intellij.openapi.vcs.diff.DiffProvider;
+import com.intellij.openapi.vcs.diff.ItemLatestState;
+import com.intellij.openapi.vcs.history.*;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.testFramework.LightVirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class AnnotationsPreloaderTest extends LightPlatformTestCase {
+  public void testQueueIsBounded() throws Exception {
+    final List<Runnable> workers = new ArrayList<Runnable>();
+    Executor executor = new Executor() {
+      @Override
+      public void execute(@NotNull Runnable command) {
+        workers.add(command);
+      }
+    };
+    AnnotationsPreloader preloader = new AnnotationsPreloader(getProject(), ProjectLevelVcsManager.getInstance(getProject()),
+                                                              getProject().getMessageBus().connect(getTestRootDisposable()), executor);
+    List<VirtualFile> files = new ArrayList<VirtualFile>();
+    for (int i = 0; i < AnnotationsPreloader.MAX_QUEUE_SIZE + 5; i++) {
+      VirtualFile file = new LightVirtualFile("file" + i + ".txt", "text");
+      files.add(file);
+      preloader.schedule(file);
+    }
+    // reopening a file moves it to the end of the queue
+    preloader.schedule(files.get(files.size() - AnnotationsPreloader.MAX_QUEUE_SIZE));
+
+    List<VirtualFile> expected = new ArrayList<VirtualFile>(files.subList(files.size() - AnnotationsPreloader.MAX_QUEUE_SIZE + 1,
+                                                                          files.size()));
+    expected.add(files.get(files.size() - AnnotationsPreloader.MAX_QUEUE_SIZE));
+    assertEquals(expected, preloader.getQueuedFiles());
+    assertEquals(1, workers.size());
+
+    workers.get(0).run();
+    assertEmpty(preloader.getQueuedFiles());
+
+    preloader.schedule(files.get(0));
+    assertEquals(2, workers.size());
+  }
+
+  public void testPreloadDoesNotLoadHistory() throws Exception {
+    final VirtualFile file = new LightVirtualFile("a.txt", "text");
+    final TestAnnotationProvider annotationProvider = new TestAnnotationProvider(getProject(), file);
+    final TestHistoryProvider historyProvider = new TestHistoryProvider();
+    MockAbstractVcs vcs = new MockAbstractVcs(getProject()) {
+      @Override
+      public AnnotationProvider getAnnotationProvider() {
+        return annotationProvider;
+      }
+
+      @Override
+      public VcsHistoryProvider getVcsHistoryProvider() {
+        return historyProvider;
+      }
+    };
+    vcs.setDiffProvider(new TestDiffProvider());
+    VcsHistoryCache cache = new VcsHistoryCache();
+    VcsAnnotationCachedProxy proxy = new VcsAnnotationCachedProxy(vcs, cache);
+
+    proxy.preload(file);
+    FilePath path = VcsContextFactory.SERVICE.getInstance().createFilePathOn(file);
+    assertNotNull(cache.get(path, vcs.getKeyInstanceMethod(), TestDiffProvider.CURRENT));
+    assertEquals(1, annotationProvider.myAnnotated);
+    assertEquals(1, annotationProvider.myDisposed);
+    assertEquals(0, historyProvider.myRequests);
+
+    proxy.preload(file);
+    assertEquals("a cached annotation is not computed again", 1, annotationProvider.myAnnotated);
+    assertEquals(0, historyProvider.myRequests);
+  }
+
+  private static class TestAnnotationProvider implements AnnotationProvider, VcsCacheableAnnotationProvider {
+    private final Project myProject;
+    private final VirtualFile myFile;
+    private int myAnnotated;
+    private int myDisposed;
+
+    TestAnnotationProvider(Project project, VirtualFile file) {
+      myProject = project;
+      myFile = file;
+    }
+
+    @Override
+    public FileAnnotation annotate(VirtualFile file) throws VcsException {
+      myAnnotated++;
+      return new TestFileAnnotation();
+    }
+
+    @Override
+    public FileAnnotation annotate(VirtualFile file, VcsFileRevision revision) throws VcsException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isAnnotationValid(VcsFileRevision rev) {
+      return true;
+    }
+
+    @Override
+    public VcsAnnotation createCacheable(FileAnnotation fileAnnotation) {
+      VcsUsualLineAnnotationData data = new VcsUsualLineAnnotationData(1);
+      data.put(0, TestDiffProvider.CURRENT);
+      return new VcsAnnotation(VcsContextFactory.SERVICE.getInstance().createFilePathOn(myFile), data, TestDiffProvider.CURRENT);
+    }
+
+    @Nullable
+    @Override
+    public FileAnnotation restore(VcsAnnotation vcsAnnotation, VcsAbstractHistorySession session, String annotatedContent,
+                                  boolean forCurrentRevision, VcsRevisionNumber revisionNumber) {
+      throw new UnsupportedOperationException();
+    }
+
+    private class TestFileAnnotation extends FileAnnotation {
+      TestFileAnnotation() {
+        super(myProject);
+      }
+
+      @Override
+      public void dispose() {
+        myDisposed++;
+      }
+
+      @Override
+      public LineAnnotationAspect[] getAspects() {
+        return new LineAnnotationAspect[0];
+      }
+
+      @Override
+      public String getToolTip(int lineNumber) {
+        return null;
+      }
+
+      @Override
+      public String getAnnotatedContent() {
+        return "text";
+      }
+
+      @Override
+      public VcsRevisionNumber getLineRevisionNumber(int lineNumber) {
+        return TestDiffProvider.CURRENT;
+      }
+
+      @Override
+      public Date getLineDate(int lineNumber) {
+        return null;
+      }
+
+      @Override
+      public VcsRevisionNumber originalRevision(int lineNumber) {
+        return TestDiffProvider.CURRENT;
+      }
+
+      @Override
+      public VcsRevisionNumber getCurrentRevision() {
+        return TestDiffProvider.CURRENT;
+      }
+
+      @Override
+      public List<VcsFileRevision> getRevisions() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public boolean revisionsNotEmpty() {
+        return false;
+      }
+
+      @Override
+      public AnnotationSourceSwitcher getAnnotationSourceSwitcher() {
+        return null;
+      }
+
+      @Override
+      public int getLineCount() {
+        return 1;
+      }
+
+      @Override
+      public VirtualFile getFile() {
+        return myFile;
+      }
+    }
+  }
+
+  private static class TestHistoryProvider
+    implements VcsHistoryProvider, VcsCacheableHistorySessionFactory<Serializable, VcsAbstractHistorySession> {
+    private int myRequests;
+
+    @Override
+    public VcsHistorySession createSessionFor(FilePath filePath) throws VcsException {
+      myRequests++;
+      return null;
+    }
+
+    @Override
+    public void reportAppendableHistory(FilePath path, VcsAppendableHistorySessionPartner partner) throws VcsException {
+      myRequests++;
+    }
+
+    @Override
+    public VcsDependentHistoryComponents getUICustomization(VcsHistorySession session, JComponent forShortcutRegistration) {
+      return null;
+    }
+
+    @Override
+    public AnAction[] getAdditionalActions(Runnable refresher) {
+      return AnAction.EMPTY_ARRAY;
+    }
+
+    @Override
+    public boolean isDateOmittable() {
+      return false;
+    }
+
+    @Override
+    public String getHelpId() {
+      return null;
+    }
+
+    @Override
+    public boolean supportsHistoryForDirectories() {
+      return false;
+    }
+
+    @Override
+    public DiffFromHistoryHandler getHistoryDiffHandler() {
+      return null;
+    }
+
+    @Override
+    public boolean canShowHistoryFor(@NotNull VirtualFile file) {
+      return true;
+    }
+
+    @Override
+    public FilePath getUsedFilePath(VcsAbstractHistorySession session) {
+      return null;
+    }
+
+    @Override
+    public Serializable getAddinionallyCachedData(VcsAbstractHistorySession session) {
+      return null;
+    }
+
+    @Override
+    public VcsAbstractHistorySession createFromCachedData(@Nullable Serializable cacheable, @NotNull List<VcsFileRevision> revisions,
+                                                          @NotNull FilePath filePath, @Nullable VcsRevisionNumber currentRevision) {
+      myRequests++;
+      return null;
+    }
+  }
+
+  private static class TestDiffProvider implements DiffProvider {
+    private static final VcsRevisionNumber CURRENT = new VcsRevisionNumber.Int(1);
+
+    @Override
+    public VcsRevisionNumber getCurrentRevision(VirtualFile file) {
+      return CURRENT;
+    }
+
+    @Override
+    public ItemLatestState getLastRevision(VirtualFile virtualFile) {
+      return null;
+    }
+
+    @Override
+    public ItemLatestState getLastRevision(FilePath filePath) {
+      return null;
+    }
+
+    @Override
+    public ContentRevision createFileContent(VcsRevisionNumber revisionNumber, VirtualFile selectedFile) {
+      return null;
+    }
+
+    @Override
+    public VcsRevisionNumber getLatestCommittedRevision(VirtualFile vcsRoot) {
+      return null;
+    }
+  }
+}
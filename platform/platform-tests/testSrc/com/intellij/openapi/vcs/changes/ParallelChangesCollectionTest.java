@@ -0,0 +1,286 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.vcs.*;
+import com.intellij.openapi.vcs.changes.committed.MockAbstractVcs;
+import com.intellij.openapi.vcs.impl.ProjectLevelVcsManagerImpl;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.TempDirTestFixture;
+import com.intellij.testFramework.vcs.AbstractJunitVcsTestCase;
+import com.intellij.testFramework.vcs.MockChangeListManagerGate;
+import com.intellij.testFramework.vcs.MockChangelistBuilder;
+import com.intellij.util.ui.UIUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks collecting changes of several roots of a VCS in parallel: splitting the dirty scope by roots, recording and replaying
+ * the changes reported by the providers, and updating the roots of a VCS which doesn't allow it in the same pass.
+ */
+public class ParallelChangesCollectionTest extends AbstractJunitVcsTestCase {
+  private TempDirTestFixture myTempDirFixture;
+  private MockAbstractVcs myParallelVcs;
+  private MockAbstractVcs mySequentialVcs;
+  private VirtualFile myRoot1;
+  private VirtualFile myRoot2;
+  private VirtualFile myNestedRoot;
+  private VirtualFile mySequentialRoot;
+  private VirtualFile myFile1;
+  private VirtualFile myFile2;
+  private VirtualFile myNestedFile;
+  private VirtualFile mySequentialFile;
+
+  @Before
+  public void setUp() throws Exception {
+    UIUtil.invokeAndWaitIfNeeded(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          myTempDirFixture = IdeaTestFixtureFactory.getFixtureFactory().createTempDirTestFixture();
+          myTempDirFixture.setUp();
+          final File projectRoot = new File(myTempDirFixture.getTempDirPath(), "project");
+          assertTrue(projectRoot.mkdir());
+          initProject(projectRoot, getTestName());
+
+          myRoot1 = createDirInCommand(myWorkingCopyDir, "root1");
+          myRoot2 = createDirInCommand(myWorkingCopyDir, "root2");
+          myNestedRoot = createDirInCommand(myRoot1, "nested");
+          mySequentialRoot = createDirInCommand(myWorkingCopyDir, "sequential");
+          myFile1 = createFileInCommand(myRoot1, "a.txt", "a");
+          myFile2 = createFileInCommand(myRoot2, "b.txt", "b");
+          myNestedFile = createFileInCommand(myNestedRoot, "c.txt", "c");
+          mySequentialFile = createFileInCommand(mySequentialRoot, "d.txt", "d");
+
+          myParallelVcs = new MockAbstractVcs(myProject, "parallel");
+          myParallelVcs.setAllowsParallelChangesCollection(true);
+          myParallelVcs.setAllowNestedRoots(true);
+          mySequentialVcs = new MockAbstractVcs(myProject, "sequential");
+          final ProjectLevelVcsManagerImpl vcsManager = (ProjectLevelVcsManagerImpl)ProjectLevelVcsManager.getInstance(myProject);
+          vcsManager.registerVcs(myParallelVcs);
+          vcsManager.registerVcs(mySequentialVcs);
+          setMappings(false);
+        }
+        catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    UIUtil.invokeAndWaitIfNeeded(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          tearDownProject();
+          if (myTempDirFixture != null) {
+            myTempDirFixture.tearDown();
+            myTempDirFixture = null;
+          }
+        }
+        catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testSplitByRoots() {
+    final VcsDirtyScopeImpl scope = new VcsDirtyScopeImpl(myParallelVcs, myProject);
+    scope.addDirtyFile(new FilePathImpl(myFile1));
+    scope.addDirtyDirRecursively(new FilePathImpl(myRoot2));
+
+    final List<VcsDirtyScopeImpl> split = scope.splitByRoots();
+    assertEquals(2, split.size());
+    final VcsDirtyScopeImpl scope1 = split.get(0).belongsTo(new FilePathImpl(myFile1)) ? split.get(0) : split.get(1);
+    final VcsDirtyScopeImpl scope2 = scope1 == split.get(0) ? split.get(1) : split.get(0);
+    assertEquals(Collections.singleton(new FilePathImpl(myFile1)), scope1.getDirtyFilesNoExpand());
+    assertTrue(scope1.getRecursivelyDirtyDirectories().isEmpty());
+    assertFalse(scope1.belongsTo(new FilePathImpl(myFile2)));
+    assertEquals(Collections.singleton(new FilePathImpl(myRoot2)), scope2.getRecursivelyDirtyDirectories());
+    assertTrue(scope2.belongsTo(new FilePathImpl(myFile2)));
+    assertFalse(scope2.belongsTo(new FilePathImpl(myFile1)));
+    for (VcsDirtyScopeImpl part : split) {
+      assertSame(myParallelVcs, part.getVcs());
+      assertEquals(1, part.getAffectedContentRoots().size());
+    }
+
+    final VcsDirtyScopeImpl single = new VcsDirtyScopeImpl(myParallelVcs, myProject);
+    single.addDirtyFile(new FilePathImpl(myFile2));
+    assertEquals(Collections.singletonList(single), single.splitByRoots());
+  }
+
+  @Test
+  public void testNestedRootsAreNotSplit() {
+    UIUtil.invokeAndWaitIfNeeded(new Runnable() {
+      @Override
+      public void run() {
+        setMappings(true);
+      }
+    });
+    final VcsDirtyScopeImpl scope = new VcsDirtyScopeImpl(myParallelVcs, myProject);
+    scope.addDirtyDirRecursively(new FilePathImpl(myRoot1));
+    scope.addDirtyFile(new FilePathImpl(myNestedFile));
+    assertEquals(Collections.singletonList(scope), scope.splitByRoots());
+  }
+
+  @Test
+  public void testDeferredBuilderReplaysInOrder() {
+    final VcsDirtyScopeImpl scope = new VcsDirtyScopeImpl(myParallelVcs, myProject);
+    scope.addDirtyDirRecursively(new FilePathImpl(myRoot1));
+    final DeferredChangelistBuilder builder = new DeferredChangelistBuilder(scope);
+    final ChangeListManagerGate gate =
+      builder.createGate(new MockChangeListManagerGate(ChangeListManager.getInstance(myProject)), new Object());
+
+    final Change change1 = createChange(myFile1);
+    final Change nestedChange = createChange(myNestedFile);
+    builder.processChange(change1, myParallelVcs.getKeyInstanceMethod());
+    builder.processChange(nestedChange, myParallelVcs.getKeyInstanceMethod());
+    builder.processUnversionedFile(myFile2);
+    assertEquals(FileStatus.ADDED, gate.getStatus(myFile1));
+    assertEquals(FileStatus.ADDED, gate.getStatus(new File(myNestedFile.getPath())));
+    assertNull("files out of the scope are asked from the change lists", gate.getStatus(mySequentialFile));
+
+    builder.removeRegisteredChangeFor(new FilePathImpl(myFile1));
+    assertNull(gate.getStatus(myFile1));
+
+    final MockChangelistBuilder target = new MockChangelistBuilder();
+    builder.replay(target);
+    assertEquals(Collections.singletonList(nestedChange), target.getChanges());
+    assertEquals(Collections.singletonList(myFile2), target.getUnversionedFiles());
+
+    // the calls recorded after a replay are passed by the next one together with the earlier ones
+    builder.processLocallyDeletedFile(new FilePathImpl(myRoot1, "deleted.txt", false));
+    final MockChangelistBuilder second = new MockChangelistBuilder();
+    builder.replay(second);
+    assertEquals(Collections.singletonList(nestedChange), second.getChanges());
+    assertEquals(1, second.getLocallyDeletedFiles().size());
+  }
+
+  @Test
+  public void testVcsWithoutParallelCollectionIsUpdatedInTheSamePass() throws Exception {
+    final List<Integer> parallelScopeRoots = Collections.synchronizedList(new ArrayList<Integer>());
+    final List<Long> parallelGateCalls = Collections.synchronizedList(new ArrayList<Long>());
+    final long[] sequentialInterval = new long[2];
+    final CountDownLatch sequentialStarted = new CountDownLatch(1);
+
+    myParallelVcs.setChangeProvider(new ReportingChangeProvider(myParallelVcs, myFile1, myFile2, myNestedFile) {
+      @Override
+      protected void beforeReporting(VcsDirtyScope scope, ChangeListManagerGate gate) throws InterruptedException {
+        parallelScopeRoots.add(scope.getAffectedContentRoots().size());
+        // the order of scopes is not defined, so don't wait for the sequential provider too long if it is updated later
+        sequentialStarted.await(2, TimeUnit.SECONDS);
+        gate.getListsCopy();
+        parallelGateCalls.add(System.nanoTime());
+      }
+    });
+    mySequentialVcs.setChangeProvider(new ReportingChangeProvider(mySequentialVcs, mySequentialFile) {
+      @Override
+      protected void beforeReporting(VcsDirtyScope scope, ChangeListManagerGate gate) throws InterruptedException {
+        sequentialInterval[0] = System.nanoTime();
+        sequentialStarted.countDown();
+        // the change lists are modified through the gate without a lock here, so the parallel providers must wait
+        gate.findOrCreateList("sequential", null);
+        Thread.sleep(300);
+        sequentialInterval[1] = System.nanoTime();
+      }
+    });
+
+    final ChangeListManagerImpl changeListManager = ChangeListManagerImpl.getInstanceImpl(myProject);
+    VcsDirtyScopeManager.getInstance(myProject).markEverythingDirty();
+    changeListManager.ensureUpToDate(false);
+
+    final Set<VirtualFile> changedFiles = new HashSet<VirtualFile>();
+    for (Change change : changeListManager.getDefaultChangeList().getChanges()) {
+      changedFiles.add(change.getVirtualFile());
+    }
+    assertEquals(new HashSet<VirtualFile>(Arrays.asList(myFile1, myFile2, myNestedFile, mySequentialFile)), changedFiles);
+    assertNotNull(changeListManager.findChangeList("sequential"));
+
+    assertEquals(Arrays.asList(1, 1), parallelScopeRoots);
+    for (long call : parallelGateCalls) {
+      assertFalse("a parallel provider used the gate while the sequential one was running",
+                  call > sequentialInterval[0] && call < sequentialInterval[1]);
+    }
+  }
+
+  private void setMappings(boolean withNestedRoot) {
+    final List<VcsDirectoryMapping> mappings = new ArrayList<VcsDirectoryMapping>();
+    mappings.add(new VcsDirectoryMapping(myRoot1.getPath(), myParallelVcs.getName()));
+    mappings.add(new VcsDirectoryMapping(myRoot2.getPath(), myParallelVcs.getName()));
+    if (withNestedRoot) {
+      mappings.add(new VcsDirectoryMapping(myNestedRoot.getPath(), myParallelVcs.getName()));
+    }
+    mappings.add(new VcsDirectoryMapping(mySequentialRoot.getPath(), mySequentialVcs.getName()));
+    final ProjectLevelVcsManager vcsManager = ProjectLevelVcsManager.getInstance(myProject);
+    vcsManager.setDirectoryMappings(mappings);
+    vcsManager.updateActiveVcss();
+  }
+
+  private static Change createChange(VirtualFile file) {
+    return new Change(null, new CurrentContentRevision(new FilePathImpl(file)));
+  }
+
+  private abstract static class ReportingChangeProvider implements ChangeProvider {
+    private final AbstractVcs myVcs;
+    private final VirtualFile[] myFiles;
+
+    ReportingChangeProvider(AbstractVcs vcs, VirtualFile... files) {
+      myVcs = vcs;
+      myFiles = files;
+    }
+
+    protected abstract void beforeReporting(VcsDirtyScope scope, ChangeListManagerGate gate) throws InterruptedException;
+
+    @Override
+    public void getChanges(VcsDirtyScope dirtyScope, ChangelistBuilder builder, ProgressIndicator progress,
+                           ChangeListManagerGate addGate) throws VcsException {
+      try {
+        beforeReporting(dirtyScope, addGate);
+      }
+      catch (InterruptedException e) {
+        throw new VcsException(e);
+      }
+      for (VirtualFile file : myFiles) {
+        if (dirtyScope.belongsTo(new FilePathImpl(file))) {
+          builder.processChange(createChange(file), myVcs.getKeyInstanceMethod());
+        }
+      }
+    }
+
+    @Override
+    public boolean isModifiedDocumentTrackingRequired() {
+      return false;
+    }
+
+    @Override
+    public void doCleanup(List<VirtualFile> files) {
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.ex;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.containers.ContainerUtil;
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Replays random edits through the incremental range update of {@link LineStatusTracker} and checks the result against
+ * a full diff of the texts.
+ */
+public class LineStatusTrackerRangesTest extends TestCase {
+  private static final int EDITS = 2000;
+
+  private final Random myRandom = new Random(239);
+  private int myFreshLineCounter;
+
+  private String myUpToDate;
+  private String myText;
+  private List<Range> myRanges;
+  private Set<Range> myRangesToRefine;
+
+  public void testLineEditsMatchFullDiff() throws Exception {
+    doTest(Integer.MAX_VALUE, true);
+  }
+
+  public void testLineEditsWithBackgroundRefinementMatchFullDiff() throws Exception {
+    doTest(0, true);
+  }
+
+  public void testCharEditsProduceValidRanges() throws Exception {
+    doTest(Integer.MAX_VALUE, false);
+  }
+
+  public void testCharEditsWithBackgroundRefinementProduceValidRanges() throws Exception {
+    doTest(0, false);
+  }
+
+  private void doTest(int syncLimit, boolean lineEdits) throws Exception {
+    StringBuilder upToDate = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      if (i > 0) upToDate.append('\n');
+      upToDate.append(lineEdits ? "line" + i : String.valueOf((char)('a' + myRandom.nextInt(3))));
+    }
+    myUpToDate = upToDate.toString();
+    myText = myUpToDate;
+    myRangesToRefine = ContainerUtil.newIdentityTroveSet();
+    myRanges = LineStatusTracker.buildRanges(getLines(myText), getLines(myUpToDate), 0, 0, syncLimit, myRangesToRefine);
+
+    for (int i = 0; i < EDITS; i++) {
+      if (lineEdits) {
+        doRandomLineEdit(syncLimit);
+      }
+      else {
+        doRandomCharEdit(syncLimit);
+      }
+      String message = "Edit #" + i + "\nText:\n" + myText + "\nRanges: " + myRanges;
+      checkRangesValid(message);
+
+      if (i % 10 == 0) {
+        refine();
+        checkRangesValid(message);
+        assertTrue(message, myRangesToRefine.isEmpty());
+        if (lineEdits) {
+          assertEquals(message, new RangesBuilder(getLines(myText), getLines(myUpToDate), 0, 0).getRanges(), myRanges);
+        }
+      }
+    }
+  }
+
+  private void doRandomLineEdit(int syncLimit) throws Exception {
+    // the last line is never touched, so whole lines are replaced with text ending with a line separator
+    int lineCount = StringUtil.countNewLines(myText);
+    int startLine = myRandom.nextInt(lineCount + 1);
+    int endLine = Math.min(lineCount, startLine + myRandom.nextInt(5));
+    StringBuilder replacement = new StringBuilder();
+    int inserted = myRandom.nextInt(4);
+    for (int i = 0; i < inserted; i++) {
+      replacement.append("fresh").append(myFreshLineCounter++).append('\n');
+    }
+    doEdit(getLineStart(myText, startLine), getLineStart(myText, endLine), replacement.toString(), syncLimit);
+  }
+
+  private void doRandomCharEdit(int syncLimit) throws Exception {
+    int start = myRandom.nextInt(myText.length() + 1);
+    int end = Math.min(myText.length(), start + myRandom.nextInt(6));
+    StringBuilder replacement = new StringBuilder();
+    int inserted = myRandom.nextInt(5);
+    for (int i = 0; i < inserted; i++) {
+      replacement.append("ab\n".charAt(myRandom.nextInt(3)));
+    }
+    doEdit(start, end, replacement.toString(), syncLimit);
+  }
+
+  /**
+   * Mirrors what the document listener of the tracker does for a replacement of [start, end) with the given text.
+   */
+  private void doEdit(int start, int end, String replacement, int syncLimit) throws Exception {
+    String oldFragment = myText.substring(start, end);
+    int firstChangedLine = getLineNumber(myText, start);
+    int lastChangedLine = getLineNumber(myText, end);
+    if (StringUtil.endsWithChar(oldFragment, '\n')) lastChangedLine++;
+    int linesBeforeChange = getLineNumber(myText, end) - getLineNumber(myText, start);
+    int[] window = LineStatusTracker.getChangedWindow(myRanges, firstChangedLine, lastChangedLine);
+
+    myText = myText.substring(0, start) + replacement + myText.substring(end);
+
+    int linesAfterChange = getLineNumber(myText, start + replacement.length()) - getLineNumber(myText, start);
+    int linesShift = linesAfterChange - linesBeforeChange;
+    List<String> lines = getLines(getLines(myText), window[0], window[1] + linesShift);
+    List<String> uLines = getLines(getLines(myUpToDate), window[2], window[3]);
+    List<Range> newChangedRanges = LineStatusTracker.buildRanges(lines, uLines, window[0], window[2], syncLimit, myRangesToRefine);
+    List<Range> newRanges = LineStatusTracker.updateRanges(myRanges, window[0], window[1], linesShift, newChangedRanges, myRangesToRefine);
+    if (newRanges != null) {
+      myRanges = newRanges;
+    }
+  }
+
+  private void refine() throws Exception {
+    List<String> lines = getLines(myText);
+    List<String> uLines = getLines(myUpToDate);
+    Map<Range, List<Range>> refined = ContainerUtil.newIdentityHashMap();
+    for (Range range : myRangesToRefine) {
+      refined.put(range, new RangesBuilder(lines.subList(range.getOffset1(), range.getOffset2()),
+                                           uLines.subList(range.getUOffset1(), range.getUOffset2()),
+                                           range.getOffset1(), range.getUOffset1()).getRanges());
+    }
+    myRanges = LineStatusTracker.applyRefinedRanges(myRanges, refined, myRangesToRefine);
+  }
+
+  /**
+   * Checks that the ranges are ordered and that the lines outside of them are the same in both texts.
+   */
+  private void checkRangesValid(String message) {
+    List<String> lines = getLines(myText);
+    List<String> uLines = getLines(myUpToDate);
+    int line = 0;
+    int uLine = 0;
+    for (Range range : myRanges) {
+      assertTrue(message, range.getOffset1() <= range.getOffset2());
+      assertTrue(message, range.getUOffset1() <= range.getUOffset2());
+      assertTrue(message, range.getOffset1() - line == range.getUOffset1() - uLine);
+      assertTrue(message, range.getOffset1() >= line);
+      assertEquals(message, uLines.subList(uLine, range.getUOffset1()), lines.subList(line, range.getOffset1()));
+      line = range.getOffset2();
+      uLine = range.getUOffset2();
+    }
+    assertEquals(message, uLines.subList(uLine, uLines.size()), lines.subList(line, lines.size()));
+  }
+
+  private static List<String> getLines(String text) {
+    return Arrays.asList(text.split("\n", -1));
+  }
+
+  private static List<String> getLines(List<String> lines, int from, int to) {
+    return new ArrayList<String>(lines.subList(Math.min(from, lines.size()), Math.min(to + 1, lines.size())));
+  }
+
+  private static int getLineNumber(String text, int offset) {
+    return StringUtil.countNewLines(text.substring(0, offset));
+  }
+
+  private static int getLineStart(String text, int line) {
+    int offset = 0;
+    for (int i = 0; i < line; i++) {
+      offset = text.indexOf('\n', offset) + 1;
+    }
+    return offset;
+  }
+}
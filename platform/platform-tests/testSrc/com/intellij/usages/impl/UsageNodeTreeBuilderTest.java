@@ -27,6 +27,8 @@ import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
 
 /**
  * @author max
@@ -76,6 +78,58 @@ public class UsageNodeTreeBuilderTest extends LightPlatformTestCase {
     assertEquals("[Even[1[0, 2], 2[12, 14], 3[102]], Odd[1[1, 3], 2[13, 15], 3[101, 103, 105]], 5[10003, 10001, 10002]]", groupNode.toString());
   }
 
+  public void testNodeChangesAreCoalescedWhileDeferred() throws Exception {
+    int[] indices = {0, 1, 2, 3, 12, 13, 14, 15, 101, 103};
+    UsageGroupingRule[] rules = {new OddEvenGroupingRule(), new LogGroupingRule()};
+    int[] immediateChanges = new int[1];
+    int[] deferredChanges = new int[1];
+    GroupNode immediate = buildUsageTreeInOneBatch(indices, rules, false, immediateChanges);
+    GroupNode deferred = buildUsageTreeInOneBatch(indices, rules, true, deferredChanges);
+
+    assertEquals(immediate.toString(), deferred.toString());
+    assertEquals(indices.length * 3, immediateChanges[0]);
+    // root, Even, Odd and the five log groups, each changed once
+    assertEquals(8, deferredChanges[0]);
+  }
+
+  private static GroupNode buildUsageTreeInOneBatch(int[] indices, UsageGroupingRule[] rules, boolean deferChanges, final int[] changeCount) {
+    UsageViewTreeModelBuilder model = new UsageViewTreeModelBuilder(new UsageViewPresentation(), new UsageTarget[0]);
+    GroupNode rootNode = new GroupNode(null, 0, model);
+    model.setRoot(rootNode);
+    model.addTreeModelListener(new TreeModelListener() {
+      @Override
+      public void treeNodesChanged(TreeModelEvent e) {
+        changeCount[0]++;
+      }
+
+      @Override
+      public void treeNodesInserted(TreeModelEvent e) {
+      }
+
+      @Override
+      public void treeNodesRemoved(TreeModelEvent e) {
+      }
+
+      @Override
+      public void treeStructureChanged(TreeModelEvent e) {
+      }
+    });
+    UsageNodeTreeBuilder usageNodeTreeBuilder = new UsageNodeTreeBuilder(UsageTarget.EMPTY_ARRAY, rules, UsageFilteringRule.EMPTY_ARRAY, rootNode);
+    if (deferChanges) {
+      model.deferNodeChanges();
+    }
+    for (int index : indices) {
+      usageNodeTreeBuilder.appendUsage(createUsage(index), new Consumer<Runnable>() {
+        @Override
+        public void consume(Runnable runnable) {
+          runnable.run();
+        }
+      });
+    }
+    UIUtil.dispatchAllInvocationEvents();
+    return rootNode;
+  }
+
   private static Usage createUsage(int index) {
     return new MockUsage(index);
   }
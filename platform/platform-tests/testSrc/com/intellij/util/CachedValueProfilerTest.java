@@ -0,0 +1,78 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+public class CachedValueProfilerTest extends TestCase {
+  private static final Object OUTER = new Object() {};
+  private static final Object INNER = new Object() {};
+
+  private final CachedValueProfiler myProfiler = CachedValueProfiler.getInstance();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myProfiler.reset();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myProfiler.reset();
+    super.tearDown();
+  }
+
+  public void testNestedComputationIsNotCountedInOuter() throws InterruptedException {
+    long outerStart = myProfiler.computationStarted();
+    long innerStart = myProfiler.computationStarted();
+    Thread.sleep(50);
+    myProfiler.computationFinished(INNER, innerStart);
+    myProfiler.computationFinished(OUTER, outerStart);
+
+    CachedValueProfiler.ProviderStatistics outer = getStatistics(OUTER);
+    CachedValueProfiler.ProviderStatistics inner = getStatistics(INNER);
+    assertEquals(1, outer.getComputationCount());
+    assertEquals(1, inner.getComputationCount());
+    assertTrue(inner.getTotalNanos() >= 50 * 1000000L);
+    assertTrue(outer.getTotalNanos() + " vs " + inner.getTotalNanos(), outer.getTotalNanos() < inner.getTotalNanos());
+    assertEquals(inner, myProfiler.getStatistics().get(0));
+  }
+
+  public void testSequentialComputationsAreSummed() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      long start = myProfiler.computationStarted();
+      Thread.sleep(10);
+      myProfiler.computationFinished(INNER, start);
+    }
+
+    CachedValueProfiler.ProviderStatistics inner = getStatistics(INNER);
+    assertEquals(3, inner.getComputationCount());
+    assertTrue(inner.getTotalNanos() >= 30 * 1000000L);
+    assertTrue(inner.getMaxNanos() <= inner.getTotalNanos());
+    assertEquals(1, myProfiler.getStatistics().size());
+  }
+
+  private CachedValueProfiler.ProviderStatistics getStatistics(Object provider) {
+    List<CachedValueProfiler.ProviderStatistics> all = myProfiler.getStatistics();
+    for (CachedValueProfiler.ProviderStatistics statistics : all) {
+      if (statistics.getProviderClass() == provider.getClass()) return statistics;
+    }
+    fail(provider.getClass() + " not found in " + all);
+    return null;
+  }
+}
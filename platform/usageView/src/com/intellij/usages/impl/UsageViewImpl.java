@@ -246,6 +246,7 @@ public class UsageViewImpl implements UsageView, UsageModelTracker.UsageModelTra
     myTransferToEDTQueue = new TransferToEDTQueue<Runnable>("Insert usages", new Processor<Runnable>() {
       @Override
       public boolean process(Runnable runnable) {
+        myModel.deferNodeChanges();
         runnable.run();
         return true;
       }
@@ -15,15 +15,21 @@
  */
 package com.intellij.usages.impl;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.usages.UsageTarget;
 import com.intellij.usages.UsageViewPresentation;
 import com.intellij.util.Consumer;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NonNls;
 
+import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeNode;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 public class UsageViewTreeModelBuilder extends DefaultTreeModel {
   private final RootGroupNode myRootNode;
@@ -33,6 +39,15 @@ public class UsageViewTreeModelBuilder extends DefaultTreeModel {
   private UsageTargetNode[] myTargetNodes;
   private final String myTargetsNodeText;
   private final boolean myDetachedMode;
+  // nodes changed while a batch of usages is being inserted, accessed in EDT only
+  private final Set<TreeNode> myDeferredChangedNodes = new LinkedHashSet<TreeNode>();
+  private boolean myDeferNodeChanges;
+  private final Runnable myFlushChangedNodes = new Runnable() {
+    @Override
+    public void run() {
+      flushChangedNodes();
+    }
+  };
 
   public UsageViewTreeModelBuilder(UsageViewPresentation presentation, UsageTarget[] targets) {
     //noinspection HardCodedStringLiteral
@@ -124,4 +139,37 @@ public class UsageViewTreeModelBuilder extends DefaultTreeModel {
   public boolean isDetachedMode() {
     return myDetachedMode;
   }
+
+  /**
+   * Collapses {@link #nodeChanged(TreeNode)} notifications until the current EDT event is processed.
+   * Each inserted usage updates the counters of all its parent groups, so without this a batch of N usages
+   * fires N * depth change events instead of one per affected group.
+   */
+  void deferNodeChanges() {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    if (!myDeferNodeChanges) {
+      myDeferNodeChanges = true;
+      SwingUtilities.invokeLater(myFlushChangedNodes);
+    }
+  }
+
+  private void flushChangedNodes() {
+    myDeferNodeChanges = false;
+    if (myDeferredChangedNodes.isEmpty()) return;
+    List<TreeNode> changed = new ArrayList<TreeNode>(myDeferredChangedNodes);
+    myDeferredChangedNodes.clear();
+    for (TreeNode node : changed) {
+      super.nodeChanged(node);
+    }
+  }
+
+  @Override
+  public void nodeChanged(TreeNode node) {
+    if (myDeferNodeChanges && node != null) {
+      myDeferredChangedNodes.add(node);
+    }
+    else {
+      super.nodeChanged(node);
+    }
+  }
 }
@@ -30,6 +30,11 @@ import java.util.ArrayList;
  */
 public class Diff {
   private static final Logger LOG = Logger.getInstance("#com.intellij.util.diff.Diff");
+  /**
+   * {@link IntLCS} keeps every explored path step, which takes memory proportional to the number of differences squared;
+   * sequences longer than this (after unique lines are discarded) go to the linear space {@link MyersLCS} straight away.
+   */
+  private static final int MAX_INT_LCS_SIZE = 100000;
 
   @Nullable
   public static Change buildChanges(@NotNull CharSequence before, @NotNull CharSequence after) throws FilesTooBigForDiffException {
@@ -54,10 +59,22 @@ public class Diff {
     int[] ints2 = enumerator.enumerate(objects2, startShift, endCut);
     Reindexer reindexer = new Reindexer();
     int[][] discarded = reindexer.discardUnique(ints1, ints2);
-    IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
-    intLCS.execute();
     ChangeBuilder builder = new ChangeBuilder(startShift);
-    reindexer.reindex(intLCS.getPaths(), builder);
+    if (discarded[0].length + discarded[1].length <= MAX_INT_LCS_SIZE) {
+      try {
+        IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
+        intLCS.execute();
+        reindexer.reindex(intLCS.getPaths(), builder);
+        return builder.getFirstChange();
+      }
+      catch (FilesTooBigForDiffException e) {
+        LOG.debug("Too many differences for IntLCS, falling back to linear space diff: " + e.getMessage());
+        builder = new ChangeBuilder(startShift);
+      }
+    }
+    MyersLCS lcs = new MyersLCS(discarded[0], discarded[1]);
+    lcs.execute();
+    reindexer.reindex(lcs.getChanges1(), lcs.getChanges2(), builder);
     return builder.getFirstChange();
   }
 
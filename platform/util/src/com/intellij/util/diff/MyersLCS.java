@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import java.util.BitSet;
+
+/**
+ * Linear space variant of the Myers' O(ND) difference algorithm: finds the middle snake of the edit graph
+ * by running the search from both ends and recurses into the halves before and after it.
+ * <p/>
+ * Unlike {@link IntLCS} it doesn't keep the explored paths, so memory is O(N + M) whatever the number of differences is.
+ * The result is a minimal edit script as well, though it may be aligned differently.
+ * <p/>
+ * The time is still O((N + M) * D), so the search gives up with {@link FilesTooBigForDiffException}
+ * once it has explored more than a given number of diagonals.
+ */
+class MyersLCS {
+  private static final int MAX_COST = 100000000;
+
+  private final int[] myFirst;
+  private final int[] mySecond;
+
+  private final int[] myVForward;
+  private final int[] myVBackward;
+  private final int myOffset;
+
+  private final BitSet myChanges1;
+  private final BitSet myChanges2;
+
+  private final long myMaxCost;
+  private long myCost;
+
+  public MyersLCS(int[] first, int[] second) {
+    this(first, second, MAX_COST);
+  }
+
+  MyersLCS(int[] first, int[] second, long maxCost) {
+    myMaxCost = maxCost;
+    myFirst = first;
+    mySecond = second;
+
+    int max = (first.length + second.length + 1) / 2;
+    myOffset = max + 1;
+    myVForward = new int[2 * max + 3];
+    myVBackward = new int[2 * max + 3];
+
+    myChanges1 = new BitSet(first.length);
+    myChanges2 = new BitSet(second.length);
+    myChanges1.set(0, first.length);
+    myChanges2.set(0, second.length);
+  }
+
+  public void execute() throws FilesTooBigForDiffException {
+    execute(0, myFirst.length, 0, mySecond.length);
+  }
+
+  /**
+   * @return changed elements of the first sequence, all others are matched in order with elements of the second one
+   */
+  public BitSet getChanges1() {
+    return myChanges1;
+  }
+
+  public BitSet getChanges2() {
+    return myChanges2;
+  }
+
+  private void execute(int start1, int end1, int start2, int end2) throws FilesTooBigForDiffException {
+    while (start1 < end1 && start2 < end2 && myFirst[start1] == mySecond[start2]) {
+      markEqual(start1++, start2++, 1);
+    }
+    while (start1 < end1 && start2 < end2 && myFirst[end1 - 1] == mySecond[end2 - 1]) {
+      markEqual(--end1, --end2, 1);
+    }
+    // everything left in a one-sided range is already marked as changed
+    if (start1 == end1 || start2 == end2) return;
+
+    int[] snake = findMiddleSnake(start1, end1 - start1, start2, end2 - start2);
+    int x = start1 + snake[0];
+    int y = start2 + snake[1];
+    int u = start1 + snake[2];
+    int v = start2 + snake[3];
+    markEqual(x, y, u - x);
+
+    execute(start1, x, start2, y);
+    execute(u, end1, v, end2);
+  }
+
+  private void markEqual(int index1, int index2, int length) {
+    if (length == 0) return;
+    myChanges1.clear(index1, index1 + length);
+    myChanges2.clear(index2, index2 + length);
+  }
+
+  /**
+   * @return {x, y, u, v}: the middle snake runs from (x, y) to (u, v), coordinates are relative to the starts
+   */
+  private int[] findMiddleSnake(int start1, int n, int start2, int m) throws FilesTooBigForDiffException {
+    int max = (n + m + 1) / 2;
+    int delta = n - m;
+    boolean odd = (delta & 1) != 0;
+
+    myVForward[myOffset + 1] = 0;
+    myVBackward[myOffset + 1] = 0;
+
+    for (int d = 0; d <= max; d++) {
+      // both searches explore d + 1 diagonals
+      myCost += 2 * (d + 1);
+      if (myCost > myMaxCost) {
+        throw new FilesTooBigForDiffException(myFirst.length + mySecond.length);
+      }
+
+      for (int k = -d; k <= d; k += 2) {
+        int x;
+        if (k == -d || k != d && myVForward[myOffset + k - 1] < myVForward[myOffset + k + 1]) {
+          x = myVForward[myOffset + k + 1];
+        }
+        else {
+          x = myVForward[myOffset + k - 1] + 1;
+        }
+        int y = x - k;
+        int x0 = x;
+        int y0 = y;
+        while (x < n && y < m && myFirst[start1 + x] == mySecond[start2 + y]) {
+          x++;
+          y++;
+        }
+        myVForward[myOffset + k] = x;
+
+        int backwardK = delta - k;
+        if (odd && backwardK >= -(d - 1) && backwardK <= d - 1) {
+          if (x + myVBackward[myOffset + backwardK] >= n) {
+            return new int[]{x0, y0, x, y};
+          }
+        }
+      }
+
+      // backward search is done in reversed coordinates: (x, y) stands for (n - x, m - y)
+      for (int k = -d; k <= d; k += 2) {
+        int x;
+        if (k == -d || k != d && myVBackward[myOffset + k - 1] < myVBackward[myOffset + k + 1]) {
+          x = myVBackward[myOffset + k + 1];
+        }
+        else {
+          x = myVBackward[myOffset + k - 1] + 1;
+        }
+        int y = x - k;
+        int x0 = x;
+        int y0 = y;
+        while (x < n && y < m && myFirst[start1 + n - x - 1] == mySecond[start2 + m - y - 1]) {
+          x++;
+          y++;
+        }
+        myVBackward[myOffset + k] = x;
+
+        int forwardK = delta - k;
+        if (!odd && forwardK >= -d && forwardK <= d) {
+          if (x + myVForward[myOffset + forwardK] >= n) {
+            return new int[]{n - x, m - y, n - x0, m - y0};
+          }
+        }
+      }
+    }
+    throw new IllegalStateException("Middle snake not found for " + n + "x" + m);
+  }
+}
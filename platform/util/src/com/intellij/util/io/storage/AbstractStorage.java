@@ -51,6 +51,7 @@ public abstract class AbstractStorage implements Disposable, Forceable {
   protected DataTable myDataTable;
   protected PagePool myPool;
   private final CapacityAllocationPolicy myCapacityAllocationPolicy;
+  private final String myStorageFilePath;
 
   public static boolean deleteFiles(String storageFilePath) {
     final File recordsFile = new File(storageFilePath + INDEX_EXTENSION);
@@ -85,6 +86,7 @@ public abstract class AbstractStorage implements Disposable, Forceable {
                             CapacityAllocationPolicy capacityAllocationPolicy) throws IOException {
     myCapacityAllocationPolicy = capacityAllocationPolicy != null ? capacityAllocationPolicy
                                                                   : CapacityAllocationPolicy.DEFAULT;
+    myStorageFilePath = storageFilePath;
     tryInit(storageFilePath, pool, 0);
   }
 
@@ -186,6 +188,19 @@ public abstract class AbstractStorage implements Disposable, Forceable {
     }
   }
 
+  /**
+   * Storages are compacted when they are opened; this lets the ones which stay open for a long time and delete records
+   * give the space back earlier.
+   * @return true if the data file has been compacted
+   */
+  public boolean compactIfNecessary() {
+    synchronized (myLock) {
+      if (!myDataTable.isCompactNecessary()) return false;
+      compact(myStorageFilePath);
+      return true;
+    }
+  }
+
   public int getVersion() {
     synchronized (myLock) {
       return myRecordsTable.getVersion();
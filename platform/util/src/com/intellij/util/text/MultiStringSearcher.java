@@ -0,0 +1,150 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ArrayUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the occurrences of the patterns of several forward {@link StringSearcher}s in one pass over the text
+ * (Aho-Corasick automaton over the lower-cased patterns; case-sensitive patterns are checked exactly on match).
+ * Overlapping occurrences are all reported, in the order of their end offsets.
+ */
+public class MultiStringSearcher {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.util.text.MultiStringSearcher");
+
+  private final List<StringSearcher> mySearchers;
+  private final TLongIntHashMap myTransitions = new TLongIntHashMap(); // (node, char) -> node; the root (0) is never a target
+  private final TIntArrayList myFailures = new TIntArrayList();
+  private final TIntArrayList myOutputLinks = new TIntArrayList(); // the nearest node on the failure chain where a pattern ends, or 0
+  private final List<int[]> myOutputs = new ArrayList<int[]>(); // indices of the searchers whose patterns end in the node
+
+  public interface OccurrenceProcessor {
+    /**
+     * @param offset        start offset of the occurrence
+     * @param searcherIndex index of the searcher whose pattern occurs there
+     * @return false to stop the scan
+     */
+    boolean process(int offset, int searcherIndex);
+  }
+
+  public MultiStringSearcher(@NotNull List<StringSearcher> searchers) {
+    mySearchers = new ArrayList<StringSearcher>(searchers);
+
+    TIntArrayList parents = new TIntArrayList();
+    StringBuilder chars = new StringBuilder();
+    List<TIntArrayList> levels = new ArrayList<TIntArrayList>();
+    newNode(parents, chars, 0, '\0');
+
+    for (int i = 0; i < mySearchers.size(); i++) {
+      StringSearcher searcher = mySearchers.get(i);
+      LOG.assertTrue(searcher.isForwardDirection());
+      String pattern = searcher.getPattern();
+      int node = 0;
+      for (int j = 0; j < pattern.length(); j++) {
+        char c = StringUtil.toLowerCase(pattern.charAt(j));
+        int next = myTransitions.get(key(node, c));
+        if (next == 0) {
+          next = newNode(parents, chars, node, c);
+          myTransitions.put(key(node, c), next);
+          if (levels.size() <= j) levels.add(new TIntArrayList());
+          levels.get(j).add(next);
+        }
+        node = next;
+      }
+      myOutputs.set(node, ArrayUtil.append(myOutputs.get(node), i));
+    }
+
+    for (TIntArrayList level : levels) {
+      for (int i = 0; i < level.size(); i++) {
+        int node = level.get(i);
+        int parent = parents.get(node);
+        char c = chars.charAt(node);
+        int failure = 0;
+        if (parent != 0) {
+          int state = myFailures.get(parent);
+          while ((failure = myTransitions.get(key(state, c))) == 0 && state != 0) {
+            state = myFailures.get(state);
+          }
+        }
+        myFailures.set(node, failure);
+        myOutputLinks.set(node, myOutputs.get(failure).length > 0 ? failure : myOutputLinks.get(failure));
+      }
+    }
+  }
+
+  private int newNode(@NotNull TIntArrayList parents, @NotNull StringBuilder chars, int parent, char c) {
+    parents.add(parent);
+    chars.append(c);
+    myFailures.add(0);
+    myOutputLinks.add(0);
+    myOutputs.add(ArrayUtil.EMPTY_INT_ARRAY);
+    return myOutputs.size() - 1;
+  }
+
+  private static long key(int node, char c) {
+    return ((long)node << 16) | c;
+  }
+
+  @NotNull
+  public List<StringSearcher> getSearchers() {
+    return mySearchers;
+  }
+
+  /**
+   * @return false if the processor has stopped the scan
+   */
+  public boolean scan(@NotNull CharSequence text, @Nullable char[] textArray, int start, int end, @NotNull OccurrenceProcessor processor) {
+    LOG.assertTrue(start <= end, start - end);
+    LOG.assertTrue(end <= text.length(), text.length() - end);
+    int node = 0;
+    for (int i = start; i < end; i++) {
+      char c = StringUtil.toLowerCase(textArray != null ? textArray[i] : text.charAt(i));
+      int next;
+      while ((next = myTransitions.get(key(node, c))) == 0 && node != 0) {
+        node = myFailures.get(node);
+      }
+      node = next;
+
+      for (int out = myOutputs.get(node).length > 0 ? node : myOutputLinks.get(node); out != 0; out = myOutputLinks.get(out)) {
+        for (int index : myOutputs.get(out)) {
+          StringSearcher searcher = mySearchers.get(index);
+          String pattern = searcher.getPattern();
+          int offset = i - pattern.length() + 1;
+          if (searcher.isCaseSensitive() && !matches(text, textArray, offset, pattern)) continue;
+          if (!processor.process(offset, index)) return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(@NotNull CharSequence text, @Nullable char[] textArray, int offset, @NotNull String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = textArray != null ? textArray[offset + i] : text.charAt(offset + i);
+      if (c != pattern.charAt(i)) return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import junit.framework.TestCase;
+
+import java.util.BitSet;
+import java.util.Random;
+
+public class MyersLCSTest extends TestCase {
+  public void testEqual() throws FilesTooBigForDiffException {
+    MyersLCS lcs = execute(new int[]{1, 2, 3}, new int[]{1, 2, 3});
+    assertTrue(lcs.getChanges1().isEmpty());
+    assertTrue(lcs.getChanges2().isEmpty());
+  }
+
+  public void testAbsolutelyDifferent() throws FilesTooBigForDiffException {
+    MyersLCS lcs = execute(new int[]{1, 2, 3}, new int[]{4, 5});
+    assertEquals(3, lcs.getChanges1().cardinality());
+    assertEquals(2, lcs.getChanges2().cardinality());
+  }
+
+  public void testSingleMiddle() throws FilesTooBigForDiffException {
+    Diff.Change change = buildChange(new int[]{1, 2, 3}, new int[]{4, 2, 5});
+    IntLCSTest.checkChange(change, 0, 0, 1, 1);
+    IntLCSTest.checkLastChange(change.link, 2, 2, 1, 1);
+  }
+
+  public void testInsertion() throws FilesTooBigForDiffException {
+    MyersLCS lcs = execute(new int[]{1, 2, 3}, new int[]{1, 2, 5, 6, 3});
+    assertTrue(lcs.getChanges1().isEmpty());
+    assertEquals(2, lcs.getChanges2().cardinality());
+    assertTrue(lcs.getChanges2().get(2));
+    assertTrue(lcs.getChanges2().get(3));
+  }
+
+  public void testSameEditDistanceAsIntLCS() throws FilesTooBigForDiffException {
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      int[] first = generate(random, random.nextInt(50), 1 + random.nextInt(10));
+      int[] second = generate(random, random.nextInt(50), 1 + random.nextInt(10));
+
+      MyersLCS lcs = execute(first, second);
+      checkCommonSubsequence(first, second, lcs.getChanges1(), lcs.getChanges2());
+
+      int expected = new IntLCS(first, second).execute();
+      assertEquals(expected, lcs.getChanges1().cardinality() + lcs.getChanges2().cardinality());
+    }
+  }
+
+  public void testLargeInput() throws FilesTooBigForDiffException {
+    int size = 1000000;
+    Object[] first = new Object[size];
+    Object[] second = new Object[size];
+    for (int i = 0; i < size; i++) {
+      first[i] = "line " + i;
+      second[i] = i % 1000 == 0 ? "changed " + i : "line " + i;
+    }
+    Diff.Change change = Diff.buildChanges(first, second);
+    assertEquals(size / 1000, change.toList().size());
+  }
+
+  private static int[] generate(Random random, int length, int alphabet) {
+    int[] result = new int[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = random.nextInt(alphabet);
+    }
+    return result;
+  }
+
+  private static void checkCommonSubsequence(int[] first, int[] second, BitSet changes1, BitSet changes2) {
+    int x = changes1.nextClearBit(0);
+    int y = changes2.nextClearBit(0);
+    while (x < first.length && y < second.length) {
+      assertEquals(first[x], second[y]);
+      x = changes1.nextClearBit(x + 1);
+      y = changes2.nextClearBit(y + 1);
+    }
+    assertTrue(x >= first.length && y >= second.length);
+  }
+
+  public void testTooManyDifferences() {
+    int[] first = new int[1000];
+    int[] second = new int[1000];
+    for (int i = 0; i < first.length; i++) {
+      first[i] = i % 2;
+      second[i] = (i + 1) % 3;
+    }
+    MyersLCS lcs = new MyersLCS(first, second, 10000);
+    try {
+      lcs.execute();
+      fail();
+    }
+    catch (FilesTooBigForDiffException e) {
+      assertEquals(2000, e.getNumLines());
+    }
+  }
+
+  private static MyersLCS execute(int[] first, int[] second) throws FilesTooBigForDiffException {
+    MyersLCS lcs = new MyersLCS(first, second);
+    lcs.execute();
+    return lcs;
+  }
+
+  private static Diff.Change buildChange(int[] first, int[] second) throws FilesTooBigForDiffException {
+    MyersLCS lcs = execute(first, second);
+    Reindexer reindexer = new Reindexer();
+    reindexer.idInit(first.length, second.length);
+    Diff.ChangeBuilder builder = new Diff.ChangeBuilder(0);
+    reindexer.reindex(lcs.getChanges1(), lcs.getChanges2(), builder);
+    return builder.getFirstChange();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.text;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MultiStringSearcherTest extends TestCase {
+  public void testOverlappingPatterns() {
+    assertEquals("[0:0, 1:1, 0:3, 1:4, 2:3]", scan("abcabcd", searcher("ab", true), searcher("bc", true), searcher("abcd", true)));
+  }
+
+  public void testPatternInsidePattern() {
+    assertEquals("[1:1, 0:0, 2:1]", scan("ohello", searcher("ohell", true), searcher("he", true), searcher("hello", true)));
+  }
+
+  public void testCaseSensitivity() {
+    assertEquals("[1:0, 0:4, 1:4]", scan("Foo foo", searcher("foo", true), searcher("FOO", false)));
+  }
+
+  public void testSamePatternTwice() {
+    assertEquals("[0:2, 1:2]", scan("a xy", searcher("xy", true), searcher("xy", true)));
+  }
+
+  public void testStopProcessing() {
+    final List<Integer> found = new ArrayList<Integer>();
+    MultiStringSearcher searcher = new MultiStringSearcher(Arrays.asList(searcher("a", true)));
+    assertFalse(searcher.scan("aaa", null, 0, 3, new MultiStringSearcher.OccurrenceProcessor() {
+      @Override
+      public boolean process(int offset, int searcherIndex) {
+        found.add(offset);
+        return found.size() < 2;
+      }
+    }));
+    assertEquals(Arrays.asList(0, 1), found);
+  }
+
+  public void testSameOccurrencesAsStringSearcher() {
+    String text = "class Foo extends FooBar implements Bar { Foo foo = new fOO(); BarFoo bar; }";
+    List<StringSearcher> searchers = Arrays.asList(searcher("Foo", true), searcher("foo", false), searcher("Bar", true), searcher("o", false));
+    final List<List<Integer>> found = new ArrayList<List<Integer>>();
+    for (StringSearcher ignored : searchers) {
+      found.add(new ArrayList<Integer>());
+    }
+    new MultiStringSearcher(searchers).scan(text, text.toCharArray(), 0, text.length(), new MultiStringSearcher.OccurrenceProcessor() {
+      @Override
+      public boolean process(int offset, int searcherIndex) {
+        found.get(searcherIndex).add(offset);
+        return true;
+      }
+    });
+
+    for (int i = 0; i < searchers.size(); i++) {
+      List<Integer> expected = new ArrayList<Integer>();
+      StringSearcher searcher = searchers.get(i);
+      for (int offset = searcher.scan(text); offset >= 0; offset = searcher.scan(text, offset + 1, text.length())) {
+        expected.add(offset);
+      }
+      assertEquals(searcher.getPattern(), expected, found.get(i));
+    }
+  }
+
+  private static StringSearcher searcher(String pattern, boolean caseSensitive) {
+    return new StringSearcher(pattern, caseSensitive, true);
+  }
+
+  private static String scan(String text, StringSearcher... searchers) {
+    final List<String> found = new ArrayList<String>();
+    new MultiStringSearcher(Arrays.asList(searchers)).scan(text, null, 0, text.length(), new MultiStringSearcher.OccurrenceProcessor() {
+      @Override
+      public boolean process(int offset, int searcherIndex) {
+        found.add(searcherIndex + ":" + offset);
+        return true;
+      }
+    });
+    return found.toString();
+  }
+}
@@ -478,6 +478,15 @@ public abstract class AbstractVcs<ComList extends CommittedChangeList> extends S
     return false;
   }
 
+  /**
+   * Returns true if the {@link #getChangeProvider() change provider} may be called concurrently for dirty scopes of different
+   * VCS roots and doesn't modify change lists through the {@link com.intellij.openapi.vcs.changes.ChangeListManagerGate}.
+   * Then the change list manager collects changes of the roots in parallel, so that a slow root doesn't delay the others.
+   */
+  public boolean allowsParallelChangesCollection() {
+    return false;
+  }
+
   public <S> List<S> filterUniqueRoots(final List<S> in, final Convertor<S, VirtualFile> convertor) {
     new FilterDescendantVirtualFileConvertible(convertor, FilePathComparator.getInstance()).doFilter(in);
     return in;
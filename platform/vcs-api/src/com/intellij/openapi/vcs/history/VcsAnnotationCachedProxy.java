@@ -64,6 +64,29 @@ public class VcsAnnotationCachedProxy implements AnnotationProvider {
     });
   }
 
+  /**
+   * Annotates the current revision of the file and caches the result, unless it is already cached.
+   * Unlike {@link #annotate(VirtualFile)}, the history of the file is not loaded: it is only needed when the annotation is shown.
+   */
+  public void preload(final VirtualFile file) throws VcsException {
+    final VcsRevisionNumber currentRevision = myVcs.getDiffProvider().getCurrentRevision(file);
+    if (currentRevision == null) return;
+    final FilePath filePath = VcsContextFactory.SERVICE.getInstance().createFilePathOn(file);
+    if (myCache.get(filePath, myVcs.getKeyInstanceMethod(), currentRevision) != null) return;
+
+    final FileAnnotation annotation = myAnnotationProvider.annotate(file);
+    if (annotation == null) return;
+    try {
+      final VcsAnnotation vcsAnnotation = ((VcsCacheableAnnotationProvider)myAnnotationProvider).createCacheable(annotation);
+      if (vcsAnnotation != null) {
+        myCache.put(filePath, myVcs.getKeyInstanceMethod(), currentRevision, vcsAnnotation);
+      }
+    }
+    finally {
+      annotation.dispose();
+    }
+  }
+
   @Override
   public FileAnnotation annotate(final VirtualFile file, final VcsFileRevision revision) throws VcsException {
     return annotate(file, revision.getRevisionNumber(), false, new ThrowableComputable<FileAnnotation, VcsException>() {
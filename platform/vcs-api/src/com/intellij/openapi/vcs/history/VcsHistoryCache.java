@@ -42,7 +42,8 @@ public class VcsHistoryCache {
   public VcsHistoryCache() {
     myLock = new Object();
     myHistoryCache = new SLRUMap<HistoryCacheBaseKey, CachedHistory>(10, 10);
-    myAnnotationCache = new SLRUMap<HistoryCacheWithRevisionKey, VcsAnnotation>(10, 5);
+    // annotations of the files opened in the editor are preloaded here, so there should be room for them
+    myAnnotationCache = new SLRUMap<HistoryCacheWithRevisionKey, VcsAnnotation>(30, 30);
     //myContentCache = new SLRUMap<HistoryCacheWithRevisionKey, String>(20, 20);
   }
 
@@ -27,34 +27,44 @@ import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.changes.CommitContext;
 import com.intellij.openapi.vcs.changes.patch.ApplyPatchForBaseRevisionTexts;
 import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
 
 public class ApplyTextFilePatch extends ApplyFilePatchBase<TextFilePatch> {
+  private volatile PatchedText myPrepared;
+
   public ApplyTextFilePatch(final TextFilePatch patch) {
     super(patch);
   }
 
+  /**
+   * Matches the hunks against the current file contents in advance, so that {@link #applyChange} only has to set the text.
+   * Doesn't need the read action and may be called for several patches in parallel. The result is used only if the file
+   * isn't modified before the patch is applied; if the hunks don't match, the patch is matched again when applied.
+   */
+  public void prepare(@NotNull final VirtualFile fileToPatch) throws IOException {
+    if (myPatch.isNewFile() || myPatch.isDeletedFile()) return;
+    final long stamp = fileToPatch.getModificationStamp();
+    final GenericPatchApplier applier = createApplier(fileToPatch);
+    if (applier.execute()) {
+      myPrepared = new PatchedText(fileToPatch, stamp, applier.getAfter(), applier.getStatus());
+    }
+  }
+
   @Nullable
   protected Result applyChange(final Project project, final VirtualFile fileToPatch, final FilePath pathBeforeRename, final Getter<CharSequence> baseContents) throws IOException {
-    byte[] fileContents = fileToPatch.contentsToByteArray();
-    CharSequence text = LoadTextUtil.getTextByBinaryPresentation(fileContents, fileToPatch);
-    final GenericPatchApplier applier = new GenericPatchApplier(text, myPatch.getHunks());
+    final PatchedText prepared = myPrepared;
+    myPrepared = null;
+    if (prepared != null && prepared.myFile.equals(fileToPatch) && prepared.myModificationStamp == fileToPatch.getModificationStamp()) {
+      return setText(fileToPatch, prepared.myText, prepared.myStatus);
+    }
+
+    final GenericPatchApplier applier = createApplier(fileToPatch);
     if (applier.execute()) {
-      final Document document = FileDocumentManager.getInstance().getDocument(fileToPatch);
-      if (document == null) {
-        throw new IOException("Failed to set contents for updated file " + fileToPatch.getPath());
-      }
-      document.setText(applier.getAfter());
-      FileDocumentManager.getInstance().saveDocument(document);
-      return new Result(applier.getStatus()) {
-        @Override
-        public ApplyPatchForBaseRevisionTexts getMergeData() {
-          return null;
-        }
-      };
+      return setText(fileToPatch, applier.getAfter(), applier.getStatus());
     }
     applier.trySolveSomehow();
     return new Result(ApplyPatchStatus.FAILURE) {
@@ -65,6 +75,27 @@ public class ApplyTextFilePatch extends ApplyFilePatchBase<TextFilePatch> {
     };
   }
 
+  private GenericPatchApplier createApplier(final VirtualFile fileToPatch) throws IOException {
+    byte[] fileContents = fileToPatch.contentsToByteArray();
+    CharSequence text = LoadTextUtil.getTextByBinaryPresentation(fileContents, fileToPatch);
+    return new GenericPatchApplier(text, myPatch.getHunks());
+  }
+
+  private static Result setText(final VirtualFile fileToPatch, final String text, final ApplyPatchStatus status) throws IOException {
+    final Document document = FileDocumentManager.getInstance().getDocument(fileToPatch);
+    if (document == null) {
+      throw new IOException("Failed to set contents for updated file " + fileToPatch.getPath());
+    }
+    document.setText(text);
+    FileDocumentManager.getInstance().saveDocument(document);
+    return new Result(status) {
+      @Override
+      public ApplyPatchForBaseRevisionTexts getMergeData() {
+        return null;
+      }
+    };
+  }
+
   protected void applyCreate(final VirtualFile newFile, CommitContext commitContext) throws IOException {
     final Document document = FileDocumentManager.getInstance().getDocument(newFile);
     if (document == null) {
@@ -82,4 +113,18 @@ public class ApplyTextFilePatch extends ApplyFilePatchBase<TextFilePatch> {
     document.setText(myPatch.getNewFileText());
     FileDocumentManager.getInstance().saveDocument(document);
   }
+
+  private static class PatchedText {
+    private final VirtualFile myFile;
+    private final long myModificationStamp;
+    private final String myText;
+    private final ApplyPatchStatus myStatus;
+
+    private PatchedText(VirtualFile file, long modificationStamp, String text, ApplyPatchStatus status) {
+      myFile = file;
+      myModificationStamp = modificationStamp;
+      myText = text;
+      myStatus = status;
+    }
+  }
 }
@@ -18,6 +18,7 @@ package com.intellij.openapi.diff.impl.patch.formove;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.CommandProcessor;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.diff.impl.mergeTool.MergeVersion;
 import com.intellij.openapi.diff.impl.patch.ApplyPatchContext;
 import com.intellij.openapi.diff.impl.patch.ApplyPatchStatus;
@@ -28,6 +29,8 @@ import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypes;
 import com.intellij.openapi.fileTypes.ex.FileTypeChooser;
 import com.intellij.openapi.progress.AsynchronousExecution;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.MessageType;
 import com.intellij.openapi.ui.Messages;
@@ -46,6 +49,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.newvfs.RefreshQueue;
 import com.intellij.util.Consumer;
 import com.intellij.util.WaitForProgressToShow;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.continuation.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -53,11 +57,20 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * for patches. for shelve.
  */
 public class PatchApplier<BinaryType extends FilePatch> {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.diff.impl.patch.formove.PatchApplier");
+  private static final Executor ourPrepareExecutor = new BoundedTaskExecutor(new Executor() {
+    @Override
+    public void execute(@NotNull Runnable command) {
+      ApplicationManager.getApplication().executeOnPooledThread(command);
+    }
+  }, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
   private final Project myProject;
   private final VirtualFile myBaseDirectory;
   private final List<FilePatch> myPatches;
@@ -304,6 +317,7 @@ public class PatchApplier<BinaryType extends FilePatch> {
     final List<FilePatch> skipped = myVerifier.getSkipped();
     final boolean applyAll = skipped.isEmpty();
     myPatches.removeAll(skipped);
+    prepareTextPatches();
     return applyAll ? ApplyPatchStatus.SUCCESS : ((skipped.size() == myPatches.size()) ? ApplyPatchStatus.ALREADY_APPLIED : ApplyPatchStatus.PARTIAL) ;
   }
 
@@ -462,6 +476,80 @@ public class PatchApplier<BinaryType extends FilePatch> {
     return status;
   }
 
+  /**
+   * Reads the files and matches the hunks of the text patches on pooled threads before the command is started,
+   * so that only the documents are updated when the patches are applied. Cancelling only skips the preparation:
+   * the patches which aren't prepared are matched when applied.
+   */
+  private void prepareTextPatches() {
+    final List<Pair<VirtualFile, ApplyTextFilePatch>> textPatches = myVerifier.getTextPatchesToPrepare();
+    if (textPatches.size() < 2) return;
+    final Runnable prepare = new Runnable() {
+      @Override
+      public void run() {
+        prepareInParallel(textPatches);
+      }
+    };
+    if (ApplicationManager.getApplication().isDispatchThread()) {
+      ProgressManager.getInstance().runProcessWithProgressSynchronously(prepare, VcsBundle.message("patch.apply.prepare.progress"),
+                                                                        true, myProject);
+    }
+    else {
+      prepare.run();
+    }
+  }
+
+  private static void prepareInParallel(final List<Pair<VirtualFile, ApplyTextFilePatch>> textPatches) {
+    final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(textPatches.size());
+    for (final Pair<VirtualFile, ApplyTextFilePatch> patch : textPatches) {
+      final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            patch.getSecond().prepare(patch.getFirst());
+          }
+          catch (IOException e) {
+            LOG.info(e); // will be reported when the patch is applied
+          }
+        }
+      }, null);
+      tasks.add(task);
+      ourPrepareExecutor.execute(task);
+    }
+    try {
+      for (FutureTask<Void> task : tasks) {
+        waitFor(task);
+      }
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+    finally {
+      for (FutureTask<Void> task : tasks) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  private static void waitFor(final FutureTask<Void> task) {
+    while (true) {
+      ProgressManager.checkCanceled(); // the tasks don't check the progress of this thread
+      try {
+        task.get(100, TimeUnit.MILLISECONDS);
+        return;
+      }
+      catch (TimeoutException ignore) {
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ProcessCanceledException();
+      }
+      catch (ExecutionException e) {
+        LOG.info(e.getCause()); // the patch is matched again when applied
+        return;
+      }
+    }
+  }
+
   private void moveForCustomBinaries(final List<Pair<VirtualFile, ApplyFilePatchBase<BinaryType>>> patches,
                                      final List<FilePatch> appliedPatches) throws IOException {
     for (Pair<VirtualFile, ApplyFilePatchBase<BinaryType>> patch : patches) {
@@ -47,6 +47,7 @@ public class PathsVerifier<BinaryType extends FilePatch> {
   private final List<VirtualFile> myCreatedDirectories;
   // out
   private final List<Pair<VirtualFile, ApplyTextFilePatch>> myTextPatches;
+  private final Map<FilePatch, Pair<VirtualFile, ApplyTextFilePatch>> myTextPatchesToPrepare;
   private final List<Pair<VirtualFile, ApplyFilePatchBase<BinaryType>>> myBinaryPatches;
   private final List<VirtualFile> myWritableFiles;
   private final BaseMapper myBaseMapper;
@@ -67,6 +68,7 @@ public class PathsVerifier<BinaryType extends FilePatch> {
     myBeforePaths = new ArrayList<FilePath>();
     myCreatedDirectories = new ArrayList<VirtualFile>();
     myTextPatches = new ArrayList<Pair<VirtualFile, ApplyTextFilePatch>>();
+    myTextPatchesToPrepare = new LinkedHashMap<FilePatch, Pair<VirtualFile, ApplyTextFilePatch>>();
     myBinaryPatches = new ArrayList<Pair<VirtualFile, ApplyFilePatchBase<BinaryType>>>();
     myWritableFiles = new ArrayList<VirtualFile>();
     myVcsManager = ProjectLevelVcsManager.getInstance(myProject);
@@ -128,9 +130,31 @@ public class PathsVerifier<BinaryType extends FilePatch> {
     final Collection<FilePatch> skipped = myDelayedPrecheckContext.doDelayed();
     mySkipped.addAll(skipped);
     myPatches.remove(skipped);
+
+    myTextPatchesToPrepare.clear();
+    for (FilePatch patch : myPatches) {
+      // modified or moved files only: the added ones are created and the deleted ones are removed by the patch
+      if (! (patch instanceof TextFilePatch) || skipped.contains(patch) || patch.getBeforeName() == null ||
+          patch.getAfterName() == null || patch.isNewFile() || patch.isDeletedFile()) {
+        continue;
+      }
+      final VirtualFile beforeFile = myBaseMapper.getFile(patch, patch.getBeforeName());
+      if (beforeFile != null && ! beforeFile.isDirectory()) {
+        final ApplyTextFilePatch applyPatch = ApplyFilePatchFactory.create((TextFilePatch)patch);
+        myTextPatchesToPrepare.put(patch, new Pair<VirtualFile, ApplyTextFilePatch>(beforeFile, applyPatch));
+      }
+    }
     return true;
   }
 
+  /**
+   * Text patches of the files which exist before the patch is applied, known after {@link #nonWriteActionPreCheck()}.
+   * They can be prepared outside the command: {@link #execute()} reuses them for the same files.
+   */
+  public List<Pair<VirtualFile, ApplyTextFilePatch>> getTextPatchesToPrepare() {
+    return new ArrayList<Pair<VirtualFile, ApplyTextFilePatch>>(myTextPatchesToPrepare.values());
+  }
+
   public List<FilePatch> getSkipped() {
     return mySkipped;
   }
@@ -332,7 +356,12 @@ public class PathsVerifier<BinaryType extends FilePatch> {
   private void addPatch(final FilePatch patch, final VirtualFile file) {
     final Pair<VirtualFile, ApplyFilePatchBase> patchPair = new Pair<VirtualFile, ApplyFilePatchBase>(file, ApplyFilePatchFactory.createGeneral(patch));
     if (patch instanceof TextFilePatch) {
-      myTextPatches.add(new Pair<VirtualFile, ApplyTextFilePatch>(file, ApplyFilePatchFactory.create((TextFilePatch) patch)));
+      final Pair<VirtualFile, ApplyTextFilePatch> prepared = myTextPatchesToPrepare.get(patch);
+      if (prepared != null && prepared.getFirst().equals(file)) {
+        myTextPatches.add(prepared);
+      } else {
+        myTextPatches.add(new Pair<VirtualFile, ApplyTextFilePatch>(file, ApplyFilePatchFactory.create((TextFilePatch) patch)));
+      }
     } else {
       final ApplyFilePatchBase<BinaryType> applyBinaryPatch = (ApplyFilePatchBase<BinaryType>) ((patch instanceof BinaryFilePatch) ? ApplyFilePatchFactory
         .create((BinaryFilePatch) patch) :
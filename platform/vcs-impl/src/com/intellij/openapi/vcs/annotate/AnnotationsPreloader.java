@@ -0,0 +1,153 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.annotate;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerAdapter;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vcs.AbstractVcs;
+import com.intellij.openapi.vcs.FileStatus;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.ChangeListManager;
+import com.intellij.openapi.vcs.history.VcsAnnotationCachedProxy;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.messages.MessageBusConnection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Annotates files opened in the editor in background, one at a time, and puts the annotations into the {@link com.intellij.openapi.vcs.history.VcsHistoryCache},
+ * so that "Annotate" shows them without waiting for the VCS.
+ * Only works for VCSes which support caching of annotations.
+ * <p/>
+ * Only the last {@link #MAX_QUEUE_SIZE} opened files wait for preloading: when many files are opened at once, e.g. when a project
+ * with a lot of editor tabs is reopened, the earlier ones are dropped.
+ */
+public class AnnotationsPreloader {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.annotate.AnnotationsPreloader");
+  private static final int MAX_FILE_LENGTH = 512 * 1024;
+  static final int MAX_QUEUE_SIZE = 10;
+
+  private final Project myProject;
+  private final ProjectLevelVcsManager myVcsManager;
+  private final Executor myExecutor;
+  private final LinkedHashSet<VirtualFile> myQueue = new LinkedHashSet<VirtualFile>(); // guarded by itself
+  private boolean myWorkerScheduled; // guarded by myQueue
+
+  public AnnotationsPreloader(@NotNull Project project, @NotNull ProjectLevelVcsManager vcsManager, @NotNull MessageBusConnection connection) {
+    this(project, vcsManager, connection, new Executor() {
+      @Override
+      public void execute(@NotNull Runnable command) {
+        ApplicationManager.getApplication().executeOnPooledThread(command);
+      }
+    });
+  }
+
+  AnnotationsPreloader(@NotNull Project project, @NotNull ProjectLevelVcsManager vcsManager, @NotNull MessageBusConnection connection,
+                       @NotNull Executor executor) {
+    myProject = project;
+    myVcsManager = vcsManager;
+    myExecutor = executor;
+    connection.subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerAdapter() {
+      @Override
+      public void fileOpened(FileEditorManager source, final VirtualFile file) {
+        if (!isEnabled() || !mayBeAnnotated(file)) return;
+        schedule(file);
+      }
+    });
+  }
+
+  void schedule(@NotNull VirtualFile file) {
+    synchronized (myQueue) {
+      myQueue.remove(file); // a reopened file goes to the end
+      myQueue.add(file);
+      if (myQueue.size() > MAX_QUEUE_SIZE) {
+        Iterator<VirtualFile> iterator = myQueue.iterator();
+        iterator.next();
+        iterator.remove();
+      }
+      if (myWorkerScheduled) return;
+      myWorkerScheduled = true;
+    }
+    myExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        while (true) {
+          VirtualFile next;
+          synchronized (myQueue) {
+            if (myQueue.isEmpty()) {
+              myWorkerScheduled = false;
+              return;
+            }
+            Iterator<VirtualFile> iterator = myQueue.iterator();
+            next = iterator.next();
+            iterator.remove();
+          }
+          try {
+            preload(next);
+          }
+          catch (RuntimeException e) {
+            LOG.error(e);
+          }
+        }
+      }
+    });
+  }
+
+  @TestOnly
+  List<VirtualFile> getQueuedFiles() {
+    synchronized (myQueue) {
+      return new ArrayList<VirtualFile>(myQueue);
+    }
+  }
+
+  private static boolean isEnabled() {
+    return Registry.is("vcs.annotations.preload") && !ApplicationManager.getApplication().isUnitTestMode();
+  }
+
+  private static boolean mayBeAnnotated(@NotNull VirtualFile file) {
+    return file.isInLocalFileSystem() && !file.isDirectory() && file.getLength() <= MAX_FILE_LENGTH && !file.getFileType().isBinary();
+  }
+
+  private void preload(@NotNull VirtualFile file) {
+    if (myProject.isDisposed() || !file.isValid()) return;
+
+    final AbstractVcs vcs = myVcsManager.getVcsFor(file);
+    if (vcs == null) return;
+    final FileStatus status = ChangeListManager.getInstance(myProject).getStatus(file);
+    if (status == FileStatus.ADDED || status == FileStatus.UNKNOWN || status == FileStatus.IGNORED) return;
+
+    final AnnotationProvider provider = vcs.getCachingAnnotationProvider();
+    if (!(provider instanceof VcsAnnotationCachedProxy)) return;
+    try {
+      ((VcsAnnotationCachedProxy)provider).preload(file);
+    }
+    catch (VcsException e) {
+      LOG.debug(e);
+    }
+  }
+}
@@ -31,6 +31,7 @@ import com.intellij.openapi.ui.MessageType;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.*;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.*;
 import com.intellij.openapi.vcs.changes.conflicts.ChangelistConflictTracker;
@@ -45,6 +46,7 @@ import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.EditorNotifications;
 import com.intellij.util.*;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.concurrency.Semaphore;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.util.continuation.ContinuationPause;
@@ -60,8 +62,7 @@ import org.jetbrains.annotations.TestOnly;
 import javax.swing.*;
 import java.io.File;
 import java.util.*;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -95,6 +96,16 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
   private final EventDispatcher<ChangeListListener> myListeners = EventDispatcher.create(ChangeListListener.class);
 
   private final Object myDataLock = new Object();
+  // built on demand from myWorker under myDataLock, dropped under myDataLock whenever the change lists are modified
+  private volatile ChangeListsSnapshot mySnapshot;
+  // guards the worker copy while change providers of several roots run in parallel
+  private final Object myParallelUpdateLock = new Object();
+  private final Executor myParallelUpdateExecutor = new BoundedTaskExecutor(new Executor() {
+    @Override
+    public void execute(@NotNull Runnable command) {
+      ApplicationManager.getApplication().executeOnPooledThread(command);
+    }
+  }, Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
 
   private final List<CommitExecutor> myExecutors = new ArrayList<CommitExecutor>();
 
@@ -231,6 +242,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
         synchronized (myDataLock) {
           if (myWorker.isEmpty()) {
             final LocalChangeList list = myWorker.addChangeList(VcsBundle.message("changes.default.changlist.name"), null);
+            dropSnapshot();
             setDefaultChangeList(list);
 
             if (myIgnoredIdeaLevel.isEmpty()) {
@@ -445,6 +457,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
             dataHolder.notifyEnd();
             // should be applied for notifications to be delivered (they were delayed) - anyway whether we take changes or not
             myModifier.finishUpdate(dataHolder.getChangeListWorker());
+            dropSnapshot();
             // update member from copy
             if (takeChanges) {
               final ChangeListWorker oldWorker = myWorker;
@@ -530,23 +543,53 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     final UpdatingChangeListBuilder builder = new UpdatingChangeListBuilder(dataHolder.getChangeListWorker(),
       dataHolder.getComposite(), myUpdater.getIsStoppedGetter(), myIgnoredIdeaLevel, gate);
 
+    final List<VcsModifiableDirtyScope> adjustedScopes = new ArrayList<VcsModifiableDirtyScope>();
     for (final VcsDirtyScope scope : scopes) {
-      if (DEBUG) {
-        ChangeListManagerImpl.log("ChangeListManagerImpl.iterateScopes: scope = " + scope);
-      }
-      myUpdateChangesProgressIndicator.checkCanceled();
-
       final AbstractVcs vcs = scope.getVcs();
       if (vcs == null) continue;
       scope.setWasEverythingDirty(wasEverythingDirty);
       final VcsModifiableDirtyScope adjustedScope = vcs.adjustDirtyScope((VcsModifiableDirtyScope) scope);
+      if (isParallelUpdateAllowed(vcs) && adjustedScope instanceof VcsDirtyScopeImpl) {
+        adjustedScopes.addAll(((VcsDirtyScopeImpl)adjustedScope).splitByRoots());
+      }
+      else {
+        adjustedScopes.add(adjustedScope);
+      }
+    }
 
-      myChangesViewManager.setBusy(true);
-      dataHolder.notifyStartProcessingChanges(adjustedScope);
-
-      actualUpdate(builder, adjustedScope, vcs, dataHolder, gate);
+    final Map<VcsDirtyScope, Future<Pair<DeferredChangelistBuilder, VcsException>>> parallelUpdates =
+      startParallelUpdates(dataHolder, adjustedScopes, gate);
+    try {
+      for (final VcsModifiableDirtyScope scope : adjustedScopes) {
+        if (DEBUG) {
+          ChangeListManagerImpl.log("ChangeListManagerImpl.iterateScopes: scope = " + scope);
+        }
+        myUpdateChangesProgressIndicator.checkCanceled();
+
+        myChangesViewManager.setBusy(true);
+        final Future<Pair<DeferredChangelistBuilder, VcsException>> future = parallelUpdates.get(scope);
+        if (future == null) {
+          synchronized (myParallelUpdateLock) {
+            dataHolder.notifyStartProcessingChanges(scope);
+            actualUpdate(builder, scope, scope.getVcs(), dataHolder, gate);
+          }
+        }
+        else {
+          applyParallelUpdate(builder, scope, future, dataHolder);
+        }
 
-      if (myUpdateException != null) break;
+        if (myUpdateException != null) break;
+      }
+    }
+    finally {
+      // the providers which are still running use the gate of the worker copy
+      for (Future<Pair<DeferredChangelistBuilder, VcsException>> future : parallelUpdates.values()) {
+        try {
+          future.get();
+        }
+        catch (Exception ignore) {
+        }
+      }
     }
     synchronized (myDataLock) {
       if (myAdditionalInfo == null) {
@@ -555,6 +598,96 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     }
   }
 
+  private static boolean isParallelUpdateAllowed(@NotNull AbstractVcs vcs) {
+    return vcs.allowsParallelChangesCollection() && Registry.is("vcs.parallel.changes.collection");
+  }
+
+  /**
+   * Starts change providers for the scopes of the VCSes which allow it on pooled threads.
+   * Changes are recorded by {@link DeferredChangelistBuilder}s and passed to the updating builder later, in the order of the scopes,
+   * so the result is the same as of the sequential update; one slow root doesn't block the others though.
+   * @return futures for the scopes updated in parallel, empty if there is nothing to parallelize
+   */
+  private Map<VcsDirtyScope, Future<Pair<DeferredChangelistBuilder, VcsException>>> startParallelUpdates(
+    final DataHolder dataHolder, final List<VcsModifiableDirtyScope> scopes, final ChangeListManagerGate gate) {
+    final List<VcsModifiableDirtyScope> parallelScopes = new ArrayList<VcsModifiableDirtyScope>();
+    for (VcsModifiableDirtyScope scope : scopes) {
+      final AbstractVcs vcs = scope.getVcs();
+      if (vcs != null && vcs.getChangeProvider() != null && isParallelUpdateAllowed(vcs)) {
+        parallelScopes.add(scope);
+      }
+    }
+    if (parallelScopes.size() < 2) {
+      return Collections.emptyMap();
+    }
+
+    final Map<VcsDirtyScope, Future<Pair<DeferredChangelistBuilder, VcsException>>> result =
+      new HashMap<VcsDirtyScope, Future<Pair<DeferredChangelistBuilder, VcsException>>>();
+    for (final VcsModifiableDirtyScope scope : parallelScopes) {
+      // the sequential update extends the scope with moved changes right before the provider runs, here it is done in advance
+      dataHolder.getChangeListWorker().correctScopeForMoves(scope);
+      final DeferredChangelistBuilder deferredBuilder = new DeferredChangelistBuilder(scope);
+      final ChangeListManagerGate deferredGate = deferredBuilder.createGate(gate, myParallelUpdateLock);
+      final FutureTask<Pair<DeferredChangelistBuilder, VcsException>> task =
+        new FutureTask<Pair<DeferredChangelistBuilder, VcsException>>(new Callable<Pair<DeferredChangelistBuilder, VcsException>>() {
+          @Override
+          public Pair<DeferredChangelistBuilder, VcsException> call() throws Exception {
+            try {
+              scope.getVcs().getChangeProvider().getChanges(scope, deferredBuilder, myUpdateChangesProgressIndicator, deferredGate);
+              return Pair.create(deferredBuilder, null);
+            }
+            catch (VcsException e) {
+              return Pair.create(deferredBuilder, e);
+            }
+          }
+        });
+      result.put(scope, task);
+      myParallelUpdateExecutor.execute(task);
+    }
+    return result;
+  }
+
+  private void applyParallelUpdate(final UpdatingChangeListBuilder builder, final VcsModifiableDirtyScope scope,
+                                   final Future<Pair<DeferredChangelistBuilder, VcsException>> future, final DataHolder dataHolder) {
+    try {
+      final Pair<DeferredChangelistBuilder, VcsException> result = waitForParallelUpdate(future);
+      synchronized (myParallelUpdateLock) {
+        try {
+          dataHolder.notifyStartProcessingChanges(scope);
+          builder.setCurrent(scope, new FoldersCutDownWorker());
+          if (result.getSecond() != null) {
+            handleUpdateException(result.getSecond());
+          }
+          else {
+            result.getFirst().replay(builder);
+          }
+        }
+        finally {
+          if (!myUpdater.isStopped()) {
+            dataHolder.notifyDoneProcessingChanges();
+          }
+        }
+      }
+    } catch (ProcessCanceledException ignore) {
+    } catch (Throwable t) {
+      LOG.debug(t);
+      Rethrow.reThrowRuntime(t);
+    }
+  }
+
+  private static Pair<DeferredChangelistBuilder, VcsException> waitForParallelUpdate(
+    final Future<Pair<DeferredChangelistBuilder, VcsException>> future) throws Throwable {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      throw new ProcessCanceledException(e);
+    }
+    catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
   private void clearCurrentRevisionsCache(final VcsInvalidated invalidated) {
     final ContentRevisionCache cache = ProjectLevelVcsManager.getInstance(myProject).getContentRevisionCache();
     if (invalidated.isEverythingDirty()) {
@@ -686,10 +819,31 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     return before != null && scope.belongsTo(before.getFile()) || after != null && scope.belongsTo(after.getFile());
   }
 
-  public List<LocalChangeList> getChangeListsCopy() {
-    synchronized (myDataLock) {
-      return myWorker.getListsCopy();
+  /**
+   * Readers of the change lists use the last published snapshot and don't wait for the lock while the lists are being updated.
+   */
+  @NotNull
+  private ChangeListsSnapshot getSnapshot() {
+    ChangeListsSnapshot snapshot = mySnapshot;
+    if (snapshot == null) {
+      synchronized (myDataLock) {
+        snapshot = mySnapshot;
+        if (snapshot == null) {
+          snapshot = new ChangeListsSnapshot(myWorker);
+          mySnapshot = snapshot;
+        }
+      }
     }
+    return snapshot;
+  }
+
+  // should be called under myDataLock after myWorker is modified or replaced
+  private void dropSnapshot() {
+    mySnapshot = null;
+  }
+
+  public List<LocalChangeList> getChangeListsCopy() {
+    return getSnapshot().getListsCopy();
   }
 
   /**
@@ -699,9 +853,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
    */
   @NotNull
   public List<LocalChangeList> getChangeLists() {
-    synchronized (myDataLock) {
-      return getChangeListsCopy();
-    }
+    return getChangeListsCopy();
   }
 
   public List<File> getAffectedPaths() {
@@ -719,9 +871,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
 
   @NotNull
   public Collection<Change> getAllChanges() {
-    synchronized (myDataLock) {
-      return myWorker.getAllChanges();
-    }
+    return getSnapshot().getAllChanges();
   }
 
   public List<VirtualFile> getUnversionedFiles() {
@@ -823,9 +973,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
 
   @Override
   public LocalChangeList getChangeList(String id) {
-    synchronized (myDataLock) {
-      return myWorker.getChangeList(id);
-    }
+    return getSnapshot().getChangeList(id);
   }
 
   public LocalChangeList addChangeList(@NotNull final String name, @Nullable final String comment) {
@@ -834,6 +982,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       public LocalChangeList compute() {
         synchronized (myDataLock) {
           final LocalChangeList changeList = myModifier.addChangeList(name, comment);
+          dropSnapshot();
           myChangesViewManager.scheduleRefresh();
           return changeList;
         }
@@ -847,6 +996,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       public void run() {
         synchronized (myDataLock) {
           myModifier.removeChangeList(name);
+          dropSnapshot();
           myChangesViewManager.scheduleRefresh();
         }
       }
@@ -889,6 +1039,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
                 final LocalChangeList byName = myWorker.getCopyByName(listName);
                 if (byName != null && byName.getChanges().isEmpty() && ! byName.isDefault() && ! byName.isReadOnly()) {
                   myWorker.removeChangeList(listName);
+                  dropSnapshot();
                 }
               }
             }
@@ -904,6 +1055,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       public void run() {
         synchronized (myDataLock) {
           myModifier.setDefault(list.getName());
+          dropSnapshot();
         }
       }
     });
@@ -912,9 +1064,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
 
   @Nullable
   public LocalChangeList getDefaultChangeList() {
-    synchronized (myDataLock) {
-      return myWorker.getDefaultListCopy();
-    }
+    return getSnapshot().getDefaultListCopy();
   }
 
   @Override
@@ -931,9 +1081,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
 
   @Nullable
   public LocalChangeList getChangeList(@NotNull Change change) {
-    synchronized (myDataLock) {
-      return myWorker.listForChange(change);
-    }
+    return getSnapshot().getListCopy(change);
   }
 
   @Override
@@ -1054,6 +1202,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       public void run() {
         synchronized (myDataLock) {
           myModifier.moveChangesTo(list.getName(), changes);
+          dropSnapshot();
         }
       }
     });
@@ -1175,6 +1324,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       synchronized (myDataLock) {
         myIgnoredIdeaLevel.clear();
         new ChangeListManagerSerialization(myIgnoredIdeaLevel, myWorker).readExternal(element);
+        dropSnapshot();
         if ((! myWorker.isEmpty()) && getDefaultChangeList() == null) {
           setDefaultChangeList(myWorker.getListsCopy().get(0));
         }
@@ -1334,6 +1484,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       public Boolean compute() {
         synchronized (myDataLock) {
           final boolean result = myModifier.setReadOnly(name, value);
+          dropSnapshot();
           myChangesViewManager.scheduleRefresh();
           return result;
         }
@@ -1347,6 +1498,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       public Boolean compute() {
         synchronized (myDataLock) {
           final boolean result = myModifier.editName(fromName, toName);
+          dropSnapshot();
           myChangesViewManager.scheduleRefresh();
           return result;
         }
@@ -1360,6 +1512,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       public String compute() {
         synchronized (myDataLock) {
           final String oldComment = myModifier.editComment(fromName, newComment);
+          dropSnapshot();
           myChangesViewManager.scheduleRefresh();
           return oldComment;
         }
@@ -1412,9 +1565,7 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
 
   @Override
   public int getChangeListsNumber() {
-    synchronized (myDataLock) {
-      return myWorker.getChangeListsNumber();
-    }
+    return getSnapshot().getChangeListsNumber();
   }
 
   // only a light attempt to show that some dirty scope request is asynchronously coming
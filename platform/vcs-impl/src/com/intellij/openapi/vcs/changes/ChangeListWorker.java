@@ -370,6 +370,22 @@ public class ChangeListWorker implements ChangeListsWriteOperations {
     mySwitchedHolder.cleanAndAdjustScope(scope);
   }
 
+  /**
+   * Extends the scope with both paths of the moved changes under it, as {@link #notifyStartProcessingChanges} does, but without
+   * removing the changes. Lets the scope be passed to a change provider before its changes are processed.
+   */
+  void correctScopeForMoves(@NotNull final VcsModifiableDirtyScope scope) {
+    final Collection<Change> changes = new ArrayList<Change>();
+    for (LocalChangeList list : myMap.values()) {
+      for (Change change : list.getChanges()) {
+        if (ChangeListManagerImpl.isUnder(change, scope)) {
+          changes.add(change);
+        }
+      }
+    }
+    correctScopeForMoves(scope, changes);
+  }
+
   private void correctScopeForMoves(final VcsModifiableDirtyScope scope, final Collection<Change> changes) {
     if (scope == null) return;
     for (Change change : changes) {
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable state of the change lists at some moment, which can be read without synchronization.
+ * Holds its own copies of the lists and gives out only copies of them, like {@link ChangeListWorker} does.
+ */
+class ChangeListsSnapshot {
+  private final List<LocalChangeList> myLists;
+  @Nullable private final LocalChangeList myDefaultList;
+  private final Set<Change> myAllChanges = new HashSet<Change>();
+  private final Map<Change, LocalChangeList> myListsByChange = new HashMap<Change, LocalChangeList>();
+
+  ChangeListsSnapshot(@NotNull ChangeListWorker worker) {
+    myLists = worker.getListsCopy();
+    LocalChangeList defaultList = null;
+    for (LocalChangeList list : myLists) {
+      if (list.isDefault()) {
+        defaultList = list;
+      }
+      for (Change change : list.getChanges()) {
+        myAllChanges.add(change);
+        if (!myListsByChange.containsKey(change)) {
+          myListsByChange.put(change, list);
+        }
+      }
+    }
+    myDefaultList = defaultList;
+  }
+
+  @NotNull
+  List<LocalChangeList> getListsCopy() {
+    final List<LocalChangeList> result = new ArrayList<LocalChangeList>(myLists.size());
+    for (LocalChangeList list : myLists) {
+      result.add(list.copy());
+    }
+    return result;
+  }
+
+  @Nullable
+  LocalChangeList getDefaultListCopy() {
+    return myDefaultList == null ? null : myDefaultList.copy();
+  }
+
+  @Nullable
+  LocalChangeList getChangeList(String id) {
+    for (LocalChangeList list : myLists) {
+      if (list.getId().equals(id)) {
+        return list.copy();
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  LocalChangeList getListCopy(@NotNull Change change) {
+    final LocalChangeList list = myListsByChange.get(change);
+    return list == null ? null : list.copy();
+  }
+
+  @NotNull
+  Collection<Change> getAllChanges() {
+    return new HashSet<Change>(myAllChanges);
+  }
+
+  int getChangeListsNumber() {
+    return myLists.size();
+  }
+}
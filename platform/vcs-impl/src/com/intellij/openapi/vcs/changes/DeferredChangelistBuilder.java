@@ -0,0 +1,335 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.util.Factory;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.FileStatus;
+import com.intellij.openapi.vcs.VcsKey;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.*;
+
+/**
+ * Records what a change provider reports for a dirty scope, so that providers of several scopes can run in parallel
+ * while the results are applied to the {@link UpdatingChangeListBuilder} one scope after another, in the order of the scopes.
+ * <p/>
+ * The change lists are not touched while the provider runs, so {@link #createGate(ChangeListManagerGate, Object)} answers
+ * the status requests for the files of the scope as the sequential update would: from the changes reported so far.
+ */
+class DeferredChangelistBuilder implements ChangelistBuilder {
+  private final VcsDirtyScope myScope;
+  private final List<Consumer<ChangelistBuilder>> myCalls = new ArrayList<Consumer<ChangelistBuilder>>(); // guarded by itself
+  private final Map<String, FileStatus> myStatuses = new HashMap<String, FileStatus>(); // guarded by myCalls
+
+  DeferredChangelistBuilder(@NotNull VcsDirtyScope scope) {
+    myScope = scope;
+  }
+
+  /**
+   * Passes everything recorded so far to the given builder.
+   */
+  void replay(@NotNull ChangelistBuilder builder) {
+    final List<Consumer<ChangelistBuilder>> calls;
+    synchronized (myCalls) {
+      calls = new ArrayList<Consumer<ChangelistBuilder>>(myCalls);
+    }
+    for (Consumer<ChangelistBuilder> call : calls) {
+      call.consume(builder);
+    }
+  }
+
+  /**
+   * @param lock guards the change lists the delegate gate works with
+   */
+  @NotNull
+  ChangeListManagerGate createGate(@NotNull final ChangeListManagerGate delegate, @NotNull final Object lock) {
+    return new ChangeListManagerGate() {
+      @Override
+      public List<LocalChangeList> getListsCopy() {
+        synchronized (lock) {
+          return delegate.getListsCopy();
+        }
+      }
+
+      @Nullable
+      @Override
+      public LocalChangeList findChangeList(String name) {
+        synchronized (lock) {
+          return delegate.findChangeList(name);
+        }
+      }
+
+      @Override
+      public LocalChangeList addChangeList(String name, String comment) {
+        synchronized (lock) {
+          return delegate.addChangeList(name, comment);
+        }
+      }
+
+      @Override
+      public LocalChangeList findOrCreateList(String name, String comment) {
+        synchronized (lock) {
+          return delegate.findOrCreateList(name, comment);
+        }
+      }
+
+      @Override
+      public void editComment(String name, String comment) {
+        synchronized (lock) {
+          delegate.editComment(name, comment);
+        }
+      }
+
+      @Override
+      public void editName(String oldName, String newName) {
+        synchronized (lock) {
+          delegate.editName(oldName, newName);
+        }
+      }
+
+      @Override
+      public void moveChanges(String toList, Collection<Change> changes) {
+        synchronized (lock) {
+          delegate.moveChanges(toList, changes);
+        }
+      }
+
+      @Override
+      public void setListsToDisappear(Collection<String> names) {
+        synchronized (lock) {
+          delegate.setListsToDisappear(names);
+        }
+      }
+
+      @Override
+      public FileStatus getStatus(VirtualFile file) {
+        if (myScope.belongsTo(new FilePathImpl(file))) {
+          return getReportedStatus(file.getPath());
+        }
+        synchronized (lock) {
+          return delegate.getStatus(file);
+        }
+      }
+
+      @Override
+      public FileStatus getStatus(File file) {
+        if (myScope.belongsTo(new FilePathImpl(file, file.isDirectory()))) {
+          return getReportedStatus(file.getPath());
+        }
+        synchronized (lock) {
+          return delegate.getStatus(file);
+        }
+      }
+
+      @Override
+      public void setDefaultChangeList(@NotNull String list) {
+        synchronized (lock) {
+          delegate.setDefaultChangeList(list);
+        }
+      }
+    };
+  }
+
+  @Nullable
+  private FileStatus getReportedStatus(@NotNull String path) {
+    synchronized (myCalls) {
+      return myStatuses.get(FileUtil.toSystemIndependentName(path));
+    }
+  }
+
+  private void record(@NotNull Consumer<ChangelistBuilder> call) {
+    synchronized (myCalls) {
+      myCalls.add(call);
+    }
+  }
+
+  private void recordChange(@NotNull Change change, @NotNull Consumer<ChangelistBuilder> call) {
+    synchronized (myCalls) {
+      myCalls.add(call);
+      for (ContentRevision revision : new ContentRevision[]{change.getBeforeRevision(), change.getAfterRevision()}) {
+        if (revision != null) {
+          myStatuses.put(FileUtil.toSystemIndependentName(revision.getFile().getPath()), change.getFileStatus());
+        }
+      }
+    }
+  }
+
+  @Override
+  public void processChange(final Change change, final VcsKey vcsKey) {
+    recordChange(change, new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processChange(change, vcsKey);
+      }
+    });
+  }
+
+  @Override
+  public void processChangeInList(final Change change, @Nullable final ChangeList changeList, final VcsKey vcsKey) {
+    recordChange(change, new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processChangeInList(change, changeList, vcsKey);
+      }
+    });
+  }
+
+  @Override
+  public void processChangeInList(final Change change, final String changeListName, final VcsKey vcsKey) {
+    recordChange(change, new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processChangeInList(change, changeListName, vcsKey);
+      }
+    });
+  }
+
+  @Override
+  public void removeRegisteredChangeFor(final FilePath path) {
+    synchronized (myCalls) {
+      myStatuses.remove(FileUtil.toSystemIndependentName(path.getPath()));
+    }
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.removeRegisteredChangeFor(path);
+      }
+    });
+  }
+
+  @Override
+  public void processUnversionedFile(final VirtualFile file) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processUnversionedFile(file);
+      }
+    });
+  }
+
+  @Override
+  public void processLocallyDeletedFile(final FilePath file) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processLocallyDeletedFile(file);
+      }
+    });
+  }
+
+  @Override
+  public void processLocallyDeletedFile(final LocallyDeletedChange locallyDeletedChange) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processLocallyDeletedFile(locallyDeletedChange);
+      }
+    });
+  }
+
+  @Override
+  public void processModifiedWithoutCheckout(final VirtualFile file) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processModifiedWithoutCheckout(file);
+      }
+    });
+  }
+
+  @Override
+  public void processIgnoredFile(final VirtualFile file) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processIgnoredFile(file);
+      }
+    });
+  }
+
+  @Override
+  public void processLockedFolder(final VirtualFile file) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processLockedFolder(file);
+      }
+    });
+  }
+
+  @Override
+  public void processLogicallyLockedFolder(final VirtualFile file, final LogicalLock logicalLock) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processLogicallyLockedFolder(file, logicalLock);
+      }
+    });
+  }
+
+  @Override
+  public void processSwitchedFile(final VirtualFile file, final String branch, final boolean recursive) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processSwitchedFile(file, branch, recursive);
+      }
+    });
+  }
+
+  @Override
+  public void processRootSwitch(final VirtualFile file, final String branch) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.processRootSwitch(file, branch);
+      }
+    });
+  }
+
+  @Override
+  public boolean reportChangesOutsideProject() {
+    return false;
+  }
+
+  @Override
+  public void reportAdditionalInfo(final String text) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.reportAdditionalInfo(text);
+      }
+    });
+  }
+
+  @Override
+  public void reportAdditionalInfo(final Factory<JComponent> infoComponent) {
+    record(new Consumer<ChangelistBuilder>() {
+      @Override
+      public void consume(ChangelistBuilder builder) {
+        builder.reportAdditionalInfo(infoComponent);
+      }
+    });
+  }
+}
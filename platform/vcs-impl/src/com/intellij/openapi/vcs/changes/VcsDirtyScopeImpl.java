@@ -562,4 +562,34 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
   public void setWasEverythingDirty(boolean wasEverythingDirty) {
     myWasEverythingDirty = wasEverythingDirty;
   }
+
+  /**
+   * Splits the scope into scopes of single VCS roots, which together are equal to this scope.
+   * The scope is not split if one of its roots is under another one, since a dirty directory may cover the nested root then.
+   */
+  public List<VcsDirtyScopeImpl> splitByRoots() {
+    final Set<VirtualFile> roots = new LinkedHashSet<VirtualFile>(myDirtyDirectoriesRecursively.keySet());
+    roots.addAll(myDirtyFiles.keySet());
+    if (roots.size() <= 1) {
+      return Collections.singletonList(this);
+    }
+    for (VirtualFile root : roots) {
+      for (VirtualFile other : roots) {
+        if (root != other && VfsUtilCore.isAncestor(root, other, false)) {
+          return Collections.singletonList(this);
+        }
+      }
+    }
+
+    final List<VcsDirtyScopeImpl> result = new ArrayList<VcsDirtyScopeImpl>(roots.size());
+    for (VirtualFile root : roots) {
+      final VcsDirtyScopeImpl scope = new VcsDirtyScopeImpl(myVcs, myProject);
+      final THashSet<FilePath> dirs = myDirtyDirectoriesRecursively.get(root);
+      final THashSet<FilePath> files = myDirtyFiles.get(root);
+      scope.addDirtyData(dirs == null ? Collections.<FilePath>emptySet() : dirs, files == null ? Collections.<FilePath>emptySet() : files);
+      scope.setWasEverythingDirty(myWasEverythingDirty);
+      result.add(scope);
+    }
+    return result;
+  }
 }
@@ -20,6 +20,7 @@ import com.intellij.openapi.components.ApplicationComponent;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectLocator;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vcs.ConstantZipperUpdater;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.FilePathImpl;
@@ -30,6 +31,7 @@ import com.intellij.openapi.vfs.newvfs.events.*;
 import com.intellij.util.Alarm;
 import com.intellij.util.containers.HashMap;
 import com.intellij.util.containers.HashSet;
+import com.intellij.util.containers.MultiMap;
 import com.intellij.util.messages.MessageBusConnection;
 import com.intellij.vcsUtil.VcsUtil;
 import org.jetbrains.annotations.NotNull;
@@ -40,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Listens to file system events and notifies VcsDirtyScopeManagers responsible for changed files to mark these files dirty.
@@ -89,6 +92,9 @@ public class VcsDirtyScopeVfsListener implements ApplicationComponent, BulkFileL
             }
           }
         }
+        for (Pair<HashSet<FilePath>, HashSet<FilePath>> filesAndDirs : map.values()) {
+          coalesce(filesAndDirs.first, filesAndDirs.second);
+        }
         new FileAndDirsCollector().markDirty(map);
       }
     };
@@ -183,6 +189,32 @@ public class VcsDirtyScopeVfsListener implements ApplicationComponent, BulkFileL
     myZipperUpdater.request();
   }
 
+  /**
+   * If too many files of one directory are dirty (e.g. after a checkout), marks the directory dirty instead:
+   * checking the directory once is cheaper than building the scope and checking status of each file separately.
+   * The directory is marked dirty non-recursively, which covers its direct children but not its subdirectories.
+   */
+  private static void coalesce(@NotNull Set<FilePath> files, @NotNull Set<FilePath> dirs) {
+    final int threshold = Registry.intValue("vcs.dirty.files.per.directory.threshold", 100);
+    if (threshold <= 0 || files.size() <= threshold) return;
+
+    final MultiMap<FilePath, FilePath> filesByParent = new MultiMap<FilePath, FilePath>();
+    for (FilePath file : files) {
+      final FilePath parent = file.getParentPath();
+      if (parent != null) {
+        filesByParent.putValue(parent, file);
+      }
+    }
+    for (Map.Entry<FilePath, Collection<FilePath>> entry : filesByParent.entrySet()) {
+      if (entry.getValue().size() > threshold) {
+        for (FilePath file : entry.getValue()) {
+          files.remove(file);
+        }
+        files.add(entry.getKey());
+      }
+    }
+  }
+
   @Nullable
   private static VirtualFile getFileForEvent(VFileEvent event) {
     return VcsUtil.getVirtualFile(event.getPath());
@@ -197,6 +229,10 @@ public class VcsDirtyScopeVfsListener implements ApplicationComponent, BulkFileL
     // dirty scope manager -> Pair(set of dirty files, set of dirty directories)
     Map<VcsDirtyScopeManager, Pair<HashSet<FilePath>, HashSet<FilePath>>> map =
       new HashMap<VcsDirtyScopeManager, Pair<HashSet<FilePath>, HashSet<FilePath>>>();
+    // parent directory -> managers of the files in it: a batch usually has many files of the same directory,
+    // so the projects are looked up once per directory. An extra manager does no harm, it ignores files not under its VCS.
+    private final Map<VirtualFile, Collection<VcsDirtyScopeManager>> myManagersByParent =
+      new HashMap<VirtualFile, Collection<VcsDirtyScopeManager>>();
 
     /**
      * For the given VirtualFile constructs a FilePathImpl object without referring to the initial VirtualFile object
@@ -212,7 +248,7 @@ public class VcsDirtyScopeVfsListener implements ApplicationComponent, BulkFileL
       final FilePathImpl path = forDelete ? new FilePathImpl(new File(file.getPath()), isDirectory) :
         new FilePathImpl(file);
 
-      final Collection<VcsDirtyScopeManager> managers = getManagers(file);
+      final Collection<VcsDirtyScopeManager> managers = isDirectory ? getManagers(file) : getManagersOfFile(file);
       for (VcsDirtyScopeManager manager : managers) {
         Pair<HashSet<FilePath>, HashSet<FilePath>> filesAndDirs = map.get(manager);
         if (filesAndDirs == null) {
@@ -228,6 +264,22 @@ public class VcsDirtyScopeVfsListener implements ApplicationComponent, BulkFileL
       }
     }
 
+    @NotNull
+    private Collection<VcsDirtyScopeManager> getManagersOfFile(@NotNull VirtualFile file) {
+      final VirtualFile parent = file.getParent();
+      if (parent == null) {
+        return getManagers(file);
+      }
+      Collection<VcsDirtyScopeManager> managers = myManagersByParent.get(parent);
+      if (managers == null) {
+        managers = getManagers(file);
+        if (!managers.isEmpty()) { // the file may be a content root itself, its siblings are looked up separately then
+          myManagersByParent.put(parent, managers);
+        }
+      }
+      return managers;
+    }
+
     /**
      * Adds files to the collection of files and directories - to the collection of directories (which are handled recursively).
      */
@@ -35,6 +35,7 @@ public class MockAbstractVcs extends AbstractVcs {
   private DiffProvider myDiffProvider;
   private ChangeProvider myChangeProvider;
   private boolean myAllowNestedRoots;
+  private boolean myAllowsParallelChangesCollection;
 
   public MockAbstractVcs(Project project){
     super(project, NAME);
@@ -116,4 +117,13 @@ public class MockAbstractVcs extends AbstractVcs {
   public void setAllowNestedRoots(boolean allowNestedRoots) {
     myAllowNestedRoots = allowNestedRoots;
   }
+
+  @Override
+  public boolean allowsParallelChangesCollection() {
+    return myAllowsParallelChangesCollection;
+  }
+
+  public void setAllowsParallelChangesCollection(boolean allowsParallelChangesCollection) {
+    myAllowsParallelChangesCollection = allowsParallelChangesCollection;
+  }
 }
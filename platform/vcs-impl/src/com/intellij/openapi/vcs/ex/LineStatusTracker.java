@@ -30,6 +30,7 @@ import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.text.StringUtil;
@@ -38,15 +39,14 @@ import com.intellij.openapi.vcs.changes.VcsDirtyScopeManager;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.EditorNotificationPanel;
+import com.intellij.util.Alarm;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.diff.FilesTooBigForDiffException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.*;
 
 /**
  * @author irengrig
@@ -55,6 +55,12 @@ import java.util.ListIterator;
 public class LineStatusTracker {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.ex.LineStatusTracker");
   private static final Key<CanNotCalculateDiffPanel> PANEL_KEY = new Key<CanNotCalculateDiffPanel>("LineStatusTracker.CanNotCalculateDiffPanel");
+  /**
+   * Changed blocks longer than this number of lines (counting both sides, common prefix and suffix excluded) aren't diffed
+   * in a document listener: such a block is shown as a single modified range and diffed in background.
+   */
+  private static final int SYNC_DIFF_LINES = Integer.getInteger("idea.line.status.sync.diff.lines", 2000);
+  private static final int REFINE_DELAY = 300;
 
   private final Object myLock = new Object();
   // true -> have contents
@@ -64,6 +70,9 @@ public class LineStatusTracker {
   private final Document myUpToDateDocument;
 
   private List<Range> myRanges;
+  // coarse ranges of myRanges waiting for background diff
+  private final Set<Range> myRangesToRefine = ContainerUtil.newIdentityTroveSet();
+  private final Alarm myRefineAlarm;
 
   private final Project myProject;
 
@@ -86,6 +95,7 @@ public class LineStatusTracker {
     myUpToDateDocument = upToDateDocument;
     myUpToDateDocument.putUserData(UndoConstants.DONT_RECORD_UNDO, Boolean.TRUE);
     myProject = project;
+    myRefineAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
     myBaseLoaded = BaseLoadState.LOADING;
     synchronized (myLock) {
       myRanges = new ArrayList<Range>();
@@ -142,7 +152,8 @@ public class LineStatusTracker {
       removeAnathema();
       removeHighlightersFromMarkupModel();
       try {
-        myRanges = new RangesBuilder(myDocument, myUpToDateDocument).getRanges();
+        myRanges = buildRanges(new DocumentWrapper(myDocument).getLines(), new DocumentWrapper(myUpToDateDocument).getLines(), 0, 0,
+                               SYNC_DIFF_LINES, myRangesToRefine);
       }
       catch (FilesTooBigForDiffException e) {
         myRanges.clear();
@@ -152,6 +163,7 @@ public class LineStatusTracker {
       for (final Range range : myRanges) {
         range.setHighlighter(createHighlighter(range));
       }
+      scheduleRefinement();
     }
   }
 
@@ -207,6 +219,7 @@ public class LineStatusTracker {
       }
       removeAnathema();
       removeHighlightersFromMarkupModel();
+      Disposer.dispose(myRefineAlarm);
       myReleased = true;
     }
   }
@@ -250,6 +263,7 @@ public class LineStatusTracker {
         }
       }
       myRanges.clear();
+      myRangesToRefine.clear();
     }
   }
 
@@ -290,7 +304,6 @@ public class LineStatusTracker {
     private int myUpToDateLastLine;
     private int myLastChangedLine;
     private int myLinesBeforeChange;
-    private final VcsDirtyScopeManager myVcsDirtyScopeManager = VcsDirtyScopeManager.getInstance(myProject);
 
     @Override
     public void beforeDocumentChange(DocumentEvent e) {
@@ -300,52 +313,22 @@ public class LineStatusTracker {
         if (myReleased) return;
         if (myBulkUpdate || myAnathemaThrown || BaseLoadState.LOADED != myBaseLoaded) return;
         try {
-          myFirstChangedLine = myDocument.getLineNumber(e.getOffset());
-          myLastChangedLine = myDocument.getLineNumber(e.getOffset() + e.getOldLength());
-          if (StringUtil.endsWithChar(e.getOldFragment(), '\n')) myLastChangedLine++;
+          int firstChangedLine = myDocument.getLineNumber(e.getOffset());
+          int lastChangedLine = myDocument.getLineNumber(e.getOffset() + e.getOldLength());
+          if (StringUtil.endsWithChar(e.getOldFragment(), '\n')) lastChangedLine++;
 
           myLinesBeforeChange = myDocument.getLineNumber(e.getOffset() + e.getOldLength()) - myDocument.getLineNumber(e.getOffset());
 
-          Range firstChangedRange = getLastRangeBeforeLine(myFirstChangedLine);
-
-          if (firstChangedRange == null) {
-            myUpToDateFirstLine = myFirstChangedLine;
-          }
-          else if (firstChangedRange.containsLine(myFirstChangedLine)) {
-            myFirstChangedLine = firstChangedRange.getOffset1();
-            myUpToDateFirstLine = firstChangedRange.getUOffset1();
-          }
-          else {
-            myUpToDateFirstLine = firstChangedRange.getUOffset2() + myFirstChangedLine - firstChangedRange.getOffset2();
-          }
-
-          Range myLastChangedRange = getLastRangeBeforeLine(myLastChangedLine);
-
-          if (myLastChangedRange == null) {
-            myUpToDateLastLine = myLastChangedLine;
-          }
-          else if (myLastChangedRange.containsLine(myLastChangedLine)) {
-            myUpToDateLastLine = myLastChangedRange.getUOffset2();
-            myLastChangedLine = myLastChangedRange.getOffset2();
-          }
-          else {
-            myUpToDateLastLine = myLastChangedRange.getUOffset2() + myLastChangedLine - myLastChangedRange.getOffset2();
-          }
+          int[] window = getChangedWindow(myRanges, firstChangedLine, lastChangedLine);
+          myFirstChangedLine = window[0];
+          myLastChangedLine = window[1];
+          myUpToDateFirstLine = window[2];
+          myUpToDateLastLine = window[3];
         } catch (ProcessCanceledException ignore) {
         }
       }
     }
 
-    @Nullable
-    private Range getLastRangeBeforeLine(int line) {
-      Range result = null;
-      for (Range range : myRanges) {
-        if (range.isMoreThen(line)) return result;
-        result = range;
-      }
-      return result;
-    }
-
     @Override
     public void documentChanged(final DocumentEvent e) {
       myApplication.assertWriteAccessAllowed();
@@ -359,57 +342,23 @@ public class LineStatusTracker {
           int linesAfterChange = line - myDocument.getLineNumber(e.getOffset());
           int linesShift = linesAfterChange - myLinesBeforeChange;
 
-          List<Range> rangesAfterChange = getRangesAfter(myRanges, myLastChangedLine);
-          List<Range> rangesBeforeChange = getRangesBefore(myRanges, myFirstChangedLine);
-
-          List<Range> changedRanges = getChangedRanges(myFirstChangedLine, myLastChangedLine);
-
-          int newSize = rangesBeforeChange.size() + changedRanges.size() + rangesAfterChange.size();
-          if (myRanges.size() != newSize) {
-            LOG.info("Ranges: " + myRanges + "; first changed line: " + myFirstChangedLine + "; last changed line: " + myLastChangedLine);
-            LOG.assertTrue(false);
-          }
-
-
-          myLastChangedLine += linesShift;
-
-
-          List<Range> newChangedRanges = getNewChangedRanges();
-
-          shiftRanges(rangesAfterChange, linesShift);
-
-          if (!changedRanges.equals(newChangedRanges)) {
-            replaceRanges(changedRanges, newChangedRanges);
-
-            myRanges = new ArrayList<Range>();
-
-            myRanges.addAll(rangesBeforeChange);
-            myRanges.addAll(newChangedRanges);
-            myRanges.addAll(rangesAfterChange);
-
-            myRanges = mergeRanges(myRanges);
+          List<String> lines = new DocumentWrapper(myDocument).getLines(myFirstChangedLine, myLastChangedLine + linesShift);
+          List<String> uLines = new DocumentWrapper(myUpToDateDocument).getLines(myUpToDateFirstLine, myUpToDateLastLine);
+          List<Range> newChangedRanges = buildRanges(lines, uLines, myFirstChangedLine, myUpToDateFirstLine, SYNC_DIFF_LINES,
+                                                     myRangesToRefine);
 
+          List<Range> newRanges = updateRanges(myRanges, myFirstChangedLine, myLastChangedLine, linesShift, newChangedRanges,
+                                               myRangesToRefine);
+          if (newRanges != null) {
+            myRanges = newRanges;
             for (Range range : myRanges) {
               if (!range.hasHighlighter()) range.setHighlighter(createHighlighter(range));
             }
-
-            if (myRanges.isEmpty() && myVirtualFile != null) {
-              SwingUtilities.invokeLater(new Runnable() {
-                @Override
-                public void run() {
-                  FileDocumentManager.getInstance().saveDocument(e.getDocument());
-                  boolean[] stillEmpty = new boolean[1];
-                  synchronized (myLock) {
-                    stillEmpty[0] = myRanges.isEmpty();
-                  }
-                  if (stillEmpty[0]) {
-                    // file was modified, and now it's not -> dirty local change
-                    myVcsDirtyScopeManager.fileDirty(myVirtualFile);
-                  }
-                }
-              });
+            if (myRanges.isEmpty()) {
+              markDirtyIfStillUnchanged();
             }
           }
+          scheduleRefinement();
         } catch (ProcessCanceledException ignore) {
         } catch (FilesTooBigForDiffException e1) {
           installAnathema();
@@ -417,59 +366,264 @@ public class LineStatusTracker {
         }
       }
     }
+  }
 
-    private List<Range> getNewChangedRanges() throws FilesTooBigForDiffException {
-      List<String> lines = new DocumentWrapper(myDocument).getLines(myFirstChangedLine, myLastChangedLine);
-      List<String> uLines = new DocumentWrapper(myUpToDateDocument)
-        .getLines(myUpToDateFirstLine, myUpToDateLastLine);
-      return new RangesBuilder(lines, uLines, myFirstChangedLine, myUpToDateFirstLine).getRanges();
+  private void markDirtyIfStillUnchanged() {
+    if (myVirtualFile == null) return;
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        FileDocumentManager.getInstance().saveDocument(myDocument);
+        boolean[] stillEmpty = new boolean[1];
+        synchronized (myLock) {
+          stillEmpty[0] = myRanges.isEmpty();
+        }
+        if (stillEmpty[0]) {
+          // file was modified, and now it's not -> dirty local change
+          VcsDirtyScopeManager.getInstance(myProject).fileDirty(myVirtualFile);
+        }
+      }
+    });
+  }
+
+  private void scheduleRefinement() {
+    if (myReleased || myRangesToRefine.isEmpty()) return;
+    myRefineAlarm.cancelAllRequests();
+    myRefineAlarm.addRequest(new Runnable() {
+      @Override
+      public void run() {
+        startRefinement();
+      }
+    }, REFINE_DELAY);
+  }
+
+  /**
+   * Takes a snapshot of the coarse ranges and diffs them in a pooled thread. The result is applied only if neither document
+   * has been changed meanwhile, otherwise the refinement is rescheduled.
+   */
+  private void startRefinement() {
+    myApplication.assertIsDispatchThread();
+
+    final long stamp;
+    final long upToDateStamp;
+    final List<Range> ranges = new ArrayList<Range>();
+    final List<List<String>> lines = new ArrayList<List<String>>();
+    final List<List<String>> uLines = new ArrayList<List<String>>();
+    synchronized (myLock) {
+      if (myReleased || myBulkUpdate || myAnathemaThrown || BaseLoadState.LOADED != myBaseLoaded) return;
+      stamp = myDocument.getModificationStamp();
+      upToDateStamp = myUpToDateDocument.getModificationStamp();
+      for (Range range : myRanges) {
+        if (!myRangesToRefine.contains(range)) continue;
+        ranges.add(range);
+        lines.add(new DocumentWrapper(myDocument).getLines(range.getOffset1(), range.getOffset2() - 1));
+        uLines.add(new DocumentWrapper(myUpToDateDocument).getLines(range.getUOffset1(), range.getUOffset2() - 1));
+      }
     }
+    if (ranges.isEmpty()) return;
 
-    private List<Range> mergeRanges(List<Range> ranges) {
-      ArrayList<Range> result = new ArrayList<Range>();
-      Iterator<Range> iterator = ranges.iterator();
-      if (!iterator.hasNext()) return result;
-      Range prev = iterator.next();
-      while (iterator.hasNext()) {
-        Range range = iterator.next();
-        if (prev.canBeMergedWith(range)) {
-          if (range.getHighlighter() != null) {
-            range.getHighlighter().dispose();
-          }
-          if (prev.getHighlighter() != null) {
-            prev.getHighlighter().dispose();
+    myApplication.executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        final Map<Range, List<Range>> refined = ContainerUtil.newIdentityHashMap();
+        boolean tooBig = false;
+        try {
+          for (int i = 0; i < ranges.size(); i++) {
+            Range range = ranges.get(i);
+            refined.put(range, new RangesBuilder(lines.get(i), uLines.get(i), range.getOffset1(), range.getUOffset1()).getRanges());
           }
-          prev = prev.mergeWith(range, LineStatusTracker.this);
         }
-        else {
-          result.add(prev);
-          prev = range;
+        catch (FilesTooBigForDiffException e) {
+          tooBig = true;
         }
+        final boolean finalTooBig = tooBig;
+        myApplication.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            applyRefinement(stamp, upToDateStamp, refined, finalTooBig);
+          }
+        });
+      }
+    });
+  }
+
+  private void applyRefinement(long stamp, long upToDateStamp, @NotNull Map<Range, List<Range>> refined, boolean tooBig) {
+    synchronized (myLock) {
+      if (myReleased || myBulkUpdate || myAnathemaThrown || BaseLoadState.LOADED != myBaseLoaded) return;
+      if (stamp != myDocument.getModificationStamp() || upToDateStamp != myUpToDateDocument.getModificationStamp()) {
+        scheduleRefinement();
+        return;
       }
-      result.add(prev);
+      if (tooBig) {
+        installAnathema();
+        removeHighlightersFromMarkupModel();
+        return;
+      }
+
+      myRanges = applyRefinedRanges(myRanges, refined, myRangesToRefine);
+      for (Range range : myRanges) {
+        if (!range.hasHighlighter()) range.setHighlighter(createHighlighter(range));
+      }
+      if (myRanges.isEmpty()) {
+        markDirtyIfStillUnchanged();
+      }
+    }
+  }
+
+  /**
+   * Diffs the given lines of the current and the up-to-date documents, which start at lines {@code shift} and {@code uShift}.
+   * If the changed block is longer than {@code syncLimit} lines, it is described by a single modified range, which is added to
+   * {@code rangesToRefine}.
+   */
+  @NotNull
+  static List<Range> buildRanges(@NotNull List<String> lines, @NotNull List<String> uLines, int shift, int uShift, int syncLimit,
+                                 @NotNull Collection<Range> rangesToRefine) throws FilesTooBigForDiffException {
+    int start = 0;
+    int end = lines.size();
+    int uEnd = uLines.size();
+    while (start < end && start < uEnd && lines.get(start).equals(uLines.get(start))) {
+      start++;
+    }
+    while (end > start && uEnd > start && lines.get(end - 1).equals(uLines.get(uEnd - 1))) {
+      end--;
+      uEnd--;
+    }
+    if (start == end && start == uEnd) return new ArrayList<Range>();
+
+    if (start < end && start < uEnd && end + uEnd - 2 * start > syncLimit) {
+      Range range = new Range(shift + start, shift + end, uShift + start, uShift + uEnd, Range.MODIFIED);
+      rangesToRefine.add(range);
+      List<Range> result = new ArrayList<Range>();
+      result.add(range);
       return result;
     }
+    return new ArrayList<Range>(new RangesBuilder(lines.subList(start, end), uLines.subList(start, uEnd), shift + start,
+                                                  uShift + start).getRanges());
+  }
 
-    private void replaceRanges(List<Range> rangesInChange, List<Range> newRangesInChange) {
-      for (Range range : rangesInChange) {
-        range.getHighlighter().dispose();
-        range.setHighlighter(null);
+  /**
+   * @return {first, last, upToDateFirst, upToDateLast}: lines [firstLine, lastLine] of the current document extended to cover
+   *         the ranges they touch, and the corresponding lines of the up-to-date document
+   */
+  @NotNull
+  static int[] getChangedWindow(@NotNull List<Range> ranges, int firstLine, int lastLine) {
+    Range firstChangedRange = null;
+    Range lastChangedRange = null;
+    Range lastRangeBefore = null;
+    for (Range range : ranges) {
+      // a deleted block right after the changed lines is re-diffed with them
+      if (range.getOffset1() <= lastLine && range.getOffset2() >= firstLine ||
+          range.getType() == Range.DELETED && range.getOffset1() == lastLine + 1) {
+        if (firstChangedRange == null) firstChangedRange = range;
+        lastChangedRange = range;
       }
-      for (Range range : newRangesInChange) {
-        range.setHighlighter(createHighlighter(range));
+      else if (range.getOffset2() < firstLine) {
+        lastRangeBefore = range;
       }
     }
 
-    private void shiftRanges(List<Range> rangesAfterChange, int shift) {
-      for (final Range aRangesAfterChange : rangesAfterChange) {
-        aRangesAfterChange.shift(shift);
+    if (firstChangedRange == null) {
+      int shift = lastRangeBefore == null ? 0 : lastRangeBefore.getUOffset2() - lastRangeBefore.getOffset2();
+      return new int[]{firstLine, lastLine, firstLine + shift, lastLine + shift};
+    }
+
+    int first = Math.min(firstLine, firstChangedRange.getOffset1());
+    int upToDateFirst = firstChangedRange.getUOffset1() + first - firstChangedRange.getOffset1();
+    int last = Math.max(lastLine, lastChangedRange.getOffset2());
+    int upToDateLast = lastChangedRange.getUOffset2() + last - lastChangedRange.getOffset2();
+    return new int[]{first, last, upToDateFirst, upToDateLast};
+  }
+
+  /**
+   * Replaces the ranges touching lines [first, last] of the current document with {@code newChangedRanges} and shifts
+   * the ranges after them by {@code linesShift}. Highlighters of the dropped ranges are disposed.
+   *
+   * @return new ranges or null if the ranges within the window haven't changed
+   */
+  @Nullable
+  static List<Range> updateRanges(@NotNull List<Range> ranges, int first, int last, int linesShift,
+                                  @NotNull List<Range> newChangedRanges, @NotNull Collection<Range> rangesToRefine) {
+    List<Range> rangesAfterChange = getRangesAfter(ranges, last);
+    List<Range> rangesBeforeChange = getRangesBefore(ranges, first);
+
+    List<Range> changedRanges = getChangedRanges(ranges, first, last);
+
+    int newSize = rangesBeforeChange.size() + changedRanges.size() + rangesAfterChange.size();
+    if (ranges.size() != newSize) {
+      LOG.info("Ranges: " + ranges + "; first changed line: " + first + "; last changed line: " + last);
+      LOG.assertTrue(false);
+    }
+
+    for (Range range : rangesAfterChange) {
+      range.shift(linesShift);
+    }
+
+    if (changedRanges.equals(newChangedRanges)) {
+      rangesToRefine.removeAll(newChangedRanges);
+      return null;
+    }
+
+    for (Range range : changedRanges) {
+      disposeHighlighter(range);
+      rangesToRefine.remove(range);
+    }
+
+    List<Range> result = new ArrayList<Range>(newSize);
+    result.addAll(rangesBeforeChange);
+    result.addAll(newChangedRanges);
+    result.addAll(rangesAfterChange);
+    return mergeRanges(result, rangesToRefine);
+  }
+
+  @NotNull
+  private static List<Range> mergeRanges(@NotNull List<Range> ranges, @NotNull Collection<Range> rangesToRefine) {
+    ArrayList<Range> result = new ArrayList<Range>();
+    Iterator<Range> iterator = ranges.iterator();
+    if (!iterator.hasNext()) return result;
+    Range prev = iterator.next();
+    while (iterator.hasNext()) {
+      Range range = iterator.next();
+      if (prev.canBeMergedWith(range)) {
+        disposeHighlighter(range);
+        disposeHighlighter(prev);
+        boolean refine = rangesToRefine.remove(prev) | rangesToRefine.remove(range);
+        prev = prev.mergeWith(range, null);
+        if (refine) rangesToRefine.add(prev);
+      }
+      else {
+        result.add(prev);
+        prev = range;
       }
     }
+    result.add(prev);
+    return result;
+  }
 
+  /**
+   * Replaces the coarse ranges which are still in {@code ranges} with the results of their diff.
+   */
+  @NotNull
+  static List<Range> applyRefinedRanges(@NotNull List<Range> ranges, @NotNull Map<Range, List<Range>> refined,
+                                        @NotNull Collection<Range> rangesToRefine) {
+    List<Range> result = new ArrayList<Range>(ranges.size());
+    for (Range range : ranges) {
+      List<Range> refinedRanges = refined.get(range);
+      if (refinedRanges == null || !rangesToRefine.remove(range)) {
+        result.add(range);
+        continue;
+      }
+      disposeHighlighter(range);
+      result.addAll(refinedRanges);
+    }
+    return result;
   }
 
-  private List<Range> getChangedRanges(int from, int to) {
-    return getChangedRanges(myRanges, from, to);
+  private static void disposeHighlighter(@NotNull Range range) {
+    RangeHighlighter highlighter = range.getHighlighter();
+    if (highlighter != null) {
+      highlighter.dispose();
+      range.setHighlighter(null);
+    }
   }
 
   public static List<Range> getChangedRanges(List<Range> ranges, int from, int to) {
@@ -479,6 +479,12 @@ public class GitVcs extends AbstractVcs<CommittedChangeList> {
     return true;
   }
 
+  @Override
+  public boolean allowsParallelChangesCollection() {
+    // each root is checked by a separate 'git status', the gate is only asked for file statuses
+    return true;
+  }
+
   @Override
   public <S> List<S> filterUniqueRoots(final List<S> in, final Convertor<S, VirtualFile> convertor) {
     Collections.sort(in, new ComparatorDelegate<S, VirtualFile>(convertor, FilePathComparator.getInstance()));
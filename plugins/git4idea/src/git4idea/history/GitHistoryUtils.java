@@ -35,9 +35,11 @@ import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.AsynchConsumer;
 import com.intellij.util.Consumer;
+import com.intellij.util.ThrowableConsumer;
 import com.intellij.util.concurrency.Semaphore;
 import git4idea.GitBranch;
 import git4idea.GitFileRevision;
+import git4idea.GitFormatException;
 import git4idea.GitRevisionNumber;
 import git4idea.GitUtil;
 import git4idea.branch.GitBranchUtil;
@@ -49,7 +51,7 @@ import git4idea.history.browser.SymbolicRefs;
 import git4idea.history.browser.SymbolicRefsI;
 import git4idea.history.wholeTree.AbstractHash;
 import git4idea.history.wholeTree.CommitHashPlusParents;
-import git4idea.history.wholeTree.GitCommitsSequentialIndex;
+import git4idea.i18n.GitBundle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -200,74 +202,64 @@ public class GitHistoryUtils {
     return new ItemLatestState(new GitRevisionNumber(record.getHash(), record.getDate()), exists, false);
   }
 
-  public static void dumpFullHistory(final Project project, VirtualFile root, final String outFilePath) throws VcsException {
+  /**
+   * Passes commits of the repository to the consumer as "hash|commit time|parent hashes separated by spaces|author email" lines,
+   * parents before their children.
+   *
+   * @param knownHeads commits reachable from these ones are skipped
+   */
+  public static void loadCommitGraph(final Project project, VirtualFile root, @NotNull Collection<String> knownHeads,
+                                     @NotNull final ThrowableConsumer<String, VcsException> consumer)
+    throws VcsException {
     if (! GitUtil.isGitRoot(new File(root.getPath()))) throw new VcsException("Path " + root.getPath() + " is not git repository root");
 
     final GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
     h.setNoSSH(true);
     h.setSilent(true);
-    h.addParameters("--all", "--pretty=format:%H%x20%ct%x0A", "--date-order", "--reverse", "--encoding=UTF-8", "--full-history",
+    h.addParameters("--all", "--pretty=format:%H|%ct|%P|%ae", "--date-order", "--reverse", "--encoding=UTF-8", "--full-history",
                     "--sparse");
+    for (String head : knownHeads) {
+      h.addParameters("^" + head);
+    }
     h.endOptions();
 
-    final OutputStream[] stream = new OutputStream[1];
-    try {
-      stream[0] = new BufferedOutputStream(new FileOutputStream(outFilePath, false));
-      final Semaphore semaphore = new Semaphore();
-      final VcsException[] ioExceptions = new VcsException[1];
-      h.addLineListener(new GitLineHandlerListener() {
-        @Override
-        public void onLineAvailable(String line, Key outputType) {
-          if (line.length() == 0) return;
-          try {
-            GitCommitsSequentialIndex.parseRecord(line);
-            stream[0].write((line + '\n').getBytes("UTF-8"));
-          }
-          catch (IOException e) {
-            ioExceptions[0] = new VcsException(e);
-            h.cancel();
-            semaphore.up();
-          } catch (ProcessCanceledException e) {
-            h.cancel();
-            semaphore.up();
-          }
-          catch (VcsException e) {
-            ioExceptions[0] = e;
-            h.cancel();
-            semaphore.up();
-          }
+    final Semaphore semaphore = new Semaphore();
+    final VcsException[] exceptions = new VcsException[1];
+    h.addLineListener(new GitLineHandlerListener() {
+      @Override
+      public void onLineAvailable(String line, Key outputType) {
+        if (line.length() == 0 || exceptions[0] != null || ! ProcessOutputTypes.STDOUT.equals(outputType)) return;
+        try {
+          consumer.consume(line);
         }
-        @Override
-        public void processTerminated(int exitCode) {
+        catch (VcsException e) {
+          exceptions[0] = e;
+          h.cancel();
           semaphore.up();
         }
-        @Override
-        public void startFailed(Throwable exception) {
+        catch (ProcessCanceledException e) {
+          h.cancel();
           semaphore.up();
         }
-      });
-      semaphore.down();
-      h.start();
-      semaphore.waitFor();
-      if (ioExceptions[0] != null) {
-        throw ioExceptions[0];
       }
-    }
-    catch (FileNotFoundException e) {
-      throw new VcsException(e);
-    }
-    finally {
-      try {
-        if (stream[0] != null) {
-          stream[0].close();
-        }
+      @Override
+      public void processTerminated(int exitCode) {
+        semaphore.up();
       }
-      catch (IOException e) {
-        throw new VcsException(e);
+      @Override
+      public void startFailed(Throwable exception) {
+        semaphore.up();
       }
+    });
+    semaphore.down();
+    h.start();
+    semaphore.waitFor();
+    if (exceptions[0] != null) {
+      throw exceptions[0];
+    }
+    if (! h.errors().isEmpty()) {
+      throw h.errors().get(0);
     }
-    File file = new File(outFilePath);
-    if (! file.exists() || file.length() == 0) throw new VcsException("Short repository history not loaded");
   }
 
   /*
@@ -376,7 +368,7 @@ public class GitHistoryUtils {
 
     while (currentPath.get() != null && firstCommitParent.get() != null) {
       logHandler.set(getLogHandler(project, finalRoot, logParser, currentPath.get(), firstCommitParent.get(), parameters));
-      final MyTokenAccumulator accumulator = new MyTokenAccumulator(logParser);
+      final GitLogParser.RecordAccumulator accumulator = new GitLogParser.RecordAccumulator(logParser);
       final Semaphore semaphore = new Semaphore();
 
       logHandler.get().addLineListener(new GitLineHandlerAdapter() {
@@ -402,7 +394,7 @@ public class GitHistoryUtils {
         public void processTerminated(int exitCode) {
           try {
             super.processTerminated(exitCode);
-            final GitLogRecord record = accumulator.processLast();
+            final GitLogRecord record = accumulator.finish();
             if (record != null) {
               resultAdapter.consume(record);
             }
@@ -463,45 +455,6 @@ public class GitHistoryUtils {
     return null;
   }
 
-  private static class MyTokenAccumulator {
-    private final StringBuilder myBuffer = new StringBuilder();
-
-    private boolean myNotStarted = true;
-    private GitLogParser myParser;
-
-    public MyTokenAccumulator(GitLogParser parser) {
-      myParser = parser;
-    }
-
-    @Nullable
-    public GitLogRecord acceptLine(String s) {
-      final boolean lineEnd = s.startsWith(GitLogParser.RECORD_START);
-      if (lineEnd && (!myNotStarted)) {
-        final String line = myBuffer.toString();
-        myBuffer.setLength(0);
-        myBuffer.append(s.substring(GitLogParser.RECORD_START.length()));
-
-        return processResult(line);
-      }
-      else {
-        myBuffer.append(lineEnd ? s.substring(GitLogParser.RECORD_START.length()) : s);
-        myBuffer.append("\n");
-      }
-      myNotStarted = false;
-
-      return null;
-    }
-
-    public GitLogRecord processLast() {
-      return processResult(myBuffer.toString());
-    }
-
-    private GitLogRecord processResult(final String line) {
-      return myParser.parseOneRecord(line);
-    }
-
-  }
-
   /**
    * Get history for the file
    *
@@ -552,7 +505,7 @@ public class GitHistoryUtils {
     throws VcsException {
     // adjust path using change manager
     path = getLastCommitName(project, path);
-    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.LOG);
+    GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
     GitLogParser parser = new GitLogParser(project, HASH, COMMIT_TIME);
     h.setNoSSH(true);
     h.setStdoutSuppressed(true);
@@ -560,13 +513,14 @@ public class GitHistoryUtils {
     h.addParameters(parser.getPretty(), "--encoding=UTF-8");
     h.endOptions();
     h.addRelativePaths(path);
-    String output = h.run();
 
     final List<Pair<SHAHash, Date>> rc = new ArrayList<Pair<SHAHash, Date>>();
-    for (GitLogRecord record : parser.parse(output)) {
-      record.setUsedHandler(h);
-      rc.add(new Pair<SHAHash, Date>(new SHAHash(record.getHash()), record.getDate()));
-    }
+    processRecords(h, parser, new ThrowableConsumer<GitLogRecord, VcsException>() {
+      @Override
+      public void consume(GitLogRecord record) {
+        rc.add(new Pair<SHAHash, Date>(new SHAHash(record.getHash()), record.getDate()));
+      }
+    });
     return rc;
   }
 
@@ -622,8 +576,7 @@ public class GitHistoryUtils {
 
     final VcsException[] exc = new VcsException[1];
     final Semaphore semaphore = new Semaphore();
-    final StringBuilder sb = new StringBuilder();
-    final Ref<Boolean> skipFirst = new Ref<Boolean>(true);
+    final GitLogParser.RecordAccumulator accumulator = new GitLogParser.RecordAccumulator(parser);
     h.addLineListener(new GitLineHandlerAdapter() {
       @Override
       public void onLineAvailable(final String line, final Key outputType) {
@@ -633,16 +586,7 @@ public class GitHistoryUtils {
               h.cancel();
               return;
             }
-            //if (line.charAt(line.length() - 1) != '\u0003') {
-            if ((! line.startsWith("\u0001")) || skipFirst.get()) {
-              if (sb.length() > 0) {
-                sb.append("\n");
-              }
-              sb.append(line);
-              skipFirst.set(false);
-              return;
-            }
-            takeLine(project, line, sb, parser, refs, root, exc, h, gitCommitConsumer);
+            takeRecord(project, accumulator.acceptLine(line), refs, root, exc, h, gitCommitConsumer);
           }
         } catch (ProcessCanceledException e) {
           h.cancel();
@@ -661,24 +605,19 @@ public class GitHistoryUtils {
     semaphore.down();
     h.start();
     semaphore.waitFor();
-    takeLine(project, "", sb, parser, refs, root, exc, h, gitCommitConsumer);
+    takeRecord(project, accumulator.finish(), refs, root, exc, h, gitCommitConsumer);
     gitCommitConsumer.finished();
     if (exc[0] != null) {
       throw exc[0];
     }
   }
 
-  private static void takeLine(final Project project, String line,
-                               StringBuilder sb,
-                               GitLogParser parser,
-                               SymbolicRefsI refs,
-                               VirtualFile root,
-                               VcsException[] exc, GitLineHandler h, AsynchConsumer<GitCommit> gitCommitConsumer) {
-    final String text = sb.toString();
-    sb.setLength(0);
-    sb.append(line);
-    if (text.length() == 0) return;
-    GitLogRecord record = parser.parseOneRecord(text);
+  private static void takeRecord(final Project project,
+                                 @Nullable GitLogRecord record,
+                                 SymbolicRefsI refs,
+                                 VirtualFile root,
+                                 VcsException[] exc, GitLineHandler h, AsynchConsumer<GitCommit> gitCommitConsumer) {
+    if (record == null || exc[0] != null) return;
 
     final GitCommit gitCommit;
     try {
@@ -692,6 +631,72 @@ public class GitHistoryUtils {
     gitCommitConsumer.consume(gitCommit);
   }
 
+  /**
+   * Runs the 'git log' or 'git show' command and passes the records to the consumer as soon as they are parsed,
+   * without collecting the whole output in memory. Returns when the command finishes.
+   */
+  private static void processRecords(@NotNull final GitLineHandler h, @NotNull GitLogParser parser,
+                                     @NotNull final ThrowableConsumer<GitLogRecord, VcsException> consumer) throws VcsException {
+    final GitLogParser.RecordAccumulator accumulator = new GitLogParser.RecordAccumulator(parser);
+    final VcsException[] exc = new VcsException[1];
+    final StringBuilder errors = new StringBuilder();
+    final Semaphore semaphore = new Semaphore();
+    h.addLineListener(new GitLineHandlerAdapter() {
+      @Override
+      public void onLineAvailable(String line, Key outputType) {
+        if (ProcessOutputTypes.STDOUT.equals(outputType)) {
+          consumeRecord(accumulator.acceptLine(line));
+        }
+        else if (ProcessOutputTypes.STDERR.equals(outputType)) {
+          errors.append(line).append("\n");
+        }
+      }
+
+      @Override
+      public void processTerminated(int exitCode) {
+        try {
+          if (exitCode == 0 || h.isIgnoredErrorCode(exitCode)) {
+            consumeRecord(accumulator.finish());
+          }
+          else if (exc[0] == null) {
+            exc[0] = new VcsException(errors.length() > 0 ? errors.toString() : GitBundle.message("git.error.exit", exitCode));
+          }
+        }
+        finally {
+          semaphore.up();
+        }
+      }
+
+      @Override
+      public void startFailed(Throwable exception) {
+        exc[0] = new VcsException(exception);
+        semaphore.up();
+      }
+
+      private void consumeRecord(@Nullable GitLogRecord record) {
+        if (record == null || exc[0] != null) return;
+        try {
+          record.setUsedHandler(h);
+          consumer.consume(record);
+        }
+        catch (VcsException e) {
+          exc[0] = e;
+          h.cancel();
+        }
+        catch (GitFormatException e) {
+          exc[0] = new VcsException(e);
+          h.cancel();
+        }
+      }
+    });
+    semaphore.down();
+    h.start();
+    semaphore.waitFor();
+    if (exc[0] != null) {
+      throw exc[0];
+    }
+  }
+
   @NotNull
   private static GitCommit createCommit(@NotNull Project project, @Nullable SymbolicRefsI refs, @NotNull VirtualFile root,
                                         @NotNull GitLogRecord record) throws VcsException {
@@ -807,11 +812,11 @@ public class GitHistoryUtils {
   }
 
   @NotNull
-  public static List<GitCommit> commitsDetails(@NotNull Project project, @NotNull FilePath path, @Nullable SymbolicRefsI refs,
+  public static List<GitCommit> commitsDetails(@NotNull final Project project, @NotNull FilePath path, @Nullable final SymbolicRefsI refs,
                                                @NotNull final Collection<String> commitsIds) throws VcsException {
     path = getLastCommitName(project, path);     // adjust path using change manager
-    VirtualFile root = GitUtil.getGitRoot(path);
-    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.SHOW);
+    final VirtualFile root = GitUtil.getGitRoot(path);
+    GitLineHandler h = new GitLineHandler(project, root, GitCommand.SHOW);
     GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.STATUS,
                                            SHORT_HASH, HASH, COMMIT_TIME, AUTHOR_NAME, AUTHOR_TIME, AUTHOR_EMAIL, COMMITTER_NAME,
                                            COMMITTER_EMAIL, SHORT_PARENTS, REF_NAMES, SUBJECT, BODY, RAW_BODY);
@@ -820,12 +825,13 @@ public class GitHistoryUtils {
     h.addParameters("--name-status", "-M", parser.getPretty(), "--encoding=UTF-8");
     h.addParameters(new ArrayList<String>(commitsIds));
 
-    String output = h.run();
     final List<GitCommit> rc = new ArrayList<GitCommit>();
-    for (GitLogRecord record : parser.parse(output)) {
-      final GitCommit gitCommit = createCommit(project, refs, root, record);
-      rc.add(gitCommit);
-    }
+    processRecords(h, parser, new ThrowableConsumer<GitLogRecord, VcsException>() {
+      @Override
+      public void consume(GitLogRecord record) throws VcsException {
+        rc.add(createCommit(project, refs, root, record));
+      }
+    });
     return rc;
   }
 
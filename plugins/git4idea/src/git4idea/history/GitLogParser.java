@@ -40,7 +40,8 @@ import java.util.regex.Pattern;
  * 1. Pass options you want to have in the output to the constructor using the {@link GitLogOption} enum constants.
  * 2. Get the custom format pattern for 'git log' by calling {@link #getPretty()}
  * 3. Call the command and retrieve the output.
- * 4. Parse the output via {@link #parse(String)} or {@link #parseOneRecord(String)} (if you want the output to be parsed line by line).</p>
+ * 4. Parse the output via {@link #parse(String)} or {@link #parseOneRecord(String)} (if you want the output to be parsed line by line).
+ *    To parse the output while the command is running, without keeping all of it in memory, feed its lines to a {@link RecordAccumulator}.</p>
  *
  * <p>The class is package visible, since it's used only in GitHistoryUtils - the class which retrieve various pieced of history information
  * in different formats from 'git log'</p>
@@ -241,6 +242,52 @@ class GitLogParser {
   }
 
 
+  /**
+   * Collects lines of the 'git log' output as they come from the process and parses a record as soon as it is complete
+   * (i.e. when the next record starts or the output ends), so only one record is kept in memory at a time.
+   */
+  static class RecordAccumulator {
+    private final GitLogParser myParser;
+    private final StringBuilder myBuffer = new StringBuilder();
+    private boolean myStarted;
+
+    RecordAccumulator(@NotNull GitLogParser parser) {
+      myParser = parser;
+    }
+
+    /**
+     * @return the previous record if the line starts a new one, null otherwise.
+     */
+    @Nullable
+    GitLogRecord acceptLine(@NotNull String line) {
+      GitLogRecord result = null;
+      boolean recordStart = line.startsWith(RECORD_START);
+      if (recordStart) {
+        if (myStarted) {
+          result = myParser.parseOneRecord(myBuffer.toString());
+          myBuffer.setLength(0);
+        }
+        myStarted = true;
+        myBuffer.append(line, RECORD_START.length(), line.length());
+      }
+      else {
+        myBuffer.append(line);
+      }
+      myBuffer.append('\n');
+      return result;
+    }
+
+    /**
+     * @return the last record, or null if there was no output.
+     */
+    @Nullable
+    GitLogRecord finish() {
+      String record = myBuffer.toString();
+      myBuffer.setLength(0);
+      return record.trim().isEmpty() ? null : myParser.parseOneRecord(record);
+    }
+  }
+
   @NotNull
   private Map<GitLogOption, String> parseCommitInfo(@NotNull String commitInfo) {
     // parsing revision information
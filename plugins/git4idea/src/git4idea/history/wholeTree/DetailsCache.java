@@ -13,6 +13,7 @@
 package git4idea.history.wholeTree;
 
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.BackgroundTaskQueue;
 import com.intellij.openapi.progress.ProgressIndicator;
@@ -48,6 +49,7 @@ public class DetailsCache {
   private final BackgroundTaskQueue myQueue;
   private UIRefresh myRefresh;
   private final Map<VirtualFile, Map<AbstractHash, String>> myStash;
+  private final Map<VirtualFile, CachedRefs> myRefs;
   private final Object myLock;
   private final static Logger LOG = Logger.getInstance("git4idea.history.wholeTree.DetailsCache");
   private ModalityState myState;
@@ -60,6 +62,7 @@ public class DetailsCache {
     myDetailsLoader = detailsLoader;
     myQueue = queue;
     myStash = new HashMap<VirtualFile, Map<AbstractHash,String>>();
+    myRefs = new HashMap<VirtualFile, CachedRefs>();
     myRefresh = uiRefresh;
     myLock = new Object();
     myCache = new SLRUMap<Pair<VirtualFile, AbstractHash>, GitCommit>(ourSize, 150);
@@ -156,13 +159,15 @@ public class DetailsCache {
                   public void run(@NotNull ProgressIndicator indicator) {
                     if (!recheck.process(abstractHash)) return;
                     if (getBranches(root, abstractHash) != null) return;
-                    List<String> branches;
-                    try {
-                      branches = new LowLevelAccessImpl(myProject, root).getBranchesWithCommit(abstractHash.getString());
-                    }
-                    catch (VcsException e) {
-                      LOG.info(e);
-                      branches = Collections.singletonList("Can not load branches due to error: " + e.getMessage());
+                    List<String> branches = getBranchesFromCommitGraph(root, abstractHash);
+                    if (branches == null) {
+                      try {
+                        branches = new LowLevelAccessImpl(myProject, root).getBranchesWithCommit(abstractHash.getString());
+                      }
+                      catch (VcsException e) {
+                        LOG.info(e);
+                        branches = Collections.singletonList("Can not load branches due to error: " + e.getMessage());
+                      }
                     }
                     putBranches(root, abstractHash, branches);
                     final List<String> finalBranches = branches;
@@ -176,12 +181,32 @@ public class DetailsCache {
                 }, myState, null);
   }
 
+  // null if the commit graph is not up to date
+  @Nullable
+  private List<String> getBranchesFromCommitGraph(final VirtualFile root, final AbstractHash hash) {
+    final CachedRefs refs;
+    synchronized (myLock) {
+      refs = myRefs.get(root);
+    }
+    if (refs == null) return null;
+    final GitCommitsSequentially commitsSequentially = ServiceManager.getService(GitCommitsSequentially.class);
+    final List<String> local = commitsSequentially.getContainingBranches(root, hash, refs.getLocal());
+    if (local == null) return null;
+    final List<String> remote = commitsSequentially.getContainingBranches(root, hash, refs.getRemote());
+    if (remote == null) return null;
+    // same order as 'git branch -a --contains' gives
+    final List<String> result = new ArrayList<String>(new TreeSet<String>(local));
+    result.addAll(new TreeSet<String>(remote));
+    return result;
+  }
+
   public void setModalityState(ModalityState state) {
     myState = state;
   }
 
   public void reportRefs(VirtualFile root, CachedRefs refs) {
     synchronized (myLock) {
+      myRefs.put(root, refs);
       final Set<Pair<VirtualFile, AbstractHash>> forDeletion = new HashSet<Pair<VirtualFile, AbstractHash>>();
       final Set<String> hashes = new HashSet<String>();
       AbstractHash headHash = refs.getHeadHash();
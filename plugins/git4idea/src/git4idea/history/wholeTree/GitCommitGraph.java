@@ -0,0 +1,495 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Commit graph of one repository, kept in memory and in a compact binary file.
+ * <p/>
+ * Commits are stored in the order of "git log --date-order --reverse", so parents always go before their children.
+ * The position of a commit is its int id, parents are referenced by ids; author names are enumerated in a separate file.
+ * <p/>
+ * Record format: 20 bytes of hash, int commit time in seconds, int author id, byte parents count, int parent ids.
+ * Parents which are not in the graph (e.g. cut by a shallow clone) have id -1.
+ * A record which was not written completely is dropped on load.
+ *
+ * Not thread safe.
+ */
+public class GitCommitGraph {
+  private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.GitCommitGraph");
+  private static final int MAGIC = 0x47434701;
+  private static final int VERSION = 1;
+  private static final int HASH_SIZE = 20;
+  private static final int HEADER_SIZE = 8;
+
+  private final File myFile;
+  private final File myAuthorsFile;
+
+  private byte[] myHashes;
+  private int mySize;
+  private final TIntArrayList myTimes;
+  private final TIntArrayList myAuthors;
+  // index of the first parent in myParents, one more element than commits
+  private final TIntArrayList myParentStarts;
+  private final TIntArrayList myParents;
+
+  private final List<String> myAuthorNames;
+  private final TObjectIntHashMap<String> myAuthorIds;
+
+  // first 8 bytes of hash -> commit id, for lookup of full hashes
+  private final TLongIntHashMap myIdsByHashStart;
+  // commit ids sorted by hash for lookup of abbreviated hashes, rebuilt lazily after appends
+  @Nullable private int[] mySortedByHash;
+  // while commits come in time order the ids are the time order themselves
+  private boolean myOrderedByTime = true;
+  @Nullable private int[] mySortedByTime;
+
+  private DataOutputStream myOutput;
+  private DataOutputStream myAuthorsOutput;
+
+  private GitCommitGraph(@NotNull File file, @NotNull File authorsFile) {
+    myFile = file;
+    myAuthorsFile = authorsFile;
+    myHashes = new byte[HASH_SIZE * 1024];
+    myTimes = new TIntArrayList();
+    myAuthors = new TIntArrayList();
+    myParentStarts = new TIntArrayList();
+    myParentStarts.add(0);
+    myParents = new TIntArrayList();
+    myAuthorNames = new ArrayList<String>();
+    myAuthorIds = new TObjectIntHashMap<String>();
+    myIdsByHashStart = new TLongIntHashMap();
+  }
+
+  @NotNull
+  public static GitCommitGraph load(@NotNull File file, @NotNull File authorsFile) {
+    GitCommitGraph graph = new GitCommitGraph(file, authorsFile);
+    try {
+      graph.loadAuthors();
+      graph.loadCommits();
+    }
+    catch (IOException e) {
+      LOG.info("Commit graph " + file.getPath() + " is corrupted, will be rebuilt", e);
+      graph = new GitCommitGraph(file, authorsFile);
+      FileUtil.delete(file);
+      FileUtil.delete(authorsFile);
+    }
+    return graph;
+  }
+
+  private void loadAuthors() throws IOException {
+    if (!myAuthorsFile.exists()) return;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myAuthorsFile)));
+    try {
+      while (true) {
+        String author;
+        try {
+          author = in.readUTF();
+        }
+        catch (EOFException e) {
+          break;
+        }
+        myAuthorIds.put(author, myAuthorNames.size());
+        myAuthorNames.add(author);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private void loadCommits() throws IOException {
+    if (!myFile.exists() || myFile.length() == 0) return;
+    long validLength = HEADER_SIZE;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unknown commit graph format");
+      }
+      byte[] hash = new byte[HASH_SIZE];
+      while (true) {
+        try {
+          in.readFully(hash);
+          int time = in.readInt();
+          int author = in.readInt();
+          int parentsCount = in.readUnsignedByte();
+          int[] parents = new int[parentsCount];
+          for (int i = 0; i < parentsCount; i++) {
+            parents[i] = in.readInt();
+          }
+          addCommit(hash, time, author, parents);
+          validLength += HASH_SIZE + 4 + 4 + 1 + 4 * parentsCount;
+        }
+        catch (EOFException e) {
+          break;
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+    if (validLength < myFile.length()) {
+      LOG.info("Dropping incomplete record of commit graph " + myFile.getPath());
+      RandomAccessFile raf = new RandomAccessFile(myFile, "rw");
+      try {
+        raf.setLength(validLength);
+      }
+      finally {
+        raf.close();
+      }
+    }
+  }
+
+  private void addCommit(@NotNull byte[] hash, int time, int author, @NotNull int[] parents) {
+    if ((mySize + 1) * HASH_SIZE > myHashes.length) {
+      byte[] newHashes = new byte[myHashes.length * 2];
+      System.arraycopy(myHashes, 0, newHashes, 0, mySize * HASH_SIZE);
+      myHashes = newHashes;
+    }
+    System.arraycopy(hash, 0, myHashes, mySize * HASH_SIZE, HASH_SIZE);
+    long hashStart = getHashStart(hash);
+    if (!myIdsByHashStart.containsKey(hashStart)) {
+      myIdsByHashStart.put(hashStart, mySize);
+    }
+    if (mySize > 0 && time < myTimes.get(mySize - 1)) {
+      myOrderedByTime = false;
+    }
+    myTimes.add(time);
+    myAuthors.add(author);
+    myParents.add(parents);
+    myParentStarts.add(myParents.size());
+    mySize++;
+    mySortedByHash = null;
+    mySortedByTime = null;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  @NotNull
+  public String getHash(int id) {
+    StringBuilder sb = new StringBuilder(HASH_SIZE * 2);
+    for (int i = id * HASH_SIZE; i < (id + 1) * HASH_SIZE; i++) {
+      sb.append(Character.forDigit((myHashes[i] >> 4) & 0xF, 16)).append(Character.forDigit(myHashes[i] & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return commit time in milliseconds
+   */
+  public long getTime(int id) {
+    return myTimes.get(id) * 1000L;
+  }
+
+  @Nullable
+  public String getAuthor(int id) {
+    int author = myAuthors.get(id);
+    return author >= 0 && author < myAuthorNames.size() ? myAuthorNames.get(author) : null;
+  }
+
+  @NotNull
+  public int[] getParents(int id) {
+    return myParents.toNativeArray(myParentStarts.get(id), myParentStarts.get(id + 1) - myParentStarts.get(id));
+  }
+
+  /**
+   * @return position (see {@link #getByTime(int)}) of the newest commit with commit time not greater than the given one,
+   *         -1 if there is no such commit
+   */
+  public int findLastNotLaterThan(long timeMillis) {
+    long time = timeMillis / 1000;
+    int low = 0;
+    int high = mySize - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (myTimes.get(getByTime(mid)) <= time) {
+        low = mid + 1;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * Commits appended later may be older than the known ones, e.g. a fetched branch, so the ids are not always in time order.
+   *
+   * @return id of the commit at the given position when all commits are ordered by commit time, oldest first
+   */
+  public int getByTime(int position) {
+    return myOrderedByTime ? position : getSortedByTime()[position];
+  }
+
+  private int findFull(@NotNull byte[] hash) {
+    long hashStart = getHashStart(hash);
+    if (!myIdsByHashStart.containsKey(hashStart)) return -1;
+    int id = myIdsByHashStart.get(hashStart);
+    if (hashEquals(id, hash)) return id;
+    // different commits with the same start of hash
+    for (int i = 0; i < mySize; i++) {
+      if (hashEquals(i, hash)) return i;
+    }
+    return -1;
+  }
+
+  private boolean hashEquals(int id, @NotNull byte[] hash) {
+    for (int i = 0; i < HASH_SIZE; i++) {
+      if (myHashes[id * HASH_SIZE + i] != hash[i]) return false;
+    }
+    return true;
+  }
+
+  private static long getHashStart(@NotNull byte[] hash) {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result = (result << 8) | (hash[i] & 0xFF);
+    }
+    return result;
+  }
+
+  /**
+   * @param hash full or abbreviated hash
+   * @return id of the commit or -1 if it is not in the graph or the abbreviation is ambiguous
+   */
+  public int find(@NotNull String hash) {
+    if (hash.length() == 0 || hash.length() > HASH_SIZE * 2) return -1;
+    int[] sorted = getSortedByHash();
+    int low = 0;
+    int high = sorted.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = comparePrefix(sorted[mid], hash);
+      if (cmp < 0) {
+        low = mid + 1;
+      }
+      else if (cmp > 0) {
+        high = mid - 1;
+      }
+      else {
+        boolean ambiguous = mid > 0 && comparePrefix(sorted[mid - 1], hash) == 0 ||
+                            mid < sorted.length - 1 && comparePrefix(sorted[mid + 1], hash) == 0;
+        return ambiguous ? -1 : sorted[mid];
+      }
+    }
+    return -1;
+  }
+
+  // compares the hash of the commit, cut to the length of the prefix, with the prefix
+  private int comparePrefix(int id, @NotNull String prefix) {
+    for (int i = 0; i < prefix.length(); i++) {
+      byte b = myHashes[id * HASH_SIZE + i / 2];
+      int digit = (i & 1) == 0 ? (b >> 4) & 0xF : b & 0xF;
+      int expected = Character.digit(prefix.charAt(i), 16);
+      if (digit != expected) return digit < expected ? -1 : 1;
+    }
+    return 0;
+  }
+
+  @NotNull
+  private int[] getSortedByHash() {
+    if (mySortedByHash == null) {
+      Integer[] ids = new Integer[mySize];
+      for (int i = 0; i < mySize; i++) {
+        ids[i] = i;
+      }
+      Arrays.sort(ids, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer id1, Integer id2) {
+          for (int i = 0; i < HASH_SIZE; i++) {
+            int b1 = myHashes[id1 * HASH_SIZE + i] & 0xFF;
+            int b2 = myHashes[id2 * HASH_SIZE + i] & 0xFF;
+            if (b1 != b2) return b1 - b2;
+          }
+          return 0;
+        }
+      });
+      int[] sorted = new int[mySize];
+      for (int i = 0; i < mySize; i++) {
+        sorted[i] = ids[i];
+      }
+      mySortedByHash = sorted;
+    }
+    return mySortedByHash;
+  }
+
+  @NotNull
+  private int[] getSortedByTime() {
+    if (mySortedByTime == null) {
+      Integer[] ids = new Integer[mySize];
+      for (int i = 0; i < mySize; i++) {
+        ids[i] = i;
+      }
+      // stable, so commits with the same time keep the order they were appended in
+      Arrays.sort(ids, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer id1, Integer id2) {
+          return myTimes.get(id1) - myTimes.get(id2);
+        }
+      });
+      int[] sorted = new int[mySize];
+      for (int i = 0; i < mySize; i++) {
+        sorted[i] = ids[i];
+      }
+      mySortedByTime = sorted;
+    }
+    return mySortedByTime;
+  }
+
+  /**
+   * @return the commit itself and all commits having it as an ancestor
+   */
+  @NotNull
+  public BitSet getDescendants(int id) {
+    BitSet result = new BitSet(mySize);
+    result.set(id);
+    // children always go after parents
+    for (int i = id + 1; i < mySize; i++) {
+      for (int j = myParentStarts.get(i); j < myParentStarts.get(i + 1); j++) {
+        int parent = myParents.get(j);
+        if (parent >= 0 && result.get(parent)) {
+          result.set(i);
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return commits which are not parents of any other commit
+   */
+  @NotNull
+  public List<String> getHeads() {
+    BitSet parents = new BitSet(mySize);
+    for (int i = 0; i < myParents.size(); i++) {
+      int parent = myParents.get(i);
+      if (parent >= 0) parents.set(parent);
+    }
+    List<String> result = new ArrayList<String>();
+    for (int i = parents.nextClearBit(0); i < mySize; i = parents.nextClearBit(i + 1)) {
+      result.add(getHash(i));
+    }
+    return result;
+  }
+
+  public void startAppend() throws VcsException {
+    try {
+      boolean newFile = !myFile.exists() || myFile.length() == 0;
+      myAuthorsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myAuthorsFile, true)));
+      myOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile, true)));
+      if (newFile) {
+        myOutput.writeInt(MAGIC);
+        myOutput.writeInt(VERSION);
+      }
+    }
+    catch (IOException e) {
+      finishAppend();
+      throw new VcsException(e);
+    }
+  }
+
+  /**
+   * Adds a commit described as "hash|commit time|parent hashes separated by spaces|author" unless it is already in the graph.
+   */
+  public void append(@NotNull String line) throws VcsException {
+    String[] fields = line.split("\\|", 4);
+    if (fields.length < 4 || fields[0].length() != HASH_SIZE * 2) {
+      throw new VcsException("Can not parse commit graph record: " + line);
+    }
+
+    try {
+      byte[] hash = parseHash(fields[0]);
+      if (findFull(hash) >= 0) return;
+      int time = Integer.parseInt(fields[1]);
+      String[] parentHashes = fields[2].length() == 0 ? new String[0] : fields[2].split(" ");
+      int[] parents = new int[parentHashes.length];
+      for (int i = 0; i < parentHashes.length; i++) {
+        parents[i] = parentHashes[i].length() == HASH_SIZE * 2 ? findFull(parseHash(parentHashes[i])) : -1;
+      }
+      String author = fields[3];
+      int authorId;
+      if (myAuthorIds.containsKey(author)) {
+        authorId = myAuthorIds.get(author);
+      }
+      else {
+        authorId = myAuthorNames.size();
+        myAuthorsOutput.writeUTF(author);
+        myAuthorIds.put(author, authorId);
+        myAuthorNames.add(author);
+      }
+
+      myOutput.write(hash);
+      myOutput.writeInt(time);
+      myOutput.writeInt(authorId);
+      myOutput.writeByte(parents.length);
+      for (int parent : parents) {
+        myOutput.writeInt(parent);
+      }
+      addCommit(hash, time, authorId, parents);
+    }
+    catch (NumberFormatException e) {
+      throw new VcsException("Can not parse commit graph record: " + line);
+    }
+    catch (IOException e) {
+      throw new VcsException(e);
+    }
+  }
+
+  @NotNull
+  private static byte[] parseHash(@NotNull String hash) {
+    byte[] result = new byte[HASH_SIZE];
+    for (int i = 0; i < HASH_SIZE; i++) {
+      int high = Character.digit(hash.charAt(2 * i), 16);
+      int low = Character.digit(hash.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) throw new NumberFormatException(hash);
+      result[i] = (byte)((high << 4) | low);
+    }
+    return result;
+  }
+
+  public void finishAppend() throws VcsException {
+    IOException exception = null;
+    // authors go first, so that a record never refers to a lost author
+    for (DataOutputStream stream : new DataOutputStream[]{myAuthorsOutput, myOutput}) {
+      if (stream == null) continue;
+      try {
+        stream.close();
+      }
+      catch (IOException e) {
+        exception = e;
+      }
+    }
+    myAuthorsOutput = null;
+    myOutput = null;
+    if (exception != null) {
+      throw new VcsException(exception);
+    }
+  }
+}
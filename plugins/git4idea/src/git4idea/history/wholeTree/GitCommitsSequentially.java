@@ -21,6 +21,11 @@ import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Processor;
 import com.intellij.util.continuation.ContinuationContext;
+import git4idea.GitBranch;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -33,4 +38,7 @@ public interface GitCommitsSequentially {
   // this method also can be used to check whether history starts from start
   void iterateDescending(VirtualFile file, final long commitTime, final Processor<Pair<AbstractHash, Long>> consumer) throws VcsException;
   void pushUpdate(final Project project, final VirtualFile file, ContinuationContext context);
+  // names of the given branches containing the commit; null if the commit or any branch head is not indexed yet
+  @Nullable
+  List<String> getContainingBranches(VirtualFile root, AbstractHash hash, Collection<? extends GitBranch> branches);
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * <p>
+ *   Reads entries of the Git index ({@code .git/index}), versions 2 and 3.
+ * </p>
+ * <p>
+ *   Like {@link GitObjectReader} this is an optimization: {@code null} is returned if the index can't be read
+ *   (it doesn't exist, has an unsupported version, is being written, etc.), and the caller should ask the Git command line then.
+ * </p>
+ */
+public class GitIndexReader {
+
+  private static final Logger LOG = Logger.getInstance(GitIndexReader.class);
+
+  private static final int SIGNATURE = 0x44495243; // "DIRC"
+  private static final int ASSUME_VALID_FLAG = 0x8000;
+  private static final int EXTENDED_FLAG = 0x4000;
+  private static final int STAGE_MASK = 0x3000;
+  private static final int NAME_MASK = 0x0fff;
+
+  private GitIndexReader() {
+  }
+
+  /**
+   * Reads the index entries for the given paths.
+   * @param indexFile .git/index
+   * @param paths     paths relative to the repository root, separated by '/'.
+   * @return entries mapped by their paths; paths which are not in the index are absent from the map;
+   *         null if the index can't be read. Entries of unmerged paths are returned with a non-zero stage.
+   */
+  @Nullable
+  public static Map<String, Entry> readEntries(@NotNull File indexFile, @NotNull Collection<String> paths) {
+    if (!indexFile.isFile()) {
+      return null;
+    }
+    Map<String, Entry> result = new HashMap<String, Entry>();
+    Collection<String> pathsToFind = new HashSet<String>(paths);
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      try {
+        if (in.readInt() != SIGNATURE) {
+          LOG.info("Invalid index signature in " + indexFile);
+          return null;
+        }
+        int version = in.readInt();
+        if (version != 2 && version != 3) {
+          LOG.info("Unsupported index version " + version + " in " + indexFile);
+          return null;
+        }
+        int count = in.readInt();
+        byte[] hash = new byte[20];
+        byte[] padding = new byte[8];
+        for (int i = 0; i < count && !pathsToFind.isEmpty(); i++) {
+          in.readInt(); // ctime
+          in.readInt();
+          int mtimeSeconds = in.readInt();
+          in.readInt(); // mtime nanoseconds
+          in.readInt(); // dev
+          in.readInt(); // ino
+          int mode = in.readInt();
+          in.readInt(); // uid
+          in.readInt(); // gid
+          long size = in.readInt() & 0xffffffffL;
+          in.readFully(hash);
+          int flags = in.readUnsignedShort();
+          int entryLength = 62;
+          boolean skipWorktree = false;
+          if ((flags & EXTENDED_FLAG) != 0) {
+            if (version < 3) {
+              LOG.info("Extended flag in the index of version " + version + ": " + indexFile);
+              return null;
+            }
+            int extendedFlags = in.readUnsignedShort();
+            skipWorktree = extendedFlags != 0; // skip-worktree or intent-to-add
+            entryLength += 2;
+          }
+
+          int nameLength = flags & NAME_MASK;
+          byte[] name;
+          int afterName = 0; // the name is padded with 1-8 NUL bytes up to a multiple of 8
+          if (nameLength < NAME_MASK) {
+            name = new byte[nameLength];
+            in.readFully(name);
+          }
+          else {
+            ByteArrayOutputStream longName = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.readUnsignedByte()) != 0) {
+              longName.write(b);
+            }
+            name = longName.toByteArray();
+            afterName = 1;
+          }
+          entryLength += name.length;
+          in.readFully(padding, 0, ((entryLength + 8) & ~7) - entryLength - afterName);
+
+          String path = new String(name, CharsetToolkit.UTF8_CHARSET);
+          if (pathsToFind.remove(path)) {
+            boolean notChecked = (flags & ASSUME_VALID_FLAG) != 0 || skipWorktree;
+            result.put(path, new Entry(path, mode, mtimeSeconds, size, GitObjectReader.toHex(hash), (flags & STAGE_MASK) >> 12, notChecked));
+          }
+        }
+        return result;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read the index " + indexFile, e);
+      return null;
+    }
+  }
+
+  public static class Entry {
+    @NotNull private final String myPath;
+    private final int myMode;
+    private final int myModificationTime;
+    private final long mySize;
+    @NotNull private final String myHash;
+    private final int myStage;
+    private final boolean myNotChecked;
+
+    Entry(@NotNull String path, int mode, int modificationTime, long size, @NotNull String hash, int stage, boolean notChecked) {
+      myPath = path;
+      myMode = mode;
+      myModificationTime = modificationTime;
+      mySize = size;
+      myHash = hash;
+      myStage = stage;
+      myNotChecked = notChecked;
+    }
+
+    @NotNull
+    public String getPath() {
+      return myPath;
+    }
+
+    public int getMode() {
+      return myMode;
+    }
+
+    /**
+     * @return the modification time of the file in seconds as it was when the file was added to the index.
+     */
+    public int getModificationTime() {
+      return myModificationTime;
+    }
+
+    /**
+     * @return the size of the file truncated to 32 bits as it was when the file was added to the index.
+     */
+    public long getSize() {
+      return mySize;
+    }
+
+    @NotNull
+    public String getHash() {
+      return myHash;
+    }
+
+    /**
+     * @return 0 for a normal entry, 1-3 for the stages of an unmerged path.
+     */
+    public int getStage() {
+      return myStage;
+    }
+
+    /**
+     * @return true if Git doesn't compare the file with its working tree copy: assume-valid, skip-worktree or intent-to-add entries.
+     */
+    public boolean isNotChecked() {
+      return myNotChecked;
+    }
+  }
+}
@@ -0,0 +1,638 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ *   Reads commits, trees and blobs directly from the Git object database ({@code .git/objects}): loose objects and packs
+ *   with version 2 indexes, including deltified objects.
+ * </p>
+ * <p>
+ *   The reader is an optimization only: it returns {@code null} for anything it can't answer with certainty
+ *   (an unknown object, an object stored in an alternate repository, a revision given not by the full hash, a corrupted file, etc.),
+ *   and the caller should fall back to the Git command line then.
+ * </p>
+ * <p>
+ *   The list of packs is read once per reader, and their index and pack files are kept open until {@link #close()},
+ *   so a reader is meant to be used for one batch of lookups and then closed.
+ * </p>
+ *
+ * @see GitIndexReader
+ */
+public class GitObjectReader {
+
+  private static final Logger LOG = Logger.getInstance(GitObjectReader.class);
+
+  public static final int COMMIT = 1;
+  public static final int TREE = 2;
+  public static final int BLOB = 3;
+  public static final int TAG = 4;
+  private static final int OFS_DELTA = 6;
+  private static final int REF_DELTA = 7;
+
+  private static final int PACK_INDEX_MAGIC = 0xff744f63; // "\377tOc"
+  private static final int MAX_DELTA_DEPTH = 100;
+
+  private final File myObjectsDir;
+  private final File myPackDir;
+  @Nullable private List<Pack> myPacks; // loaded on first lookup
+
+  public GitObjectReader(@NotNull File gitDir) {
+    myObjectsDir = new File(gitDir, "objects");
+    myPackDir = new File(myObjectsDir, "pack");
+  }
+
+  /**
+   * Closes the pack files opened by the reader.
+   */
+  public void close() {
+    if (myPacks == null) {
+      return;
+    }
+    for (Pack pack : myPacks) {
+      pack.close();
+    }
+    myPacks = null;
+  }
+
+  /**
+   * Returns the content of the file at the given path in the given commit, as {@code git show <commit>:<path>} does.
+   * @param commitHash   full hash of the commit.
+   * @param relativePath path relative to the repository root, separated by '/'.
+   * @return the content of the file, or null if the reader can't retrieve it.
+   */
+  @Nullable
+  public byte[] readFileContent(@NotNull String commitHash, @NotNull String relativePath) {
+    TreeEntry entry = findTreeEntry(commitHash, relativePath);
+    if (entry == null || !entry.isFile()) {
+      return null;
+    }
+    GitObject blob = readObject(entry.getHash());
+    return blob == null || blob.getType() != BLOB ? null : blob.getContent();
+  }
+
+  /**
+   * Finds the entry of the given path in the tree of the given commit.
+   * @return the tree entry, or null if the path is not found or the reader can't read the objects.
+   */
+  @Nullable
+  public TreeEntry findTreeEntry(@NotNull String commitHash, @NotNull String relativePath) {
+    if (!isFullHash(commitHash)) {
+      return null;
+    }
+    GitObject commit = readObject(commitHash);
+    if (commit == null || commit.getType() != COMMIT) {
+      return null;
+    }
+    String treeHash = getTreeHash(commit.getContent());
+    if (treeHash == null) {
+      return null;
+    }
+
+    TreeEntry entry = null;
+    for (String name : StringUtil.split(relativePath, "/")) {
+      if (entry != null) {
+        if (!entry.isDirectory()) {
+          return null;
+        }
+        treeHash = entry.getHash();
+      }
+      GitObject tree = readObject(treeHash);
+      if (tree == null || tree.getType() != TREE) {
+        return null;
+      }
+      entry = findInTree(tree.getContent(), name);
+      if (entry == null) {
+        return null;
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Reads the object with the given full hash from the loose objects or from the packs.
+   * @return the object, or null if it is not found or can't be read.
+   */
+  @Nullable
+  public GitObject readObject(@NotNull String hash) {
+    if (!isFullHash(hash)) {
+      return null;
+    }
+    hash = hash.toLowerCase();
+    try {
+      GitObject object = readLooseObject(hash);
+      return object != null ? object : readPackedObject(hash, 0);
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read object " + hash, e);
+      return null;
+    }
+    catch (DataFormatException e) {
+      LOG.info("Couldn't read object " + hash, e);
+      return null;
+    }
+  }
+
+  static boolean isFullHash(@NotNull String revision) {
+    if (revision.length() != 40) {
+      return false;
+    }
+    for (int i = 0; i < revision.length(); i++) {
+      if (Character.digit(revision.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  private GitObject readLooseObject(@NotNull String hash) throws IOException, DataFormatException {
+    File file = new File(new File(myObjectsDir, hash.substring(0, 2)), hash.substring(2));
+    if (!file.isFile()) {
+      return null;
+    }
+    byte[] data = inflate(FileUtil.loadFileBytes(file), 0, -1);
+    int headerEnd = indexOf(data, (byte)0, 0);
+    int space = indexOf(data, (byte)' ', 0);
+    if (headerEnd < 0 || space < 0 || space > headerEnd) {
+      throw new DataFormatException("Invalid header of the loose object " + file);
+    }
+    int type = getType(new String(data, 0, space, CharsetToolkit.UTF8_CHARSET));
+    if (type < 0) {
+      return null;
+    }
+    return new GitObject(type, Arrays.copyOfRange(data, headerEnd + 1, data.length));
+  }
+
+  private static int getType(@NotNull String name) {
+    if (name.equals("commit")) return COMMIT;
+    if (name.equals("tree")) return TREE;
+    if (name.equals("blob")) return BLOB;
+    if (name.equals("tag")) return TAG;
+    return -1;
+  }
+
+  @Nullable
+  private GitObject readPackedObject(@NotNull String hash, int depth) throws IOException, DataFormatException {
+    if (depth > MAX_DELTA_DEPTH) {
+      throw new DataFormatException("Delta chain is too long for " + hash);
+    }
+    byte[] rawHash = toBytes(hash);
+    for (Pack pack : getPacks()) {
+      long offset = pack.findOffset(rawHash);
+      if (offset >= 0) {
+        return readPackedObject(pack.getPackFile(), offset, depth);
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  private List<Pack> getPacks() throws IOException {
+    if (myPacks != null) {
+      return myPacks;
+    }
+    myPacks = new ArrayList<Pack>();
+    File[] indexFiles = myPackDir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".idx");
+      }
+    });
+    if (indexFiles != null) {
+      for (File indexFile : indexFiles) {
+        Pack pack = Pack.open(indexFile);
+        if (pack != null) {
+          myPacks.add(pack);
+        }
+      }
+    }
+    return myPacks;
+  }
+
+  /**
+   * A pack with a version 2 index. The fan-out table of the index is kept in memory.
+   */
+  private static class Pack {
+    private static final long HASHES_START = 8 + 256 * 4;
+
+    private final File myIndexFile;
+    private final RandomAccessFile myIndex;
+    private final int[] myFanOut;
+    @Nullable private RandomAccessFile myPack;
+
+    private Pack(@NotNull File indexFile, @NotNull RandomAccessFile index, @NotNull int[] fanOut) {
+      myIndexFile = indexFile;
+      myIndex = index;
+      myFanOut = fanOut;
+    }
+
+    /**
+     * @return null if the index format is not supported
+     */
+    @Nullable
+    static Pack open(@NotNull File indexFile) throws IOException {
+      RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+      boolean opened = false;
+      try {
+        if (index.readInt() != PACK_INDEX_MAGIC || index.readInt() != 2) {
+          LOG.info("Unsupported pack index format: " + indexFile);
+          return null;
+        }
+        int[] fanOut = new int[256];
+        for (int i = 0; i < fanOut.length; i++) {
+          fanOut[i] = index.readInt();
+        }
+        opened = true;
+        return new Pack(indexFile, index, fanOut);
+      }
+      finally {
+        if (!opened) {
+          index.close();
+        }
+      }
+    }
+
+    /**
+     * Looks up the object by binary search over the sorted hash table.
+     * @return the offset of the object in the pack, or -1 if the object is not in the pack.
+     */
+    long findOffset(@NotNull byte[] rawHash) throws IOException {
+      int firstByte = rawHash[0] & 0xff;
+      int low = firstByte > 0 ? myFanOut[firstByte - 1] : 0;
+      int high = myFanOut[firstByte] - 1;
+      int count = myFanOut[255];
+
+      byte[] candidate = new byte[20];
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        myIndex.seek(HASHES_START + middle * 20L);
+        myIndex.readFully(candidate);
+        int cmp = compare(candidate, rawHash);
+        if (cmp == 0) {
+          long offsetsStart = HASHES_START + count * 24L; // hashes and CRCs
+          myIndex.seek(offsetsStart + middle * 4L);
+          int offset = myIndex.readInt();
+          if ((offset & 0x80000000) == 0) {
+            return offset;
+          }
+          myIndex.seek(offsetsStart + count * 4L + (offset & 0x7fffffff) * 8L);
+          return myIndex.readLong();
+        }
+        if (cmp < 0) {
+          low = middle + 1;
+        }
+        else {
+          high = middle - 1;
+        }
+      }
+      return -1;
+    }
+
+    @NotNull
+    RandomAccessFile getPackFile() throws IOException {
+      if (myPack == null) {
+        File packFile = new File(myIndexFile.getParentFile(), StringUtil.trimEnd(myIndexFile.getName(), ".idx") + ".pack");
+        myPack = new RandomAccessFile(packFile, "r");
+      }
+      return myPack;
+    }
+
+    void close() {
+      for (RandomAccessFile file : new RandomAccessFile[]{myIndex, myPack}) {
+        if (file == null) continue;
+        try {
+          file.close();
+        }
+        catch (IOException e) {
+          LOG.info("Couldn't close " + myIndexFile, e);
+        }
+      }
+    }
+  }
+
+  @Nullable
+  private GitObject readPackedObject(@NotNull RandomAccessFile pack, long offset, int depth) throws IOException, DataFormatException {
+    if (depth > MAX_DELTA_DEPTH) {
+      throw new DataFormatException("Delta chain is too long at " + offset);
+    }
+    pack.seek(offset);
+    int c = pack.readUnsignedByte();
+    int type = (c >> 4) & 7;
+    long size = c & 0x0f;
+    int shift = 4;
+    while ((c & 0x80) != 0) {
+      c = pack.readUnsignedByte();
+      size |= (long)(c & 0x7f) << shift;
+      shift += 7;
+    }
+    if (size > Integer.MAX_VALUE) {
+      return null;
+    }
+
+    switch (type) {
+      case COMMIT:
+      case TREE:
+      case BLOB:
+      case TAG:
+        return new GitObject(type, inflate(pack, (int)size));
+      case OFS_DELTA: {
+        c = pack.readUnsignedByte();
+        long baseOffset = c & 0x7f;
+        while ((c & 0x80) != 0) {
+          c = pack.readUnsignedByte();
+          baseOffset = ((baseOffset + 1) << 7) | (c & 0x7f);
+        }
+        byte[] delta = inflate(pack, (int)size);
+        GitObject base = readPackedObject(pack, offset - baseOffset, depth + 1);
+        return base == null ? null : new GitObject(base.getType(), applyDelta(base.getContent(), delta));
+      }
+      case REF_DELTA: {
+        byte[] baseHash = new byte[20];
+        pack.readFully(baseHash);
+        byte[] delta = inflate(pack, (int)size);
+        String baseHashString = toHex(baseHash);
+        GitObject base = readLooseObject(baseHashString);
+        if (base == null) {
+          base = readPackedObject(baseHashString, depth + 1);
+        }
+        return base == null ? null : new GitObject(base.getType(), applyDelta(base.getContent(), delta));
+      }
+      default:
+        throw new DataFormatException("Unknown type " + type + " of the packed object at " + offset);
+    }
+  }
+
+  @NotNull
+  static byte[] applyDelta(@NotNull byte[] base, @NotNull byte[] delta) throws DataFormatException {
+    int[] pos = {0};
+    long baseSize = readDeltaSize(delta, pos);
+    if (baseSize != base.length) {
+      throw new DataFormatException("Delta base size mismatch: " + baseSize + " instead of " + base.length);
+    }
+    long resultSize = readDeltaSize(delta, pos);
+    if (resultSize > Integer.MAX_VALUE) {
+      throw new DataFormatException("Delta result is too large: " + resultSize);
+    }
+    byte[] result = new byte[(int)resultSize];
+    int resultPos = 0;
+    int p = pos[0];
+    while (p < delta.length) {
+      int op = delta[p++] & 0xff;
+      if ((op & 0x80) != 0) { // copy from the base
+        int copyOffset = 0;
+        int copySize = 0;
+        for (int i = 0; i < 4; i++) {
+          if ((op & (1 << i)) != 0) copyOffset |= (delta[p++] & 0xff) << (i * 8);
+        }
+        for (int i = 0; i < 3; i++) {
+          if ((op & (0x10 << i)) != 0) copySize |= (delta[p++] & 0xff) << (i * 8);
+        }
+        if (copySize == 0) copySize = 0x10000;
+        if (copyOffset < 0 || copyOffset + copySize > base.length || resultPos + copySize > result.length) {
+          throw new DataFormatException("Invalid copy instruction in delta");
+        }
+        System.arraycopy(base, copyOffset, result, resultPos, copySize);
+        resultPos += copySize;
+      }
+      else if (op != 0) { // insert the next op bytes
+        if (p + op > delta.length || resultPos + op > result.length) {
+          throw new DataFormatException("Invalid insert instruction in delta");
+        }
+        System.arraycopy(delta, p, result, resultPos, op);
+        p += op;
+        resultPos += op;
+      }
+      else {
+        throw new DataFormatException("Reserved delta instruction");
+      }
+    }
+    if (resultPos != result.length) {
+      throw new DataFormatException("Delta result size mismatch: " + resultPos + " instead of " + result.length);
+    }
+    return result;
+  }
+
+  private static long readDeltaSize(@NotNull byte[] delta, @NotNull int[] pos) {
+    long size = 0;
+    int shift = 0;
+    int c;
+    do {
+      c = delta[pos[0]++] & 0xff;
+      size |= (long)(c & 0x7f) << shift;
+      shift += 7;
+    }
+    while ((c & 0x80) != 0);
+    return size;
+  }
+
+  @NotNull
+  private static byte[] inflate(@NotNull RandomAccessFile pack, int size) throws IOException, DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      byte[] result = new byte[size];
+      byte[] buffer = new byte[Math.min(8192, Math.max(64, size + 64))];
+      int resultPos = 0;
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          int read = pack.read(buffer);
+          if (read < 0) {
+            throw new EOFException("Unexpected end of the pack file");
+          }
+          inflater.setInput(buffer, 0, read);
+        }
+        if (resultPos < size) {
+          resultPos += inflater.inflate(result, resultPos, size - resultPos);
+        }
+        else if (inflater.inflate(new byte[1]) > 0) { // only the end of the stream is expected here
+          throw new DataFormatException("Object is larger than declared " + size);
+        }
+        if (inflater.needsDictionary()) {
+          throw new DataFormatException("Inflater requires a dictionary");
+        }
+      }
+      if (resultPos != size) {
+        throw new DataFormatException("Object size mismatch: " + resultPos + " instead of " + size);
+      }
+      return result;
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  @NotNull
+  private static byte[] inflate(@NotNull byte[] data, int offset, int expectedSize) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data, offset, data.length - offset);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(expectedSize > 0 ? expectedSize : data.length * 2);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int inflated = inflater.inflate(buffer);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DataFormatException("Unexpected end of the compressed data");
+        }
+        out.write(buffer, 0, inflated);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  @Nullable
+  private static String getTreeHash(@NotNull byte[] commit) {
+    // the commit object starts with "tree <hash>\n"
+    if (commit.length < 46 || !new String(commit, 0, 5).equals("tree ")) {
+      return null;
+    }
+    String hash = new String(commit, 5, 40);
+    return isFullHash(hash) ? hash : null;
+  }
+
+  /**
+   * Tree object is a sequence of entries {@code <octal mode> <name>\0<20 bytes of hash>}.
+   */
+  @Nullable
+  private static TreeEntry findInTree(@NotNull byte[] tree, @NotNull String name) {
+    byte[] nameBytes = name.getBytes(CharsetToolkit.UTF8_CHARSET);
+    int pos = 0;
+    while (pos < tree.length) {
+      int space = indexOf(tree, (byte)' ', pos);
+      int nul = indexOf(tree, (byte)0, space + 1);
+      if (space < 0 || nul < 0 || nul + 21 > tree.length) {
+        return null;
+      }
+      if (nul - space - 1 == nameBytes.length && regionMatches(tree, space + 1, nameBytes)) {
+        int mode = Integer.parseInt(new String(tree, pos, space - pos, CharsetToolkit.UTF8_CHARSET), 8);
+        return new TreeEntry(mode, toHex(Arrays.copyOfRange(tree, nul + 1, nul + 21)));
+      }
+      pos = nul + 21;
+    }
+    return null;
+  }
+
+  private static boolean regionMatches(@NotNull byte[] data, int offset, @NotNull byte[] pattern) {
+    for (int i = 0; i < pattern.length; i++) {
+      if (data[offset + i] != pattern[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf(@NotNull byte[] data, byte b, int from) {
+    for (int i = from; i < data.length; i++) {
+      if (data[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int compare(@NotNull byte[] hash1, @NotNull byte[] hash2) {
+    for (int i = 0; i < hash1.length; i++) {
+      int cmp = (hash1[i] & 0xff) - (hash2[i] & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  @NotNull
+  static byte[] toBytes(@NotNull String hash) {
+    byte[] bytes = new byte[hash.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte)((Character.digit(hash.charAt(2 * i), 16) << 4) | Character.digit(hash.charAt(2 * i + 1), 16));
+    }
+    return bytes;
+  }
+
+  @NotNull
+  static String toHex(@NotNull byte[] hash) {
+    StringBuilder sb = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  public static class GitObject {
+    private final int myType;
+    @NotNull private final byte[] myContent;
+
+    GitObject(int type, @NotNull byte[] content) {
+      myType = type;
+      myContent = content;
+    }
+
+    public int getType() {
+      return myType;
+    }
+
+    @NotNull
+    public byte[] getContent() {
+      return myContent;
+    }
+  }
+
+  public static class TreeEntry {
+    private final int myMode;
+    @NotNull private final String myHash;
+
+    TreeEntry(int mode, @NotNull String hash) {
+      myMode = mode;
+      myHash = hash;
+    }
+
+    public int getMode() {
+      return myMode;
+    }
+
+    @NotNull
+    public String getHash() {
+      return myHash;
+    }
+
+    public boolean isDirectory() {
+      return (myMode & 0170000) == 0040000;
+    }
+
+    /**
+     * @return true for regular (possibly executable) files, false for directories, symlinks and submodules.
+     */
+    public boolean isFile() {
+      return (myMode & 0170000) == 0100000;
+    }
+  }
+}
@@ -44,7 +44,7 @@ import java.util.regex.Pattern;
  * Throws a {@link GitRepoStateException} in the case of incorrect Git file format.
  * @author Kirill Likhodedov
  */
-class GitRepositoryReader {
+public class GitRepositoryReader {
 
   private static final Logger LOG = Logger.getInstance(GitRepositoryReader.class);
 
@@ -63,7 +63,7 @@ class GitRepositoryReader {
   private final File          myRefsRemotesDir; // .git/refs/remotes/
   private final File          myPackedRefsFile; // .git/packed-refs
 
-  GitRepositoryReader(@NotNull File gitDir) {
+  public GitRepositoryReader(@NotNull File gitDir) {
     myGitDir = gitDir;
     assertFileExists(myGitDir, ".git directory not found in " + gitDir);
     myHeadFile = new File(myGitDir, "HEAD");
@@ -79,7 +79,7 @@ class GitRepositoryReader {
   }
 
   @NotNull
-  GitRepository.State readState() {
+  public GitRepository.State readState() {
     if (isMergeInProgress()) {
       return GitRepository.State.MERGING;
     }
@@ -98,7 +98,7 @@ class GitRepositoryReader {
    * @return The current revision hash, or <b>{@code null}</b> if current revision is unknown - it is the initial repository state.
    */
   @Nullable
-  String readCurrentRevision() {
+  public String readCurrentRevision() {
     final Head head = readHead();
     if (!head.isBranch) { // .git/HEAD is a commit
       return head.ref;
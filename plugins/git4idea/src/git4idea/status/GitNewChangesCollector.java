@@ -17,6 +17,8 @@ package git4idea.status;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.*;
 import com.intellij.openapi.vcs.changes.Change;
@@ -24,7 +26,9 @@ import com.intellij.openapi.vcs.changes.ChangeListManager;
 import com.intellij.openapi.vcs.changes.ContentRevision;
 import com.intellij.openapi.vcs.changes.VcsDirtyScope;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vcsUtil.VcsFileUtil;
 import git4idea.GitContentRevision;
 import git4idea.GitFormatException;
 import git4idea.GitRevisionNumber;
@@ -34,18 +38,22 @@ import git4idea.commands.Git;
 import git4idea.commands.GitCommand;
 import git4idea.commands.GitHandler;
 import git4idea.commands.GitSimpleHandler;
+import git4idea.repo.GitIndexReader;
+import git4idea.repo.GitObjectReader;
+import git4idea.repo.GitRepoStateException;
 import git4idea.repo.GitRepository;
+import git4idea.repo.GitRepositoryReader;
 import git4idea.repo.GitUntrackedFilesHolder;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.File;
+import java.util.*;
 
 /**
  * <p>
  *   Collects changes from the Git repository in the given {@link com.intellij.openapi.vcs.changes.VcsDirtyScope}
  *   by calling {@code 'git status --porcelain -z'} on it.
+ *   If all dirty paths are unmodified files, which can be checked from the index and the object database, Git is not called.
  *   Works only on Git 1.7.0 and later.
  * </p>
  * <p>
@@ -95,11 +103,88 @@ class GitNewChangesCollector extends GitChangesCollector {
 
     Collection<FilePath> dirtyPaths = dirtyPaths(true);
     if (!dirtyPaths.isEmpty()) {
-      collectChanges(dirtyPaths);
+      if (!areUnchanged(dirtyPaths)) {
+        collectChanges(dirtyPaths);
+      }
       collectUnversionedFiles();
     }
   }
 
+  /**
+   * Checks without calling 'git status' that all dirty paths are files which are not modified, as Git itself does it:
+   * the size and the modification time of the file are the same as recorded in the index, and the index entry is the same as in HEAD.
+   * Returns false whenever the answer is not certain, e.g. for directories, files modified in the same second as the index,
+   * unmerged or not indexed files.
+   */
+  private boolean areUnchanged(@NotNull Collection<FilePath> dirtyPaths) {
+    if (myRepository == null) {
+      return false;
+    }
+    // HEAD is read from disk, because the repository state may be not updated yet, and GitRepository.update() would notify
+    // all repository listeners on every refresh
+    File gitDir = VfsUtilCore.virtualToIoFile(myRepository.getGitDir());
+    GitRepository.State state;
+    String head;
+    try {
+      GitRepositoryReader reader = new GitRepositoryReader(gitDir);
+      state = reader.readState();
+      head = reader.readCurrentRevision();
+    }
+    catch (GitRepoStateException e) {
+      LOG.info("Couldn't read the state of " + gitDir, e);
+      return false;
+    }
+    if (head == null || (state != GitRepository.State.NORMAL && state != GitRepository.State.DETACHED)) {
+      return false;
+    }
+
+    Map<String, File> files = new HashMap<String, File>();
+    for (FilePath path : dirtyPaths) {
+      File file = path.getIOFile();
+      if (!file.isFile() || !FileUtil.isAncestor(VfsUtilCore.virtualToIoFile(myVcsRoot), file, true)) {
+        return false;
+      }
+      files.put(VcsFileUtil.relativePath(myVcsRoot, path), file);
+    }
+
+    File indexFile = new File(gitDir, "index");
+    long indexModificationTime = indexFile.lastModified() / 1000;
+    Map<String, GitIndexReader.Entry> entries = GitIndexReader.readEntries(indexFile, files.keySet());
+    if (entries == null || entries.size() != files.size()) {
+      return false;
+    }
+
+    GitObjectReader objectReader = new GitObjectReader(gitDir);
+    try {
+      return areUnchanged(entries.values(), files, indexModificationTime, head, objectReader);
+    }
+    finally {
+      objectReader.close();
+    }
+  }
+
+  private static boolean areUnchanged(@NotNull Collection<GitIndexReader.Entry> entries, @NotNull Map<String, File> files,
+                                      long indexModificationTime, @NotNull String head, @NotNull GitObjectReader objectReader) {
+    for (GitIndexReader.Entry entry : entries) {
+      File file = files.get(entry.getPath());
+      long modificationTime = file.lastModified() / 1000;
+      if (entry.getStage() != 0 || entry.isNotChecked() ||
+          (file.length() & 0xffffffffL) != entry.getSize() ||
+          modificationTime != (entry.getModificationTime() & 0xffffffffL) ||
+          modificationTime >= indexModificationTime) { // "racily clean" file, Git would compare the content
+        return false;
+      }
+      if (!SystemInfo.isWindows && file.canExecute() != ((entry.getMode() & 0111) != 0)) {
+        return false;
+      }
+      GitObjectReader.TreeEntry headEntry = objectReader.findTreeEntry(head, entry.getPath());
+      if (headEntry == null || headEntry.getMode() != entry.getMode() || !headEntry.getHash().equals(entry.getHash())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   // calls 'git status' and parses the output, feeding myChanges.
   private void collectChanges(Collection<FilePath> dirtyPaths) throws VcsException {
     GitSimpleHandler handler = statusHandler(dirtyPaths);
@@ -20,12 +20,14 @@ import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vcsUtil.VcsFileUtil;
 import git4idea.GitUtil;
 import git4idea.commands.GitBinaryHandler;
 import git4idea.commands.GitCommand;
 import git4idea.commands.GitSimpleHandler;
+import git4idea.repo.GitObjectReader;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryManager;
 import org.jetbrains.annotations.NotNull;
@@ -196,6 +198,21 @@ public class GitFileUtils {
    * @throws VcsException if there is a problem with running git
    */
   public static byte[] getFileContent(Project project, VirtualFile root, String revisionOrBranch, String relativePath) throws VcsException {
+    // the object database is read directly when possible, 'git show' is used for everything the reader doesn't support
+    GitRepository repository = GitUtil.getRepositoryManager(project).getRepositoryForRoot(root);
+    if (repository != null) {
+      GitObjectReader reader = new GitObjectReader(VfsUtilCore.virtualToIoFile(repository.getGitDir()));
+      try {
+        byte[] content = reader.readFileContent(revisionOrBranch, relativePath);
+        if (content != null) {
+          return content;
+        }
+      }
+      finally {
+        reader.close();
+      }
+    }
+
     GitBinaryHandler h = new GitBinaryHandler(project, root, GitCommand.SHOW);
     h.setNoSSH(true);
     h.setSilent(true);
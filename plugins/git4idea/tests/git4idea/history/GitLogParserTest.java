@@ -36,6 +36,7 @@ import java.util.*;
 import static git4idea.history.GitLogParser.*;
 import static git4idea.history.GitLogParser.GitLogOption.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -131,21 +132,78 @@ public class GitLogParserTest extends GitTest {
   }
 
   private void doTestAllRecords(GitTestLogRecord.NameStatusOption nameStatusOption) throws VcsException {
-    NameStatus option;
-    switch (nameStatusOption) {
-      case NONE:   option = NameStatus.NONE; break;
-      case NAME:   option = NameStatus.NAME; break;
-      case STATUS: option = NameStatus.STATUS; break;
-      default: throw new AssertionError();
-    }
-
-    myParser = new GitLogParser(myProject, option, GIT_LOG_OPTIONS);
+    myParser = new GitLogParser(myProject, toNameStatus(nameStatusOption), GIT_LOG_OPTIONS);
     String output = prepareOutputForAllRecords(nameStatusOption);
     List<GitLogRecord> actualRecords = myParser.parse(output);
     List<GitTestLogRecord> expectedRecords = ALL_RECORDS;
     assertAllRecords(actualRecords, expectedRecords, nameStatusOption);
   }
 
+  @Test
+  public void parseLineByLineWithoutNameStatus() throws VcsException {
+    doTestLineByLine(GitTestLogRecord.NameStatusOption.NONE);
+  }
+
+  @Test
+  public void parseLineByLineWithName() throws VcsException {
+    doTestLineByLine(GitTestLogRecord.NameStatusOption.NAME);
+  }
+
+  @Test
+  public void parseLineByLineWithNameStatus() throws VcsException {
+    doTestLineByLine(GitTestLogRecord.NameStatusOption.STATUS);
+  }
+
+  @Test
+  public void parseManyRecordsLineByLine() throws VcsException {
+    myParser = new GitLogParser(myProject, NameStatus.STATUS, GIT_LOG_OPTIONS);
+    GitLogParser.RecordAccumulator accumulator = new GitLogParser.RecordAccumulator(myParser);
+    String output = prepareOutputForAllRecords(GitTestLogRecord.NameStatusOption.STATUS);
+    int count = 0;
+    for (int i = 0; i < 10000; i++) {
+      for (String line : output.split("\n")) {
+        GitLogRecord record = accumulator.acceptLine(line);
+        if (record != null) {
+          assertRecord(record, ALL_RECORDS.get(count % ALL_RECORDS.size()), GitTestLogRecord.NameStatusOption.STATUS);
+          count++;
+        }
+      }
+    }
+    GitLogRecord last = accumulator.finish();
+    assertNotNull(last);
+    assertRecord(last, RECORD3, GitTestLogRecord.NameStatusOption.STATUS);
+    assertEquals(count + 1, 10000 * ALL_RECORDS.size());
+  }
+
+  /**
+   * Feeds the output to the parser line by line, as it comes from the running Git process.
+   */
+  private void doTestLineByLine(GitTestLogRecord.NameStatusOption nameStatusOption) throws VcsException {
+    myParser = new GitLogParser(myProject, toNameStatus(nameStatusOption), GIT_LOG_OPTIONS);
+    GitLogParser.RecordAccumulator accumulator = new GitLogParser.RecordAccumulator(myParser);
+    List<GitLogRecord> actualRecords = new ArrayList<GitLogRecord>();
+    for (String line : prepareOutputForAllRecords(nameStatusOption).split("\n")) {
+      GitLogRecord record = accumulator.acceptLine(line);
+      if (record != null) {
+        actualRecords.add(record);
+      }
+    }
+    GitLogRecord record = accumulator.finish();
+    if (record != null) {
+      actualRecords.add(record);
+    }
+    assertAllRecords(actualRecords, ALL_RECORDS, nameStatusOption);
+  }
+
+  private static NameStatus toNameStatus(GitTestLogRecord.NameStatusOption nameStatusOption) {
+    switch (nameStatusOption) {
+      case NONE:   return NameStatus.NONE;
+      case NAME:   return NameStatus.NAME;
+      case STATUS: return NameStatus.STATUS;
+      default: throw new AssertionError();
+    }
+  }
+
   @Test
   public void parseOneRecordWithoutNameStatus() throws VcsException {
     myParser = new GitLogParser(myProject, GIT_LOG_OPTIONS);
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.util.Processor;
+import com.intellij.util.ThrowableConsumer;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.*;
+
+public class GitCommitsSequentialIndexTest extends TestCase {
+  private static final String ROOT = hash(0);
+  private static final String NEW = hash(999);
+
+  private File myDir;
+  private GitCommitGraph myGraph;
+  // all commits of the simulated repository, oldest first: hash -> "hash|time|parents|author"
+  private final Map<String, String> myCommits = new LinkedHashMap<String, String>();
+  private final List<Collection<String>> myExcludedHeads = new ArrayList<Collection<String>>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("commit", "graph");
+    myGraph = GitCommitGraph.load(new File(myDir, "root.graph"), new File(myDir, "root.graph.authors"));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testFewHeadsAreExcluded() throws Exception {
+    createBranches(3);
+    addCommit(NEW, 1050, ROOT);
+
+    GitCommitsSequentialIndex.appendNewCommits(myGraph, new SimulatedLog());
+
+    assertEquals(1, myExcludedHeads.size());
+    assertEquals(3, myExcludedHeads.get(0).size());
+    checkNewCommitFound(5);
+  }
+
+  public void testOlderCommitIsFoundWithManyHeads() throws Exception {
+    createBranches(101);
+    // older than the latest known commit
+    addCommit(NEW, 1050, ROOT);
+
+    GitCommitsSequentialIndex.appendNewCommits(myGraph, new SimulatedLog());
+
+    assertEquals(1, myExcludedHeads.size());
+    assertTrue(myExcludedHeads.get(0).isEmpty());
+    checkNewCommitFound(103);
+  }
+
+  public void testOlderCommitIsIteratedInTimeOrder() throws Exception {
+    createBranches(3);
+    // a fetched branch, older than the known branches
+    addCommit(NEW, 1050, ROOT);
+    GitCommitsSequentialIndex.appendNewCommits(myGraph, new SimulatedLog());
+
+    assertEquals(Arrays.asList(hash(3), hash(2), hash(1), NEW, ROOT), iterateDescending(-1));
+    assertEquals(Arrays.asList(hash(1), NEW, ROOT), iterateDescending(1101000));
+    assertEquals(Arrays.asList(NEW, ROOT), iterateDescending(1099000));
+    assertEquals(Collections.<String>emptyList(), iterateDescending(999000));
+  }
+
+  private List<String> iterateDescending(long commitTime) {
+    final List<String> result = new ArrayList<String>();
+    GitCommitsSequentialIndex.iterateDescending(myGraph, commitTime, new Processor<Pair<AbstractHash, Long>>() {
+      @Override
+      public boolean process(Pair<AbstractHash, Long> pair) {
+        result.add(pair.getFirst().getString());
+        return true;
+      }
+    });
+    return result;
+  }
+
+  private void checkNewCommitFound(int size) {
+    assertEquals(size, myGraph.size());
+    int id = myGraph.find(NEW);
+    assertTrue(id >= 0);
+    assertTrue(Arrays.equals(new int[]{myGraph.find(ROOT)}, myGraph.getParents(id)));
+    assertTrue(myGraph.getHeads().contains(NEW));
+    assertTrue(myGraph.getDescendants(myGraph.find(ROOT)).get(id));
+  }
+
+  private void createBranches(int count) throws VcsException {
+    addCommit(ROOT, 1000, "");
+    for (int i = 1; i <= count; i++) {
+      addCommit(hash(i), 1100 + i, ROOT);
+    }
+    myGraph.startAppend();
+    try {
+      for (String line : myCommits.values()) {
+        myGraph.append(line);
+      }
+    }
+    finally {
+      myGraph.finishAppend();
+    }
+  }
+
+  private void addCommit(String hash, int time, String parent) {
+    myCommits.put(hash, hash + "|" + time + "|" + parent + "|alice@example.com");
+  }
+
+  private static String hash(int i) {
+    String suffix = String.valueOf(i);
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() + suffix.length() < 40) sb.append('a');
+    return sb.append(suffix).toString();
+  }
+
+  /**
+   * Answers like {@code git log --all ^head...}: all commits which are not reachable from the excluded heads.
+   */
+  private class SimulatedLog implements GitCommitsSequentialIndex.CommitLog {
+    @Override
+    public void load(@NotNull Collection<String> excludedHeads, @NotNull ThrowableConsumer<String, VcsException> consumer)
+      throws VcsException {
+      myExcludedHeads.add(new ArrayList<String>(excludedHeads));
+      Set<String> reachable = new HashSet<String>();
+      LinkedList<String> queue = new LinkedList<String>(excludedHeads);
+      while (!queue.isEmpty()) {
+        String hash = queue.removeFirst();
+        if (!reachable.add(hash)) continue;
+        String parents = myCommits.get(hash).split("\\|")[2];
+        if (parents.length() > 0) queue.addAll(Arrays.asList(parents.split(" ")));
+      }
+      for (Map.Entry<String, String> entry : myCommits.entrySet()) {
+        if (!reachable.contains(entry.getKey())) {
+          consumer.consume(entry.getValue());
+        }
+      }
+    }
+  }
+}
@@ -16,7 +16,10 @@
 package git4idea.tests;
 
 import com.intellij.openapi.vcs.changes.ChangeListManagerImpl;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.util.registry.RegistryValue;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ArrayUtil;
 import git4idea.test.GitTest;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -24,7 +27,9 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.testng.Assert.assertEquals;
@@ -93,6 +98,28 @@ public class ChangeListManagerUpdateOnFileChangeTest extends GitTest {
     assertInChangeList(acopy.getPath());
   }
 
+  @Test
+  public void testManyFilesInOneDirectory() throws IOException {
+    RegistryValue threshold = Registry.get("vcs.dirty.files.per.directory.threshold");
+    int oldThreshold = threshold.asInteger();
+    threshold.setValue(3);
+    try {
+      // more files than the threshold: the directory is marked dirty instead of each file,
+      // the file in the subdirectory is still reported on its own
+      VirtualFile dir = createDirInCommand(myRepo.getVFRootDir(), "dir");
+      VirtualFile subdir = createDirInCommand(dir, "subdir");
+      List<String> paths = new ArrayList<String>();
+      for (int i = 0; i < 5; i++) {
+        paths.add(createFileInCommand(dir, "file" + i + ".txt", "content " + i).getPath());
+      }
+      paths.add(createFileInCommand(subdir, "nested.txt", "nested content").getPath());
+      assertInChangeList(ArrayUtil.toStringArray(paths));
+    }
+    finally {
+      threshold.setValue(oldThreshold);
+    }
+  }
+
   private void assertInChangeList(String... filepaths) {
     myChangeListManager.ensureUpToDate(false);
 
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.tests;
+
+import com.intellij.openapi.util.io.FileUtil;
+import git4idea.history.wholeTree.GitCommitGraph;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class GitCommitGraphTest extends TestCase {
+  private static final String ROOT = "1111111111111111111111111111111111111111";
+  private static final String LEFT = "2222222222222222222222222222222222222222";
+  private static final String RIGHT = "2233333333333333333333333333333333333333";
+  private static final String MERGE = "4444444444444444444444444444444444444444";
+
+  private File myDir;
+  private File myFile;
+  private File myAuthorsFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("commit", "graph");
+    myFile = new File(myDir, "root.graph");
+    myAuthorsFile = new File(myDir, "root.graph.authors");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testGraph() throws Exception {
+    GitCommitGraph graph = createGraph();
+    assertEquals(4, graph.size());
+    checkGraph(graph);
+  }
+
+  public void testReload() throws Exception {
+    createGraph();
+    checkGraph(GitCommitGraph.load(myFile, myAuthorsFile));
+  }
+
+  public void testAppendSkipsKnownCommits() throws Exception {
+    GitCommitGraph graph = createGraph();
+    graph.startAppend();
+    graph.append(MERGE + "|1300|" + LEFT + " " + RIGHT + "|merger@example.com");
+    graph.append("5555555555555555555555555555555555555555|1400|" + MERGE + "|alice@example.com");
+    graph.finishAppend();
+    assertEquals(5, graph.size());
+
+    graph = GitCommitGraph.load(myFile, myAuthorsFile);
+    assertEquals(5, graph.size());
+    assertEquals(Arrays.asList("5555555555555555555555555555555555555555"), graph.getHeads());
+    assertEquals("alice@example.com", graph.getAuthor(4));
+    assertTrue(Arrays.equals(new int[]{3}, graph.getParents(4)));
+  }
+
+  public void testIncompleteRecordIsDropped() throws Exception {
+    createGraph();
+    long length = myFile.length();
+    RandomAccessFile raf = new RandomAccessFile(myFile, "rw");
+    try {
+      raf.setLength(length - 3);
+    }
+    finally {
+      raf.close();
+    }
+
+    GitCommitGraph graph = GitCommitGraph.load(myFile, myAuthorsFile);
+    assertEquals(3, graph.size());
+    assertEquals(-1, graph.find(MERGE));
+
+    graph.startAppend();
+    graph.append(MERGE + "|1300|" + LEFT + " " + RIGHT + "|merger@example.com");
+    graph.finishAppend();
+    checkGraph(GitCommitGraph.load(myFile, myAuthorsFile));
+  }
+
+  private GitCommitGraph createGraph() throws Exception {
+    GitCommitGraph graph = GitCommitGraph.load(myFile, myAuthorsFile);
+    graph.startAppend();
+    graph.append(ROOT + "|1000||alice@example.com");
+    graph.append(LEFT + "|1100|" + ROOT + "|alice@example.com");
+    graph.append(RIGHT + "|1200|" + ROOT + "|bob@example.com");
+    graph.append(MERGE + "|1300|" + LEFT + " " + RIGHT + "|merger@example.com");
+    graph.finishAppend();
+    return graph;
+  }
+
+  private static void checkGraph(GitCommitGraph graph) {
+    assertEquals(4, graph.size());
+    assertEquals(ROOT, graph.getHash(0));
+    assertEquals(MERGE, graph.getHash(3));
+    assertEquals(1200000L, graph.getTime(2));
+    assertEquals("bob@example.com", graph.getAuthor(2));
+    assertEquals("merger@example.com", graph.getAuthor(3));
+
+    assertEquals(0, graph.getParents(0).length);
+    assertTrue(Arrays.equals(new int[]{1, 2}, graph.getParents(3)));
+
+    assertEquals(1, graph.find(LEFT));
+    assertEquals(2, graph.find("2233"));
+    assertEquals(-1, graph.find("22"));
+    assertEquals(-1, graph.find("5555"));
+
+    assertEquals(-1, graph.findLastNotLaterThan(999000));
+    assertEquals(1, graph.findLastNotLaterThan(1150000));
+    assertEquals(3, graph.findLastNotLaterThan(5000000));
+
+    BitSet descendants = graph.getDescendants(1);
+    assertEquals(2, descendants.cardinality());
+    assertTrue(descendants.get(1));
+    assertTrue(descendants.get(3));
+    assertEquals(4, graph.getDescendants(0).cardinality());
+
+    assertEquals(Arrays.asList(MERGE), graph.getHeads());
+  }
+}
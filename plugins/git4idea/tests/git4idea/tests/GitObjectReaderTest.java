@@ -0,0 +1,388 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.tests;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import git4idea.repo.GitIndexReader;
+import git4idea.repo.GitObjectReader;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Checks {@link GitObjectReader} and {@link GitIndexReader} on the object database and the index written by the test itself
+ * in the formats Git uses.
+ */
+public class GitObjectReaderTest extends TestCase {
+  private static final String BASE_CONTENT = "first line\nsecond line\nthird line\n";
+  private static final String OFS_DELTA_CONTENT = "first line\nchanged line\nthird line\n";
+  private static final String REF_DELTA_CONTENT = "first line\nsecond line\nthird line\nappended line\n";
+
+  private File myGitDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myGitDir = FileUtil.createTempDirectory("git", "objects");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myGitDir);
+    super.tearDown();
+  }
+
+  public void testLooseObjects() throws Exception {
+    String blob = writeLooseObject("blob", bytes("content of a"));
+    String nestedBlob = writeLooseObject("blob", bytes("content of b"));
+    String dir = writeLooseObject("tree", tree("100644", "b.txt", nestedBlob));
+    String root = writeLooseObject("tree", concat(tree("100644", "a.txt", blob), tree("40000", "dir", dir)));
+    String commit = writeLooseObject("commit", commit(root));
+
+    GitObjectReader reader = new GitObjectReader(myGitDir);
+    assertEquals("content of a", string(reader.readFileContent(commit, "a.txt")));
+    assertEquals("content of b", string(reader.readFileContent(commit, "dir/b.txt")));
+    assertEquals("content of b", string(reader.readFileContent(commit.toUpperCase(), "dir/b.txt")));
+
+    assertNull(reader.readFileContent(commit, "missing.txt"));
+    assertNull(reader.readFileContent(commit, "dir"));
+    assertNull(reader.readFileContent(commit, "a.txt/b.txt"));
+    assertNull(reader.readFileContent("HEAD", "a.txt"));
+    assertNull(reader.readFileContent(blob, "a.txt"));
+    assertNull(reader.readFileContent("0123456789012345678901234567890123456789", "a.txt"));
+
+    GitObjectReader.TreeEntry entry = reader.findTreeEntry(commit, "dir");
+    assertNotNull(entry);
+    assertTrue(entry.isDirectory());
+    assertEquals(dir, entry.getHash());
+  }
+
+  public void testPackedObjects() throws Exception {
+    String base = hash("blob", bytes(BASE_CONTENT));
+    String ofsDelta = hash("blob", bytes(OFS_DELTA_CONTENT));
+    String refDelta = hash("blob", bytes(REF_DELTA_CONTENT));
+
+    // base, then a delta referring to it by offset, then a delta referring to it by hash
+    ByteArrayOutputStream pack = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(pack);
+    out.write(bytes("PACK"));
+    out.writeInt(2);
+    out.writeInt(3);
+    int baseOffset = out.size();
+    writePackedObject(out, 3, bytes(BASE_CONTENT));
+
+    int ofsDeltaOffset = out.size();
+    byte[] delta = delta(BASE_CONTENT, OFS_DELTA_CONTENT, "first line\n".length(), "changed line\n",
+                         "first line\nsecond line\n".length());
+    writePackedObjectHeader(out, 6, delta.length);
+    writeBaseOffset(out, ofsDeltaOffset - baseOffset);
+    out.write(deflate(delta));
+
+    int refDeltaOffset = out.size();
+    delta = delta(BASE_CONTENT, REF_DELTA_CONTENT, BASE_CONTENT.length(), "appended line\n", BASE_CONTENT.length());
+    writePackedObjectHeader(out, 7, delta.length);
+    out.write(toBytes(base));
+    out.write(deflate(delta));
+    out.write(new byte[20]); // checksum, not verified by the reader
+
+    File packDir = new File(new File(myGitDir, "objects"), "pack");
+    FileUtil.writeToFile(new File(packDir, "pack-test.pack"), pack.toByteArray());
+    Map<String, Integer> offsets = new HashMap<String, Integer>();
+    offsets.put(base, baseOffset);
+    offsets.put(ofsDelta, ofsDeltaOffset);
+    offsets.put(refDelta, refDeltaOffset);
+    FileUtil.writeToFile(new File(packDir, "pack-test.idx"), packIndex(offsets));
+
+    String tree = writeLooseObject("tree", concat(tree("100644", "base.txt", base), tree("100644", "ofs.txt", ofsDelta),
+                                                  tree("100755", "ref.txt", refDelta)));
+    String commit = writeLooseObject("commit", commit(tree));
+
+    GitObjectReader reader = new GitObjectReader(myGitDir);
+    assertEquals(BASE_CONTENT, string(reader.readFileContent(commit, "base.txt")));
+    assertEquals(OFS_DELTA_CONTENT, string(reader.readFileContent(commit, "ofs.txt")));
+    assertEquals(REF_DELTA_CONTENT, string(reader.readFileContent(commit, "ref.txt")));
+    assertEquals(0100755, reader.findTreeEntry(commit, "ref.txt").getMode());
+    assertNull(reader.readObject("ffffffffffffffffffffffffffffffffffffffff"));
+    reader.close();
+  }
+
+  public void testObjectsInSeveralPacks() throws Exception {
+    byte[] blobContent = bytes("packed content");
+    String blob = hash("blob", blobContent);
+    byte[] treeContent = tree("100644", "a.txt", blob);
+    String tree = hash("tree", treeContent);
+    byte[] commitContent = commit(tree);
+    String commit = hash("commit", commitContent);
+
+    File packDir = new File(new File(myGitDir, "objects"), "pack");
+    writePack("pack-commits", new int[]{1, 2}, commitContent, treeContent);
+    writePack("pack-blobs", new int[]{3}, blobContent);
+    ByteArrayOutputStream oldIndex = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(oldIndex);
+    out.writeInt(0xff744f63);
+    out.writeInt(1); // unsupported version, the pack is skipped
+    out.write(new byte[256 * 4]);
+    FileUtil.writeToFile(new File(packDir, "pack-old.idx"), oldIndex.toByteArray());
+    FileUtil.writeToFile(new File(packDir, "pack-old.pack"), bytes("not a pack"));
+
+    GitObjectReader reader = new GitObjectReader(myGitDir);
+    assertEquals("packed content", string(reader.readFileContent(commit, "a.txt")));
+    assertEquals("packed content", string(reader.readFileContent(commit, "a.txt")));
+    assertNull(reader.readObject("0000000000000000000000000000000000000000"));
+
+    // the packs are listed once per reader, a new pack is seen by a new reader
+    byte[] newContent = bytes("new content");
+    writePack("pack-new", new int[]{3}, newContent);
+    String newBlob = hash("blob", newContent);
+    assertNull(reader.readObject(newBlob));
+    reader.close();
+
+    reader = new GitObjectReader(myGitDir);
+    assertEquals("new content", string(reader.readObject(newBlob).getContent()));
+    assertEquals("packed content", string(reader.readFileContent(commit, "a.txt")));
+    reader.close();
+    reader.close();
+  }
+
+  public void testIndex() throws Exception {
+    String longName = "dir/" + repeat('x', 5000) + ".txt";
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(index);
+    out.write(bytes("DIRC"));
+    out.writeInt(2);
+    out.writeInt(4);
+    writeIndexEntry(out, "a.txt", 100, 10, 0, 0100644);
+    writeIndexEntry(out, "conflict.txt", 200, 20, 1, 0100644);
+    writeIndexEntry(out, longName, 300, 30, 0, 0100644);
+    writeIndexEntry(out, "z/exec.sh", 400, 40, 0, 0100755);
+    File indexFile = new File(myGitDir, "index");
+    FileUtil.writeToFile(indexFile, index.toByteArray());
+
+    Map<String, GitIndexReader.Entry> entries =
+      GitIndexReader.readEntries(indexFile, Arrays.asList("a.txt", "conflict.txt", longName, "z/exec.sh", "missing.txt"));
+    assertNotNull(entries);
+    assertEquals(4, entries.size());
+    assertEquals(10, entries.get("a.txt").getSize());
+    assertEquals(100, entries.get("a.txt").getModificationTime());
+    assertEquals(hash("blob", bytes("a.txt")), entries.get("a.txt").getHash());
+    assertEquals(1, entries.get("conflict.txt").getStage());
+    assertEquals(300, entries.get(longName).getModificationTime());
+    assertEquals(0100755, entries.get("z/exec.sh").getMode());
+    assertEquals(40, entries.get("z/exec.sh").getSize());
+
+    FileUtil.writeToFile(indexFile, bytes("not an index"));
+    assertNull(GitIndexReader.readEntries(indexFile, Collections.singleton("a.txt")));
+  }
+
+  private String writeLooseObject(String type, byte[] content) throws Exception {
+    String hash = hash(type, content);
+    File file = new File(new File(new File(myGitDir, "objects"), hash.substring(0, 2)), hash.substring(2));
+    FileUtil.writeToFile(file, deflate(concat(bytes(type + " " + content.length + "\0"), content)));
+    return hash;
+  }
+
+  /**
+   * Writes a pack of non-delta objects of the given types together with its index.
+   */
+  private void writePack(String name, int[] types, byte[]... contents) throws Exception {
+    String[] typeNames = {null, "commit", "tree", "blob"};
+    ByteArrayOutputStream pack = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(pack);
+    out.write(bytes("PACK"));
+    out.writeInt(2);
+    out.writeInt(contents.length);
+    Map<String, Integer> offsets = new HashMap<String, Integer>();
+    for (int i = 0; i < contents.length; i++) {
+      offsets.put(hash(typeNames[types[i]], contents[i]), out.size());
+      writePackedObject(out, types[i], contents[i]);
+    }
+    out.write(new byte[20]);
+
+    File packDir = new File(new File(myGitDir, "objects"), "pack");
+    FileUtil.writeToFile(new File(packDir, name + ".pack"), pack.toByteArray());
+    FileUtil.writeToFile(new File(packDir, name + ".idx"), packIndex(offsets));
+  }
+
+  private static void writePackedObject(DataOutputStream out, int type, byte[] content) throws IOException {
+    writePackedObjectHeader(out, type, content.length);
+    out.write(deflate(content));
+  }
+
+  private static void writePackedObjectHeader(DataOutputStream out, int type, int size) throws IOException {
+    int c = (type << 4) | (size & 0x0f);
+    size >>>= 4;
+    while (size != 0) {
+      out.write(c | 0x80);
+      c = size & 0x7f;
+      size >>>= 7;
+    }
+    out.write(c);
+  }
+
+  private static void writeBaseOffset(DataOutputStream out, int offset) throws IOException {
+    LinkedList<Integer> bytes = new LinkedList<Integer>();
+    bytes.addFirst(offset & 0x7f);
+    while ((offset >>= 7) != 0) {
+      offset--;
+      bytes.addFirst(0x80 | (offset & 0x7f));
+    }
+    for (int b : bytes) {
+      out.write(b);
+    }
+  }
+
+  /**
+   * Delta which copies the base up to copyEnd, inserts the given text, and copies the rest of the base starting from restStart.
+   */
+  private static byte[] delta(String base, String result, int copyEnd, String insert, int restStart) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeDeltaSize(out, base.length());
+    writeDeltaSize(out, result.length());
+    out.write(0x80 | 0x10); // copy from offset 0, one byte of size
+    out.write(copyEnd);
+    out.write(insert.length());
+    out.write(bytes(insert));
+    if (restStart < base.length()) {
+      out.write(0x80 | 0x01 | 0x10);
+      out.write(restStart);
+      out.write(base.length() - restStart);
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeDeltaSize(ByteArrayOutputStream out, int size) {
+    while (size >= 0x80) {
+      out.write(0x80 | (size & 0x7f));
+      size >>>= 7;
+    }
+    out.write(size);
+  }
+
+  private static byte[] packIndex(Map<String, Integer> offsets) throws IOException {
+    List<String> hashes = new ArrayList<String>(offsets.keySet());
+    Collections.sort(hashes);
+    ByteArrayOutputStream index = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(index);
+    out.writeInt(0xff744f63);
+    out.writeInt(2);
+    for (int i = 0; i < 256; i++) {
+      int count = 0;
+      for (String hash : hashes) {
+        if (Integer.parseInt(hash.substring(0, 2), 16) <= i) count++;
+      }
+      out.writeInt(count);
+    }
+    for (String hash : hashes) {
+      out.write(toBytes(hash));
+    }
+    for (String ignored : hashes) {
+      out.writeInt(0); // CRC
+    }
+    for (String hash : hashes) {
+      out.writeInt(offsets.get(hash));
+    }
+    return index.toByteArray();
+  }
+
+  private static void writeIndexEntry(DataOutputStream out, String path, int mtime, int size, int stage, int mode) throws Exception {
+    int start = out.size();
+    out.writeInt(mtime); // ctime
+    out.writeInt(0);
+    out.writeInt(mtime);
+    out.writeInt(0);
+    out.writeInt(1); // dev
+    out.writeInt(2); // ino
+    out.writeInt(mode);
+    out.writeInt(1000); // uid
+    out.writeInt(1000); // gid
+    out.writeInt(size);
+    out.write(toBytes(hash("blob", bytes(path))));
+    byte[] name = bytes(path);
+    out.writeShort((stage << 12) | Math.min(name.length, 0xfff));
+    out.write(name);
+    int length = out.size() - start;
+    out.write(new byte[((length + 8) & ~7) - length]);
+  }
+
+  private static byte[] tree(String mode, String name, String hash) {
+    return concat(bytes(mode + " " + name + "\0"), toBytes(hash));
+  }
+
+  private static byte[] commit(String tree) {
+    return bytes("tree " + tree + "\nauthor A <a@example.com> 1000 +0000\ncommitter A <a@example.com> 1000 +0000\n\nmessage\n");
+  }
+
+  private static String hash(String type, byte[] content) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    digest.update(bytes(type + " " + content.length + "\0"));
+    digest.update(content);
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest.digest()) {
+      sb.append(String.format("%02x", b & 0xff));
+    }
+    return sb.toString();
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    while (!deflater.finished()) {
+      out.write(buffer, 0, deflater.deflate(buffer));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  private static byte[] toBytes(String hash) {
+    byte[] bytes = new byte[20];
+    for (int i = 0; i < 20; i++) {
+      bytes[i] = (byte)Integer.parseInt(hash.substring(2 * i, 2 * i + 2), 16);
+    }
+    return bytes;
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      out.write(array, 0, array.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(CharsetToolkit.UTF8_CHARSET);
+  }
+
+  private static String string(byte[] bytes) {
+    return bytes == null ? null : new String(bytes, CharsetToolkit.UTF8_CHARSET);
+  }
+}